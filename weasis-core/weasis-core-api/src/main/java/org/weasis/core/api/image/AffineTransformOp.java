@@ -15,9 +15,11 @@ import java.util.Arrays;
 import org.opencv.core.CvType;
 import org.opencv.core.Mat;
 import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
 import org.weasis.core.api.Messages;
+import org.weasis.core.api.image.cv.NativeBufferPool;
+import org.weasis.opencv.data.ImageCV;
 import org.weasis.opencv.data.PlanarImage;
-import org.weasis.opencv.op.ImageProcessor;
 
 public class AffineTransformOp extends AbstractOp {
 
@@ -72,8 +74,12 @@ public class AffineTransformOp extends AbstractOp {
                 if (interpolation != null && interpolation == 3) {
                     interpolation = 4;
                 }
-                result = ImageProcessor.warpAffine(source.toMat(), mat, new Size(bound.getWidth(), bound.getHeight()),
-                    interpolation);
+                // The display buffer is taken from the pool and given back by the image layer when replaced
+                ImageCV dst = NativeBufferPool.getInstance().borrow((int) bound.getHeight(), (int) bound.getWidth(),
+                    source.type());
+                Imgproc.warpAffine(source.toMat(), dst, mat, new Size(bound.getWidth(), bound.getHeight()),
+                    interpolation == null ? Imgproc.INTER_LINEAR : interpolation);
+                result = dst;
             } else {
                 result = null;
             }
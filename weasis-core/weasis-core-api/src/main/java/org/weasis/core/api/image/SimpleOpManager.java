@@ -235,6 +235,20 @@ public class SimpleOpManager implements OpManager {
         return getLastNodeOutputImage();
     }
 
+    /**
+     * @return true if the image is the input or the output of one of the operations
+     */
+    public boolean containsImage(PlanarImage img) {
+        if (img != null) {
+            for (ImageOpNode op : operations) {
+                if (op.getParam(Param.INPUT_IMG) == img || op.getParam(Param.OUTPUT_IMG) == img) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
     @Override
     public Object getParamValue(String opName, String param) {
         if (opName != null && param != null) {
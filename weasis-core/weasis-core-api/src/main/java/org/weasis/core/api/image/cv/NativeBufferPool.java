@@ -0,0 +1,223 @@
+/*
+ * Copyright (c) 2009-2020 Weasis Team and other contributors.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse
+ * Public License 2.0 which is available at http://www.eclipse.org/legal/epl-2.0.
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+
+package org.weasis.core.api.image.cv;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.opencv.core.Mat;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.weasis.opencv.data.ImageCV;
+import org.weasis.opencv.data.PlanarImage;
+
+/**
+ * Pool of native image buffers grouped by size class (rows, columns and OpenCV type).
+ * <p>
+ * Only the buffers leased by {@link #borrow(int, int, int)} can be given back with {@link #recycle(PlanarImage)}, so
+ * an image that is still referenced elsewhere (for instance in the image cache) can never be reused by mistake. The
+ * total size of the idle buffers is limited and is taken into account by the native image cache.
+ */
+public final class NativeBufferPool {
+    private static final Logger LOGGER = LoggerFactory.getLogger(NativeBufferPool.class);
+
+    private static final NativeBufferPool INSTANCE = new NativeBufferPool(Runtime.getRuntime().maxMemory() / 16);
+
+    // Insertion order gives the least recently recycled size class first
+    private final Map<SizeClass, Deque<ImageCV>> buckets = new LinkedHashMap<>();
+    private final Set<Mat> leased = Collections.synchronizedSet(Collections.newSetFromMap(new WeakHashMap<>()));
+    private final AtomicLong pooledBytes = new AtomicLong(0);
+    private final AtomicLong hitCount = new AtomicLong(0);
+    private final AtomicLong missCount = new AtomicLong(0);
+    private final AtomicLong releasedCount = new AtomicLong(0);
+    private volatile long maxPooledBytes;
+
+    public NativeBufferPool(long maxPooledBytes) {
+        this.maxPooledBytes = maxPooledBytes;
+    }
+
+    public static NativeBufferPool getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Returns a buffer of the requested geometry. The content of the buffer is undefined and must be fully written by
+     * the caller.
+     */
+    public ImageCV borrow(int rows, int cols, int type) {
+        SizeClass key = new SizeClass(rows, cols, type);
+        ImageCV buf = null;
+        synchronized (buckets) {
+            Deque<ImageCV> queue = buckets.get(key);
+            if (queue != null) {
+                buf = queue.pollFirst();
+                if (queue.isEmpty()) {
+                    buckets.remove(key);
+                }
+            }
+        }
+        if (buf == null) {
+            missCount.incrementAndGet();
+            buf = new ImageCV();
+            buf.create(rows, cols, type);
+        } else {
+            hitCount.incrementAndGet();
+            pooledBytes.addAndGet(-key.getBytes(buf));
+        }
+        leased.add(buf);
+        return buf;
+    }
+
+    /**
+     * Gives back a buffer obtained from {@link #borrow(int, int, int)}. Other images are ignored. The buffer is
+     * released when the pool is full.
+     *
+     * @return true if the image has been taken back by the pool
+     */
+    public boolean recycle(PlanarImage img) {
+        if (!(img instanceof ImageCV) || !leased.remove(img)) {
+            return false;
+        }
+        ImageCV buf = (ImageCV) img;
+        if (buf.empty() || buf.isSubmatrix() || !buf.isContinuous()) {
+            return false;
+        }
+        SizeClass key = new SizeClass(buf.rows(), buf.cols(), buf.type());
+        long size = key.getBytes(buf);
+        if (pooledBytes.get() + size > maxPooledBytes) {
+            buf.release();
+            releasedCount.incrementAndGet();
+            return true;
+        }
+        synchronized (buckets) {
+            // Re-insert the size class at the end to keep the recently used ones
+            Deque<ImageCV> queue = buckets.remove(key);
+            if (queue == null) {
+                queue = new ArrayDeque<>();
+            }
+            queue.addFirst(buf);
+            buckets.put(key, queue);
+        }
+        pooledBytes.addAndGet(size);
+        return true;
+    }
+
+    /**
+     * Releases idle buffers, starting with the least recently used size classes.
+     *
+     * @param bytes
+     *            the amount of memory to free
+     * @return the amount of memory freed
+     */
+    public long trim(long bytes) {
+        long freed = 0;
+        synchronized (buckets) {
+            Iterator<Map.Entry<SizeClass, Deque<ImageCV>>> it = buckets.entrySet().iterator();
+            while (freed < bytes && it.hasNext()) {
+                Map.Entry<SizeClass, Deque<ImageCV>> entry = it.next();
+                Deque<ImageCV> queue = entry.getValue();
+                while (freed < bytes && !queue.isEmpty()) {
+                    ImageCV buf = queue.pollLast();
+                    long size = entry.getKey().getBytes(buf);
+                    buf.release();
+                    releasedCount.incrementAndGet();
+                    pooledBytes.addAndGet(-size);
+                    freed += size;
+                }
+                if (queue.isEmpty()) {
+                    it.remove();
+                }
+            }
+        }
+        if (freed > 0) {
+            LOGGER.debug("Native buffer pool trimmed: {} bytes released", freed); //$NON-NLS-1$
+        }
+        return freed;
+    }
+
+    public void clear() {
+        trim(Long.MAX_VALUE);
+    }
+
+    public long getPooledBytes() {
+        return pooledBytes.get();
+    }
+
+    public long getMaxPooledBytes() {
+        return maxPooledBytes;
+    }
+
+    public void setMaxPooledBytes(long maxPooledBytes) {
+        this.maxPooledBytes = Math.max(0, maxPooledBytes);
+        long excess = pooledBytes.get() - this.maxPooledBytes;
+        if (excess > 0) {
+            trim(excess);
+        }
+    }
+
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    public long getReleasedCount() {
+        return releasedCount.get();
+    }
+
+    @Override
+    public String toString() {
+        return "NativeBufferPool [pooled=" + pooledBytes.get() + "/" + maxPooledBytes //$NON-NLS-1$ //$NON-NLS-2$
+            + " bytes, hits=" + hitCount.get() + ", misses=" + missCount.get() //$NON-NLS-1$ //$NON-NLS-2$
+            + ", released=" + releasedCount.get() + "]"; //$NON-NLS-1$ //$NON-NLS-2$
+    }
+
+    private static final class SizeClass {
+        private final int rows;
+        private final int cols;
+        private final int type;
+
+        SizeClass(int rows, int cols, int type) {
+            this.rows = rows;
+            this.cols = cols;
+            this.type = type;
+        }
+
+        long getBytes(Mat mat) {
+            return mat.total() * mat.elemSize();
+        }
+
+        @Override
+        public int hashCode() {
+            return (31 * (31 * rows + cols)) + type;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof SizeClass)) {
+                return false;
+            }
+            SizeClass other = (SizeClass) obj;
+            return rows == other.rows && cols == other.cols && type == other.type;
+        }
+    }
+}
@@ -20,6 +20,10 @@ public interface ImageLayer<E extends ImageElement> extends MeasurableLayer {
 
     E getSourceImage();
 
+    /**
+     * @return the image currently displayed. Its buffer can be reused for the next display image, the pixels must be
+     *         copied to be kept.
+     */
     PlanarImage getDisplayImage();
 
     void setImage(E image, OpManager preprocessing);
@@ -27,8 +27,10 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.weasis.core.api.gui.util.AppProperties;
 import org.weasis.core.api.media.data.Codec;
+import org.weasis.core.api.media.data.MemoryPressureMonitor;
 import org.weasis.core.api.service.AuditLog;
 import org.weasis.core.api.service.BundleTools;
+import org.weasis.core.api.util.HttpConnectionPool;
 import org.weasis.core.util.LangUtil;
 
 public class Activator implements BundleActivator, ServiceListener {
@@ -50,10 +52,15 @@ public class Activator implements BundleActivator, ServiceListener {
         }
 
         initLoggerAndAudit(bundleContext);
+
+        MemoryPressureMonitor.getInstance().start(2000);
+        // Configure the keep-alive of the JVM before the first download
+        HttpConnectionPool.getInstance();
     }
 
     @Override
     public void stop(BundleContext bundleContext) throws Exception {
+        MemoryPressureMonitor.getInstance().stop();
         BundleTools.saveSystemPreferences();
     }
 
@@ -14,7 +14,7 @@ import java.nio.file.Paths;
 import java.util.Objects;
 import java.util.Optional;
 
-import org.weasis.core.util.FileUtil;
+import org.weasis.core.api.util.FileHandlePool;
 
 public class FileCache {
 
@@ -94,8 +94,9 @@ public class FileCache {
     }
 
     public void dispose() {
-        FileUtil.delete(originalTempFile);
-        FileUtil.delete(transformedFile);
+        // The files are deleted when they are no longer read
+        FileHandlePool.getInstance().delete(originalTempFile);
+        FileHandlePool.getInstance().delete(transformedFile);
     }
 
 }
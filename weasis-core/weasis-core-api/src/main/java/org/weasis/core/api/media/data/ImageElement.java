@@ -28,7 +28,7 @@ import org.weasis.core.api.gui.util.MathUtil;
 import org.weasis.core.api.image.LutShape;
 import org.weasis.core.api.image.OpManager;
 import org.weasis.core.api.image.ZoomOp;
-import org.weasis.core.api.image.cv.CvUtil;
+import org.weasis.core.api.image.cv.NativeBufferPool;
 import org.weasis.core.api.image.measure.MeasurementsAdapter;
 import org.weasis.core.api.image.util.Unit;
 import org.weasis.core.api.util.ThreadUtil;
@@ -43,7 +43,8 @@ public class ImageElement extends MediaElement {
     public static final ExecutorService IMAGE_LOADER = ThreadUtil.buildNewSingleThreadExecutor("Image Loader"); //$NON-NLS-1$
 
     private static final NativeCache<ImageElement, PlanarImage> mCache =
-        new NativeCache<ImageElement, PlanarImage>(Runtime.getRuntime().maxMemory() / 2) {
+        new NativeCache<ImageElement, PlanarImage>(Runtime.getRuntime().maxMemory() / 2,
+            NativeBufferPool.getInstance()) {
 
             @Override
             protected void afterEntryRemove(ImageElement key, PlanarImage img) {
@@ -60,7 +61,11 @@ public class ImageElement extends MediaElement {
                 }
             }
         };
- 
+
+    static {
+        MemoryPressureMonitor.getInstance().registerNativeCache("image.cache", mCache); //$NON-NLS-1$
+    }
+
     protected boolean readable = true;
 
     protected double pixelSizeX = 1.0;
@@ -374,7 +379,7 @@ public class ImageElement extends MediaElement {
             LOGGER.warn("Out of MemoryError: {}", this, e1); //$NON-NLS-1$
             
             mCache.expungeStaleEntries();
-            CvUtil.runGarbageCollectorAndWait(100);
+            MemoryPressureMonitor.getInstance().releaseMemoryAfterError(100);
 
             return getCacheImage(startImageLoading(), manager, findMinMax);
         }
@@ -0,0 +1,382 @@
+/*
+ * Copyright (c) 2009-2020 Weasis Team and other contributors.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse
+ * Public License 2.0 which is available at http://www.eclipse.org/legal/epl-2.0.
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+
+package org.weasis.core.api.media.data;
+
+import java.beans.PropertyChangeListener;
+import java.beans.PropertyChangeSupport;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryNotificationInfo;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.weasis.core.api.image.cv.CvUtil;
+import org.weasis.core.api.service.BundleTools;
+import org.weasis.core.api.service.WProperties;
+import org.weasis.core.api.util.ThreadUtil;
+
+/**
+ * Watches the heap (with the usage thresholds of the memory pools) and the native memory accounted by the registered
+ * {@link NativeCache}, and shrinks the registered caches step by step before an OutOfMemoryError happens.
+ * <p>
+ * The caches are reduced when the level rises. A level is left only when the usage is below its threshold minus a
+ * margin, and the caches are reduced again at the same level only after a cooldown period (only at HIGH and CRITICAL
+ * when the level does not change).
+ * <p>
+ * The thresholds can be tuned with the following properties (ratio of the maximum memory):
+ * <ul>
+ * <li>weasis.memory.pressure.moderate (default 0.70)</li>
+ * <li>weasis.memory.pressure.high (default 0.85)</li>
+ * <li>weasis.memory.pressure.critical (default 0.95)</li>
+ * <li>weasis.memory.pressure.cooldown in milliseconds (default 30000)</li>
+ * <li>weasis.memory.native.max in bytes (default the maximum heap size or more when the maximum size of the registered
+ * native caches would reach the moderate level)</li>
+ * </ul>
+ * The level changes are logged and published to the {@link PropertyChangeListener} with the property
+ * {@link #PROPERTY_LEVEL}.
+ */
+public final class MemoryPressureMonitor {
+    private static final Logger LOGGER = LoggerFactory.getLogger(MemoryPressureMonitor.class);
+
+    public static final String PROPERTY_LEVEL = "memory.pressure.level"; //$NON-NLS-1$
+
+    /** Margin below the threshold of a level for leaving it */
+    static final double HYSTERESIS = 0.05;
+
+    public enum PressureLevel {
+        NORMAL(0.0), MODERATE(0.1), HIGH(0.3), CRITICAL(0.6);
+
+        private final double trimRatio;
+
+        PressureLevel(double trimRatio) {
+            this.trimRatio = trimRatio;
+        }
+
+        /**
+         * @return the ratio of the cache content to release at each reduction
+         */
+        public double getTrimRatio() {
+            return trimRatio;
+        }
+    }
+
+    @FunctionalInterface
+    public interface CacheReducer {
+        /**
+         * Releases a part of the cache according to the pressure level (never called with NORMAL).
+         */
+        void reduce(PressureLevel level);
+    }
+
+    private static final MemoryPressureMonitor INSTANCE = new MemoryPressureMonitor();
+
+    private final Map<String, CacheReducer> reducers = new ConcurrentHashMap<>();
+    private final Map<String, NativeCache<?, ?>> nativeCaches = new ConcurrentHashMap<>();
+    private final PropertyChangeSupport changeSupport = new PropertyChangeSupport(this);
+    private final NotificationListener heapListener = this::handleNotification;
+
+    private volatile PressureLevel level = PressureLevel.NORMAL;
+    private volatile double moderateRatio = 0.70;
+    private volatile double highRatio = 0.85;
+    private volatile double criticalRatio = 0.95;
+    private volatile long cooldown = 30000L;
+    // 0 when derived from the registered native caches
+    private volatile long maxNativeMemory = 0L;
+
+    // Guarded by this
+    private PressureLevel reducedLevel = PressureLevel.NORMAL;
+    private long lastReduction = 0L;
+
+    private ScheduledExecutorService scheduler;
+    private ScheduledFuture<?> periodicCheck;
+
+    MemoryPressureMonitor() {
+    }
+
+    public static MemoryPressureMonitor getInstance() {
+        return INSTANCE;
+    }
+
+    public synchronized void start(long periodMs) {
+        if (scheduler != null) {
+            return;
+        }
+        WProperties prefs = BundleTools.SYSTEM_PREFERENCES;
+        moderateRatio = prefs.getDoubleProperty("weasis.memory.pressure.moderate", 0.70); //$NON-NLS-1$
+        highRatio = prefs.getDoubleProperty("weasis.memory.pressure.high", 0.85); //$NON-NLS-1$
+        criticalRatio = prefs.getDoubleProperty("weasis.memory.pressure.critical", 0.95); //$NON-NLS-1$
+        cooldown = prefs.getLongProperty("weasis.memory.pressure.cooldown", 30000L); //$NON-NLS-1$
+        maxNativeMemory = prefs.getLongProperty("weasis.memory.native.max", 0L); //$NON-NLS-1$
+
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            long max = pool.getUsage().getMax();
+            if (pool.getType() == MemoryType.HEAP && max > 0) {
+                long threshold = (long) (max * moderateRatio);
+                if (pool.isCollectionUsageThresholdSupported()) {
+                    pool.setCollectionUsageThreshold(threshold);
+                }
+                if (pool.isUsageThresholdSupported()) {
+                    pool.setUsageThreshold(threshold);
+                }
+            }
+        }
+        if (ManagementFactory.getMemoryMXBean() instanceof NotificationEmitter) {
+            ((NotificationEmitter) ManagementFactory.getMemoryMXBean()).addNotificationListener(heapListener, null,
+                null);
+        }
+
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = ThreadUtil.getThreadFactory("Memory Monitor").newThread(r); //$NON-NLS-1$
+            t.setDaemon(true);
+            return t;
+        });
+        periodicCheck = scheduler.scheduleWithFixedDelay(this::evaluate, periodMs, periodMs, TimeUnit.MILLISECONDS);
+        LOGGER.info("Memory pressure thresholds: moderate {}, high {}, critical {}, native max {} bytes", //$NON-NLS-1$
+            moderateRatio, highRatio, criticalRatio, getMaxNativeMemory());
+    }
+
+    public synchronized void stop() {
+        if (scheduler == null) {
+            return;
+        }
+        if (ManagementFactory.getMemoryMXBean() instanceof NotificationEmitter) {
+            try {
+                ((NotificationEmitter) ManagementFactory.getMemoryMXBean()).removeNotificationListener(heapListener);
+            } catch (Exception e) {
+                LOGGER.debug("Cannot remove memory listener", e); //$NON-NLS-1$
+            }
+        }
+        periodicCheck.cancel(false);
+        scheduler.shutdownNow();
+        scheduler = null;
+    }
+
+    public void register(String name, CacheReducer reducer) {
+        if (name != null && reducer != null) {
+            reducers.put(name, reducer);
+        }
+    }
+
+    /**
+     * Registers a native cache: its content is counted in the native memory usage and it is trimmed under pressure.
+     */
+    public void registerNativeCache(String name, NativeCache<?, ?> cache) {
+        if (name != null && cache != null) {
+            nativeCaches.put(name, cache);
+            reducers.put(name, l -> cache.trim(l.getTrimRatio()));
+        }
+    }
+
+    public void unregister(String name) {
+        if (name != null) {
+            reducers.remove(name);
+            nativeCaches.remove(name);
+        }
+    }
+
+    public PressureLevel getLevel() {
+        return level;
+    }
+
+    public void addPropertyChangeListener(PropertyChangeListener listener) {
+        changeSupport.addPropertyChangeListener(PROPERTY_LEVEL, listener);
+    }
+
+    public void removePropertyChangeListener(PropertyChangeListener listener) {
+        changeSupport.removePropertyChangeListener(PROPERTY_LEVEL, listener);
+    }
+
+    /**
+     * @return the highest ratio of used/max memory of the heap pools having a maximum size
+     */
+    public static double getHeapUsageRatio() {
+        double ratio = 0.0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP && pool.isUsageThresholdSupported()) {
+                // Prefer the usage after the last collection which does not include the garbage
+                MemoryUsage usage = pool.isCollectionUsageThresholdSupported() ? pool.getCollectionUsage() : null;
+                if (usage == null || usage.getMax() <= 0) {
+                    usage = pool.getUsage();
+                }
+                if (usage.getMax() > 0) {
+                    ratio = Math.max(ratio, (double) usage.getUsed() / usage.getMax());
+                }
+            }
+        }
+        if (ratio == 0.0) {
+            Runtime rt = Runtime.getRuntime();
+            ratio = (double) (rt.totalMemory() - rt.freeMemory()) / rt.maxMemory();
+        }
+        return ratio;
+    }
+
+    public long getNativeMemoryUsage() {
+        long used = 0;
+        for (NativeCache<?, ?> cache : nativeCaches.values()) {
+            used += cache.getTotalNativeMemory();
+        }
+        return used;
+    }
+
+    /**
+     * @return the native memory corresponding to a ratio of 1.0, by default the maximum heap size or more when the
+     *         registered native caches at their maximum size would reach the moderate level
+     */
+    public long getMaxNativeMemory() {
+        long max = maxNativeMemory;
+        if (max > 0) {
+            return max;
+        }
+        long budget = 0;
+        for (NativeCache<?, ?> cache : nativeCaches.values()) {
+            budget += cache.getMaxNativeMemory();
+        }
+        // The normal use of the caches must stay below the moderate level
+        double ratio = Math.max(0.1, moderateRatio - HYSTERESIS);
+        return Math.max(Runtime.getRuntime().maxMemory(), (long) (budget / ratio));
+    }
+
+    public double getNativeUsageRatio() {
+        long max = getMaxNativeMemory();
+        return max <= 0 ? 0.0 : (double) getNativeMemoryUsage() / max;
+    }
+
+    /**
+     * Computes the current pressure level and reduces the caches when the level rises.
+     */
+    public void evaluate() {
+        try {
+            update(getHeapUsageRatio(), getNativeUsageRatio(), System.currentTimeMillis());
+        } catch (Exception e) {
+            LOGGER.error("Cannot evaluate memory pressure", e); //$NON-NLS-1$
+        }
+    }
+
+    /**
+     * @return true when the caches have been reduced
+     */
+    synchronized boolean update(double heapRatio, double nativeRatio, long now) {
+        PressureLevel old = level;
+        PressureLevel newLevel = computeLevel(Math.max(heapRatio, nativeRatio), old);
+        setLevel(newLevel, heapRatio, nativeRatio);
+        if (newLevel == PressureLevel.NORMAL) {
+            return false;
+        }
+        boolean elapsed = now - lastReduction >= cooldown;
+        boolean reduce;
+        if (newLevel.compareTo(old) > 0) {
+            // Rising: a higher level than the last reduction is handled at once
+            reduce = newLevel.compareTo(reducedLevel) > 0 || elapsed;
+        } else {
+            // Steady or falling: only a lasting HIGH or CRITICAL level requires more relief
+            reduce = newLevel.compareTo(PressureLevel.HIGH) >= 0 && elapsed;
+        }
+        if (reduce) {
+            reducedLevel = newLevel;
+            lastReduction = now;
+            reduceCaches(newLevel);
+        }
+        return reduce;
+    }
+
+    PressureLevel computeLevel(double ratio, PressureLevel current) {
+        PressureLevel newLevel = getLevel(ratio);
+        if (newLevel.compareTo(current) < 0) {
+            // Leave the current level only when the usage is clearly below its threshold
+            PressureLevel lower = getLevel(ratio + HYSTERESIS);
+            newLevel = lower.compareTo(current) < 0 ? lower : current;
+        }
+        return newLevel;
+    }
+
+    private PressureLevel getLevel(double ratio) {
+        if (ratio >= criticalRatio) {
+            return PressureLevel.CRITICAL;
+        } else if (ratio >= highRatio) {
+            return PressureLevel.HIGH;
+        } else if (ratio >= moderateRatio) {
+            return PressureLevel.MODERATE;
+        }
+        return PressureLevel.NORMAL;
+    }
+
+    void setThresholds(double moderate, double high, double critical, long cooldownMs) {
+        this.moderateRatio = moderate;
+        this.highRatio = high;
+        this.criticalRatio = critical;
+        this.cooldown = cooldownMs;
+    }
+
+    /**
+     * Releases the caches at the CRITICAL level and runs the garbage collector. To be called when an OutOfMemoryError
+     * has been caught.
+     *
+     * @param ms
+     *            the time to wait after running the garbage collector
+     */
+    public void releaseMemoryAfterError(long ms) {
+        synchronized (this) {
+            setLevel(PressureLevel.CRITICAL, getHeapUsageRatio(), getNativeUsageRatio());
+            reducedLevel = PressureLevel.CRITICAL;
+            lastReduction = System.currentTimeMillis();
+            reduceCaches(PressureLevel.CRITICAL);
+        }
+        CvUtil.runGarbageCollectorAndWait(ms);
+    }
+
+    private void reduceCaches(PressureLevel l) {
+        for (Map.Entry<String, CacheReducer> entry : reducers.entrySet()) {
+            try {
+                entry.getValue().reduce(l);
+            } catch (Exception e) {
+                LOGGER.error("Cannot reduce the cache {}", entry.getKey(), e); //$NON-NLS-1$
+            }
+        }
+    }
+
+    private void setLevel(PressureLevel newLevel, double heapRatio, double nativeRatio) {
+        PressureLevel old = level;
+        if (old != newLevel) {
+            level = newLevel;
+            if (newLevel.compareTo(old) > 0) {
+                LOGGER.warn("Memory pressure {} -> {} (heap {}%, native {}%)", old, newLevel, //$NON-NLS-1$
+                    Math.round(heapRatio * 100), Math.round(nativeRatio * 100));
+            } else {
+                LOGGER.info("Memory pressure {} -> {} (heap {}%, native {}%)", old, newLevel, //$NON-NLS-1$
+                    Math.round(heapRatio * 100), Math.round(nativeRatio * 100));
+            }
+            changeSupport.firePropertyChange(PROPERTY_LEVEL, old, newLevel);
+        }
+    }
+
+    private void handleNotification(Notification notification, Object handback) {
+        String type = notification.getType();
+        if (MemoryNotificationInfo.MEMORY_THRESHOLD_EXCEEDED.equals(type)
+            || MemoryNotificationInfo.MEMORY_COLLECTION_THRESHOLD_EXCEEDED.equals(type)) {
+            ScheduledExecutorService s = scheduler;
+            if (s != null) {
+                // Do not reduce the caches in the notification thread
+                s.execute(this::evaluate);
+            }
+        }
+    }
+}
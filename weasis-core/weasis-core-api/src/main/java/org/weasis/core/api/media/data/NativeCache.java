@@ -18,6 +18,7 @@ import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.atomic.AtomicLong;
 
+import org.weasis.core.api.image.cv.NativeBufferPool;
 import org.weasis.opencv.data.PlanarImage;
 
 public abstract class NativeCache<K, V extends PlanarImage> extends AbstractMap<K, V> {
@@ -25,10 +26,22 @@ public abstract class NativeCache<K, V extends PlanarImage> extends AbstractMap<
     protected final Map<K, V> hash;
     private final long maxNativeMemory;
     private AtomicLong useNativeMemory;
+    private final NativeBufferPool bufferPool;
 
     public NativeCache(long maxNativeMemory) {
+        this(maxNativeMemory, null);
+    }
+
+    /**
+     * @param maxNativeMemory
+     *            the maximum native memory used by the cached values and by the idle buffers of the pool
+     * @param bufferPool
+     *            the pool whose idle buffers are counted in the native memory budget (can be null)
+     */
+    public NativeCache(long maxNativeMemory, NativeBufferPool bufferPool) {
         this.maxNativeMemory = maxNativeMemory;
         this.useNativeMemory = new AtomicLong(0);
+        this.bufferPool = bufferPool;
         this.hash = Collections.synchronizedMap(new LinkedHashMap<>(64, 0.75f, true));
     }
 
@@ -38,15 +51,37 @@ public abstract class NativeCache<K, V extends PlanarImage> extends AbstractMap<
     }
 
     public boolean isMemoryAvailable() {
-        return useNativeMemory.get() < maxNativeMemory;
+        return getTotalNativeMemory() < maxNativeMemory;
+    }
+
+    public long getMaxNativeMemory() {
+        return maxNativeMemory;
+    }
+
+    /**
+     * @return the native memory used by the cached values
+     */
+    public long getUsedNativeMemory() {
+        return useNativeMemory.get();
+    }
+
+    /**
+     * @return the native memory used by the cached values and by the idle buffers of the pool
+     */
+    public long getTotalNativeMemory() {
+        return useNativeMemory.get() + (bufferPool == null ? 0L : bufferPool.getPooledBytes());
     }
 
     public void expungeStaleEntries() {
+        if (!isMemoryAvailable() && bufferPool != null) {
+            // Idle buffers are released before the cached values
+            bufferPool.trim(getTotalNativeMemory() - maxNativeMemory + maxNativeMemory / 20);
+        }
         if (!isMemoryAvailable()) {
             synchronized (hash) {
                 List<K> remKeys = new ArrayList<>();
                 // 5% of max memory + diff
-                long maxfreeSize = maxNativeMemory / 20 + (useNativeMemory.get() - maxNativeMemory);
+                long maxfreeSize = maxNativeMemory / 20 + (getTotalNativeMemory() - maxNativeMemory);
                 long freeSize = 0;
                 
                 for (Map.Entry<K, V> e : hash.entrySet()) {
@@ -57,13 +92,47 @@ public abstract class NativeCache<K, V extends PlanarImage> extends AbstractMap<
                     remKeys.add(e.getKey());
                 }
 
-                for (K key : remKeys) {
-                    V val = hash.remove(key);
-                    useNativeMemory.addAndGet(- physicalBytes(val));
-                    afterEntryRemove(key, val);
+                removeEntries(remKeys);
+            }
+        }
+    }
+
+    /**
+     * Releases a part of the native memory, starting with the idle buffers of the pool and then with the least
+     * recently used entries.
+     *
+     * @param ratio
+     *            the ratio of the used native memory to release (between 0 and 1)
+     * @return the amount of memory released
+     */
+    public long trim(double ratio) {
+        long toFree = (long) (getTotalNativeMemory() * Math.min(1.0, Math.max(0.0, ratio)));
+        if (toFree <= 0) {
+            return 0;
+        }
+        long freeSize = bufferPool == null ? 0L : bufferPool.trim(toFree);
+        if (freeSize < toFree) {
+            synchronized (hash) {
+                List<K> remKeys = new ArrayList<>();
+                for (Map.Entry<K, V> e : hash.entrySet()) {
+                    if (freeSize >= toFree) {
+                        break;
+                    }
+                    freeSize += physicalBytes(e.getValue());
+                    remKeys.add(e.getKey());
                 }
+                removeEntries(remKeys);
             }
         }
+        return freeSize;
+    }
+
+    private void removeEntries(List<K> remKeys) {
+        for (K key : remKeys) {
+            V val = hash.remove(key);
+            useNativeMemory.addAndGet(-physicalBytes(val));
+            afterEntryRemove(key, val);
+        }
     }
 
     private long physicalBytes(V val) {
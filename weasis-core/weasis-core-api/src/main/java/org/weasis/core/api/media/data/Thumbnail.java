@@ -74,6 +74,10 @@ public class Thumbnail extends JLabel implements Thumbnailable {
             }
         };
 
+    static {
+        MemoryPressureMonitor.getInstance().registerNativeCache("thumbnail.cache", mCache); //$NON-NLS-1$
+    }
+
     protected volatile boolean readable = true;
     protected AtomicBoolean loading = new AtomicBoolean(false);
     protected File thumbnailPath = null;
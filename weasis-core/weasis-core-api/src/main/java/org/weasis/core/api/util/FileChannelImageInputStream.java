@@ -0,0 +1,116 @@
+/*
+ * Copyright (c) 2009-2020 Weasis Team and other contributors.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse
+ * Public License 2.0 which is available at http://www.eclipse.org/legal/epl-2.0.
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+
+package org.weasis.core.api.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+
+import javax.imageio.stream.ImageInputStreamImpl;
+
+import org.weasis.core.api.util.FileHandlePool.Lease;
+
+/**
+ * ImageInputStream reading a file of the {@link FileHandlePool}. Closing the stream releases the lease, the file stays
+ * open in the pool.
+ * <p>
+ * The channel is shared by all the readers of the file and is closed when one of them is interrupted. The other readers
+ * get a new lease and read again.
+ */
+public class FileChannelImageInputStream extends ImageInputStreamImpl {
+
+    private final FileHandlePool pool;
+    private final File file;
+    private Lease lease;
+    private final ByteBuffer oneByte = ByteBuffer.allocate(1);
+
+    public FileChannelImageInputStream(File file) throws IOException {
+        this(FileHandlePool.getInstance(), file);
+    }
+
+    FileChannelImageInputStream(FileHandlePool pool, File file) throws IOException {
+        this.pool = pool;
+        this.file = file;
+        this.lease = pool.lease(file);
+    }
+
+    @Override
+    public int read() throws IOException {
+        checkClosed();
+        bitOffset = 0;
+        oneByte.clear();
+        if (read(oneByte) <= 0) {
+            return -1;
+        }
+        streamPos++;
+        return oneByte.get(0) & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        checkClosed();
+        bitOffset = 0;
+        if (len == 0) {
+            return 0;
+        }
+        int n = read(ByteBuffer.wrap(b, off, len));
+        if (n > 0) {
+            streamPos += n;
+        }
+        return n;
+    }
+
+    private int read(ByteBuffer buffer) throws IOException {
+        int position = buffer.position();
+        try {
+            return getChannel().read(buffer, streamPos);
+        } catch (ClosedChannelException e) {
+            renewLease(e);
+            buffer.position(position);
+            return getChannel().read(buffer, streamPos);
+        }
+    }
+
+    @Override
+    public long length() {
+        try {
+            try {
+                return getChannel().size();
+            } catch (ClosedChannelException e) {
+                renewLease(e);
+                return getChannel().size();
+            }
+        } catch (IOException e) {
+            return -1L;
+        }
+    }
+
+    private void renewLease(ClosedChannelException e) throws IOException {
+        // The current thread has been interrupted, the reading must be stopped
+        if (e instanceof ClosedByInterruptException || Thread.currentThread().isInterrupted()) {
+            throw e;
+        }
+        lease.close();
+        lease = pool.lease(file);
+    }
+
+    @Override
+    public void close() throws IOException {
+        super.close();
+        lease.close();
+    }
+
+    private FileChannel getChannel() {
+        return lease.getChannel();
+    }
+}
@@ -0,0 +1,238 @@
+/*
+ * Copyright (c) 2009-2020 Weasis Team and other contributors.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse
+ * Public License 2.0 which is available at http://www.eclipse.org/legal/epl-2.0.
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+
+package org.weasis.core.api.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.weasis.core.api.service.BundleTools;
+import org.weasis.core.util.FileUtil;
+
+/**
+ * Shared read-only file handles of the media readers.
+ * <p>
+ * A reader leases the channel of a file with {@link #lease(File)} and releases it by closing the lease, the channel
+ * stays open for the next access. When the maximum number of open files is reached, the least recently used channels
+ * which are not leased are closed. A closed channel is reopened transparently by the next lease. The channels are only
+ * read with absolute positions, so a channel can be leased by several readers at the same time.
+ * <p>
+ * {@link #close(File)} must be called before replacing a file and {@link #delete(File)} must be used for deleting a
+ * file, the file is deleted when the last lease is released.
+ * <p>
+ * Preferences:
+ * <ul>
+ * <li>file.handles.max: maximum number of files kept open (default 256)</li>
+ * </ul>
+ */
+public final class FileHandlePool {
+    private static final Logger LOGGER = LoggerFactory.getLogger(FileHandlePool.class);
+
+    public static final String P_MAX_OPEN = "file.handles.max"; //$NON-NLS-1$
+
+    private static FileHandlePool instance;
+
+    // Access order, the eldest entry is the least recently used
+    private final LinkedHashMap<File, Handle> handles = new LinkedHashMap<>(64, 0.75f, true);
+    // Last files whose channel has been closed by the pool, for counting the reopened handles
+    private final Set<File> evictedFiles;
+    private final int maxOpen;
+    private long opened;
+    private long reopened;
+    private long evicted;
+
+    FileHandlePool(int maxOpen) {
+        this.maxOpen = Math.max(1, maxOpen);
+        this.evictedFiles = Collections.newSetFromMap(new LinkedHashMap<File, Boolean>() {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<File, Boolean> eldest) {
+                return size() > FileHandlePool.this.maxOpen;
+            }
+        });
+    }
+
+    public static synchronized FileHandlePool getInstance() {
+        if (instance == null) {
+            instance = new FileHandlePool(BundleTools.SYSTEM_PREFERENCES.getIntProperty(P_MAX_OPEN, 256));
+            LOGGER.info("File handles: {} files kept open", instance.maxOpen); //$NON-NLS-1$
+        }
+        return instance;
+    }
+
+    /**
+     * Gets the channel of the file, which is opened when it is not already open. The returned lease must be closed
+     * when the reading is finished.
+     */
+    public synchronized Lease lease(File file) throws IOException {
+        Handle handle = handles.get(file);
+        boolean reopen = false;
+        // A channel is closed when a thread reading it is interrupted
+        if (handle != null && !handle.channel.isOpen()) {
+            handles.remove(file);
+            handle = null;
+            reopen = true;
+        }
+        if (handle == null) {
+            handle = new Handle(file, FileChannel.open(file.toPath(), StandardOpenOption.READ));
+            opened++;
+            if (evictedFiles.remove(file) || reopen) {
+                reopened++;
+            }
+            handles.put(file, handle);
+        }
+        handle.leases++;
+        evict();
+        return new Lease(handle);
+    }
+
+    /**
+     * Closes the channel of the file, or when it is leased as soon as it is released. Must be called before deleting
+     * or replacing the file.
+     */
+    public synchronized void close(File file) {
+        close(file, false);
+    }
+
+    /**
+     * Deletes the file, or when it is leased as soon as it is released.
+     */
+    public synchronized void delete(File file) {
+        close(file, true);
+    }
+
+    private void close(File file, boolean delete) {
+        if (file == null) {
+            return;
+        }
+        evictedFiles.remove(file);
+        Handle handle = handles.remove(file);
+        if (handle == null || handle.leases == 0) {
+            if (handle != null) {
+                FileUtil.safeClose(handle.channel);
+            }
+            if (delete) {
+                FileUtil.delete(file);
+            }
+        } else {
+            handle.closeOnRelease = true;
+            handle.deleteOnRelease |= delete;
+        }
+    }
+
+    private synchronized void release(Handle handle) {
+        handle.leases--;
+        if (handle.leases == 0 && handle.closeOnRelease) {
+            FileUtil.safeClose(handle.channel);
+            if (handle.deleteOnRelease) {
+                FileUtil.delete(handle.file);
+            }
+        }
+        evict();
+    }
+
+    private void evict() {
+        Iterator<Handle> it = handles.values().iterator();
+        while (handles.size() > maxOpen && it.hasNext()) {
+            Handle handle = it.next();
+            if (handle.leases == 0) {
+                it.remove();
+                FileUtil.safeClose(handle.channel);
+                evictedFiles.add(handle.file);
+                evicted++;
+            }
+        }
+        if (handles.size() > maxOpen) {
+            LOGGER.debug("{} files are open, all of them are leased", handles.size()); //$NON-NLS-1$
+        }
+    }
+
+    public int getMaxOpen() {
+        return maxOpen;
+    }
+
+    /**
+     * @return the number of files currently open
+     */
+    public synchronized int getOpenCount() {
+        return handles.size();
+    }
+
+    /**
+     * @return the number of files opened since the start, including the reopened ones
+     */
+    public synchronized long getOpenedCount() {
+        return opened;
+    }
+
+    /**
+     * @return the number of files opened again after being closed by the pool
+     */
+    public synchronized long getReopenedCount() {
+        return reopened;
+    }
+
+    /**
+     * @return the number of files closed by the pool for opening other ones
+     */
+    public synchronized long getEvictedCount() {
+        return evicted;
+    }
+
+    private static final class Handle {
+        private final File file;
+        private final FileChannel channel;
+        private int leases = 0;
+        private boolean closeOnRelease = false;
+        private boolean deleteOnRelease = false;
+
+        Handle(File file, FileChannel channel) {
+            this.file = file;
+            this.channel = channel;
+        }
+    }
+
+    public final class Lease implements AutoCloseable {
+        private final Handle handle;
+        private final AtomicBoolean closed = new AtomicBoolean(false);
+
+        private Lease(Handle handle) {
+            this.handle = handle;
+        }
+
+        public File getFile() {
+            return handle.file;
+        }
+
+        /**
+         * @return the channel of the file, must be read with absolute positions and must not be closed
+         */
+        public FileChannel getChannel() {
+            return handle.channel;
+        }
+
+        @Override
+        public void close() {
+            if (closed.compareAndSet(false, true)) {
+                release(handle);
+            }
+        }
+    }
+}
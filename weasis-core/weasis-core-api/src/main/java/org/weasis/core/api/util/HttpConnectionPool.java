@@ -0,0 +1,203 @@
+/*
+ * Copyright (c) 2009-2020 Weasis Team and other contributors.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse
+ * Public License 2.0 which is available at http://www.eclipse.org/legal/epl-2.0.
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+
+package org.weasis.core.api.util;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.weasis.core.api.service.BundleTools;
+
+/**
+ * Shared HTTP transport for the downloads.
+ * <p>
+ * The number of simultaneous connections to the same host is limited and the connections are kept alive: closing a
+ * connection returned by {@link #getConnection(URL, URLParameters)} only closes the stream, so the socket (and the TLS
+ * session) goes back to the keep-alive cache of the JVM and is reused by the next request to the same host. The
+ * connection is only disconnected after an error.
+ * <p>
+ * Preferences:
+ * <ul>
+ * <li>download.http.connections.per.host: maximum number of connections by host (default 6)</li>
+ * <li>download.http.keepalive: keep the connections alive (default true)</li>
+ * </ul>
+ * The size of the keep-alive cache of the JVM (http.maxConnections) is set to the number of connections by host when
+ * it is not already defined. It must be done before the first HTTP connection of the JVM.
+ */
+public final class HttpConnectionPool {
+    private static final Logger LOGGER = LoggerFactory.getLogger(HttpConnectionPool.class);
+
+    public static final String P_MAX_PER_HOST = "download.http.connections.per.host"; //$NON-NLS-1$
+    public static final String P_KEEP_ALIVE = "download.http.keepalive"; //$NON-NLS-1$
+
+    private static HttpConnectionPool instance;
+
+    private final Map<String, Semaphore> hosts = new ConcurrentHashMap<>();
+    private final int maxPerHost;
+    private final boolean keepAlive;
+
+    HttpConnectionPool(int maxPerHost, boolean keepAlive) {
+        this.maxPerHost = Math.max(1, maxPerHost);
+        this.keepAlive = keepAlive;
+        if (keepAlive) {
+            if (System.getProperty("http.keepAlive") == null) { //$NON-NLS-1$
+                System.setProperty("http.keepAlive", "true"); //$NON-NLS-1$ //$NON-NLS-2$
+            }
+            if (System.getProperty("http.maxConnections") == null) { //$NON-NLS-1$
+                System.setProperty("http.maxConnections", String.valueOf(this.maxPerHost)); //$NON-NLS-1$
+            }
+        }
+    }
+
+    public static synchronized HttpConnectionPool getInstance() {
+        if (instance == null) {
+            instance = new HttpConnectionPool(BundleTools.SYSTEM_PREFERENCES.getIntProperty(P_MAX_PER_HOST, 6),
+                BundleTools.SYSTEM_PREFERENCES.getBooleanProperty(P_KEEP_ALIVE, true));
+            LOGGER.info("HTTP download transport: {} connections by host, keep-alive {}", instance.maxPerHost, //$NON-NLS-1$
+                instance.keepAlive);
+        }
+        return instance;
+    }
+
+    public int getMaxPerHost() {
+        return maxPerHost;
+    }
+
+    /**
+     * @return the number of connections currently open to the host of the URL
+     */
+    public int getActiveConnections(URL url) {
+        Semaphore s = hosts.get(getHostKey(url));
+        return s == null ? 0 : maxPerHost - s.availablePermits();
+    }
+
+    public ClosableURLConnection getConnection(String url, URLParameters urlParameters) throws IOException {
+        return getConnection(new URL(url), urlParameters);
+    }
+
+    /**
+     * Opens a connection, waiting when the maximum number of connections to the host is reached. The returned
+     * connection must be closed to release its slot.
+     */
+    public ClosableURLConnection getConnection(URL url, URLParameters urlParameters) throws IOException {
+        return getConnection(url, urlParameters, true);
+    }
+
+    /**
+     * Opens a connection like {@link #getConnection(URL, URLParameters)} but without checking the status of the
+     * response, e.g. for a conditional request answered by 304 Not Modified. The response code must be read by the
+     * caller.
+     */
+    public ClosableURLConnection getUncheckedConnection(URL url, URLParameters urlParameters) throws IOException {
+        return getConnection(url, urlParameters, false);
+    }
+
+    private ClosableURLConnection getConnection(URL url, URLParameters urlParameters, boolean checkResponse)
+        throws IOException {
+        String protocol = url.getProtocol();
+        if (!"http".equals(protocol) && !"https".equals(protocol)) { //$NON-NLS-1$ //$NON-NLS-2$
+            return openConnection(url, urlParameters, checkResponse);
+        }
+
+        Semaphore slots = hosts.computeIfAbsent(getHostKey(url), k -> new Semaphore(maxPerHost, true));
+        try {
+            slots.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a connection to " + url.getHost()); //$NON-NLS-1$
+        }
+        try {
+            long requestTime = System.nanoTime();
+            ClosableURLConnection c = openConnection(url, urlParameters, checkResponse);
+            return new PooledConnection(c.getUrlConnection(), slots, keepAlive, requestTime);
+        } catch (IOException | RuntimeException e) {
+            slots.release();
+            throw e;
+        }
+    }
+
+    private static ClosableURLConnection openConnection(URL url, URLParameters urlParameters, boolean checkResponse)
+        throws IOException {
+        if (checkResponse) {
+            return NetworkUtil.getUrlConnection(url, urlParameters);
+        }
+        return NetworkUtil.getUncheckedUrlConnection(url, urlParameters);
+    }
+
+    /**
+     * @return the time (see {@link System#nanoTime()}) when the request has been sent after waiting for a connection to
+     *         the host, or the default time when the connection does not come from the pool
+     */
+    public static long getRequestTime(ClosableURLConnection connection, long defaultTime) {
+        if (connection instanceof PooledConnection) {
+            return ((PooledConnection) connection).requestTime;
+        }
+        return defaultTime;
+    }
+
+    private static String getHostKey(URL url) {
+        int port = url.getPort() == -1 ? url.getDefaultPort() : url.getPort();
+        return url.getProtocol() + "://" + url.getHost() + ":" + port; //$NON-NLS-1$ //$NON-NLS-2$
+    }
+
+    static final class PooledConnection extends ClosableURLConnection {
+        private final Semaphore slots;
+        private final boolean keepAlive;
+        private final long requestTime;
+        private final AtomicBoolean closed = new AtomicBoolean(false);
+
+        PooledConnection(URLConnection urlConnection, Semaphore slots, boolean keepAlive, long requestTime) {
+            super(urlConnection);
+            this.slots = slots;
+            this.keepAlive = keepAlive;
+            this.requestTime = requestTime;
+        }
+
+        @Override
+        public void close() {
+            if (closed.compareAndSet(false, true)) {
+                try {
+                    if (!keepAlive || !releaseStream()) {
+                        super.close();
+                    }
+                } finally {
+                    slots.release();
+                }
+            }
+        }
+
+        /**
+         * Closes the response stream. The JVM reads the small remaining data in background and puts the socket back in
+         * its keep-alive cache, or closes the socket when too much data remains.
+         *
+         * @return false when the connection must be disconnected
+         */
+        private boolean releaseStream() {
+            URLConnection c = getUrlConnection();
+            if (!(c instanceof HttpURLConnection)) {
+                return false;
+            }
+            try {
+                c.getInputStream().close();
+                return true;
+            } catch (IOException e) {
+                return false;
+            }
+        }
+    }
+}
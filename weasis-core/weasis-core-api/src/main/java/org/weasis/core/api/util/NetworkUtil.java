@@ -72,24 +72,23 @@ public class NetworkUtil {
         return prepareConnection(url.openConnection(), urlParameters);
     }
 
+    /**
+     * Opens a connection without checking the status of the response, the caller must read it (e.g. a conditional
+     * request answered by 304 Not Modified).
+     */
+    static ClosableURLConnection getUncheckedUrlConnection(URL url, URLParameters urlParameters) throws IOException {
+        URLConnection urlConnection = url.openConnection();
+        applyParameters(urlConnection, urlParameters);
+        if (urlParameters.isHttpPost() && urlConnection instanceof HttpURLConnection) {
+            ((HttpURLConnection) urlConnection).setRequestMethod("POST"); //$NON-NLS-1$
+        }
+        return new ClosableURLConnection(urlConnection);
+    }
+
     private static ClosableURLConnection prepareConnection(URLConnection urlConnection, URLParameters urlParameters)
         throws StreamIOException {
         Map<String, String> headers = urlParameters.getHeaders();
-        if (headers != null && headers.size() > 0) {
-            for (Iterator<Entry<String, String>> iter = headers.entrySet().iterator(); iter.hasNext();) {
-                Entry<String, String> element = iter.next();
-                urlConnection.setRequestProperty(element.getKey(), element.getValue());
-            }
-        }
-        urlConnection.setConnectTimeout(urlParameters.getConnectTimeout());
-        urlConnection.setReadTimeout(urlParameters.getReadTimeout());
-        urlConnection.setAllowUserInteraction(urlParameters.isAllowUserInteraction());
-        urlConnection.setUseCaches(urlParameters.isUseCaches());
-        urlConnection.setIfModifiedSince(urlParameters.getIfModifiedSince());
-        urlConnection.setDoInput(true);
-        if (urlParameters.isHttpPost()) {
-            urlConnection.setDoOutput(true);
-        }
+        applyParameters(urlConnection, urlParameters);
         if (urlConnection instanceof HttpURLConnection) {
             HttpURLConnection httpURLConnection = (HttpURLConnection) urlConnection;
             try {
@@ -107,6 +106,25 @@ public class NetworkUtil {
         return new ClosableURLConnection(urlConnection);
     }
 
+    private static void applyParameters(URLConnection urlConnection, URLParameters urlParameters) {
+        Map<String, String> headers = urlParameters.getHeaders();
+        if (headers != null && headers.size() > 0) {
+            for (Iterator<Entry<String, String>> iter = headers.entrySet().iterator(); iter.hasNext();) {
+                Entry<String, String> element = iter.next();
+                urlConnection.setRequestProperty(element.getKey(), element.getValue());
+            }
+        }
+        urlConnection.setConnectTimeout(urlParameters.getConnectTimeout());
+        urlConnection.setReadTimeout(urlParameters.getReadTimeout());
+        urlConnection.setAllowUserInteraction(urlParameters.isAllowUserInteraction());
+        urlConnection.setUseCaches(urlParameters.isUseCaches());
+        urlConnection.setIfModifiedSince(urlParameters.getIfModifiedSince());
+        urlConnection.setDoInput(true);
+        if (urlParameters.isHttpPost()) {
+            urlConnection.setDoOutput(true);
+        }
+    }
+
     public static URLConnection readResponse(HttpURLConnection httpURLConnection, Map<String, String> headers)
         throws IOException {
         int code = httpURLConnection.getResponseCode();
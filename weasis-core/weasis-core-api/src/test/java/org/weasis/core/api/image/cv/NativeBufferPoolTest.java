@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) 2009-2020 Weasis Team and other contributors.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse
+ * Public License 2.0 which is available at http://www.eclipse.org/legal/epl-2.0.
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+
+package org.weasis.core.api.image.cv;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Assume;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.weasis.opencv.data.ImageCV;
+
+public class NativeBufferPoolTest {
+
+    private static final long BUFFER_SIZE = 64L * 32L * 2L;
+
+    @BeforeClass
+    public static void loadNativeLibrary() {
+        boolean loaded;
+        try {
+            System.loadLibrary(Core.NATIVE_LIBRARY_NAME);
+            loaded = true;
+        } catch (Throwable e) {
+            loaded = false;
+        }
+        // The native buffers cannot be created without OpenCV
+        Assume.assumeTrue(loaded);
+    }
+
+    @Test
+    public void testBorrowAndRecycle() throws Exception {
+        NativeBufferPool pool = new NativeBufferPool(BUFFER_SIZE * 4);
+        ImageCV buf = pool.borrow(64, 32, CvType.CV_16UC1);
+        assertEquals(1, pool.getMissCount());
+        assertEquals(0, pool.getPooledBytes());
+
+        assertTrue(pool.recycle(buf));
+        assertEquals(BUFFER_SIZE, pool.getPooledBytes());
+        // Given back only once
+        assertFalse(pool.recycle(buf));
+
+        assertSame(buf, pool.borrow(64, 32, CvType.CV_16UC1));
+        assertEquals(1, pool.getHitCount());
+        assertEquals(0, pool.getPooledBytes());
+
+        // Another size class
+        pool.recycle(buf);
+        ImageCV other = pool.borrow(32, 64, CvType.CV_16UC1);
+        assertNotSame(buf, other);
+        assertEquals(2, pool.getMissCount());
+        pool.clear();
+        assertEquals(0, pool.getPooledBytes());
+    }
+
+    @Test
+    public void testForeignImage() throws Exception {
+        NativeBufferPool pool = new NativeBufferPool(BUFFER_SIZE * 4);
+        ImageCV img = new ImageCV();
+        img.create(64, 32, CvType.CV_16UC1);
+        assertFalse(pool.recycle(img));
+        assertFalse(pool.recycle(null));
+        assertEquals(0, pool.getPooledBytes());
+        img.release();
+    }
+
+    @Test
+    public void testLimit() throws Exception {
+        NativeBufferPool pool = new NativeBufferPool(BUFFER_SIZE);
+        ImageCV b1 = pool.borrow(64, 32, CvType.CV_16UC1);
+        ImageCV b2 = pool.borrow(64, 32, CvType.CV_16UC1);
+        assertTrue(pool.recycle(b1));
+        // The pool is full, the buffer is released
+        assertTrue(pool.recycle(b2));
+        assertEquals(BUFFER_SIZE, pool.getPooledBytes());
+        assertEquals(1, pool.getReleasedCount());
+
+        assertEquals(BUFFER_SIZE, pool.trim(1));
+        assertEquals(0, pool.getPooledBytes());
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright (c) 2009-2020 Weasis Team and other contributors.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse
+ * Public License 2.0 which is available at http://www.eclipse.org/legal/epl-2.0.
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+
+package org.weasis.core.api.media.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.weasis.core.api.media.data.MemoryPressureMonitor.PressureLevel;
+import org.weasis.opencv.data.PlanarImage;
+
+public class MemoryPressureMonitorTest {
+
+    private MemoryPressureMonitor monitor;
+    private List<PressureLevel> reductions;
+
+    @Before
+    public void setUp() {
+        monitor = new MemoryPressureMonitor();
+        monitor.setThresholds(0.70, 0.85, 0.95, 30000L);
+        reductions = new ArrayList<>();
+        monitor.register("test", reductions::add); //$NON-NLS-1$
+    }
+
+    @Test
+    public void testLevels() throws Exception {
+        assertEquals(PressureLevel.NORMAL, monitor.computeLevel(0.5, PressureLevel.NORMAL));
+        assertEquals(PressureLevel.MODERATE, monitor.computeLevel(0.7, PressureLevel.NORMAL));
+        assertEquals(PressureLevel.HIGH, monitor.computeLevel(0.9, PressureLevel.NORMAL));
+        assertEquals(PressureLevel.CRITICAL, monitor.computeLevel(0.99, PressureLevel.MODERATE));
+
+        // Hysteresis: the level is left only below the threshold minus the margin
+        assertEquals(PressureLevel.MODERATE, monitor.computeLevel(0.68, PressureLevel.MODERATE));
+        assertEquals(PressureLevel.NORMAL, monitor.computeLevel(0.64, PressureLevel.MODERATE));
+        assertEquals(PressureLevel.CRITICAL, monitor.computeLevel(0.92, PressureLevel.CRITICAL));
+        assertEquals(PressureLevel.HIGH, monitor.computeLevel(0.89, PressureLevel.CRITICAL));
+        assertEquals(PressureLevel.MODERATE, monitor.computeLevel(0.75, PressureLevel.CRITICAL));
+    }
+
+    @Test
+    public void testReduceWhenRising() throws Exception {
+        assertFalse(monitor.update(0.5, 0.0, 1000L));
+        assertTrue(monitor.update(0.75, 0.0, 2000L));
+        assertEquals(PressureLevel.MODERATE, monitor.getLevel());
+
+        // Steady at MODERATE: no more reduction
+        assertFalse(monitor.update(0.76, 0.0, 4000L));
+        assertFalse(monitor.update(0.76, 0.0, 60000L));
+
+        // Rising to a higher level than the last reduction
+        assertTrue(monitor.update(0.0, 0.9, 61000L));
+        assertEquals(PressureLevel.HIGH, monitor.getLevel());
+        assertEquals(2, reductions.size());
+        assertEquals(PressureLevel.MODERATE, reductions.get(0));
+        assertEquals(PressureLevel.HIGH, reductions.get(1));
+    }
+
+    @Test
+    public void testCooldown() throws Exception {
+        assertTrue(monitor.update(0.9, 0.0, 1000L));
+        // Steady at HIGH: reduced again only after the cooldown
+        assertFalse(monitor.update(0.9, 0.0, 3000L));
+        assertTrue(monitor.update(0.9, 0.0, 31000L));
+
+        // Oscillation around the threshold does not trim at each tick
+        assertFalse(monitor.update(0.6, 0.0, 32000L));
+        assertEquals(PressureLevel.NORMAL, monitor.getLevel());
+        assertFalse(monitor.update(0.72, 0.0, 34000L));
+        assertEquals(PressureLevel.MODERATE, monitor.getLevel());
+        assertFalse(monitor.update(0.6, 0.0, 36000L));
+        assertTrue(monitor.update(0.72, 0.0, 62000L));
+        assertEquals(3, reductions.size());
+    }
+
+    @Test
+    public void testDefaultNativeMax() throws Exception {
+        long heapMax = Runtime.getRuntime().maxMemory();
+        NativeCache<String, PlanarImage> cache = new NativeCache<String, PlanarImage>(heapMax) {
+            @Override
+            protected void afterEntryRemove(String key, PlanarImage val) {
+                // Nothing to release
+            }
+        };
+        monitor.registerNativeCache("cache", cache); //$NON-NLS-1$
+        // A full cache stays below the moderate level
+        assertTrue((double) cache.getMaxNativeMemory() / monitor.getMaxNativeMemory() < 0.70);
+        monitor.unregister("cache"); //$NON-NLS-1$
+        assertEquals(heapMax, monitor.getMaxNativeMemory());
+    }
+}
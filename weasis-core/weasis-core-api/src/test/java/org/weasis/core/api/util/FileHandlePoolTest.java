@@ -0,0 +1,115 @@
+/*
+ * Copyright (c) 2009-2020 Weasis Team and other contributors.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse
+ * Public License 2.0 which is available at http://www.eclipse.org/legal/epl-2.0.
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+
+package org.weasis.core.api.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.weasis.core.api.util.FileHandlePool.Lease;
+
+public class FileHandlePoolTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File newFile(String name) throws IOException {
+        File file = folder.newFile(name);
+        Files.write(file.toPath(), new byte[] { 1, 2, 3, 4 });
+        return file;
+    }
+
+    @Test
+    public void testEviction() throws Exception {
+        FileHandlePool pool = new FileHandlePool(2);
+        File f1 = newFile("1.dcm"); //$NON-NLS-1$
+        File f2 = newFile("2.dcm"); //$NON-NLS-1$
+        File f3 = newFile("3.dcm"); //$NON-NLS-1$
+
+        Lease l1 = pool.lease(f1);
+        FileChannel c1 = l1.getChannel();
+        pool.lease(f2).close();
+        pool.lease(f3).close();
+        // The leased file is kept open, the least recently used one is closed
+        assertEquals(2, pool.getOpenCount());
+        assertEquals(1, pool.getEvictedCount());
+        assertTrue(c1.isOpen());
+
+        try (Lease l2 = pool.lease(f2)) {
+            assertEquals(4, l2.getChannel().size());
+        }
+        assertEquals(4, pool.getOpenedCount());
+        assertEquals(1, pool.getReopenedCount());
+
+        // The same channel is shared by the leases of the file
+        try (Lease other = pool.lease(f1)) {
+            assertSame(c1, other.getChannel());
+        }
+        l1.close();
+        // Closing twice releases the lease only once
+        l1.close();
+        assertTrue(pool.getOpenCount() <= 2);
+    }
+
+    @Test
+    public void testDeleteWhenReleased() throws Exception {
+        FileHandlePool pool = new FileHandlePool(4);
+        File file = newFile("1.dcm"); //$NON-NLS-1$
+        Lease lease = pool.lease(file);
+        pool.delete(file);
+        // Still readable by the lease
+        assertTrue(file.exists());
+        assertTrue(lease.getChannel().isOpen());
+        assertEquals(0, pool.getOpenCount());
+
+        lease.close();
+        assertFalse(lease.getChannel().isOpen());
+        assertFalse(file.exists());
+
+        File other = newFile("2.dcm"); //$NON-NLS-1$
+        pool.lease(other).close();
+        pool.delete(other);
+        assertFalse(other.exists());
+        assertEquals(0, pool.getOpenCount());
+    }
+
+    @Test
+    public void testReadAfterChannelClosed() throws Exception {
+        FileHandlePool pool = new FileHandlePool(4);
+        File file = newFile("1.dcm"); //$NON-NLS-1$
+        try (FileChannelImageInputStream in1 = new FileChannelImageInputStream(pool, file);
+            FileChannelImageInputStream in2 = new FileChannelImageInputStream(pool, file)) {
+            assertEquals(1, in1.read());
+            // Happens when another reader of the file is interrupted
+            try (Lease lease = pool.lease(file)) {
+                lease.getChannel().close();
+            }
+            assertEquals(2, in1.read());
+            byte[] b = new byte[4];
+            assertEquals(4, in2.read(b, 0, 4));
+            assertEquals(4, b[3]);
+            assertEquals(4, in2.length());
+
+            try (Lease lease = pool.lease(file)) {
+                assertTrue(lease.getChannel().isOpen());
+                assertEquals(1, pool.getReopenedCount());
+            }
+        }
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright (c) 2009-2020 Weasis Team and other contributors.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse
+ * Public License 2.0 which is available at http://www.eclipse.org/legal/epl-2.0.
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+
+package org.weasis.core.api.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.weasis.core.util.StreamIOException;
+
+import com.sun.net.httpserver.HttpServer;
+
+public class HttpConnectionPoolTest {
+
+    private HttpServer server;
+    private URL url;
+    private URL notModifiedUrl;
+
+    @Before
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/instance", exchange -> { //$NON-NLS-1$
+            byte[] body = "DICM".getBytes(StandardCharsets.US_ASCII); //$NON-NLS-1$
+            exchange.sendResponseHeaders(HttpURLConnection.HTTP_OK, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.createContext("/stored", exchange -> { //$NON-NLS-1$
+            exchange.sendResponseHeaders(HttpURLConnection.HTTP_NOT_MODIFIED, -1);
+            exchange.close();
+        });
+        server.start();
+        String base = "http://127.0.0.1:" + server.getAddress().getPort(); //$NON-NLS-1$
+        url = new URL(base + "/instance"); //$NON-NLS-1$
+        notModifiedUrl = new URL(base + "/stored"); //$NON-NLS-1$
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    public void testPermitsByHost() throws Exception {
+        HttpConnectionPool pool = new HttpConnectionPool(2, true);
+        ClosableURLConnection c1 = pool.getConnection(url, new URLParameters());
+        ClosableURLConnection c2 = pool.getConnection(url, new URLParameters());
+        assertEquals(2, pool.getActiveConnections(url));
+
+        // The third connection waits for a free slot
+        CountDownLatch opened = new CountDownLatch(1);
+        Thread t = new Thread(() -> {
+            try (ClosableURLConnection c3 = pool.getConnection(url, new URLParameters())) {
+                opened.countDown();
+            } catch (IOException e) {
+                // The latch is not released
+            }
+        });
+        t.start();
+        assertFalse(opened.await(300, TimeUnit.MILLISECONDS));
+
+        c1.close();
+        assertTrue(opened.await(5, TimeUnit.SECONDS));
+        t.join(5000);
+        assertEquals(1, pool.getActiveConnections(url));
+
+        // Closing twice releases the slot only once
+        c2.close();
+        c2.close();
+        assertEquals(0, pool.getActiveConnections(url));
+    }
+
+    @Test
+    public void testSlotReleasedAfterError() throws Exception {
+        HttpConnectionPool pool = new HttpConnectionPool(1, true);
+        try {
+            pool.getConnection(notModifiedUrl, new URLParameters()).close();
+        } catch (StreamIOException e) {
+            // 304 is not an expected status for a normal request
+        }
+        assertEquals(0, pool.getActiveConnections(notModifiedUrl));
+
+        try (ClosableURLConnection c = pool.getUncheckedConnection(notModifiedUrl, new URLParameters())) {
+            assertEquals(HttpURLConnection.HTTP_NOT_MODIFIED,
+                ((HttpURLConnection) c.getUrlConnection()).getResponseCode());
+            assertEquals(1, pool.getActiveConnections(notModifiedUrl));
+        }
+        assertEquals(0, pool.getActiveConnections(notModifiedUrl));
+    }
+
+    @Test
+    public void testRequestTimeAfterWait() throws Exception {
+        HttpConnectionPool pool = new HttpConnectionPool(1, true);
+        ClosableURLConnection c1 = pool.getConnection(url, new URLParameters());
+        long start = System.nanoTime();
+        AtomicLong requestTime = new AtomicLong();
+        Thread t = new Thread(() -> {
+            try (ClosableURLConnection c2 = pool.getConnection(url, new URLParameters())) {
+                requestTime.set(HttpConnectionPool.getRequestTime(c2, 0L));
+            } catch (IOException e) {
+                // The request time stays 0
+            }
+        });
+        t.start();
+        Thread.sleep(300);
+        c1.close();
+        t.join(5000);
+
+        // The time waiting for the connection is not part of the request
+        assertTrue(requestTime.get() - start >= TimeUnit.MILLISECONDS.toNanos(250));
+        assertEquals(5L, HttpConnectionPool.getRequestTime(null, 5L));
+    }
+}
@@ -332,11 +332,14 @@ public abstract class DefaultView2d<E extends ImageElement> extends GraphicsPane
                     pixelInfo.setPosition(new Point(p.x, p.y));
                     pixelInfo.setPixelSpacingUnit(imageElement.getPixelSpacingUnit());
                     pixelInfo.setPixelSize(imageElement.getPixelSize());
-                    double[] c = image.get(p.y, p.x);
-                    pixelInfo.setPixelValueUnit(imageElement.getPixelValueUnit());
-                    fillPixelInfo(pixelInfo, imageElement, c);
-                    if (c != null && c.length >= 1) {
-                        pixelInfo.setChannelNames(getChannelNames(image));
+                    // No pixel value on a lossy preview, it will be replaced by the original image
+                    if (!LangUtil.getNULLtoFalse((Boolean) imageElement.getTagValue(TagW.LossyPreview))) {
+                        double[] c = image.get(p.y, p.x);
+                        pixelInfo.setPixelValueUnit(imageElement.getPixelValueUnit());
+                        fillPixelInfo(pixelInfo, imageElement, c);
+                        if (c != null && c.length >= 1) {
+                            pixelInfo.setChannelNames(getChannelNames(image));
+                        }
                     }
                 } catch (Exception e) {
                     LOGGER.error("Get pixel value", e);//$NON-NLS-1$
@@ -36,6 +36,7 @@ import org.weasis.core.api.image.op.ByteLut;
 import org.weasis.core.api.image.util.MeasurableLayer;
 import org.weasis.core.api.image.util.Unit;
 import org.weasis.core.api.media.data.TagW;
+import org.weasis.core.util.LangUtil;
 import org.weasis.core.ui.editor.image.HistogramData.Model;
 import org.weasis.core.ui.model.graphic.AbstractDragGraphicArea;
 import org.weasis.core.ui.model.utils.bean.MeasureItem;
@@ -51,7 +52,9 @@ public class ImageRegionStatistics {
     }
 
     public static List<Mat> prepareInputImages(AbstractDragGraphicArea graphic, MeasurableLayer layer) {
-        if (layer != null && layer.hasContent()) {
+        // No measurement on the pixels of a lossy preview, they will be replaced by the original ones
+        if (layer != null && layer.hasContent()
+            && !LangUtil.getNULLtoFalse((Boolean) layer.getSourceTagValue(TagW.LossyPreview))) {
             Shape shape = null;
             if (graphic != null) {
                 if (!graphic.isShapeValid()) {
@@ -16,6 +16,7 @@ import java.awt.RenderingHints;
 import java.awt.Shape;
 import java.awt.geom.AffineTransform;
 import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
@@ -31,11 +32,12 @@ import org.weasis.core.api.image.OpManager;
 import org.weasis.core.api.image.SimpleOpManager;
 import org.weasis.core.api.image.WindowOp;
 import org.weasis.core.api.image.ZoomOp;
-import org.weasis.core.api.image.cv.CvUtil;
+import org.weasis.core.api.image.cv.NativeBufferPool;
 import org.weasis.core.api.image.measure.MeasurementsAdapter;
 import org.weasis.core.api.image.util.ImageLayer;
 import org.weasis.core.api.image.util.Unit;
 import org.weasis.core.api.media.data.ImageElement;
+import org.weasis.core.api.media.data.MemoryPressureMonitor;
 import org.weasis.core.api.media.data.TagReadable;
 import org.weasis.core.api.media.data.TagW;
 import org.weasis.core.ui.editor.image.Canvas;
@@ -64,6 +66,7 @@ public class RenderedImageLayer<E extends ImageElement> extends DefaultUUID impl
     private OpManager preprocessing;
     private E sourceImage;
     private PlanarImage displayImage;
+    private final Object displayLock = new Object();
     private Boolean visible = true;
     private boolean enableDispOperations = true;
     private Point offset;
@@ -94,7 +97,9 @@ public class RenderedImageLayer<E extends ImageElement> extends DefaultUUID impl
 
     @Override
     public PlanarImage getDisplayImage() {
-        return displayImage;
+        synchronized (displayLock) {
+            return displayImage;
+        }
     }
 
     public OpManager getPreprocessing() {
@@ -233,7 +238,12 @@ public class RenderedImageLayer<E extends ImageElement> extends DefaultUUID impl
             if (g2d.getDeviceConfiguration().getDefaultTransform().getScaleX() > 1.0) {
                 g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
             }
-            g2d.drawImage(ImageConversion.toBufferedImage(displayImage), null, null);
+            BufferedImage img;
+            synchronized (displayLock) {
+                // Copy the pixels before the display buffer goes back to the pool
+                img = displayImage == null ? null : ImageConversion.toBufferedImage(displayImage);
+            }
+            g2d.drawImage(img, null, null);
         } catch (Exception e) {
             LOGGER.error("Cannot draw the image", e);//$NON-NLS-1$
             if ("java.io.IOException: closed".equals(e.getMessage())) { //$NON-NLS-1$
@@ -247,7 +257,7 @@ public class RenderedImageLayer<E extends ImageElement> extends DefaultUUID impl
             }
         } catch (OutOfMemoryError e) {
             LOGGER.error("Cannot draw the image", e);//$NON-NLS-1$
-            CvUtil.runGarbageCollectorAndWait(100);
+            MemoryPressureMonitor.getInstance().releaseMemoryAfterError(100);
         }
         g2d.setClip(clip);
 
@@ -373,7 +383,11 @@ public class RenderedImageLayer<E extends ImageElement> extends DefaultUUID impl
         if (g2d.getDeviceConfiguration().getDefaultTransform().getScaleX() > 1.0) {
             g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
         }
-        g2d.drawImage(ImageConversion.toBufferedImage(displayImage), AffineTransform.getScaleInstance(rx, ry), null);
+        BufferedImage bufImg;
+        synchronized (displayLock) {
+            bufImg = displayImage == null ? null : ImageConversion.toBufferedImage(displayImage);
+        }
+        g2d.drawImage(bufImg, AffineTransform.getScaleInstance(rx, ry), null);
 
         g2d.setClip(clip);
     }
@@ -437,7 +451,19 @@ public class RenderedImageLayer<E extends ImageElement> extends DefaultUUID impl
     @Override
     public void updateDisplayOperations() {
         if (isEnableDispOperations()) {
-            displayImage = disOpManager.process();
+            PlanarImage next = disOpManager.process();
+            PlanarImage previous;
+            synchronized (displayLock) {
+                previous = displayImage;
+                displayImage = next;
+            }
+            /*
+             * Reuse the previous display buffer when it comes from the pool and is no longer an image of the
+             * operations. The pixels are only read by the painting methods, which copy them under the same lock.
+             */
+            if (previous != null && previous != next && !disOpManager.containsImage(previous)) {
+                NativeBufferPool.getInstance().recycle(previous);
+            }
             fireImageChanged();
         }
     }
@@ -0,0 +1,77 @@
+/*
+ * Copyright (c) 2009-2020 Weasis Team and other contributors.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse
+ * Public License 2.0 which is available at http://www.eclipse.org/legal/epl-2.0.
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+
+package org.weasis.core.ui.model.layer.imp;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.awt.geom.Rectangle2D;
+
+import org.junit.Assume;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Scalar;
+import org.weasis.core.api.image.AffineTransformOp;
+import org.weasis.core.api.image.SimpleOpManager;
+import org.weasis.core.api.image.cv.NativeBufferPool;
+import org.weasis.core.api.media.data.ImageElement;
+import org.weasis.opencv.data.ImageCV;
+import org.weasis.opencv.data.PlanarImage;
+
+public class RenderedImageLayerTest {
+
+    @BeforeClass
+    public static void loadNativeLibrary() {
+        boolean loaded;
+        try {
+            System.loadLibrary(Core.NATIVE_LIBRARY_NAME);
+            loaded = true;
+        } catch (Throwable e) {
+            loaded = false;
+        }
+        // The native buffers cannot be created without OpenCV
+        Assume.assumeTrue(loaded);
+    }
+
+    @Test
+    public void testDisplayBufferReused() throws Exception {
+        SimpleOpManager manager = new SimpleOpManager();
+        manager.addImageOperationAction(new AffineTransformOp());
+        manager.setParamValue(AffineTransformOp.OP_NAME, AffineTransformOp.P_AFFINE_MATRIX,
+            new double[] { 2.0, 0.0, 0.0, 0.0, 2.0, 0.0 });
+        manager.setParamValue(AffineTransformOp.OP_NAME, AffineTransformOp.P_DST_BOUNDS,
+            new Rectangle2D.Double(0, 0, 96, 80));
+        ImageCV source = new ImageCV();
+        source.create(40, 48, CvType.CV_8UC1);
+        source.setTo(new Scalar(10));
+        manager.setFirstNode(source);
+
+        RenderedImageLayer<ImageElement> layer = new RenderedImageLayer<>(manager);
+        NativeBufferPool pool = NativeBufferPool.getInstance();
+
+        layer.updateDisplayOperations();
+        PlanarImage first = layer.getDisplayImage();
+        assertThat(first).isNotNull().isNotSameAs(source);
+
+        // Like a change of window/level, the views read the display image at each event
+        layer.updateDisplayOperations();
+        PlanarImage second = layer.getDisplayImage();
+        assertThat(second).isNotSameAs(first);
+
+        long hits = pool.getHitCount();
+        layer.updateDisplayOperations();
+        assertThat(layer.getDisplayImage()).isSameAs(first);
+        assertThat(pool.getHitCount()).isEqualTo(hits + 1);
+
+        layer.updateDisplayOperations();
+        assertThat(layer.getDisplayImage()).isSameAs(second);
+    }
+}
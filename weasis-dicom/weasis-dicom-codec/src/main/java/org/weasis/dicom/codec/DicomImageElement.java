@@ -18,6 +18,8 @@ import org.weasis.core.api.image.LutShape;
 import org.weasis.core.api.image.util.Unit;
 import org.weasis.core.api.image.util.WindLevelParameters;
 import org.weasis.core.api.media.data.ImageElement;
+import org.weasis.core.api.media.data.MemoryPressureMonitor;
+import org.weasis.core.api.media.data.MemoryPressureMonitor.PressureLevel;
 import org.weasis.core.api.media.data.SoftHashMap;
 import org.weasis.core.api.media.data.TagReadable;
 import org.weasis.core.api.media.data.TagW;
@@ -25,6 +27,7 @@ import org.weasis.dicom.codec.display.PresetWindowLevel;
 import org.weasis.dicom.codec.geometry.GeometryOfSlice;
 import org.weasis.dicom.codec.utils.DicomImageUtils;
 import org.weasis.dicom.codec.utils.LutParameters;
+import org.weasis.dicom.codec.utils.VoiLutCache;
 import org.weasis.opencv.data.ImageCV;
 import org.weasis.opencv.data.LookupTableCV;
 import org.weasis.opencv.data.PlanarImage;
@@ -38,6 +41,7 @@ import java.util.Collection;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public class DicomImageElement extends ImageElement {
 
@@ -45,8 +49,20 @@ public class DicomImageElement extends ImageElement {
 
     private static final SoftHashMap<LutParameters, LookupTableCV> LUT_Cache = new SoftHashMap<>();
 
+    static {
+        MemoryPressureMonitor.getInstance().register("modality.lut.cache", l -> { //$NON-NLS-1$
+            if (l == PressureLevel.CRITICAL) {
+                LUT_Cache.clear();
+            }
+        });
+    }
+
     private List<PresetWindowLevel> windowingPresetCollection = null;
     private Collection<LutShape> lutShapeCollection = null;
+    private volatile boolean pixelValueUnitPending = false;
+    // The min and max values come from the header or from the series, see SeriesPixelStatistics
+    private volatile boolean rangeEstimated = false;
+    private final AtomicBoolean refining = new AtomicBoolean(false);
 
     public DicomImageElement(DcmMediaReader mediaIO, Object key) {
         super(mediaIO, key);
@@ -54,6 +70,19 @@ public class DicomImageElement extends ImageElement {
         initPixelConfiguration();
     }
 
+    /**
+     * Resets the image and the values computed from the pixel data, when the source of the reader has been replaced
+     * (e.g. a lossy preview replaced by the original instance).
+     */
+    public void resetPixelData() {
+        removeImageFromCache();
+        this.minPixelValue = null;
+        this.maxPixelValue = null;
+        this.windowingPresetCollection = null;
+        this.lutShapeCollection = null;
+        initPixelConfiguration();
+    }
+
     public void initPixelConfiguration() {
         this.pixelSizeX = 1.0;
         this.pixelSizeY = 1.0;
@@ -95,15 +124,8 @@ public class DicomImageElement extends ImageElement {
             // HU = Hounsfield Units (CT)
             // US = Unspecified
             // Other values are permitted, but are not defined by the DICOM Standard.
-            pixelValueUnit = TagD.getTagValue(this, Tag.RescaleType, String.class);
-            if (pixelValueUnit == null) {
-                // For some other modalities like PET
-                pixelValueUnit = TagD.getTagValue(this, Tag.Units, String.class);
-            }
-            if (pixelValueUnit == null && "CT".equals(modality)) { //$NON-NLS-1$
-                pixelValueUnit = "HU"; //$NON-NLS-1$
-            }
-
+            // Can be defined in the per-frame functional groups, so it is read on first access
+            pixelValueUnitPending = true;
         }
 
         if (val == null) {
@@ -122,6 +144,29 @@ public class DicomImageElement extends ImageElement {
         }
     }
 
+    @Override
+    public String getPixelValueUnit() {
+        if (pixelValueUnitPending) {
+            pixelValueUnitPending = false;
+            String unit = TagD.getTagValue(this, Tag.RescaleType, String.class);
+            if (unit == null) {
+                // For some other modalities like PET
+                unit = TagD.getTagValue(this, Tag.Units, String.class);
+            }
+            if (unit == null && "CT".equals(TagD.getTagValue(mediaIO, Tag.Modality, String.class))) { //$NON-NLS-1$
+                unit = "HU"; //$NON-NLS-1$
+            }
+            pixelValueUnit = unit;
+        }
+        return pixelValueUnit;
+    }
+
+    @Override
+    public void setPixelValueUnit(String pixelValueUnit) {
+        pixelValueUnitPending = false;
+        super.setPixelValueUnit(pixelValueUnit);
+    }
+
     /**
      * @return return the min value after modality pixel transformation and after pixel padding operation if padding
      *         exists.
@@ -433,7 +478,7 @@ public class DicomImageElement extends ImageElement {
      * @param fillLutOutside
      * @param pixelPadding
      *
-     * @return 8 bits unsigned Lookup Table
+     * @return 8 bits unsigned Lookup Table, a copy of the table cached by {@link VoiLutCache}
      */
     
     @Override
@@ -458,8 +503,8 @@ public class DicomImageElement extends ImageElement {
             maxValue = maxLevel.intValue();
         }
 
-        return DicomImageUtils.createWindowLevelLut(shape, window, level, minValue, maxValue, 8, false,
-            isPhotometricInterpretationInverse(tagable));
+        return VoiLutCache.getWindowLevelLut(shape, window, level, minValue, maxValue, 8, false,
+            isPhotometricInterpretationInverse(tagable), fillLutOutside, pixelPadding);
     }
 
     /**
@@ -474,7 +519,13 @@ public class DicomImageElement extends ImageElement {
     public synchronized List<PresetWindowLevel> getPresetList(boolean pixelPadding) {
         if (windowingPresetCollection == null && isImageAvailable()) {
             String type = Messages.getString("PresetWindowLevel.dcm_preset"); //$NON-NLS-1$
-            windowingPresetCollection = PresetWindowLevel.getPresetCollection(this, this, pixelPadding, type);
+            SeriesPixelStatistics stats = SeriesPixelStatistics.getStatistics(this);
+            if (stats == null) {
+                windowingPresetCollection = PresetWindowLevel.getPresetCollection(this, this, pixelPadding, type);
+            } else {
+                windowingPresetCollection = stats.getPresetList(this, pixelPadding,
+                    () -> PresetWindowLevel.getPresetCollection(this, this, pixelPadding, type));
+            }
         }
         return windowingPresetCollection;
     }
@@ -494,16 +545,25 @@ public class DicomImageElement extends ImageElement {
             return lutShapeCollection;
         }
 
-        lutShapeCollection = new LinkedHashSet<>();
         List<PresetWindowLevel> presetList = getPresetList(pixelPadding);
+        SeriesPixelStatistics stats = SeriesPixelStatistics.getStatistics(this);
+        if (stats == null) {
+            lutShapeCollection = buildLutShapeCollection(presetList);
+        } else {
+            lutShapeCollection = stats.getLutShapeCollection(presetList, () -> buildLutShapeCollection(presetList));
+        }
+        return lutShapeCollection;
+    }
+
+    private static Collection<LutShape> buildLutShapeCollection(List<PresetWindowLevel> presetList) {
+        Collection<LutShape> collection = new LinkedHashSet<>();
         if (presetList != null) {
             for (PresetWindowLevel preset : presetList) {
-                lutShapeCollection.add(preset.getLutShape());
+                collection.add(preset.getLutShape());
             }
         }
-        lutShapeCollection.addAll(LutShape.DEFAULT_FACTORY_FUNCTIONS);
-
-        return lutShapeCollection;
+        collection.addAll(LutShape.DEFAULT_FACTORY_FUNCTIONS);
+        return collection;
     }
 
     @Override
@@ -513,7 +573,10 @@ public class DicomImageElement extends ImageElement {
          */
 
         if (img != null && !isImageAvailable()) {
-            // Cannot trust SmallestImagePixelValue and LargestImagePixelValue values! So search min and max values
+            /*
+             * Cannot trust SmallestImagePixelValue and LargestImagePixelValue values! So search min and max values or
+             * estimate them from a sample of the pixels (see SeriesPixelStatistics)
+             */
             int bitsStored = getBitsStored();
             int bitsAllocated = getBitsAllocated();
 
@@ -521,6 +584,7 @@ public class DicomImageElement extends ImageElement {
             maxPixelValue = null;
 
             boolean monochrome = isPhotometricInterpretationMonochrome();
+            SeriesPixelStatistics stats = null;
             if (monochrome) {
                 Integer paddingValue = getPaddingValue();
                 if (paddingValue != null) {
@@ -530,28 +594,28 @@ public class DicomImageElement extends ImageElement {
                     Integer paddingValueMax =
                         (paddingLimit == null) ? paddingValue : Math.max(paddingValue, paddingLimit);
                     findMinMaxValues(img, paddingValueMin, paddingValueMax);
+                } else if (getTagValue(TagW.ModalityLUTData) == null) {
+                    // The Modality LUT Sequence is validated with the exact range
+                    stats = SeriesPixelStatistics.getStatistics(this);
                 }
             }
 
             if (!isImageAvailable()) {
-                super.findMinMaxValues(img, !monochrome);
+                double[] range = stats == null ? null : stats.getEstimatedRange(this, img);
+                if (range == null) {
+                    super.findMinMaxValues(img, !monochrome);
+                    if (stats != null && isImageAvailable()) {
+                        stats.addFullScan(minPixelValue, maxPixelValue);
+                    }
+                } else {
+                    this.minPixelValue = range[0];
+                    this.maxPixelValue = range[1] > range[0] ? range[1] : range[0] + 1.0;
+                    this.rangeEstimated = true;
+                }
             }
 
             if (bitsStored < bitsAllocated && isImageAvailable()) {
-                boolean isSigned = isPixelRepresentationSigned();
-                int minInValue = isSigned ? -(1 << (bitsStored - 1)) : 0;
-                int maxInValue = isSigned ? (1 << (bitsStored - 1)) - 1 : (1 << bitsStored) - 1;
-                if (minPixelValue < minInValue || maxPixelValue > maxInValue) {
-                    /*
-                     *
-                     *
-                     * When the image contains values outside the bits stored values, the bits stored is replaced by the
-                     * bits allocated for having a LUT which handles all the values.
-                     *
-                     * Overlays in pixel data should be masked before finding min and max.
-                     */
-                    setTag(TagD.get(Tag.BitsStored), bitsAllocated);
-                }
+                checkBitsStored(bitsStored, bitsAllocated);
             }
             /*
              * Lazily compute image pixel transformation here since inner class Load is called from a separate and
@@ -561,6 +625,69 @@ public class DicomImageElement extends ImageElement {
              */
             getModalityLookup(null, true);
         }
+
+        if (img != null && rangeEstimated && refining.compareAndSet(false, true)) {
+            SeriesPixelStatistics stats = SeriesPixelStatistics.getStatistics(this);
+            if (stats == null) {
+                refining.set(false);
+            } else {
+                stats.refineLater(this);
+            }
+        }
+    }
+
+    private void checkBitsStored(int bitsStored, int bitsAllocated) {
+        boolean isSigned = isPixelRepresentationSigned();
+        int minInValue = isSigned ? -(1 << (bitsStored - 1)) : 0;
+        int maxInValue = isSigned ? (1 << (bitsStored - 1)) - 1 : (1 << bitsStored) - 1;
+        if (minPixelValue < minInValue || maxPixelValue > maxInValue) {
+            /*
+             *
+             *
+             * When the image contains values outside the bits stored values, the bits stored is replaced by the bits
+             * allocated for having a LUT which handles all the values.
+             *
+             * Overlays in pixel data should be masked before finding min and max.
+             */
+            setTag(TagD.get(Tag.BitsStored), bitsAllocated);
+        }
+    }
+
+    /**
+     * Scans all the pixels of an image whose min and max values have been estimated. The range of the image is
+     * extended when pixels are outside.
+     *
+     * @return the min and max values of all the pixels, null when the image is no longer in the cache
+     */
+    double[] refineMinMaxValues() {
+        try {
+            if (!rangeEstimated || !isImageInCache()) {
+                // Refined at the next loading of the image
+                return null;
+            }
+            PlanarImage img = getImage(null, false);
+            MinMaxLocResult val = img == null ? null : ImageProcessor.findMinMaxValues(img.toMat());
+            if (val == null) {
+                return null;
+            }
+            synchronized (this) {
+                rangeEstimated = false;
+                if (val.minVal < minPixelValue || val.maxVal > maxPixelValue) {
+                    LOGGER.debug("Extend the estimated range of {} to [{}, {}]", //$NON-NLS-1$
+                        this, val.minVal, val.maxVal);
+                    minPixelValue = Math.min(minPixelValue, val.minVal);
+                    maxPixelValue = Math.max(maxPixelValue, val.maxVal);
+                    int bitsStored = getBitsStored();
+                    int bitsAllocated = getBitsAllocated();
+                    if (bitsStored < bitsAllocated) {
+                        checkBitsStored(bitsStored, bitsAllocated);
+                    }
+                }
+            }
+            return new double[] { val.minVal, val.maxVal };
+        } finally {
+            refining.set(false);
+        }
     }
 
     /**
@@ -24,14 +24,15 @@ import java.nio.ByteOrder;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.concurrent.atomic.AtomicInteger;
-import javax.imageio.ImageIO;
 import javax.imageio.stream.ImageInputStream;
 import org.dcm4che3.data.Attributes;
 import org.dcm4che3.data.BulkData;
@@ -52,6 +53,7 @@ import org.opencv.core.CvType;
 import org.opencv.core.Mat;
 import org.opencv.core.MatOfDouble;
 import org.opencv.core.MatOfInt;
+import org.opencv.core.Scalar;
 import org.opencv.imgcodecs.Imgcodecs;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -62,12 +64,15 @@ import org.weasis.core.api.media.data.FileCache;
 import org.weasis.core.api.media.data.MediaElement;
 import org.weasis.core.api.media.data.MediaSeries;
 import org.weasis.core.api.media.data.MediaSeriesGroup;
+import org.weasis.core.api.media.data.MemoryPressureMonitor;
+import org.weasis.core.api.media.data.MemoryPressureMonitor.PressureLevel;
 import org.weasis.core.api.media.data.Series;
-import org.weasis.core.api.media.data.SimpleTagable;
 import org.weasis.core.api.media.data.SoftHashMap;
 import org.weasis.core.api.media.data.TagView;
 import org.weasis.core.api.media.data.TagW;
 import org.weasis.core.api.service.BundleTools;
+import org.weasis.core.api.util.FileChannelImageInputStream;
+import org.weasis.core.api.util.FileHandlePool;
 import org.weasis.core.util.FileUtil;
 import org.weasis.core.util.StringUtil;
 import org.weasis.dicom.codec.TagD.Level;
@@ -83,7 +88,6 @@ import org.weasis.dicom.codec.utils.PatientComparator;
 import org.weasis.opencv.data.ImageCV;
 import org.weasis.opencv.data.PlanarImage;
 import org.weasis.opencv.op.ImageConversion;
-import org.weasis.opencv.op.ImageProcessor;
 
 public class DicomMediaIO implements DcmMediaReader {
 
@@ -259,6 +263,14 @@ public class DicomMediaIO implements DcmMediaReader {
             }
         };
 
+    static {
+        MemoryPressureMonitor.getInstance().register("dicom.header.cache", l -> { //$NON-NLS-1$
+            if (l.compareTo(PressureLevel.HIGH) >= 0) {
+                clearHeaderCache();
+            }
+        });
+    }
+
     // The above softReference HEADER_CACHE shall be used instead of the following dcmMetadata variable to get access to
     // the current DicomObject unless it's virtual and then URI doesn't exit. This case appends when the dcmMetadata is
     // created within the application and is given to the ImageReader constructor
@@ -272,6 +284,8 @@ public class DicomMediaIO implements DcmMediaReader {
     private URI uri;
     private int numberOfFrame;
     private final Map<TagW, Object> tags;
+    // Snapshot of the tags shared by the frames, cleared when a tag is set
+    private volatile Map<TagW, Object> frameSharedTags = null;
     private MediaElement[] image = null;
     private String mimeType;
     private final ArrayList<Integer> fragmentsPositions = new ArrayList<>();
@@ -338,8 +352,24 @@ public class DicomMediaIO implements DcmMediaReader {
     @Override
     public synchronized void replaceURI(URI uri) {
         if (!Objects.equals(this.uri, Objects.requireNonNull(uri))) {
+            // The previous file can be deleted
+            closeFileHandle();
             this.uri = uri;
+            // The header and the pixel data description belong to the previous source
+            HEADER_CACHE.remove(this);
+            pixeldata = null;
+            pixeldataFragments = null;
+            fragmentsPositions.clear();
+            compressedData = false;
             reset();
+            if (hasPixel) {
+                try {
+                    // The new source can have another pixel description (e.g. a lossy or a rendered preview)
+                    writeImageValues(readMetaData().getAttributes());
+                } catch (IOException e) {
+                    LOGGER.error("Cannot read the header of {}", uri, e); //$NON-NLS-1$
+                }
+            }
         }
     }
 
@@ -438,6 +468,7 @@ public class DicomMediaIO implements DcmMediaReader {
     @Override
     public void setTag(TagW tag, Object value) {
         DicomMediaUtils.setTag(tags, tag, value);
+        frameSharedTags = null;
     }
 
     @Override
@@ -727,8 +758,9 @@ public class DicomMediaIO implements DcmMediaReader {
                             }
                         }
                     }
-                    // Set to 0 all bits outside bitStored
-                    img = ImageProcessor.bitwiseAnd(img.toMat(), overlayBitMask);
+                    // Set to 0 all bits outside bitStored (in place, the decoded buffer is not shared yet)
+                    Mat mat = img.toMat();
+                    Core.bitwise_and(mat, new Scalar(overlayBitMask), mat);
                 }
 
                 return img;
@@ -936,18 +968,23 @@ public class DicomMediaIO implements DcmMediaReader {
     public Map<TagW, Object> getMediaFragmentTags(Object key) {
         if (key instanceof Integer) {
             if ((Integer) key > 0) {
-                // Clone the shared tag
-                Map<TagW, Object> tagList = new HashMap<>(tags);
-                SimpleTagable tagable = new SimpleTagable(tagList);
-                if (DicomMediaUtils.writePerFrameFunctionalGroupsSequence(tagable, getDicomObject(), (Integer) key)) {
-                    DicomMediaUtils.computeSlicePositionVector(tagable);
-                }
-                return tagList;
+                // Share a snapshot of the tags of the instance, the per-frame values are read on first access
+                return new FrameTagMap(this::getDicomObject, getFrameSharedTags(), (Integer) key);
             }
         }
         return tags;
     }
 
+    private synchronized Map<TagW, Object> getFrameSharedTags() {
+        Map<TagW, Object> shared = frameSharedTags;
+        if (shared == null) {
+            // The values set later on the instance or on the first frame must not change the other frames
+            shared = Collections.unmodifiableMap(new HashMap<>(tags));
+            frameSharedTags = shared;
+        }
+        return shared;
+    }
+
     @Override
     public void close() {
         dispose();
@@ -981,7 +1018,9 @@ public class DicomMediaIO implements DcmMediaReader {
     }
 
     private boolean isRLELossless() {
-        return dis == null ? false : dis.getTransferSyntax().equals(UID.RLELossless);
+        // No stream when the header has been set with setMetaData()
+        String ts = dis == null ? tsuid : dis.getTransferSyntax();
+        return UID.RLELossless.equals(ts);
     }
 
     private ExtendSegmentedInputImageStream buildSegmentedImageInputStream(int frameIndex) throws IOException {
@@ -1023,7 +1062,7 @@ public class DicomMediaIO implements DcmMediaReader {
                     // Multi-frames where each frames can have multiple fragments.
                     if (fragmentsPositions.isEmpty()) {
                         boolean jpeg2000 = tsuid.startsWith("1.2.840.10008.1.2.4.9"); //$NON-NLS-1$
-                        try (ImageInputStream srcStream = ImageIO.createImageInputStream(new File(uri))) {
+                        try (ImageInputStream srcStream = new FileChannelImageInputStream(new File(uri))) {
                             for (int i = 1; i < nbFragments; i++) {
                                 BulkData bulkData = (BulkData) pixeldataFragments.get(i);
                                 ImageInputStream stream = new org.dcm4che3.imageio.stream.SegmentedInputImageStream(
@@ -1079,11 +1118,27 @@ public class DicomMediaIO implements DcmMediaReader {
         return null;
     }
 
+    /**
+     * Removes all the headers from the cache. They will be read again from the files when required.
+     */
+    public static void clearHeaderCache() {
+        List<DicomMediaIO> readers = new ArrayList<>(HEADER_CACHE.keySet());
+        HEADER_CACHE.clear();
+        readers.forEach(DicomMediaIO::reset);
+    }
+
     public void dispose() {
         HEADER_CACHE.remove(this);
         readingHeader = false;
         readingImage = false;
         reset();
+        closeFileHandle();
+    }
+
+    private void closeFileHandle() {
+        if (uri != null && "file".equals(uri.getScheme())) { //$NON-NLS-1$
+            FileHandlePool.getInstance().close(new File(uri));
+        }
     }
 
     @Override
@@ -1111,6 +1166,27 @@ public class DicomMediaIO implements DcmMediaReader {
         return readMetaData();
     }
 
+    /**
+     * Sets the header which has been parsed while the file was written, so the file is not read a second time. The
+     * header must have been read with {@link IncludeBulkData#URI}, {@link DicomCodec#BULKDATA_DESCRIPTOR} and the URI
+     * of this reader in order to have the offsets of the pixel data in the file.
+     *
+     * @param fmi
+     *            the file meta information (can be null)
+     * @param dataset
+     *            the dataset without the values of the bulk data
+     * @param transferSyntax
+     *            the transfer syntax of the dataset
+     */
+    public synchronized void setMetaData(Attributes fmi, Attributes dataset, String transferSyntax) {
+        Objects.requireNonNull(dataset);
+        Objects.requireNonNull(transferSyntax);
+        if (HEADER_CACHE.get(this) == null && dcmMetadata == null) {
+            buildMetaData(fmi == null ? dataset.createFileMetaInformation(transferSyntax) : fmi, dataset,
+                transferSyntax);
+        }
+    }
+
     /**
      * Reads the DICOM header meta-data, up to, but not including pixel data.
      *
@@ -1130,7 +1206,7 @@ public class DicomMediaIO implements DcmMediaReader {
                 Optional<File> file = fileCache.getOriginalFile();
                 if (file.isPresent()) {
                     resetInternalState();
-                    this.iis = ImageIO.createImageInputStream(new File(uri));
+                    this.iis = new FileChannelImageInputStream(new File(uri));
                 }
             }
 
@@ -1149,57 +1225,63 @@ public class DicomMediaIO implements DcmMediaReader {
             if (fmi == null) {
                 fmi = ds.createFileMetaInformation(dis.getTransferSyntax());
             }
-            DicomMetaData metadata = new DicomMetaData(fmi, ds);
-            Object pixdata = ds.getValue(Tag.PixelData, pixeldataVR);
-            if (pixdata == null) {
-                pixdata = ds.getValue(Tag.FloatPixelData, pixeldataVR);
-            }
-            if (pixdata == null) {
-                pixdata = ds.getValue(Tag.DoubleFloatPixelData, pixeldataVR);
-            }
+            return buildMetaData(fmi, ds, dis.getTransferSyntax());
+        } finally {
+            readingHeader = false;
+            FileUtil.safeClose(iis);
+            iis = null;
+
+        }
+    }
+
+    private DicomMetaData buildMetaData(Attributes fmi, Attributes ds, String transferSyntax) {
+        DicomMetaData metadata = new DicomMetaData(fmi, ds);
+        Object pixdata = ds.getValue(Tag.PixelData, pixeldataVR);
+        if (pixdata == null) {
+            pixdata = ds.getValue(Tag.FloatPixelData, pixeldataVR);
+        }
+        if (pixdata == null) {
+            pixdata = ds.getValue(Tag.DoubleFloatPixelData, pixeldataVR);
+        }
 
-            if (pixdata != null) {
-                tsuid = dis.getTransferSyntax();
-                numberOfFrame = ds.getInt(Tag.NumberOfFrames, 1);
-                hasPixel = ds.getInt(Tag.BitsStored, ds.getInt(Tag.BitsAllocated, 0)) > 0;
+        if (pixdata != null) {
+            tsuid = transferSyntax;
+            numberOfFrame = ds.getInt(Tag.NumberOfFrames, 1);
+            hasPixel = ds.getInt(Tag.BitsStored, ds.getInt(Tag.BitsAllocated, 0)) > 0;
 
-                if (!tsuid.startsWith("1.2.840.10008.1.2.4.10") && hasPixel) { //$NON-NLS-1$
+            if (!tsuid.startsWith("1.2.840.10008.1.2.4.10") && hasPixel) { //$NON-NLS-1$
 
-                    if (pixdata instanceof BulkData) {
-                        bigendian = ds.bigEndian();
+                if (pixdata instanceof BulkData) {
+                    bigendian = ds.bigEndian();
+                    if (iis != null) {
                         iis.setByteOrder(ds.bigEndian() ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN);
-                        this.pixeldata = (BulkData) pixdata;
-                        // Handle JPIP
-                    } else if (ds.getString(Tag.PixelDataProviderURL) != null) {
-                        // always little endian:
-                        // http://dicom.nema.org/medical/dicom/2017b/output/chtml/part05/sect_A.6.html
-                        if (numberOfFrame == 0) {
-                            numberOfFrame = 1;
-                            // compressed = true;
-                        }
-                    } else if (pixdata instanceof Fragments) {
-                        // ImageReaderFactory.ImageReaderItem readerItem = ImageReaderFactory.getImageReader(tsuid);
-                        // if (readerItem == null) {
-                        // throw new IOException("Unsupported Transfer Syntax: " + tsuid); //$NON-NLS-1$
-                        // }
-                        this.compressedData = true;
-                        this.pixeldataFragments = (Fragments) pixdata;
-                        bigendian = pixeldataFragments.bigEndian();
-                        if (bigendian) {
-                            LOGGER.error("Big endian fragments?"); //$NON-NLS-1$
-                        }
+                    }
+                    this.pixeldata = (BulkData) pixdata;
+                    // Handle JPIP
+                } else if (ds.getString(Tag.PixelDataProviderURL) != null) {
+                    // always little endian:
+                    // http://dicom.nema.org/medical/dicom/2017b/output/chtml/part05/sect_A.6.html
+                    if (numberOfFrame == 0) {
+                        numberOfFrame = 1;
+                        // compressed = true;
+                    }
+                } else if (pixdata instanceof Fragments) {
+                    // ImageReaderFactory.ImageReaderItem readerItem = ImageReaderFactory.getImageReader(tsuid);
+                    // if (readerItem == null) {
+                    // throw new IOException("Unsupported Transfer Syntax: " + tsuid); //$NON-NLS-1$
+                    // }
+                    this.compressedData = true;
+                    this.pixeldataFragments = (Fragments) pixdata;
+                    bigendian = pixeldataFragments.bigEndian();
+                    if (bigendian) {
+                        LOGGER.error("Big endian fragments?"); //$NON-NLS-1$
                     }
                 }
             }
-
-            HEADER_CACHE.put(this, metadata);
-            return metadata;
-        } finally {
-            readingHeader = false;
-            FileUtil.safeClose(iis);
-            iis = null;
-
         }
+
+        HEADER_CACHE.put(this, metadata);
+        return metadata;
     }
 
     private boolean decodeJpeg2000(ImageInputStream iis) throws IOException {
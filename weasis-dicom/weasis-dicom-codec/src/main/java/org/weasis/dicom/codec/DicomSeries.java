@@ -22,6 +22,7 @@ import org.weasis.core.api.explorer.model.DataExplorerModel;
 import org.weasis.core.api.gui.util.Filter;
 import org.weasis.core.api.gui.util.MathUtil;
 import org.weasis.core.api.image.cv.CvUtil;
+import org.weasis.core.api.media.data.MemoryPressureMonitor;
 import org.weasis.core.api.media.data.Series;
 import org.weasis.core.api.media.data.SeriesEvent;
 import org.weasis.core.api.media.data.TagView;
@@ -77,6 +78,7 @@ public class DicomSeries extends Series<DicomImageElement> {
                 }
                 add(insertIndex, media);
             }
+            SeriesPixelStatistics.addSeries(TagD.getTagValue(media, Tag.SeriesInstanceUID, String.class), this);
             DataExplorerModel model = (DataExplorerModel) getTagValue(TagW.ExplorerModel);
             if (model != null) {
                 model.firePropertyChange(new ObservableEvent(ObservableEvent.BasicAction.ADD, model, null,
@@ -127,6 +129,7 @@ public class DicomSeries extends Series<DicomImageElement> {
     @Override
     public void dispose() {
         stopPreloading(this);
+        SeriesPixelStatistics.removeSeries(this);
         super.dispose();
     }
 
@@ -266,7 +269,7 @@ public class DicomSeries extends Series<DicomImageElement> {
                         img.getImage();
                     } catch (OutOfMemoryError e) {
                         LOGGER.error("Out of memory when loading image: {}", img, e); //$NON-NLS-1$
-                        CvUtil.runGarbageCollectorAndWait(50);
+                        MemoryPressureMonitor.getInstance().releaseMemoryAfterError(50);
                         return;
                     }
                     long stop = System.currentTimeMillis();
@@ -0,0 +1,168 @@
+/*
+ * Copyright (c) 2009-2020 Weasis Team and other contributors.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse
+ * Public License 2.0 which is available at http://www.eclipse.org/legal/epl-2.0.
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+
+package org.weasis.dicom.codec;
+
+import java.util.AbstractMap;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Supplier;
+
+import org.dcm4che3.data.Attributes;
+import org.dcm4che3.data.Tag;
+import org.weasis.core.api.media.data.SimpleTagable;
+import org.weasis.core.api.media.data.TagW;
+import org.weasis.dicom.codec.utils.DicomMediaUtils;
+
+/**
+ * Tags of a frame of a multi-frame image.
+ * <p>
+ * A read-only snapshot of the tags of the instance is shared by the frames and only the values of the frame are
+ * stored. The Per-frame Functional Groups Sequence of the frame is read when a value is requested for the first time.
+ * The values set before this moment have priority over the per-frame values, like when the per-frame values were
+ * written at the creation of the frame. So these values and the tags of the instance which are never in the functional
+ * groups (e.g. the UIDs and the Instance Number set when the frames are built, which are read for inserting the frames
+ * in the series) are returned without reading the functional groups.
+ */
+final class FrameTagMap extends AbstractMap<TagW, Object> {
+
+    private static final Set<TagW> INSTANCE_TAGS = new HashSet<>(Arrays.asList(TagD.getTagFromIDs(Tag.PatientID,
+        Tag.PatientName, Tag.StudyInstanceUID, Tag.SeriesInstanceUID, Tag.SOPInstanceUID, Tag.SOPClassUID,
+        Tag.Modality, Tag.SeriesNumber, Tag.NumberOfFrames, Tag.Rows, Tag.Columns, Tag.SamplesPerPixel,
+        Tag.PhotometricInterpretation, Tag.BitsAllocated, Tag.BitsStored, Tag.HighBit, Tag.PixelRepresentation)));
+
+    private final Supplier<Attributes> header;
+    private final int frameIndex;
+    private final HashMap<TagW, Object> frameTags = new HashMap<>();
+    // Set to null when all the shared values have been copied into the frame values
+    private Map<TagW, Object> sharedTags;
+    private volatile boolean resolved = false;
+    // Tags set before reading the functional groups
+    private Set<TagW> presetTags = null;
+
+    FrameTagMap(Supplier<Attributes> header, Map<TagW, Object> sharedTags, int frameIndex) {
+        this.header = header;
+        this.sharedTags = sharedTags;
+        this.frameIndex = frameIndex;
+    }
+
+    private void resolve() {
+        // Already locked when called while reading the functional groups
+        if (resolved || Thread.holdsLock(this)) {
+            return;
+        }
+        // Read the header before locking the map, the reader is locked while it builds the frames
+        Attributes dcm = header.get();
+        synchronized (this) {
+            if (!resolved) {
+                presetTags = new HashSet<>(frameTags.keySet());
+                try {
+                    SimpleTagable tagable = new SimpleTagable(this);
+                    if (DicomMediaUtils.writePerFrameFunctionalGroupsSequence(tagable, dcm, frameIndex)) {
+                        DicomMediaUtils.computeSlicePositionVector(tagable);
+                    }
+                } finally {
+                    presetTags = null;
+                    resolved = true;
+                }
+            }
+        }
+    }
+
+    private synchronized void detach() {
+        if (sharedTags != null) {
+            Map<TagW, Object> values = new HashMap<>(sharedTags);
+            values.putAll(frameTags);
+            frameTags.clear();
+            frameTags.putAll(values);
+            sharedTags = null;
+        }
+    }
+
+    boolean isResolved() {
+        return resolved;
+    }
+
+    private synchronized boolean isKnownWithoutGroups(Object key) {
+        return frameTags.containsKey(key) || (sharedTags != null && INSTANCE_TAGS.contains(key));
+    }
+
+    @Override
+    public Object get(Object key) {
+        if (!isKnownWithoutGroups(key)) {
+            resolve();
+        }
+        synchronized (this) {
+            Object val = frameTags.get(key);
+            if (val == null && sharedTags != null && !frameTags.containsKey(key)) {
+                val = sharedTags.get(key);
+            }
+            return val;
+        }
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        if (!isKnownWithoutGroups(key)) {
+            resolve();
+        }
+        synchronized (this) {
+            return frameTags.containsKey(key) || (sharedTags != null && sharedTags.containsKey(key));
+        }
+    }
+
+    @Override
+    public synchronized Object put(TagW key, Object value) {
+        if (presetTags != null && presetTags.contains(key)) {
+            // Keep the value set before reading the functional groups
+            return frameTags.get(key);
+        }
+        Object old = frameTags.containsKey(key) ? frameTags.get(key) : sharedTags == null ? null : sharedTags.get(key);
+        frameTags.put(key, value);
+        return old;
+    }
+
+    @Override
+    public Object remove(Object key) {
+        resolve();
+        synchronized (this) {
+            detach();
+            return frameTags.remove(key);
+        }
+    }
+
+    @Override
+    public synchronized void clear() {
+        frameTags.clear();
+        sharedTags = null;
+        resolved = true;
+    }
+
+    @Override
+    public int size() {
+        resolve();
+        synchronized (this) {
+            detach();
+            return frameTags.size();
+        }
+    }
+
+    @Override
+    public Set<Entry<TagW, Object>> entrySet() {
+        // Iterating over all the values is rare (tag viewer, export), copy the shared values
+        resolve();
+        synchronized (this) {
+            detach();
+            return frameTags.entrySet();
+        }
+    }
+}
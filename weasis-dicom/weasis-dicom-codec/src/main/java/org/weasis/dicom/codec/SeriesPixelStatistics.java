@@ -0,0 +1,289 @@
+/*
+ * Copyright (c) 2009-2020 Weasis Team and other contributors.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse
+ * Public License 2.0 which is available at http://www.eclipse.org/legal/epl-2.0.
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+
+package org.weasis.dicom.codec;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Supplier;
+
+import org.dcm4che3.data.Tag;
+import org.opencv.core.Core.MinMaxLocResult;
+import org.opencv.core.Mat;
+import org.weasis.core.api.image.LutShape;
+import org.weasis.core.api.media.data.TagW;
+import org.weasis.core.api.util.ThreadUtil;
+import org.weasis.dicom.codec.display.PresetWindowLevel;
+import org.weasis.opencv.data.PlanarImage;
+import org.weasis.opencv.op.ImageProcessor;
+
+/**
+ * Pixel statistics shared by all the images of a series having the same pixel description (Bits Stored, Bits
+ * Allocated, Pixel Representation and Photometric Interpretation).
+ * <p>
+ * An image gets a range of stored pixel values without scanning all its pixels when a few horizontal bands of the image
+ * are included in the Smallest/Largest Image Pixel Value attributes or, when the first images of the series have been
+ * fully scanned, in the range of the series. The estimated ranges are refined in the background by a full scan, which
+ * extends the range of the image and of the series when necessary.
+ * <p>
+ * The window/level presets are shared between the images having the same attributes defining them (rescale, pixel
+ * description, modality and VOI attributes). The series split from the same Series Instance UID share the same
+ * statistics, which are removed when the last of them is disposed.
+ */
+public final class SeriesPixelStatistics {
+
+    /** Number of images fully scanned before using the series range */
+    static final int REFERENCE_SCANS = 2;
+    /** Number of horizontal bands scanned in a sampled image */
+    static final int SAMPLE_BANDS = 8;
+
+    private static final Map<String, SeriesPixelStatistics> REGISTRY = new ConcurrentHashMap<>();
+    // Series Instance UID -> series objects (split series have the same UID)
+    private static final Map<String, Set<Object>> OWNERS = new HashMap<>();
+    private static final ExecutorService REFINER =
+        ThreadUtil.buildNewSingleThreadExecutor("Pixel Range Refinement"); //$NON-NLS-1$
+
+    private final String seriesUID;
+    private double minValue = Double.MAX_VALUE;
+    private double maxValue = -Double.MAX_VALUE;
+    private int fullScans = 0;
+    private final Map<String, List<PresetWindowLevel>> presets = new HashMap<>();
+    private final Map<List<PresetWindowLevel>, Collection<LutShape>> lutShapes = new IdentityHashMap<>();
+
+    private SeriesPixelStatistics(String seriesUID) {
+        this.seriesUID = seriesUID;
+    }
+
+    /**
+     * @return the statistics of the series containing the image or null when the Series Instance UID is missing
+     */
+    public static SeriesPixelStatistics getStatistics(DicomImageElement image) {
+        if (image == null) {
+            return null;
+        }
+        String uid = TagD.getTagValue(image, Tag.SeriesInstanceUID, String.class);
+        if (uid == null) {
+            return null;
+        }
+        String key = uid + "|" + TagD.getTagValue(image, Tag.BitsStored, Integer.class) + "|" //$NON-NLS-1$ //$NON-NLS-2$
+            + TagD.getTagValue(image, Tag.BitsAllocated, Integer.class) + "|" //$NON-NLS-1$
+            + image.isPixelRepresentationSigned() + "|" + image.getPhotometricInterpretation(); //$NON-NLS-1$
+        return getStatistics(uid, key);
+    }
+
+    static SeriesPixelStatistics getStatistics(String seriesUID, String key) {
+        return REGISTRY.computeIfAbsent(key, k -> new SeriesPixelStatistics(seriesUID));
+    }
+
+    /**
+     * Registers a series object using the statistics of the Series Instance UID.
+     */
+    public static void addSeries(String seriesUID, Object series) {
+        if (seriesUID != null && series != null) {
+            synchronized (OWNERS) {
+                OWNERS.computeIfAbsent(seriesUID, k -> Collections.newSetFromMap(new IdentityHashMap<>())).add(series);
+            }
+        }
+    }
+
+    /**
+     * Unregisters a disposed series object. The statistics of a Series Instance UID are removed when no more series
+     * object uses them.
+     */
+    public static void removeSeries(Object series) {
+        if (series == null) {
+            return;
+        }
+        synchronized (OWNERS) {
+            Iterator<Map.Entry<String, Set<Object>>> it = OWNERS.entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry<String, Set<Object>> entry = it.next();
+                if (entry.getValue().remove(series) && entry.getValue().isEmpty()) {
+                    it.remove();
+                    String uid = entry.getKey();
+                    REGISTRY.values().removeIf(s -> uid.equals(s.seriesUID));
+                }
+            }
+        }
+    }
+
+    public static void clear() {
+        synchronized (OWNERS) {
+            OWNERS.clear();
+            REGISTRY.clear();
+        }
+    }
+
+    public static int size() {
+        return REGISTRY.size();
+    }
+
+    public synchronized boolean isReliable() {
+        return fullScans >= REFERENCE_SCANS;
+    }
+
+    public synchronized void addFullScan(double min, double max) {
+        minValue = Math.min(minValue, min);
+        maxValue = Math.max(maxValue, max);
+        fullScans++;
+    }
+
+    public synchronized double[] getRange() {
+        return fullScans == 0 ? null : new double[] { minValue, maxValue };
+    }
+
+    /**
+     * Tries to determine the min and max stored values of an image without scanning all the pixels.
+     *
+     * @param image
+     *            the image element
+     * @param img
+     *            the decoded image
+     * @return the estimated range {min, max} or null when the image must be fully scanned
+     */
+    public double[] getEstimatedRange(DicomImageElement image, PlanarImage img) {
+        if (img == null) {
+            return null;
+        }
+        Integer smallest = TagD.getTagValue(image, Tag.SmallestImagePixelValue, Integer.class);
+        Integer largest = TagD.getTagValue(image, Tag.LargestImagePixelValue, Integer.class);
+        if ((smallest == null || largest == null) && !isReliable()) {
+            return null;
+        }
+        MinMaxLocResult sample = findSampledMinMaxValues(img);
+        if (sample == null) {
+            return null;
+        }
+        return estimateRange(smallest, largest, sample.minVal, sample.maxVal);
+    }
+
+    /**
+     * @return the range of the header attributes when they include the sampled values, otherwise the series range when
+     *         it includes the sampled values and the header attributes, otherwise null
+     */
+    synchronized double[] estimateRange(Integer smallest, Integer largest, double sampleMin, double sampleMax) {
+        // Header values are only trusted when they include the sampled values
+        if (smallest != null && largest != null && smallest <= largest && sampleMin >= smallest
+            && sampleMax <= largest) {
+            return new double[] { smallest, largest };
+        }
+        if (isReliable() && contains(sampleMin, sampleMax) && (smallest == null || contains(smallest, smallest))
+            && (largest == null || contains(largest, largest))) {
+            return new double[] { minValue, maxValue };
+        }
+        return null;
+    }
+
+    private boolean contains(double min, double max) {
+        return fullScans > 0 && min >= minValue && max <= maxValue;
+    }
+
+    /**
+     * Scans all the pixels of an image having an estimated range in the background.
+     */
+    public void refineLater(DicomImageElement image) {
+        REFINER.execute(() -> {
+            double[] range = image.refineMinMaxValues();
+            if (range != null) {
+                addFullScan(range[0], range[1]);
+            }
+        });
+    }
+
+    /**
+     * Computes the min and max values of horizontal bands uniformly distributed in the image.
+     */
+    static MinMaxLocResult findSampledMinMaxValues(PlanarImage img) {
+        Mat mat = img.toMat();
+        int rows = mat.rows();
+        int cols = mat.cols();
+        if (rows < SAMPLE_BANDS * 4 || cols < 1) {
+            return ImageProcessor.findMinMaxValues(mat);
+        }
+        int bandHeight = Math.max(1, rows / (SAMPLE_BANDS * 4));
+        MinMaxLocResult result = null;
+        for (int i = 0; i < SAMPLE_BANDS; i++) {
+            int start = Math.min(rows - bandHeight, (rows * (2 * i + 1)) / (2 * SAMPLE_BANDS));
+            Mat band = mat.submat(start, start + bandHeight, 0, cols);
+            try {
+                MinMaxLocResult val = ImageProcessor.findMinMaxValues(band);
+                if (val != null) {
+                    if (result == null) {
+                        result = val;
+                    } else {
+                        result.minVal = Math.min(result.minVal, val.minVal);
+                        result.maxVal = Math.max(result.maxVal, val.maxVal);
+                    }
+                }
+            } finally {
+                band.release();
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return the shared preset list when the image has the same attributes defining the presets than a previous image
+     *         of the series, otherwise the list built by the supplier
+     */
+    public List<PresetWindowLevel> getPresetList(DicomImageElement image, boolean pixelPadding,
+        Supplier<List<PresetWindowLevel>> builder) {
+        if (image.getTagValue(TagW.VOILUTsData) != null) {
+            // VOI LUT data are specific to each image
+            return builder.get();
+        }
+        String key = getPresetKey(image, pixelPadding);
+        synchronized (presets) {
+            List<PresetWindowLevel> list = presets.get(key);
+            if (list == null) {
+                list = builder.get();
+                if (list != null) {
+                    presets.put(key, list);
+                }
+            }
+            return list;
+        }
+    }
+
+    public Collection<LutShape> getLutShapeCollection(List<PresetWindowLevel> presetList,
+        Supplier<Collection<LutShape>> builder) {
+        if (presetList == null) {
+            return builder.get();
+        }
+        synchronized (presets) {
+            return lutShapes.computeIfAbsent(presetList, l -> builder.get());
+        }
+    }
+
+    private static String getPresetKey(DicomImageElement image, boolean pixelPadding) {
+        StringBuilder buf = new StringBuilder();
+        buf.append(Arrays.toString(TagD.getTagValue(image, Tag.WindowCenter, double[].class)));
+        buf.append(Arrays.toString(TagD.getTagValue(image, Tag.WindowWidth, double[].class)));
+        buf.append(Arrays.toString(TagD.getTagValue(image, Tag.WindowCenterWidthExplanation, String[].class)));
+        buf.append(TagD.getTagValue(image, Tag.VOILUTFunction, String.class));
+        buf.append('|').append(TagD.getTagValue(image, Tag.Modality, String.class));
+        buf.append('|').append(image.getRescaleSlope(null));
+        buf.append('|').append(image.getRescaleIntercept(null));
+        // Can be replaced by Bits Allocated when the pixels exceed Bits Stored
+        buf.append('|').append(image.getBitsStored());
+        buf.append('|').append(image.getPaddingValue());
+        buf.append('|').append(image.getPaddingLimit());
+        buf.append('|').append(pixelPadding);
+        return buf.toString();
+    }
+}
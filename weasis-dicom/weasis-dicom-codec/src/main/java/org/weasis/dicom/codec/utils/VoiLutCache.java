@@ -0,0 +1,288 @@
+/*
+ * Copyright (c) 2009-2020 Weasis Team and other contributors.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse
+ * Public License 2.0 which is available at http://www.eclipse.org/legal/epl-2.0.
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+
+package org.weasis.dicom.codec.utils;
+
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferUShort;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.weasis.core.api.image.LutShape;
+import org.weasis.core.api.media.data.MemoryPressureMonitor;
+import org.weasis.core.api.util.ThreadUtil;
+import org.weasis.opencv.data.LookupTableCV;
+
+/**
+ * Bounded cache of the VOI lookup tables built by
+ * {@link DicomImageUtils#createWindowLevelLut(LutShape, double, double, int, int, int, boolean, boolean)}.
+ * <p>
+ * The cache is static and therefore shared by all the images having the same pixel range (typically all the images of
+ * a series). Window and level are quantized to a power-of-two step smaller than half an output gray level, so
+ * successive drag events hit the same entries without any visible difference. When two consecutive requests belong to
+ * the same LUT family (same shape, input range, padding and inversion), the next LUTs in the direction of the drag are
+ * computed in background.
+ * <p>
+ * The cached tables are never returned, each call gets its own copy which can be modified.
+ */
+public final class VoiLutCache {
+    private static final Logger LOGGER = LoggerFactory.getLogger(VoiLutCache.class);
+
+    /** Maximum number of cached LUTs (a 8-bit VOI LUT takes at most 64 KB) */
+    public static final int MAX_ENTRIES = 256;
+    /** Number of output gray levels (8-bit LUT) used to compute the quantization step */
+    private static final double OUTPUT_LEVELS = 512.0;
+    private static final double MIN_QUANTUM = 1.0 / 64.0;
+    private static final int PREFETCH_STEPS = 2;
+
+    private static final ExecutorService PREFETCH_EXECUTOR =
+        ThreadUtil.buildNewSingleThreadExecutor("VOI LUT Prefetch"); //$NON-NLS-1$
+    private static final AtomicBoolean prefetching = new AtomicBoolean(false);
+
+    private static final Map<Key, LookupTableCV> CACHE = new LinkedHashMap<Key, LookupTableCV>(64, 0.75f, true) {
+        private static final long serialVersionUID = -3419251632513004337L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, LookupTableCV> eldest) {
+            return size() > maxEntries;
+        }
+    };
+
+    private static volatile int maxEntries = MAX_ENTRIES;
+    private static volatile Key lastKey;
+
+    static {
+        MemoryPressureMonitor.getInstance().register("voi.lut.cache", l -> trim(l.getTrimRatio())); //$NON-NLS-1$
+    }
+
+    private VoiLutCache() {
+    }
+
+    /**
+     * Get the VOI LUT from the cache or build it with the quantized window and level values.
+     *
+     * @param fillLutOutside
+     *            true when the input range is extended to the allocated values
+     * @param pixelPadding
+     *            true when the pixel padding is applied to the input range
+     * @return a copy of the cached LookupTableCV
+     */
+    public static LookupTableCV getWindowLevelLut(LutShape lutShape, double window, double level, int minValue,
+        int maxValue, int bitsStored, boolean isSigned, boolean inverse, boolean fillLutOutside,
+        boolean pixelPadding) {
+        if (lutShape == null) {
+            return null;
+        }
+
+        Key key = Key.of(lutShape, window, level, minValue, maxValue, bitsStored, isSigned, inverse, fillLutOutside,
+            pixelPadding);
+        LookupTableCV lut = getOrCreate(key);
+
+        Key previous = lastKey;
+        lastKey = key;
+        if (previous != null && !previous.equals(key) && previous.isSameFamily(key)) {
+            prefetchNeighbours(key, key.window - previous.window, key.level - previous.level);
+        }
+        return copy(lut);
+    }
+
+    public static int size() {
+        synchronized (CACHE) {
+            return CACHE.size();
+        }
+    }
+
+    public static void clear() {
+        synchronized (CACHE) {
+            CACHE.clear();
+        }
+        lastKey = null;
+    }
+
+    /**
+     * Changes the maximum number of entries and removes the least recently used LUTs when the cache is larger.
+     *
+     * @param max
+     *            the new maximum number of entries (minimum 1)
+     */
+    public static void setMaxEntries(int max) {
+        maxEntries = Math.max(1, max);
+        synchronized (CACHE) {
+            Iterator<Key> it = CACHE.keySet().iterator();
+            while (CACHE.size() > maxEntries && it.hasNext()) {
+                it.next();
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Removes the least recently used LUTs.
+     *
+     * @param ratio
+     *            the ratio of entries to remove (between 0 and 1)
+     */
+    public static void trim(double ratio) {
+        synchronized (CACHE) {
+            int remove = (int) Math.ceil(CACHE.size() * Math.min(1.0, Math.max(0.0, ratio)));
+            Iterator<Key> it = CACHE.keySet().iterator();
+            while (remove > 0 && it.hasNext()) {
+                it.next();
+                it.remove();
+                remove--;
+            }
+        }
+    }
+
+    public static int getMaxEntries() {
+        return maxEntries;
+    }
+
+    static double getQuantum(double window) {
+        double step = Math.abs(window) / OUTPUT_LEVELS;
+        if (step <= MIN_QUANTUM) {
+            return MIN_QUANTUM;
+        }
+        // Power of two step: keep the same grid for windows of the same order of magnitude
+        return Math.pow(2.0, Math.floor(Math.log(step) / Math.log(2.0)));
+    }
+
+    static double quantize(double value, double quantum) {
+        return Math.round(value / quantum) * quantum;
+    }
+
+    static LookupTableCV copy(LookupTableCV lut) {
+        if (lut == null) {
+            return null;
+        }
+        if (lut.getDataType() == DataBuffer.TYPE_BYTE) {
+            return new LookupTableCV(lut.getByteData(0).clone(), lut.getOffset(0));
+        }
+        return new LookupTableCV(lut.getShortData(0).clone(), lut.getOffset(0),
+            lut.getData() instanceof DataBufferUShort);
+    }
+
+    private static LookupTableCV getOrCreate(Key key) {
+        LookupTableCV lut;
+        synchronized (CACHE) {
+            lut = CACHE.get(key);
+        }
+        if (lut == null) {
+            lut = DicomImageUtils.createWindowLevelLut(key.shape, key.window, key.level, key.minValue, key.maxValue,
+                key.bitsStored, key.signed, key.inverse);
+            if (lut != null) {
+                synchronized (CACHE) {
+                    CACHE.put(key, lut);
+                }
+            }
+        }
+        return lut;
+    }
+
+    private static void prefetchNeighbours(Key key, double deltaWindow, double deltaLevel) {
+        // Skip when the previous prefetch is still running, the next drag event will ask again
+        if (!prefetching.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            PREFETCH_EXECUTOR.execute(() -> {
+                try {
+                    for (int i = 1; i <= PREFETCH_STEPS; i++) {
+                        getOrCreate(key.derive(deltaWindow * i, deltaLevel * i));
+                    }
+                    // Orthogonal neighbours when only one parameter is changing
+                    getOrCreate(key.derive(deltaWindow, 0.0));
+                    getOrCreate(key.derive(0.0, deltaLevel));
+                } catch (Exception e) {
+                    LOGGER.error("Cannot prefetch VOI LUT", e); //$NON-NLS-1$
+                } finally {
+                    prefetching.set(false);
+                }
+            });
+        } catch (Exception e) {
+            prefetching.set(false);
+            LOGGER.error("Cannot submit VOI LUT prefetch", e); //$NON-NLS-1$
+        }
+    }
+
+    static final class Key {
+        private final LutShape shape;
+        private final double window;
+        private final double level;
+        private final int minValue;
+        private final int maxValue;
+        private final int bitsStored;
+        private final boolean signed;
+        private final boolean inverse;
+        private final boolean fillOutside;
+        private final boolean padding;
+
+        Key(LutShape shape, double window, double level, int minValue, int maxValue, int bitsStored, boolean signed,
+            boolean inverse, boolean fillOutside, boolean padding) {
+            this.shape = Objects.requireNonNull(shape);
+            this.window = window;
+            this.level = level;
+            this.minValue = minValue;
+            this.maxValue = maxValue;
+            this.bitsStored = bitsStored;
+            this.signed = signed;
+            this.inverse = inverse;
+            this.fillOutside = fillOutside;
+            this.padding = padding;
+        }
+
+        /**
+         * Builds the key with the quantized window and level. The window is limited to 1 like in
+         * {@link DicomImageUtils#createWindowLevelLut}, before being quantized so the key stays on the grid.
+         */
+        static Key of(LutShape shape, double window, double level, int minValue, int maxValue, int bitsStored,
+            boolean signed, boolean inverse, boolean fillOutside, boolean padding) {
+            double w = Math.max(1.0, window);
+            double quantum = getQuantum(w);
+            return new Key(shape, Math.max(quantum, quantize(w, quantum)), quantize(level, quantum), minValue,
+                maxValue, bitsStored, signed, inverse, fillOutside, padding);
+        }
+
+        boolean isSameFamily(Key other) {
+            return shape.equals(other.shape) && minValue == other.minValue && maxValue == other.maxValue
+                && bitsStored == other.bitsStored && signed == other.signed && inverse == other.inverse
+                && fillOutside == other.fillOutside && padding == other.padding;
+        }
+
+        Key derive(double deltaWindow, double deltaLevel) {
+            return of(shape, window + deltaWindow, level + deltaLevel, minValue, maxValue, bitsStored, signed, inverse,
+                fillOutside, padding);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (obj == null || getClass() != obj.getClass()) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return isSameFamily(other) && Double.doubleToLongBits(window) == Double.doubleToLongBits(other.window)
+                && Double.doubleToLongBits(level) == Double.doubleToLongBits(other.level);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(shape, window, level, minValue, maxValue, bitsStored, signed, inverse, fillOutside,
+                padding);
+        }
+    }
+}
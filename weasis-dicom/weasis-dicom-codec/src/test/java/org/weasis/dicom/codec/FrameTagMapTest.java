@@ -0,0 +1,94 @@
+/*
+ * Copyright (c) 2009-2020 Weasis Team and other contributors.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse
+ * Public License 2.0 which is available at http://www.eclipse.org/legal/epl-2.0.
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+
+package org.weasis.dicom.codec;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import org.dcm4che3.data.Attributes;
+import org.dcm4che3.data.Sequence;
+import org.dcm4che3.data.Tag;
+import org.dcm4che3.data.VR;
+import org.junit.Before;
+import org.junit.Test;
+import org.weasis.core.api.media.data.TagW;
+
+public class FrameTagMapTest {
+
+    private static final String SERIES_UID = "1.2.3"; //$NON-NLS-1$
+
+    private final AtomicInteger headerReads = new AtomicInteger();
+    private Supplier<Attributes> header;
+    private Map<TagW, Object> sharedTags;
+
+    @Before
+    public void setUp() {
+        Attributes dcm = new Attributes();
+        Sequence frames = dcm.newSequence(Tag.PerFrameFunctionalGroupsSequence, 2);
+        for (int i = 0; i < 2; i++) {
+            Attributes frame = new Attributes();
+            Attributes content = new Attributes();
+            content.setInt(Tag.InStackPositionNumber, VR.UL, 10 + i);
+            frame.newSequence(Tag.FrameContentSequence, 1).add(content);
+            Attributes position = new Attributes();
+            position.setDouble(Tag.ImagePositionPatient, VR.DS, 0.0, 0.0, i * 2.0);
+            frame.newSequence(Tag.PlanePositionSequence, 1).add(position);
+            frames.add(frame);
+        }
+        header = () -> {
+            headerReads.incrementAndGet();
+            return dcm;
+        };
+        sharedTags = new HashMap<>();
+        sharedTags.put(TagD.get(Tag.SeriesInstanceUID), SERIES_UID);
+        sharedTags.put(TagD.get(Tag.InstanceNumber), 1);
+    }
+
+    @Test
+    public void testInsertionWithoutFunctionalGroups() {
+        FrameTagMap tags = new FrameTagMap(header, sharedTags, 1);
+        // Set when the frames are built
+        tags.put(TagD.get(Tag.InstanceNumber), 2);
+
+        // Read for inserting the frame in the series
+        assertEquals(SERIES_UID, tags.get(TagD.get(Tag.SeriesInstanceUID)));
+        assertEquals(2, tags.get(TagD.get(Tag.InstanceNumber)));
+        assertTrue(tags.containsKey(TagD.get(Tag.InstanceNumber)));
+        assertFalse(tags.isResolved());
+        assertEquals(0, headerReads.get());
+    }
+
+    @Test
+    public void testPerFrameValues() {
+        FrameTagMap tags = new FrameTagMap(header, sharedTags, 1);
+        tags.put(TagD.get(Tag.InstanceNumber), 2);
+
+        assertArrayEquals(new double[] { 0.0, 0.0, 2.0 },
+            (double[]) tags.get(TagD.get(Tag.ImagePositionPatient)), 0.0);
+        assertTrue(tags.isResolved());
+        assertEquals(1, headerReads.get());
+        assertEquals(11, tags.get(TagD.get(Tag.InStackPositionNumber)));
+        // The value set before reading the functional groups is kept
+        assertEquals(2, tags.get(TagD.get(Tag.InstanceNumber)));
+        assertEquals(1, headerReads.get());
+
+        // Without preset value, the Instance Number of the functional groups overrides the shared one
+        FrameTagMap other = new FrameTagMap(header, sharedTags, 0);
+        assertEquals(10, other.get(TagD.get(Tag.InstanceNumber)));
+        assertEquals(1, sharedTags.get(TagD.get(Tag.InstanceNumber)));
+    }
+}
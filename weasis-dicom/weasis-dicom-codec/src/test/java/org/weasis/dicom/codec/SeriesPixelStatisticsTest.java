@@ -0,0 +1,118 @@
+/*
+ * Copyright (c) 2009-2020 Weasis Team and other contributors.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse
+ * Public License 2.0 which is available at http://www.eclipse.org/legal/epl-2.0.
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+
+package org.weasis.dicom.codec;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.weasis.core.api.image.LutShape;
+import org.weasis.dicom.codec.display.PresetWindowLevel;
+
+public class SeriesPixelStatisticsTest {
+
+    @Before
+    public void setUp() {
+        SeriesPixelStatistics.clear();
+    }
+
+    @After
+    public void tearDown() {
+        SeriesPixelStatistics.clear();
+    }
+
+    @Test
+    public void testSplitSeriesShareStatistics() throws Exception {
+        Object series = new Object();
+        Object splitSeries = new Object();
+        SeriesPixelStatistics.addSeries("1.2.3", series); //$NON-NLS-1$
+        SeriesPixelStatistics.addSeries("1.2.3", splitSeries); //$NON-NLS-1$
+        SeriesPixelStatistics stats = SeriesPixelStatistics.getStatistics("1.2.3", "1.2.3|12|16"); //$NON-NLS-1$ //$NON-NLS-2$
+        assertEquals(1, SeriesPixelStatistics.size());
+
+        // The split series still uses the statistics
+        SeriesPixelStatistics.removeSeries(series);
+        assertEquals(1, SeriesPixelStatistics.size());
+        assertSame(stats, SeriesPixelStatistics.getStatistics("1.2.3", "1.2.3|12|16")); //$NON-NLS-1$ //$NON-NLS-2$
+
+        SeriesPixelStatistics.removeSeries(splitSeries);
+        assertEquals(0, SeriesPixelStatistics.size());
+        assertNotSame(stats, SeriesPixelStatistics.getStatistics("1.2.3", "1.2.3|12|16")); //$NON-NLS-1$ //$NON-NLS-2$
+    }
+
+    @Test
+    public void testRemoveOtherSeries() throws Exception {
+        Object series = new Object();
+        Object other = new Object();
+        SeriesPixelStatistics.addSeries("1.2.3", series); //$NON-NLS-1$
+        SeriesPixelStatistics.addSeries("1.2.4", other); //$NON-NLS-1$
+        SeriesPixelStatistics.getStatistics("1.2.3", "1.2.3|8|8"); //$NON-NLS-1$ //$NON-NLS-2$
+        SeriesPixelStatistics.getStatistics("1.2.4", "1.2.4|8|8"); //$NON-NLS-1$ //$NON-NLS-2$
+
+        SeriesPixelStatistics.removeSeries(other);
+        assertEquals(1, SeriesPixelStatistics.size());
+        // Removing twice does nothing
+        SeriesPixelStatistics.removeSeries(other);
+        assertEquals(1, SeriesPixelStatistics.size());
+    }
+
+    @Test
+    public void testSharedLutShapes() throws Exception {
+        SeriesPixelStatistics stats = SeriesPixelStatistics.getStatistics("1.2.3", "1.2.3|8|8"); //$NON-NLS-1$ //$NON-NLS-2$
+        List<PresetWindowLevel> presets = new ArrayList<>();
+        AtomicInteger builds = new AtomicInteger();
+        Collection<LutShape> shapes = stats.getLutShapeCollection(presets, () -> {
+            builds.incrementAndGet();
+            return new LinkedHashSet<>(LutShape.DEFAULT_FACTORY_FUNCTIONS);
+        });
+        assertSame(shapes, stats.getLutShapeCollection(presets, () -> {
+            builds.incrementAndGet();
+            return new LinkedHashSet<>();
+        }));
+        assertEquals(1, builds.get());
+
+        // Another preset list, even equal, has its own collection
+        assertNotSame(shapes, stats.getLutShapeCollection(new ArrayList<>(), LinkedHashSet::new));
+    }
+
+    @Test
+    public void testEstimatedRange() throws Exception {
+        SeriesPixelStatistics stats = SeriesPixelStatistics.getStatistics("1.2.3", "1.2.3|12|16"); //$NON-NLS-1$ //$NON-NLS-2$
+        // The header values are used when they include the samples
+        assertArrayEquals(new double[] { 0, 4095 }, stats.estimateRange(0, 4095, 10, 3000), 0.0);
+        assertNull(stats.estimateRange(100, 4095, 10, 3000));
+        // No series range before the reference scans
+        assertNull(stats.estimateRange(null, null, 10, 3000));
+
+        for (int i = 0; i < SeriesPixelStatistics.REFERENCE_SCANS; i++) {
+            assertFalse(stats.isReliable());
+            stats.addFullScan(-1000 + i, 2000 + i);
+        }
+        assertTrue(stats.isReliable());
+        assertArrayEquals(new double[] { -1000, 2001 }, stats.getRange(), 0.0);
+        assertArrayEquals(new double[] { -1000, 2001 }, stats.estimateRange(null, null, -900, 1500), 0.0);
+        // A sample or a header value outside the series range requires a full scan
+        assertNull(stats.estimateRange(null, null, -900, 2500));
+        assertNull(stats.estimateRange(null, 3000, -900, 1500));
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright (c) 2009-2020 Weasis Team and other contributors.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse
+ * Public License 2.0 which is available at http://www.eclipse.org/legal/epl-2.0.
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+
+package org.weasis.dicom.codec.utils;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.weasis.core.api.image.LutShape;
+import org.weasis.opencv.data.LookupTableCV;
+
+public class VoiLutCacheTest {
+
+    @Test
+    public void testQuantum() throws Exception {
+        assertEquals(1.0 / 64.0, VoiLutCache.getQuantum(1.0), 0.0);
+        assertEquals(1.0 / 64.0, VoiLutCache.getQuantum(-4.0), 0.0);
+        // 400 / 512 => 0.5
+        assertEquals(0.5, VoiLutCache.getQuantum(400.0), 0.0);
+        // 2000 / 512 => 2.0
+        assertEquals(2.0, VoiLutCache.getQuantum(2000.0), 0.0);
+
+        // Always lower than half an output gray level
+        for (double w = 2.0; w < 70000.0; w *= 1.7) {
+            assertTrue(VoiLutCache.getQuantum(w) * 255.0 / w <= 0.5);
+        }
+    }
+
+    @Test
+    public void testQuantize() throws Exception {
+        assertEquals(400.0, VoiLutCache.quantize(400.2, 0.5), 0.0);
+        assertEquals(400.5, VoiLutCache.quantize(400.3, 0.5), 0.0);
+        assertEquals(-40.0, VoiLutCache.quantize(-40.9, 2.0), 0.0);
+    }
+
+    @Test
+    public void testKey() throws Exception {
+        VoiLutCache.Key k1 = key(400.0, 40.0, false, false);
+        VoiLutCache.Key k2 = key(400.0, 40.0, false, false);
+        VoiLutCache.Key k3 = new VoiLutCache.Key(LutShape.LINEAR, 400.0, 40.0, -1024, 3071, 8, false, true, false,
+            false);
+
+        assertEquals(k1, k2);
+        assertEquals(k1.hashCode(), k2.hashCode());
+        assertNotEquals(k1, k3);
+        assertNotEquals(k1, key(400.0, 40.0, true, false));
+        assertNotEquals(k1, key(400.0, 40.0, false, true));
+        assertTrue(k1.isSameFamily(key(350.0, 60.0, false, false)));
+        assertFalse(k1.isSameFamily(key(400.0, 40.0, false, true)));
+        assertEquals(key(410.0, 40.0, false, false), k1.derive(10.0, 0.0));
+    }
+
+    @Test
+    public void testKeyMinimumWindow() throws Exception {
+        // Limited to 1 and still on the quantization grid
+        VoiLutCache.Key k = key(0.2, 40.0, false, false);
+        assertEquals(key(1.0, 40.0, false, false), k);
+        assertEquals(k, key(3.0, 40.0, false, false).derive(-2.9, 0.0));
+        assertEquals(k, k.derive(-5.0, 0.0));
+    }
+
+    @Test
+    public void testCachedLut() throws Exception {
+        VoiLutCache.clear();
+        LookupTableCV lut1 = getLut(400.0, 40.0, false, false);
+        // Same quantized window and level
+        LookupTableCV lut2 = getLut(400.2, 40.1, false, false);
+        assertEquals(1, VoiLutCache.size());
+        assertArrayEquals(lut1.getByteData(0), lut2.getByteData(0));
+
+        // Each call gets its own copy
+        assertNotSame(lut1, lut2);
+        assertNotSame(lut1.getByteData(0), lut2.getByteData(0));
+        lut1.getByteData(0)[0] = (byte) 0x7f;
+        assertArrayEquals(lut2.getByteData(0), getLut(400.0, 40.0, false, false).getByteData(0));
+
+        // Padding, filling outside and inversion are different entries
+        getLut(400.0, 40.0, false, true);
+        assertEquals(2, VoiLutCache.size());
+        getLut(400.0, 40.0, true, false);
+        assertEquals(3, VoiLutCache.size());
+        LookupTableCV inverse = VoiLutCache.getWindowLevelLut(LutShape.LINEAR, 400.0, 40.0, -1024, 3071, 8, false,
+            true, false, false);
+        assertEquals(4, VoiLutCache.size());
+        assertNotEquals(lut2.getByteData(0)[0], inverse.getByteData(0)[0]);
+        VoiLutCache.clear();
+    }
+
+    private static VoiLutCache.Key key(double window, double level, boolean fillOutside, boolean padding) {
+        return VoiLutCache.Key.of(LutShape.LINEAR, window, level, -1024, 3071, 8, false, false, fillOutside, padding);
+    }
+
+    private static LookupTableCV getLut(double window, double level, boolean fillOutside, boolean padding) {
+        return VoiLutCache.getWindowLevelLut(LutShape.LINEAR, window, level, -1024, 3071, 8, false, false,
+            fillOutside, padding);
+    }
+}
@@ -57,6 +57,7 @@ import org.weasis.core.api.media.data.TagW;
 import org.weasis.core.api.media.data.Thumbnail;
 import org.weasis.core.api.service.BundleTools;
 import org.weasis.core.api.util.GzipManager;
+import org.weasis.core.util.LangUtil;
 import org.weasis.core.util.StringUtil;
 import org.weasis.core.api.util.ThreadUtil;
 import org.weasis.core.ui.docking.UIManager;
@@ -920,6 +921,11 @@ public class DicomModel implements TreeModel, DataExplorerModel {
         if (firstMedia.getClass() != media.getClass()) {
             return false;
         }
+        // A preview is replaced in place by its original instance and may not have the attributes of the rules
+        if (LangUtil.getNULLtoFalse((Boolean) firstMedia.getTagValue(TagW.LossyPreview))
+            || LangUtil.getNULLtoFalse((Boolean) media.getTagValue(TagW.LossyPreview))) {
+            return true;
+        }
 
         for (Rule rule : list) {
             if (!rule.isTagValueMatching(firstMedia, media)) {
@@ -95,27 +95,43 @@ public class LoadLocalDicom extends ExplorerTask<Boolean, String> {
                     folders.add(file[i]);
                 }
             } else {
-                if (file[i].canRead()) {
-                    if (FileUtil.isFileExtensionMatching(file[i], DicomCodec.FILE_EXTENSIONS)
-                        || MimeInspector.isMatchingMimeTypeFromMagicNumber(file[i], DicomMediaIO.DICOM_MIMETYPE)) {
-                        DicomMediaIO loader = new DicomMediaIO(file[i]);
-                        if (loader.isReadableDicom()) {
-                            // Issue: must handle adding image to viewer and building thumbnail (middle image)
-                            SeriesThumbnail t = buildDicomStructure(loader, openPlugin);
-                            if (t != null) {
-                                thumbs.add(t);
-                            }
+                SeriesThumbnail t = addDicomFile(file[i]);
+                if (t != null) {
+                    thumbs.add(t);
+                }
+            }
+        }
+        rebuildThumbnails(thumbs);
+        for (int i = 0; i < folders.size(); i++) {
+            addSelectionAndnotify(folders.get(i).listFiles(), false);
+        }
+    }
 
-                            File gpxFile = new File(file[i].getPath() + ".xml"); //$NON-NLS-1$
-                            GraphicModel graphicModel = XmlSerializer.readPresentationModel(gpxFile);
-                            if (graphicModel != null) {
-                                loader.setTag(TagW.PresentationModel, graphicModel);
-                            }
-                        }
-                    }
+    /**
+     * Adds a DICOM file to the model.
+     *
+     * @return the thumbnail of the new series (to be rebuilt when the series is loaded) or null
+     */
+    protected SeriesThumbnail addDicomFile(File file) {
+        SeriesThumbnail thumb = null;
+        if (file.canRead() && (FileUtil.isFileExtensionMatching(file, DicomCodec.FILE_EXTENSIONS)
+            || MimeInspector.isMatchingMimeTypeFromMagicNumber(file, DicomMediaIO.DICOM_MIMETYPE))) {
+            DicomMediaIO loader = new DicomMediaIO(file);
+            if (loader.isReadableDicom()) {
+                // Issue: must handle adding image to viewer and building thumbnail (middle image)
+                thumb = buildDicomStructure(loader, openPlugin);
+
+                File gpxFile = new File(file.getPath() + ".xml"); //$NON-NLS-1$
+                GraphicModel graphicModel = XmlSerializer.readPresentationModel(gpxFile);
+                if (graphicModel != null) {
+                    loader.setTag(TagW.PresentationModel, graphicModel);
                 }
             }
         }
+        return thumb;
+    }
+
+    protected static void rebuildThumbnails(Collection<SeriesThumbnail> thumbs) {
         for (final SeriesThumbnail t : thumbs) {
             MediaSeries<MediaElement> series = t.getSeries();
             // Avoid to rebuild most of CR series thumbnail
@@ -123,9 +139,6 @@ public class LoadLocalDicom extends ExplorerTask<Boolean, String> {
                 GuiExecutor.instance().execute(t::reBuildThumbnail);
             }
         }
-        for (int i = 0; i < folders.size(); i++) {
-            addSelectionAndnotify(folders.get(i).listFiles(), false);
-        }
     }
 
     private SeriesThumbnail buildDicomStructure(DicomMediaIO dicomReader, boolean open) {
@@ -0,0 +1,138 @@
+/*
+ * Copyright (c) 2009-2020 Weasis Team and other contributors.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse
+ * Public License 2.0 which is available at http://www.eclipse.org/legal/epl-2.0.
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+
+package org.weasis.dicom.explorer.rs;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+
+import org.dcm4che3.data.Attributes;
+import org.dcm4che3.data.Tag;
+import org.weasis.core.api.media.data.MediaSeriesGroup;
+import org.weasis.core.api.media.data.Series;
+import org.weasis.core.api.service.BundleTools;
+import org.weasis.core.api.util.ThreadUtil;
+import org.weasis.core.util.StringUtil;
+import org.weasis.dicom.codec.TagD;
+import org.weasis.dicom.explorer.DicomModel;
+import org.weasis.dicom.explorer.wado.LoadSeries;
+
+/**
+ * Selects the prior studies of the patients which are relevant for comparison with the studies being opened. The
+ * relevant series of these studies are downloaded in the background, after the series of the opened studies.
+ * <p>
+ * The modalities and the body parts are taken from the series being opened. A criterion is not applied when its values
+ * are not known yet (e.g. the body part of a series from a manifest before its first image is downloaded).
+ * <p>
+ * Preferences:
+ * <ul>
+ * <li>prefetch.priors: prefetch the relevant prior studies when studies are opened (default false)</li>
+ * <li>prefetch.priors.max: maximum number of prior studies by patient, the most recent ones (default 2)</li>
+ * <li>prefetch.priors.same.modality: the prior series must have a modality of the opened series (default true)</li>
+ * <li>prefetch.priors.same.body.part: the prior series must have a body part of the opened series (default false)</li>
+ * <li>prefetch.priors.dicomweb.url: the DICOMweb service queried for the studies opened from a manifest</li>
+ * </ul>
+ */
+public class RelevantPriors {
+
+    public static final String P_PREFETCH = "prefetch.priors"; //$NON-NLS-1$
+    public static final String P_MAX_STUDIES = "prefetch.priors.max"; //$NON-NLS-1$
+    public static final String P_SAME_MODALITY = "prefetch.priors.same.modality"; //$NON-NLS-1$
+    public static final String P_SAME_BODY_PART = "prefetch.priors.same.body.part"; //$NON-NLS-1$
+    public static final String P_DICOMWEB_URL = "prefetch.priors.dicomweb.url"; //$NON-NLS-1$
+
+    // One query at a time, the prefetch must not slow down the opened studies
+    public static final ExecutorService PREFETCH_EXECUTOR =
+        ThreadUtil.buildNewSingleThreadExecutor("Prior Prefetch"); //$NON-NLS-1$
+
+    private final Set<MediaSeriesGroup> patients = new LinkedHashSet<>();
+    private final Set<String> studyUIDs = new HashSet<>();
+    private final Set<String> modalities = new HashSet<>();
+    private final Set<String> bodyParts = new HashSet<>();
+    private final int maxStudies;
+    private final boolean sameModality;
+    private final boolean sameBodyPart;
+
+    public RelevantPriors(DicomModel dicomModel, Collection<LoadSeries> openedSeries) {
+        this.maxStudies = BundleTools.SYSTEM_PREFERENCES.getIntProperty(P_MAX_STUDIES, 2);
+        this.sameModality = BundleTools.SYSTEM_PREFERENCES.getBooleanProperty(P_SAME_MODALITY, true);
+        this.sameBodyPart = BundleTools.SYSTEM_PREFERENCES.getBooleanProperty(P_SAME_BODY_PART, false);
+        for (LoadSeries loadSeries : openedSeries) {
+            Series<?> series = loadSeries.getDicomSeries();
+            MediaSeriesGroup patient = dicomModel.getParent(series, DicomModel.patient);
+            MediaSeriesGroup study = dicomModel.getParent(series, DicomModel.study);
+            if (patient == null || study == null) {
+                continue;
+            }
+            patients.add(patient);
+            studyUIDs.add(TagD.getTagValue(study, Tag.StudyInstanceUID, String.class));
+            String modality = TagD.getTagValue(series, Tag.Modality, String.class);
+            if (StringUtil.hasText(modality) && !"PR".equals(modality) && !"KO".equals(modality)) { //$NON-NLS-1$ //$NON-NLS-2$
+                modalities.add(modality);
+            }
+            String bodyPart = TagD.getTagValue(series, Tag.BodyPartExamined, String.class);
+            if (StringUtil.hasText(bodyPart)) {
+                bodyParts.add(bodyPart.toUpperCase(Locale.ENGLISH));
+            }
+        }
+    }
+
+    public static boolean isEnabled() {
+        return BundleTools.SYSTEM_PREFERENCES.getBooleanProperty(P_PREFETCH, false);
+    }
+
+    public Set<MediaSeriesGroup> getPatients() {
+        return patients;
+    }
+
+    public int getMaxStudies() {
+        return maxStudies;
+    }
+
+    /**
+     * @return true when the study is not opened and may contain relevant series
+     */
+    public boolean isCandidate(Attributes study) {
+        if (studyUIDs.contains(study.getString(Tag.StudyInstanceUID))) {
+            return false;
+        }
+        String[] values = study.getStrings(Tag.ModalitiesInStudy);
+        if (sameModality && !modalities.isEmpty() && values != null && values.length > 0) {
+            for (String m : values) {
+                if (modalities.contains(m)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return true when the series is relevant for comparison with the opened series
+     */
+    public boolean isRelevant(Attributes series) {
+        String modality = series.getString(Tag.Modality);
+        if ("PR".equals(modality) || "KO".equals(modality)) { //$NON-NLS-1$ //$NON-NLS-2$
+            return false;
+        }
+        if (sameModality && !modalities.isEmpty() && !modalities.contains(modality)) {
+            return false;
+        }
+        if (sameBodyPart && !bodyParts.isEmpty()) {
+            String bodyPart = series.getString(Tag.BodyPartExamined);
+            return bodyPart != null && bodyParts.contains(bodyPart.toUpperCase(Locale.ENGLISH));
+        }
+        return true;
+    }
+}
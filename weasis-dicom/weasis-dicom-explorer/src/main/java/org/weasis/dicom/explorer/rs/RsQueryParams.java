@@ -11,16 +11,18 @@ package org.weasis.dicom.explorer.rs;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Properties;
+import java.util.Set;
 
 import javax.swing.JOptionPane;
 
-import org.dcm4che3.data.Tag;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.weasis.core.api.gui.util.GuiExecutor;
@@ -28,14 +30,12 @@ import org.weasis.core.util.LangUtil;
 import org.weasis.core.util.StringUtil;
 import org.weasis.core.util.StringUtil.Suffix;
 import org.weasis.core.ui.docking.UIManager;
-import org.weasis.dicom.codec.TagD;
 import org.weasis.dicom.explorer.DicomModel;
 import org.weasis.dicom.explorer.ExplorerTask;
 import org.weasis.dicom.explorer.Messages;
 import org.weasis.dicom.explorer.wado.DownloadManager;
 import org.weasis.dicom.explorer.wado.DownloadManager.PriorityTaskComparator;
 import org.weasis.dicom.explorer.wado.LoadSeries;
-import org.weasis.dicom.mf.WadoParameters;
 import org.weasis.dicom.web.InvokeImageDisplay;
 
 public class RsQueryParams extends ExplorerTask<Boolean, String> {
@@ -119,17 +119,10 @@ public class RsQueryParams extends ExplorerTask<Boolean, String> {
 
     @Override
     protected Boolean doInBackground() throws Exception {
+        // The series are displayed in the explorer while querying, the downloads start when all the instances are known
         fillPatientList();
-        WadoParameters wp = new WadoParameters("", true, true); //$NON-NLS-1$
-        getRetrieveHeaders().forEach(wp::addHttpTag);
-        wp.addHttpTag("Accept", "image/jpeg"); //$NON-NLS-1$ //$NON-NLS-2$
-        
+
         for (final LoadSeries loadSeries : seriesMap.values()) {
-            String modality = TagD.getTagValue(loadSeries.getDicomSeries(), Tag.Modality, String.class);
-            boolean ps = modality != null && ("PR".equals(modality) || "KO".equals(modality)); //$NON-NLS-1$ //$NON-NLS-2$
-            if (!ps) {
-                loadSeries.startDownloadImageReference(wp);
-            }
             DownloadManager.addLoadSeries(loadSeries, dicomModel, loadSeries.isStartDownloading());
         }
 
@@ -138,9 +131,31 @@ public class RsQueryParams extends ExplorerTask<Boolean, String> {
         Collections.sort(DownloadManager.TASKS, Collections.reverseOrder(new PriorityTaskComparator()));
 
         DownloadManager.CONCURRENT_EXECUTOR.prestartAllCoreThreads();
+
+        // All the studies of the patient are already loaded
+        if (RelevantPriors.isEnabled() && !InvokeImageDisplay.PATIENT_LEVEL.equals(getRequestType())) {
+            List<LoadSeries> openedSeries = new ArrayList<>(seriesMap.values());
+            RelevantPriors.PREFETCH_EXECUTOR.execute(() -> loadRelevantPriors(openedSeries));
+        }
         return true;
     }
 
+    /**
+     * Adds the relevant prior studies of the patients of the opened series. Their relevant series are queued after the
+     * series already downloading.
+     */
+    public void loadRelevantPriors(Collection<LoadSeries> openedSeries) {
+        Set<LoadSeries> loaded = new HashSet<>(seriesMap.values());
+        arcConfig.buildFromRelevantPriors(new RelevantPriors(dicomModel, openedSeries));
+        for (LoadSeries loadSeries : seriesMap.values()) {
+            if (!loaded.contains(loadSeries)) {
+                DownloadManager.addLoadSeries(loadSeries, dicomModel, loadSeries.isStartDownloading());
+            }
+        }
+        Collections.sort(DownloadManager.TASKS, Collections.reverseOrder(new PriorityTaskComparator()));
+        DownloadManager.CONCURRENT_EXECUTOR.prestartAllCoreThreads();
+    }
+
     private void fillPatientList() {
         try {
             String requestType = getRequestType();
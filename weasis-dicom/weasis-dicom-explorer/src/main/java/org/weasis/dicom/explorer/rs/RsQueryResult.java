@@ -10,6 +10,7 @@
 package org.weasis.dicom.explorer.rs;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.net.URL;
 import java.net.URLEncoder;
@@ -18,26 +19,36 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.zip.GZIPInputStream;
 
 import javax.json.Json;
 
 import org.dcm4che3.data.Attributes;
 import org.dcm4che3.data.Tag;
 import org.dcm4che3.json.JSONReader;
-import org.dcm4che3.json.JSONReader.Callback;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.weasis.core.api.gui.util.GuiExecutor;
 import org.weasis.core.api.media.data.MediaSeriesGroup;
 import org.weasis.core.api.media.data.MediaSeriesGroupNode;
 import org.weasis.core.api.media.data.Series;
 import org.weasis.core.api.media.data.TagW;
 import org.weasis.core.api.service.BundleTools;
 import org.weasis.core.api.util.ClosableURLConnection;
-import org.weasis.core.api.util.NetworkUtil;
+import org.weasis.core.api.util.HttpConnectionPool;
+import org.weasis.core.api.util.ThreadUtil;
 import org.weasis.core.api.util.URLParameters;
+import org.weasis.core.util.FileUtil;
 import org.weasis.core.util.LangUtil;
 import org.weasis.core.util.StringUtil;
 import org.weasis.dicom.codec.DicomSeries;
@@ -56,19 +67,45 @@ import org.weasis.dicom.mf.WadoParameters;
 import org.weasis.dicom.util.DateUtil;
 import org.weasis.dicom.web.Multipart;
 
+/**
+ * Builds the patients, studies and series from QIDO-RS queries.
+ * <p>
+ * The queries of the hierarchy (studies, series of each study, instances of each series) are executed concurrently by
+ * a bounded pool. The series of a study are merged into the model in one batch and are displayed in the explorer before
+ * the queries of their instances are completed.
+ * <p>
+ * The JSON responses are parsed as a stream: when the whole list is not required (e.g. for sorting the studies of a
+ * patient), each study or instance is added to the model as soon as it is read, without keeping the response in memory.
+ * <p>
+ * Preferences:
+ * <ul>
+ * <li>dicomweb.query.concurrency: maximum number of simultaneous QIDO-RS queries (default 4)</li>
+ * <li>dicomweb.query.gzip: request the responses compressed with gzip (default true)</li>
+ * </ul>
+ */
 public class RsQueryResult extends AbstractQueryResult {
     private static final Logger LOGGER = LoggerFactory.getLogger(RsQueryResult.class);
 
+    public static final String P_QUERY_CONCURRENCY = "dicomweb.query.concurrency"; //$NON-NLS-1$
+    public static final String P_QUERY_GZIP = "dicomweb.query.gzip"; //$NON-NLS-1$
+
+    private static final ExecutorService QUERY_EXECUTOR =
+        ThreadUtil.buildNewFixedThreadExecutor(Math.max(1, BundleTools.SYSTEM_PREFERENCES.getIntProperty(
+            P_QUERY_CONCURRENCY, 4)), "QIDO-RS Query"); //$NON-NLS-1$
+    private static final CompletableFuture<Void> DONE = CompletableFuture.completedFuture(null);
+
     private static final boolean multipleParams =
         LangUtil.getEmptytoFalse(System.getProperty("dicom.qido.query.multi.params")); //$NON-NLS-1$
     private static final String STUDY_QUERY = multiParams(
         "&includefield=00080020,00080030,00080050,00080061,00080090,00081030,00100010,00100020,00100021,00100030,00100040,0020000D,00200010"); //$NON-NLS-1$
-    private static final String SERIES_QUERY = multiParams("0008103E,00080060,0020000E,00200011,00081190"); //$NON-NLS-1$
+    private static final String SERIES_QUERY =
+        multiParams("0008103E,00080060,0020000E,00200011,00081190,00180015"); //$NON-NLS-1$
     private static final String INSTANCE_QUERY = multiParams("00080018,00200013,00081190"); //$NON-NLS-1$
     private static final String QIDO_REQUEST = "QIDO-RS request: {}"; //$NON-NLS-1$
 
     private final RsQueryParams rsQueryParams;
     private final WadoParameters wadoParameters;
+    private final WadoParameters thumbnailParameters;
     private final boolean defaultStartDownloading;
 
     public RsQueryResult(RsQueryParams rsQueryParams) {
@@ -78,6 +115,9 @@ public class RsQueryResult extends AbstractQueryResult {
         // Accept only multipart/related and retrieve dicom at the stored syntax
         wadoParameters.addHttpTag("Accept", Multipart.MULTIPART_RELATED + ";type=\"" + Multipart.ContentType.DICOM //$NON-NLS-1$ //$NON-NLS-2$
             + "\";" + rsQueryParams.getProperties().getProperty(RsQueryParams.P_ACCEPT_EXT)); //$NON-NLS-1$
+        this.thumbnailParameters = new WadoParameters("", true, true); //$NON-NLS-1$
+        rsQueryParams.getRetrieveHeaders().forEach(thumbnailParameters::addHttpTag);
+        thumbnailParameters.addHttpTag("Accept", "image/jpeg"); //$NON-NLS-1$ //$NON-NLS-2$
         defaultStartDownloading =
             BundleTools.SYSTEM_PREFERENCES.getBooleanProperty(SeriesDownloadPrefView.DOWNLOAD_IMMEDIATELY, true);
     }
@@ -92,6 +132,7 @@ public class RsQueryResult extends AbstractQueryResult {
     }
 
     public void buildFromPatientID(List<String> patientIDs) {
+        List<CompletableFuture<Void>> queries = new ArrayList<>();
         for (String patientID : LangUtil.emptyIfNull(patientIDs)) {
             if (!StringUtil.hasText(patientID)) {
                 continue;
@@ -112,29 +153,136 @@ public class RsQueryResult extends AbstractQueryResult {
                 buf.append(STUDY_QUERY);
                 buf.append(rsQueryParams.getProperties().getProperty(RsQueryParams.P_QUERY_EXT, "")); //$NON-NLS-1$
 
-                LOGGER.debug(QIDO_REQUEST, buf);
-                List<Attributes> studies = parseJSON(buf.toString());
-                if (!studies.isEmpty()) {
+                String msg = "QIDO-RS with PatientID {}"; //$NON-NLS-1$
+                queries.add(query(buf.toString(), msg, patientID).thenCompose(studies -> {
+                    if (studies.isEmpty()) {
+                        return DONE;
+                    }
                     Collections.sort(studies, getStudyComparator());
                     applyAllFilters(studies);
-                }
+                    return fillSeries(studies, defaultStartDownloading);
+                }));
             } catch (Exception e) {
                 LOGGER.error("QIDO-RS with PatientID {}", patientID, e); //$NON-NLS-1$
             }
         }
+        await(queries);
+    }
+
+    /**
+     * Adds the relevant prior studies of the patients. Only their relevant series are downloaded, the most recent
+     * studies are loaded first.
+     */
+    public void buildFromRelevantPriors(RelevantPriors priors) {
+        for (MediaSeriesGroup patient : priors.getPatients()) {
+            String patientID = TagD.getTagValue(patient, Tag.PatientID, String.class);
+            if (!StringUtil.hasText(patientID)) {
+                continue;
+            }
+            StringBuilder buf = new StringBuilder(rsQueryParams.getBaseUrl());
+            buf.append("/studies?00100020="); //$NON-NLS-1$
+            try {
+                buf.append(URLEncoder.encode(patientID, StandardCharsets.UTF_8.toString()));
+                String issuer = TagD.getTagValue(patient, Tag.IssuerOfPatientID, String.class);
+                if (StringUtil.hasText(issuer)) {
+                    buf.append("&00100021="); //$NON-NLS-1$
+                    buf.append(URLEncoder.encode(issuer, StandardCharsets.UTF_8.toString()));
+                }
+                buf.append(STUDY_QUERY);
+                buf.append(rsQueryParams.getProperties().getProperty(RsQueryParams.P_QUERY_EXT, "")); //$NON-NLS-1$
+
+                List<Attributes> studies =
+                    query(buf.toString(), "QIDO-RS priors with PatientID {}", patientID).join(); //$NON-NLS-1$
+                studies.removeIf(s -> !priors.isCandidate(s));
+                Collections.sort(studies, getStudyComparator());
+                int nbStudies = 0;
+                for (Attributes study : studies) {
+                    if (nbStudies >= priors.getMaxStudies()) {
+                        break;
+                    }
+                    List<Attributes> series = querySeries(study).join();
+                    if (series.stream().anyMatch(priors::isRelevant)) {
+                        nbStudies++;
+                        await(Collections.singletonList(addSeries(study, series, priors::isRelevant)));
+                    }
+                }
+            } catch (Exception e) {
+                LOGGER.error("QIDO-RS priors with PatientID {}", patientID, e); //$NON-NLS-1$
+            }
+        }
     }
 
-    private List<Attributes> parseJSON(String url) throws IOException {
-        List<Attributes> items = new ArrayList<>();
+    private CompletableFuture<List<Attributes>> query(String url, String errorMessage, String uid) {
+        return CompletableFuture.supplyAsync(() -> {
+            List<Attributes> items = new ArrayList<>();
+            try {
+                LOGGER.debug(QIDO_REQUEST, url);
+                parseJSON(url, items::add);
+                return items;
+            } catch (Exception e) {
+                LOGGER.error(errorMessage, uid, e);
+                return Collections.emptyList();
+            }
+        }, QUERY_EXECUTOR);
+    }
+
+    /**
+     * Gives each dataset of the response to the consumer as soon as it is parsed, in the thread of the query. The
+     * datasets already given are kept when the query fails.
+     */
+    private CompletableFuture<Void> stream(String url, String errorMessage, String uid, Consumer<Attributes> consumer) {
+        return CompletableFuture.runAsync(() -> {
+            try {
+                LOGGER.debug(QIDO_REQUEST, url);
+                parseJSON(url, consumer);
+            } catch (Exception e) {
+                LOGGER.error(errorMessage, uid, e);
+            }
+        }, QUERY_EXECUTOR);
+    }
+
+    private static CompletableFuture<Void> allOf(List<CompletableFuture<Void>> futures) {
+        if (futures.isEmpty()) {
+            return DONE;
+        }
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture[futures.size()]));
+    }
+
+    /**
+     * Waits for the queries and for all the queries started from their results.
+     */
+    private static void await(List<CompletableFuture<Void>> queries) {
+        try {
+            allOf(queries).join();
+        } catch (CompletionException e) {
+            LOGGER.error("QIDO-RS query", e.getCause()); //$NON-NLS-1$
+        }
+    }
+
+    private void parseJSON(String url, Consumer<Attributes> consumer) throws IOException {
+        Map<String, String> headers = new HashMap<>(rsQueryParams.getQueryHeaders());
+        if (BundleTools.SYSTEM_PREFERENCES.getBooleanProperty(P_QUERY_GZIP, true)) {
+            headers.putIfAbsent("Accept-Encoding", "gzip"); //$NON-NLS-1$ //$NON-NLS-2$
+        }
         try (ClosableURLConnection httpCon =
-            NetworkUtil.getUrlConnection(new URL(url), new URLParameters(rsQueryParams.getQueryHeaders()));
+            HttpConnectionPool.getInstance().getConnection(new URL(url), new URLParameters(headers));
                         InputStreamReader instream =
-                            new InputStreamReader(httpCon.getInputStream(), StandardCharsets.UTF_8)) {
+                            new InputStreamReader(getDecodedStream(httpCon), StandardCharsets.UTF_8)) {
             JSONReader reader = new JSONReader(Json.createParser(instream));
-            Callback callback = (fmi, dataset) -> items.add(dataset);
-            reader.readDatasets(callback);
+            reader.readDatasets((fmi, dataset) -> consumer.accept(dataset));
+        }
+    }
+
+    /**
+     * @return the stream of the response, uncompressed when the server has applied gzip
+     */
+    private static InputStream getDecodedStream(ClosableURLConnection httpCon) throws IOException {
+        InputStream in = httpCon.getInputStream();
+        String encoding = httpCon.getUrlConnection().getContentEncoding();
+        if ("gzip".equalsIgnoreCase(encoding) || "x-gzip".equalsIgnoreCase(encoding)) { //$NON-NLS-1$ //$NON-NLS-2$
+            return new GZIPInputStream(in, FileUtil.FILE_BUFFER);
         }
-        return items;
+        return in;
     }
 
     private void applyAllFilters(List<Attributes> studies) {
@@ -228,10 +376,6 @@ public class RsQueryResult extends AbstractQueryResult {
                 studies.remove(i);
             }
         }
-
-        for (Attributes studyDataSet : studies) {
-            fillSeries(studyDataSet, defaultStartDownloading);
-        }
     }
 
     private static Comparator<Attributes> getStudyComparator() {
@@ -271,6 +415,7 @@ public class RsQueryResult extends AbstractQueryResult {
     }
 
     public void buildFromStudyInstanceUID(List<String> studyInstanceUIDs, boolean startDownloading) {
+        List<CompletableFuture<Void>> queries = new ArrayList<>();
         for (String studyInstanceUID : LangUtil.emptyIfNull(studyInstanceUIDs)) {
             if (!StringUtil.hasText(studyInstanceUID)) {
                 continue;
@@ -281,19 +426,14 @@ public class RsQueryResult extends AbstractQueryResult {
             buf.append(STUDY_QUERY);
             buf.append(rsQueryParams.getProperties().getProperty(RsQueryParams.P_QUERY_EXT, "")); //$NON-NLS-1$
 
-            try {
-                LOGGER.debug(QIDO_REQUEST, buf);
-                List<Attributes> studies = parseJSON(buf.toString());
-                for (Attributes studyDataSet : studies) {
-                    fillSeries(studyDataSet, startDownloading);
-                }
-            } catch (Exception e) {
-                LOGGER.error("QIDO-RS with studyUID {}", studyInstanceUID, e); //$NON-NLS-1$
-            }
+            String msg = "QIDO-RS with studyUID {}"; //$NON-NLS-1$
+            queries.add(fillSeries(buf.toString(), msg, studyInstanceUID, startDownloading));
         }
+        await(queries);
     }
 
     public void buildFromStudyAccessionNumber(List<String> accessionNumbers) {
+        List<CompletableFuture<Void>> queries = new ArrayList<>();
         for (String accessionNumber : LangUtil.emptyIfNull(accessionNumbers)) {
             if (!StringUtil.hasText(accessionNumber)) {
                 continue;
@@ -304,22 +444,17 @@ public class RsQueryResult extends AbstractQueryResult {
             buf.append(STUDY_QUERY);
             buf.append(rsQueryParams.getProperties().getProperty(RsQueryParams.P_QUERY_EXT, "")); //$NON-NLS-1$
 
-            try {
-                LOGGER.debug(QIDO_REQUEST, buf);
-                List<Attributes> studies = parseJSON(buf.toString());
-                for (Attributes studyDataSet : studies) {
-                    fillSeries(studyDataSet, defaultStartDownloading);
-                }
-            } catch (Exception e) {
-                LOGGER.error("QIDO-RS with AccessionNumber {}", accessionNumber, e); //$NON-NLS-1$
-            }
+            queries.add(fillSeries(buf.toString(), "QIDO-RS with AccessionNumber {}", accessionNumber, //$NON-NLS-1$
+                defaultStartDownloading));
         }
+        await(queries);
     }
 
     public void buildFromSeriesInstanceUID(List<String> seriesInstanceUIDs) {
         boolean wholeStudy =
             LangUtil.getEmptytoFalse(rsQueryParams.getProperties().getProperty(RsQueryParams.P_SHOW_WHOLE_STUDY));
-        Set<String> studyHashSet = new LinkedHashSet<>();
+        Set<String> studyHashSet = Collections.synchronizedSet(new LinkedHashSet<>());
+        List<CompletableFuture<Void>> queries = new ArrayList<>();
 
         for (String seriesInstanceUID : LangUtil.emptyIfNull(seriesInstanceUIDs)) {
             if (!StringUtil.hasText(seriesInstanceUID)) {
@@ -333,30 +468,25 @@ public class RsQueryResult extends AbstractQueryResult {
             buf.append(",0008103E,00080060,00081190,00200011"); //$NON-NLS-1$
             buf.append(rsQueryParams.getProperties().getProperty(RsQueryParams.P_QUERY_EXT, "")); //$NON-NLS-1$
 
-            try {
-                LOGGER.debug(QIDO_REQUEST, buf);
-                List<Attributes> series = parseJSON(buf.toString());
-                if (!series.isEmpty()) {
-                    Attributes dataset = series.get(0);
-                    MediaSeriesGroup patient = getPatient(dataset);
-                    MediaSeriesGroup study = getStudy(patient, dataset);
-                    for (Attributes seriesDataset : series) {
-                        Series<?> dicomSeries = getSeries(study, seriesDataset, defaultStartDownloading);
-                        fillInstance(seriesDataset, study, dicomSeries);
-                    }
-                    studyHashSet.add(dataset.getString(Tag.StudyInstanceUID));
+            String msg = "QIDO-RS with seriesUID {}"; //$NON-NLS-1$
+            queries.add(query(buf.toString(), msg, seriesInstanceUID).thenCompose(series -> {
+                if (series.isEmpty()) {
+                    return DONE;
                 }
-            } catch (Exception e) {
-                LOGGER.error("QIDO-RS with seriesUID {}", seriesInstanceUID, e); //$NON-NLS-1$
-            }
+                Attributes dataset = series.get(0);
+                studyHashSet.add(dataset.getString(Tag.StudyInstanceUID));
+                return addSeries(dataset, series, s -> defaultStartDownloading);
+            }));
         }
-        
+        await(queries);
+
         if (wholeStudy) {
             buildFromStudyInstanceUID(new ArrayList<>(studyHashSet), false);
         }
     }
 
     public void buildFromSopInstanceUID(List<String> sopInstanceUIDs) {
+        List<CompletableFuture<Void>> queries = new ArrayList<>();
         for (String sopInstanceUID : LangUtil.emptyIfNull(sopInstanceUIDs)) {
             if (!StringUtil.hasText(sopInstanceUID)) {
                 continue;
@@ -370,85 +500,152 @@ public class RsQueryResult extends AbstractQueryResult {
             buf.append(",00200013,00081190"); //$NON-NLS-1$
             buf.append(rsQueryParams.getProperties().getProperty(RsQueryParams.P_QUERY_EXT, "")); //$NON-NLS-1$
 
-            try {
-                LOGGER.debug(QIDO_REQUEST, buf);
-                List<Attributes> instances = parseJSON(buf.toString());
-                if (!instances.isEmpty()) {
-                    Attributes dataset = instances.get(0);
+            String msg = "QIDO-RS with sopInstanceUID {}"; //$NON-NLS-1$
+            queries.add(query(buf.toString(), msg, sopInstanceUID).thenCompose(instances -> {
+                if (instances.isEmpty()) {
+                    return DONE;
+                }
+                Attributes dataset = instances.get(0);
+                List<LoadSeries> newSeries = new ArrayList<>(1);
+                Series<?> dicomSeries;
+                synchronized (this) {
                     MediaSeriesGroup patient = getPatient(dataset);
                     MediaSeriesGroup study = getStudy(patient, dataset);
-                    Series<?> dicomSeries = getSeries(study, dataset, defaultStartDownloading);
-                    String seriesRetrieveURL = TagD.getTagValue(dicomSeries, Tag.RetrieveURL, String.class);
-                    SeriesInstanceList seriesInstanceList =
-                        (SeriesInstanceList) dicomSeries.getTagValue(TagW.WadoInstanceReferenceList);
-                    if (seriesInstanceList != null) {
-                        for (Attributes instanceDataSet : instances) {
-                            addSopInstance(instanceDataSet, seriesInstanceList, seriesRetrieveURL);
-                        }
-                    }
+                    dicomSeries = getSeries(study, dataset, defaultStartDownloading, newSeries);
                 }
-            } catch (Exception e) {
-                LOGGER.error("QIDO-RS with sopInstanceUID {}", sopInstanceUID, e); //$NON-NLS-1$
-            }
+                addSopInstances(instances, dicomSeries);
+                return allOf(showSeries(newSeries));
+            }));
         }
+        await(queries);
     }
 
-    private void fillSeries(Attributes studyDataSet, boolean startDownloading) {
+    private CompletableFuture<Void> fillSeries(List<Attributes> studies, boolean startDownloading) {
+        List<CompletableFuture<Void>> queries = new ArrayList<>(studies.size());
+        for (Attributes studyDataSet : studies) {
+            queries.add(fillSeries(studyDataSet, startDownloading));
+        }
+        return allOf(queries);
+    }
+
+    /**
+     * Queries the series of each study as soon as the study is read in the response.
+     */
+    private CompletableFuture<Void> fillSeries(String url, String errorMessage, String uid,
+        boolean startDownloading) {
+        List<CompletableFuture<Void>> queries = Collections.synchronizedList(new ArrayList<>());
+        return stream(url, errorMessage, uid, study -> queries.add(fillSeries(study, startDownloading)))
+            .thenCompose(v -> allOf(queries));
+    }
+
+    private CompletableFuture<Void> fillSeries(Attributes studyDataSet, boolean startDownloading) {
+        // Get patient from each study in case IssuerOfPatientID is different
+        return querySeries(studyDataSet)
+            .thenCompose(series -> series.isEmpty() ? DONE : addSeries(studyDataSet, series, s -> startDownloading));
+    }
+
+    private CompletableFuture<List<Attributes>> querySeries(Attributes studyDataSet) {
         String studyInstanceUID = studyDataSet.getString(Tag.StudyInstanceUID);
-        if (StringUtil.hasText(studyInstanceUID)) {
-            StringBuilder buf = new StringBuilder(rsQueryParams.getBaseUrl());
-            buf.append("/studies/"); //$NON-NLS-1$
-            buf.append(studyInstanceUID);
-            buf.append("/series?includefield="); //$NON-NLS-1$
-            buf.append(SERIES_QUERY);
-            buf.append(rsQueryParams.getProperties().getProperty(RsQueryParams.P_QUERY_EXT, "")); //$NON-NLS-1$
+        if (!StringUtil.hasText(studyInstanceUID)) {
+            return CompletableFuture.completedFuture(Collections.emptyList());
+        }
+        StringBuilder buf = new StringBuilder(rsQueryParams.getBaseUrl());
+        buf.append("/studies/"); //$NON-NLS-1$
+        buf.append(studyInstanceUID);
+        buf.append("/series?includefield="); //$NON-NLS-1$
+        buf.append(SERIES_QUERY);
+        buf.append(rsQueryParams.getProperties().getProperty(RsQueryParams.P_QUERY_EXT, "")); //$NON-NLS-1$
+
+        return query(buf.toString(), "QIDO-RS all series with studyUID {}", studyInstanceUID); //$NON-NLS-1$
+    }
 
-            try {
-                LOGGER.debug(QIDO_REQUEST, buf);
-                List<Attributes> series = parseJSON(buf.toString());
-                if (!series.isEmpty()) {
-                    // Get patient from each study in case IssuerOfPatientID is different
-                    MediaSeriesGroup patient = getPatient(studyDataSet);
-                    MediaSeriesGroup study = getStudy(patient, studyDataSet);
-                    for (Attributes seriesDataset : series) {
-                        Series<?> dicomSeries = getSeries(study, seriesDataset, startDownloading);
-                        fillInstance(seriesDataset, study, dicomSeries);
-                    }
-                }
-            } catch (Exception e) {
-                LOGGER.error("QIDO-RS all series with studyUID {}", studyInstanceUID, e); //$NON-NLS-1$
+    /**
+     * Merges the series of a study into the model in one batch, shows the new series and queries their instances.
+     *
+     * @param startDownloading
+     *            true when the series must be downloaded immediately
+     */
+    private CompletableFuture<Void> addSeries(Attributes studyDataSet, List<Attributes> series,
+        Predicate<Attributes> startDownloading) {
+        List<Series<?>> seriesList = new ArrayList<>(series.size());
+        List<LoadSeries> newSeries = new ArrayList<>(series.size());
+        synchronized (this) {
+            MediaSeriesGroup patient = getPatient(studyDataSet);
+            MediaSeriesGroup study = getStudy(patient, studyDataSet);
+            for (Attributes seriesDataset : series) {
+                seriesList.add(getSeries(study, seriesDataset, startDownloading.test(seriesDataset), newSeries));
             }
         }
+        List<CompletableFuture<Void>> queries = showSeries(newSeries);
+        for (int i = 0; i < series.size(); i++) {
+            queries.add(fillInstance(series.get(i), seriesList.get(i)));
+        }
+        return allOf(queries);
     }
 
-    private void fillInstance(Attributes seriesDataset, MediaSeriesGroup study, Series<?> dicomSeries) {
+    /**
+     * Shows the new series in the explorer, their thumbnails are retrieved from the series (WADO-RS).
+     *
+     * @return the tasks loading the thumbnails
+     */
+    private List<CompletableFuture<Void>> showSeries(List<LoadSeries> newSeries) {
+        List<CompletableFuture<Void>> thumbnails = new ArrayList<>();
+        List<LoadSeries> visible = new ArrayList<>(newSeries.size());
+        for (LoadSeries loadSeries : newSeries) {
+            String modality = TagD.getTagValue(loadSeries.getDicomSeries(), Tag.Modality, String.class);
+            if (!"PR".equals(modality) && !"KO".equals(modality)) { //$NON-NLS-1$ //$NON-NLS-2$
+                visible.add(loadSeries);
+                thumbnails.add(CompletableFuture
+                    .runAsync(() -> loadSeries.loadThumbnail(null, thumbnailParameters), QUERY_EXECUTOR));
+            }
+        }
+        if (!visible.isEmpty()) {
+            GuiExecutor.instance().execute(() -> visible.forEach(LoadSeries::addThumbnailToExplorer));
+        }
+        return thumbnails;
+    }
+
+    private CompletableFuture<Void> fillInstance(Attributes seriesDataset, Series<?> dicomSeries) {
         String serieInstanceUID = seriesDataset.getString(Tag.SeriesInstanceUID);
-        if (StringUtil.hasText(serieInstanceUID)) {
-            String seriesRetrieveURL = TagD.getTagValue(dicomSeries, Tag.RetrieveURL, String.class);
-            StringBuilder buf = new StringBuilder(seriesRetrieveURL);
-            buf.append("/instances?includefield="); //$NON-NLS-1$
-            buf.append(INSTANCE_QUERY);
-            buf.append(rsQueryParams.getProperties().getProperty(RsQueryParams.P_QUERY_EXT, "")); //$NON-NLS-1$
+        if (!StringUtil.hasText(serieInstanceUID)) {
+            return DONE;
+        }
+        String seriesRetrieveURL = TagD.getTagValue(dicomSeries, Tag.RetrieveURL, String.class);
+        StringBuilder buf = new StringBuilder(seriesRetrieveURL);
+        buf.append("/instances?includefield="); //$NON-NLS-1$
+        buf.append(INSTANCE_QUERY);
+        buf.append(rsQueryParams.getProperties().getProperty(RsQueryParams.P_QUERY_EXT, "")); //$NON-NLS-1$
+
+        SeriesInstanceList seriesInstanceList =
+            (SeriesInstanceList) dicomSeries.getTagValue(TagW.WadoInstanceReferenceList);
+        if (seriesInstanceList == null) {
+            return DONE;
+        }
+        // The instances are added while the response is parsed
+        String msg = "QIDO-RS all instances with seriesUID {}"; //$NON-NLS-1$
+        return stream(buf.toString(), msg, serieInstanceUID, instance -> {
+            // The same series can be filled by several queries
+            synchronized (seriesInstanceList) {
+                addSopInstance(instance, seriesInstanceList, seriesRetrieveURL);
+            }
+        });
+    }
 
-            try {
-                LOGGER.debug(QIDO_REQUEST, buf);
-                List<Attributes> instances = parseJSON(buf.toString());
-                if (!instances.isEmpty()) {
-                    SeriesInstanceList seriesInstanceList =
-                        (SeriesInstanceList) dicomSeries.getTagValue(TagW.WadoInstanceReferenceList);
-                    if (seriesInstanceList != null) {
-                        for (Attributes instanceDataSet : instances) {
-                            addSopInstance(instanceDataSet, seriesInstanceList, seriesRetrieveURL);
-                        }
-                    }
+    private static void addSopInstances(List<Attributes> instances, Series<?> dicomSeries) {
+        SeriesInstanceList seriesInstanceList =
+            (SeriesInstanceList) dicomSeries.getTagValue(TagW.WadoInstanceReferenceList);
+        if (seriesInstanceList != null && !instances.isEmpty()) {
+            String seriesRetrieveURL = TagD.getTagValue(dicomSeries, Tag.RetrieveURL, String.class);
+            // The same series can be filled by several queries
+            synchronized (seriesInstanceList) {
+                for (Attributes instanceDataSet : instances) {
+                    addSopInstance(instanceDataSet, seriesInstanceList, seriesRetrieveURL);
                 }
-            } catch (Exception e) {
-                LOGGER.error("QIDO-RS all instances with seriesUID {}", serieInstanceUID, e); //$NON-NLS-1$
             }
         }
     }
 
-    private void addSopInstance(Attributes instanceDataSet, SeriesInstanceList seriesInstanceList,
+    private static void addSopInstance(Attributes instanceDataSet, SeriesInstanceList seriesInstanceList,
         String seriesRetrieveURL) {
         String sopUID = instanceDataSet.getString(Tag.SOPInstanceUID);
         Integer frame = DicomMediaUtils.getIntegerFromDicomElement(instanceDataSet, Tag.InstanceNumber, null);
@@ -516,7 +713,8 @@ public class RsQueryResult extends AbstractQueryResult {
         return study;
     }
 
-    private Series getSeries(MediaSeriesGroup study, final Attributes seriesDataset, boolean startDownloading) {
+    private Series getSeries(MediaSeriesGroup study, final Attributes seriesDataset, boolean startDownloading,
+        List<LoadSeries> newSeries) {
         if (seriesDataset == null) {
             throw new IllegalArgumentException("seriesDataset cannot be null"); //$NON-NLS-1$
         }
@@ -530,7 +728,8 @@ public class RsQueryResult extends AbstractQueryResult {
             dicomSeries.setTag(TagW.WadoParameters, wadoParameters);
             dicomSeries.setTag(TagW.WadoInstanceReferenceList, new SeriesInstanceList());
 
-            TagW[] tags = TagD.getTagFromIDs(Tag.Modality, Tag.SeriesNumber, Tag.SeriesDescription, Tag.RetrieveURL);
+            TagW[] tags = TagD.getTagFromIDs(Tag.Modality, Tag.SeriesNumber, Tag.SeriesDescription, Tag.RetrieveURL,
+                Tag.BodyPartExamined);
             for (TagW tag : tags) {
                 tag.readValue(seriesDataset, dicomSeries);
             }
@@ -552,6 +751,7 @@ public class RsQueryResult extends AbstractQueryResult {
                 new DownloadPriority(model.getParent(study, DicomModel.patient), study, dicomSeries, true));
             rsQueryParams.getSeriesMap().put(TagD.getTagValue(dicomSeries, Tag.SeriesInstanceUID, String.class),
                 loadSeries);
+            newSeries.add(loadSeries);
         }
         return dicomSeries;
     }
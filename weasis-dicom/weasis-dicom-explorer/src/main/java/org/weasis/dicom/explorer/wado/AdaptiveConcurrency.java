@@ -0,0 +1,175 @@
+/*
+ * Copyright (c) 2009-2020 Weasis Team and other contributors.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse
+ * Public License 2.0 which is available at http://www.eclipse.org/legal/epl-2.0.
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+
+package org.weasis.dicom.explorer.wado;
+
+import java.util.function.IntConsumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.weasis.core.api.service.BundleTools;
+import org.weasis.core.api.service.WProperties;
+
+/**
+ * Concurrency limit adapted from the measured downloads (AIMD: additive increase, multiplicative decrease).
+ * <p>
+ * The samples are grouped in windows proportional to the current limit. At the end of a window:
+ * <ul>
+ * <li>a network error halves the limit</li>
+ * <li>a time-to-first-byte more than twice the best observed one (requests queued by the server or the network)
+ * decreases the limit by a quarter</li>
+ * <li>a throughput lower than 80% of the previous window decreases the limit by one</li>
+ * <li>otherwise the limit is increased by one</li>
+ * </ul>
+ * The limit always stays between the configured minimum and maximum.
+ */
+public final class AdaptiveConcurrency {
+    private static final Logger LOGGER = LoggerFactory.getLogger(AdaptiveConcurrency.class);
+
+    public static final String P_ADAPTIVE = "download.concurrent.adaptive"; //$NON-NLS-1$
+
+    private static final double LATENCY_FACTOR = 2.0;
+    private static final double THROUGHPUT_DROP = 0.8;
+    // Below this value, the variation of the time-to-first-byte is not significant
+    private static final long MIN_TTFB_NANOS = 20_000_000L;
+
+    private final String name;
+    private final int min;
+    private final int max;
+    private final int samplesPerSlot;
+    private final IntConsumer limitListener;
+
+    private int limit;
+    private int inFlight = 0;
+
+    private long windowStart = 0;
+    private int windowSamples = 0;
+    private int windowErrors = 0;
+    private long windowBytes = 0;
+    private long windowTtfb = 0;
+    private double lastThroughput = 0.0;
+    private long bestTtfb = Long.MAX_VALUE;
+
+    public AdaptiveConcurrency(String name, int min, int initial, int max, int samplesPerSlot,
+        IntConsumer limitListener) {
+        this.name = name;
+        this.min = Math.max(1, min);
+        this.max = Math.max(this.min, max);
+        this.samplesPerSlot = Math.max(1, samplesPerSlot);
+        this.limitListener = limitListener;
+        this.limit = Math.min(this.max, Math.max(this.min, initial));
+    }
+
+    /**
+     * Builds a controller from the preferences: the limits are the values of key.min and key.max. When
+     * download.concurrent.adaptive is false, the limit is fixed to the initial value.
+     */
+    public static AdaptiveConcurrency fromPreferences(String name, String key, int initial, int defMax,
+        int samplesPerSlot, IntConsumer limitListener) {
+        WProperties prefs = BundleTools.SYSTEM_PREFERENCES;
+        if (!prefs.getBooleanProperty(P_ADAPTIVE, true)) {
+            return new AdaptiveConcurrency(name, initial, initial, initial, samplesPerSlot, limitListener);
+        }
+        return new AdaptiveConcurrency(name, prefs.getIntProperty(key + ".min", 1), initial, //$NON-NLS-1$
+            prefs.getIntProperty(key + ".max", Math.max(initial, defMax)), samplesPerSlot, limitListener); //$NON-NLS-1$
+    }
+
+    public synchronized int getLimit() {
+        return limit;
+    }
+
+    public int getMin() {
+        return min;
+    }
+
+    public int getMax() {
+        return max;
+    }
+
+    /**
+     * Waits until the number of running downloads is lower than the limit.
+     */
+    public synchronized void acquire() throws InterruptedException {
+        while (inFlight >= limit) {
+            wait();
+        }
+        inFlight++;
+    }
+
+    public synchronized void release() {
+        inFlight = Math.max(0, inFlight - 1);
+        notifyAll();
+    }
+
+    /**
+     * @param bytes
+     *            the number of bytes received
+     * @param ttfbNanos
+     *            the time between the request and the response headers
+     */
+    public synchronized void addSample(long bytes, long ttfbNanos) {
+        startWindow();
+        windowSamples++;
+        windowBytes += Math.max(0, bytes);
+        windowTtfb += Math.max(0, ttfbNanos);
+        evaluate();
+    }
+
+    public synchronized void addError() {
+        startWindow();
+        windowErrors++;
+        evaluate();
+    }
+
+    private void startWindow() {
+        if (windowStart == 0) {
+            windowStart = System.nanoTime();
+        }
+    }
+
+    private void evaluate() {
+        if (windowSamples + windowErrors < limit * samplesPerSlot) {
+            return;
+        }
+        long elapsed = Math.max(1, System.nanoTime() - windowStart);
+        double throughput = windowBytes * 1e9 / elapsed;
+        long avgTtfb = windowSamples == 0 ? 0 : windowTtfb / windowSamples;
+
+        int newLimit;
+        if (windowErrors > 0) {
+            newLimit = limit / 2;
+        } else if (avgTtfb > MIN_TTFB_NANOS && bestTtfb != Long.MAX_VALUE && avgTtfb > bestTtfb * LATENCY_FACTOR) {
+            newLimit = limit - Math.max(1, limit / 4);
+        } else if (throughput < lastThroughput * THROUGHPUT_DROP) {
+            newLimit = limit - 1;
+        } else {
+            newLimit = limit + 1;
+        }
+        if (windowSamples > 0) {
+            bestTtfb = Math.min(bestTtfb, Math.max(avgTtfb, MIN_TTFB_NANOS));
+        }
+        lastThroughput = throughput;
+        windowStart = 0;
+        windowSamples = 0;
+        windowErrors = 0;
+        windowBytes = 0;
+        windowTtfb = 0;
+
+        newLimit = Math.min(max, Math.max(min, newLimit));
+        if (newLimit != limit) {
+            LOGGER.debug("{} concurrency {} -> {} (throughput {} kB/s, ttfb {} ms)", name, limit, newLimit, //$NON-NLS-1$
+                Math.round(throughput / 1024), avgTtfb / 1_000_000);
+            limit = newLimit;
+            notifyAll();
+            if (limitListener != null) {
+                limitListener.accept(newLimit);
+            }
+        }
+    }
+}
@@ -0,0 +1,309 @@
+/*
+ * Copyright (c) 2009-2020 Weasis Team and other contributors.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse
+ * Public License 2.0 which is available at http://www.eclipse.org/legal/epl-2.0.
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+
+package org.weasis.dicom.explorer.wado;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URLConnection;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.weasis.core.api.gui.util.AppProperties;
+import org.weasis.core.api.service.BundleTools;
+import org.weasis.core.util.FileUtil;
+import org.weasis.core.util.StringUtil;
+
+/**
+ * On-disk journal of the instance downloads which can be resumed.
+ * <p>
+ * Unlike the temporary folder of the application, the folder of the journal is not cleaned at startup. For each
+ * instance (identified by its SOP Instance UID), the journal keeps the series, the URL, the number of bytes written and
+ * the validator of the response (strong ETag or Last-Modified). An interrupted transfer is resumed with a Range
+ * request and a completed instance is not downloaded again, even after a restart.
+ * <p>
+ * The journal owns its files: a series loads a copy (or a hard link when possible) of a completed instance, so
+ * disposing a series never deletes a file still used by another series. The completed files are removed with their
+ * entries when they are too old.
+ * <p>
+ * Preferences:
+ * <ul>
+ * <li>download.resume: enable the journal (default true)</li>
+ * <li>download.journal.max.age: number of days after which an entry is removed (default 7)</li>
+ * </ul>
+ */
+public final class DownloadJournal {
+    private static final Logger LOGGER = LoggerFactory.getLogger(DownloadJournal.class);
+
+    public static final String P_RESUME = "download.resume"; //$NON-NLS-1$
+    public static final String P_MAX_AGE = "download.journal.max.age"; //$NON-NLS-1$
+
+    private static final String JOURNAL_EXT = ".journal"; //$NON-NLS-1$
+    private static final String PART_EXT = ".part"; //$NON-NLS-1$
+    private static final String FILE_EXT = ".dcm"; //$NON-NLS-1$
+
+    private static final String K_SERIES = "series"; //$NON-NLS-1$
+    private static final String K_URL = "url"; //$NON-NLS-1$
+    private static final String K_BYTES = "bytes"; //$NON-NLS-1$
+    private static final String K_VALIDATOR = "validator"; //$NON-NLS-1$
+    private static final String K_COMPLETE = "complete"; //$NON-NLS-1$
+
+    // A UID is used as file name
+    private static final Pattern UID_PATTERN = Pattern.compile("[0-9.]+"); //$NON-NLS-1$
+
+    private static DownloadJournal instance;
+
+    private final File folder;
+    private final boolean enabled;
+
+    DownloadJournal(File folder, boolean enabled) {
+        this.folder = folder;
+        this.enabled = enabled && (folder.isDirectory() || folder.mkdirs());
+    }
+
+    public static synchronized DownloadJournal getInstance() {
+        if (instance == null) {
+            instance = new DownloadJournal(new File(AppProperties.WEASIS_PATH, "download"), //$NON-NLS-1$
+                BundleTools.SYSTEM_PREFERENCES.getBooleanProperty(P_RESUME, true));
+            if (instance.enabled) {
+                instance.purge(TimeUnit.DAYS.toMillis(BundleTools.SYSTEM_PREFERENCES.getIntProperty(P_MAX_AGE, 7)));
+            }
+        }
+        return instance;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Gets the entry of the instance or creates a new one. The previous entry is reset when the URL is different or
+     * when the downloaded file has been deleted.
+     *
+     * @return the entry, null when the SOP Instance UID is not a valid UID
+     */
+    public synchronized Entry getEntry(String seriesUID, String sopInstanceUID, String url) {
+        if (!isValidUID(sopInstanceUID)) {
+            LOGGER.warn("Cannot journal the download of the invalid SOP Instance UID {}", sopInstanceUID); //$NON-NLS-1$
+            return null;
+        }
+        Entry entry = new Entry(folder, sopInstanceUID);
+        File journal = entry.getJournalFile();
+        if (journal.canRead()) {
+            Properties p = new Properties();
+            FileUtil.readProperties(journal, p);
+            entry.seriesUID = p.getProperty(K_SERIES);
+            entry.url = p.getProperty(K_URL);
+            entry.validator = p.getProperty(K_VALIDATOR);
+            entry.bytes = getLong(p.getProperty(K_BYTES));
+            entry.complete = Boolean.parseBoolean(p.getProperty(K_COMPLETE));
+            if (!Objects.equals(url, entry.url) || (entry.complete && !entry.getFile().isFile())) {
+                LOGGER.debug("Reset the download journal of {}", sopInstanceUID); //$NON-NLS-1$
+                reset(entry);
+            }
+        }
+        entry.seriesUID = seriesUID;
+        entry.url = url;
+        return entry;
+    }
+
+    /**
+     * Copies the file of a completed entry into the folder.
+     *
+     * @return the new file, which belongs to the caller
+     */
+    public File checkout(Entry entry, File dir) throws IOException {
+        File file = File.createTempFile("image_", FILE_EXT, dir); //$NON-NLS-1$
+        try {
+            linkOrCopy(entry.getFile(), file);
+        } catch (IOException e) {
+            FileUtil.delete(file);
+            throw e;
+        }
+        return file;
+    }
+
+    public synchronized void save(Entry entry) {
+        Properties p = new Properties();
+        p.setProperty(K_SERIES, entry.seriesUID == null ? "" : entry.seriesUID); //$NON-NLS-1$
+        p.setProperty(K_URL, entry.url == null ? "" : entry.url); //$NON-NLS-1$
+        p.setProperty(K_BYTES, Long.toString(entry.bytes));
+        p.setProperty(K_COMPLETE, Boolean.toString(entry.complete));
+        if (entry.validator != null) {
+            p.setProperty(K_VALIDATOR, entry.validator);
+        }
+        FileUtil.storeProperties(entry.getJournalFile(), p, null);
+    }
+
+    /**
+     * Deletes the downloaded data of the entry, the next download starts from the beginning.
+     */
+    public synchronized void reset(Entry entry) {
+        FileUtil.delete(entry.getPartFile());
+        FileUtil.delete(entry.getFile());
+        entry.validator = null;
+        entry.bytes = 0;
+        entry.complete = false;
+    }
+
+    public synchronized void remove(Entry entry) {
+        reset(entry);
+        FileUtil.delete(entry.getJournalFile());
+    }
+
+    private synchronized void purge(long maxAge) {
+        File[] files = folder.listFiles();
+        if (files == null) {
+            return;
+        }
+        long limit = System.currentTimeMillis() - maxAge;
+        int nb = 0;
+        for (File f : files) {
+            String name = f.getName();
+            if (name.endsWith(JOURNAL_EXT)) {
+                Entry entry = new Entry(folder, name.substring(0, name.length() - JOURNAL_EXT.length()));
+                // Remove the old entries and the completed ones whose file has been deleted
+                Properties p = new Properties();
+                FileUtil.readProperties(f, p);
+                boolean complete = Boolean.parseBoolean(p.getProperty(K_COMPLETE));
+                if (f.lastModified() < limit || (complete && !entry.getFile().isFile())) {
+                    remove(entry);
+                    nb++;
+                }
+            } else if (f.lastModified() < limit) {
+                // Orphan data
+                FileUtil.delete(f);
+            }
+        }
+        if (nb > 0) {
+            LOGGER.info("Remove {} entries from the download journal", nb); //$NON-NLS-1$
+        }
+    }
+
+    private static long getLong(String value) {
+        try {
+            return value == null ? 0L : Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return 0L;
+        }
+    }
+
+    /**
+     * @return true when the UID can be used as a file name
+     */
+    static boolean isValidUID(String uid) {
+        return uid != null && uid.length() <= 64 && UID_PATTERN.matcher(uid).matches();
+    }
+
+    /**
+     * Creates a hard link of the source file or copies it when a link cannot be created.
+     */
+    static void linkOrCopy(File source, File target) throws IOException {
+        Files.deleteIfExists(target.toPath());
+        try {
+            // No copy when both are on the same file system
+            Files.createLink(target.toPath(), source.toPath());
+        } catch (IOException | UnsupportedOperationException e) {
+            Files.copy(source.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * @return the validator of the response allowing a Range request (a strong ETag, or Last-Modified when weak
+     *         validators are accepted), otherwise null
+     */
+    public static String getValidator(URLConnection connection, boolean strongOnly) {
+        String etag = connection.getHeaderField("ETag"); //$NON-NLS-1$
+        if (StringUtil.hasText(etag) && !etag.startsWith("W/")) { //$NON-NLS-1$
+            return etag;
+        }
+        if (!strongOnly) {
+            String lastModified = connection.getHeaderField("Last-Modified"); //$NON-NLS-1$
+            if (StringUtil.hasText(lastModified)) {
+                return lastModified;
+            }
+        }
+        return null;
+    }
+
+    public static final class Entry {
+        private final File folder;
+        private final String sopInstanceUID;
+        private String seriesUID;
+        private String url;
+        private String validator;
+        private long bytes;
+        private boolean complete;
+
+        private Entry(File folder, String sopInstanceUID) {
+            this.folder = folder;
+            this.sopInstanceUID = Objects.requireNonNull(sopInstanceUID);
+        }
+
+        public String getSopInstanceUID() {
+            return sopInstanceUID;
+        }
+
+        public String getSeriesUID() {
+            return seriesUID;
+        }
+
+        public String getUrl() {
+            return url;
+        }
+
+        public String getValidator() {
+            return validator;
+        }
+
+        public void setValidator(String validator) {
+            this.validator = validator;
+        }
+
+        public long getBytes() {
+            return bytes;
+        }
+
+        public void setBytes(long bytes) {
+            this.bytes = bytes;
+        }
+
+        public boolean isComplete() {
+            return complete;
+        }
+
+        public void setComplete(boolean complete) {
+            this.complete = complete;
+        }
+
+        File getJournalFile() {
+            return new File(folder, sopInstanceUID + JOURNAL_EXT);
+        }
+
+        /**
+         * @return the file receiving the bytes of the response
+         */
+        public File getPartFile() {
+            return new File(folder, sopInstanceUID + PART_EXT);
+        }
+
+        /**
+         * @return the DICOM file of the completed download
+         */
+        public File getFile() {
+            return new File(folder, sopInstanceUID + FILE_EXT);
+        }
+    }
+}
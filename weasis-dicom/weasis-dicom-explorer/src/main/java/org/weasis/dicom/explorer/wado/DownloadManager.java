@@ -10,15 +10,14 @@
 package org.weasis.dicom.explorer.wado;
 
 import java.io.BufferedInputStream;
-import java.io.File;
-import java.io.FileInputStream;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.Serializable;
 import java.net.URI;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Comparator;
-import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
@@ -28,6 +27,7 @@ import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.PriorityBlockingQueue;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 import java.util.zip.GZIPInputStream;
 
 import javax.swing.JOptionPane;
@@ -38,20 +38,16 @@ import javax.xml.stream.XMLStreamConstants;
 import javax.xml.stream.XMLStreamException;
 import javax.xml.stream.XMLStreamReader;
 import javax.xml.transform.Source;
-import javax.xml.transform.stax.StAXSource;
 import javax.xml.transform.stream.StreamSource;
 import javax.xml.validation.Schema;
 import javax.xml.validation.SchemaFactory;
-import javax.xml.validation.Validator;
 
 import org.dcm4che3.data.Attributes;
 import org.dcm4che3.data.Tag;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.weasis.core.api.explorer.ObservableEvent;
-import org.weasis.core.api.gui.util.AppProperties;
 import org.weasis.core.api.gui.util.GuiExecutor;
-import org.weasis.core.api.media.MimeInspector;
 import org.weasis.core.api.media.data.MediaSeriesGroup;
 import org.weasis.core.api.media.data.MediaSeriesGroupNode;
 import org.weasis.core.api.media.data.Series;
@@ -93,7 +89,6 @@ import org.weasis.dicom.mf.ArcParameters;
 import org.weasis.dicom.mf.SopInstance;
 import org.weasis.dicom.mf.WadoParameters;
 import org.weasis.dicom.mf.Xml;
-import org.xml.sax.SAXException;
 
 public class DownloadManager {
 
@@ -116,6 +111,14 @@ public class DownloadManager {
             BundleTools.SYSTEM_PREFERENCES.getIntProperty(CONCURRENT_SERIES, 3), 0L, TimeUnit.MILLISECONDS,
             PRIORITY_QUEUE, ThreadUtil.getThreadFactory("Series Downloader")); //$NON-NLS-1$
 
+    private static Schema manifestSchema;
+    private static boolean schemaFailed = false;
+
+    // Number of simultaneous series adapted from the downloads of all the series
+    public static final AdaptiveConcurrency SERIES_CONCURRENCY =
+        AdaptiveConcurrency.fromPreferences("Series", CONCURRENT_SERIES, CONCURRENT_EXECUTOR.getCorePoolSize(), 6, 8, //$NON-NLS-1$
+            DownloadManager::setConcurrentSeries);
+
     public static class PriorityTaskComparator implements Comparator<Runnable>, Serializable {
 
         private static final long serialVersionUID = 513213203958362767L;
@@ -199,13 +202,25 @@ public class DownloadManager {
 
             }
             if (DownloadManager.TASKS.isEmpty()) {
-                // When all loadseries are ended, reset to default the number of simultaneous download (series)
-                DownloadManager.CONCURRENT_EXECUTOR.setCorePoolSize(
-                    BundleTools.SYSTEM_PREFERENCES.getIntProperty(DownloadManager.CONCURRENT_SERIES, 3));
+                // When all loadseries are ended, reset the number of simultaneous download (series) to the adapted
+                // value
+                setConcurrentSeries(SERIES_CONCURRENCY.getLimit());
             }
         }
     }
 
+    private static void setConcurrentSeries(int size) {
+        ThreadPoolExecutor executor = DownloadManager.CONCURRENT_EXECUTOR;
+        // The maximum cannot be lower than the core size
+        if (size > executor.getMaximumPoolSize()) {
+            executor.setMaximumPoolSize(size);
+            executor.setCorePoolSize(size);
+        } else {
+            executor.setCorePoolSize(size);
+            executor.setMaximumPoolSize(size);
+        }
+    }
+
     public static void stopDownloading(DicomSeries series, DicomModel dicomModel) {
         if (series != null) {
             synchronized (DownloadManager.TASKS) {
@@ -250,7 +265,20 @@ public class DownloadManager {
 
     public static Collection<LoadSeries> buildDicomSeriesFromXml(URI uri, final DicomModel model)
         throws DownloadException {
-        Map<String, LoadSeries> seriesMap = new HashMap<>();
+        return buildDicomSeriesFromXml(uri, model, null);
+    }
+
+    /**
+     * Reads the manifest in one pass: the XML is validated while it is parsed and each series is given to the
+     * consumer as soon as all its instances have been read.
+     *
+     * @param seriesConsumer
+     *            receives each new LoadSeries while the next series are parsed, can be null
+     * @return all the LoadSeries of the manifest
+     */
+    public static Collection<LoadSeries> buildDicomSeriesFromXml(URI uri, final DicomModel model,
+        Consumer<LoadSeries> seriesConsumer) throws DownloadException {
+        Map<String, LoadSeries> seriesMap = new LinkedHashMap<>();
         XMLStreamReader xmler = null;
         InputStream stream = null;
         try {
@@ -271,48 +299,25 @@ public class DownloadManager {
 
             if (path.endsWith(".gz")) { //$NON-NLS-1$
                 stream = new BufferedInputStream(new GZIPInputStream(urlInputStream));
-            } else if (path.endsWith(".xml")) { //$NON-NLS-1$
-                stream = urlInputStream;
             } else {
-                // In case wado file has no extension
-                File outFile = File.createTempFile("wado_", "", AppProperties.APP_TEMP_DIR); //$NON-NLS-1$ //$NON-NLS-2$
-                FileUtil.writeStreamWithIOException(urlInputStream, outFile);
-                if (MimeInspector.isMatchingMimeTypeFromMagicNumber(outFile, "application/x-gzip")) { //$NON-NLS-1$
-                    stream = new BufferedInputStream(new GZIPInputStream(new FileInputStream(outFile)));
-                } else {
-                    stream = new FileInputStream(outFile);
+                stream = new BufferedInputStream(urlInputStream);
+                // In case wado file has no extension, read the magic number of gzip
+                if (!path.endsWith(".xml") && isGzip(stream)) { //$NON-NLS-1$
+                    stream = new BufferedInputStream(new GZIPInputStream(stream));
                 }
             }
 
-            File tempFile = null;
-            if (uri.toString().startsWith("file:") && path.endsWith(".xml")) { //$NON-NLS-1$ //$NON-NLS-2$
-                tempFile = new File(path);
-            } else {
-                tempFile = File.createTempFile("wado_", ".xml", AppProperties.APP_TEMP_DIR); //$NON-NLS-1$ //$NON-NLS-2$
-                FileUtil.writeStreamWithIOException(stream, tempFile);
-            }
-            xmler = factory.createXMLStreamReader(new FileInputStream(tempFile));
-
-            Source xmlFile = new StAXSource(xmler);
-            SchemaFactory schemaFactory = SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI);
-            try {
-                Schema schema = schemaFactory.newSchema(new Source[] {
-                    new StreamSource(DownloadManager.class.getResource("/config/wado_query.xsd").toExternalForm()), //$NON-NLS-1$
-                    new StreamSource(DownloadManager.class.getResource("/config/manifest.xsd").toExternalForm()) }); //$NON-NLS-1$
-                Validator validator = schema.newValidator();
-                validator.setProperty(XMLConstants.ACCESS_EXTERNAL_DTD, StringUtil.EMPTY_STRING);
-                validator.setProperty(XMLConstants.ACCESS_EXTERNAL_SCHEMA, StringUtil.EMPTY_STRING);
-                validator.validate(xmlFile);
-                LOGGER.info("[Validate with XSD schema] wado_query is valid"); //$NON-NLS-1$
-            } catch (SAXException e) {
-                LOGGER.error("[Validate with XSD schema] wado_query is NOT valid", e); //$NON-NLS-1$
-            } catch (Exception e) {
-                LOGGER.error("Error when validate XSD schema. Try to update JRE", e); //$NON-NLS-1$
+            // Validate and parse the stream in the same pass, without temporary file
+            xmler = factory.createXMLStreamReader(stream);
+            ValidatingXMLStreamReader validatingReader = null;
+            Schema schema = getManifestSchema();
+            if (schema != null) {
+                validatingReader = new ValidatingXMLStreamReader(xmler, schema);
+                xmler = validatingReader;
             }
 
-            ReaderParams params = new ReaderParams(model, seriesMap);
             // Try to read the xml even it is not valid.
-            xmler = factory.createXMLStreamReader(new FileInputStream(tempFile));
+            ReaderParams params = new ReaderParams(model, seriesMap, seriesConsumer);
 
             BiConsumerWithException<XMLStreamReader, ReaderParams, XMLStreamException> method = (x, r) -> {
                 String key = x.getName().getLocalPart();
@@ -342,6 +347,15 @@ public class DownloadManager {
             };
             readElement(xmler, ArcParameters.TAG_DOCUMENT_ROOT, method, params);
 
+            if (validatingReader != null) {
+                validatingReader.finish();
+                Exception error = validatingReader.getError();
+                if (error == null) {
+                    LOGGER.info("[Validate with XSD schema] wado_query is valid"); //$NON-NLS-1$
+                } else {
+                    LOGGER.error("[Validate with XSD schema] wado_query is NOT valid", error); //$NON-NLS-1$
+                }
+            }
         } catch (StreamIOException e) {
             throw new DownloadException(getErrorMessage(uri), e); // rethrow network issue
         } catch (Exception e) {
@@ -365,6 +379,33 @@ public class DownloadManager {
         return seriesMap.values();
     }
 
+    private static boolean isGzip(InputStream stream) throws IOException {
+        stream.mark(2);
+        try {
+            return stream.read() == 0x1f && stream.read() == 0x8b;
+        } finally {
+            stream.reset();
+        }
+    }
+
+    /**
+     * @return the schema of the manifest, compiled only once, or null when it cannot be compiled
+     */
+    private static synchronized Schema getManifestSchema() {
+        if (manifestSchema == null && !schemaFailed) {
+            try {
+                SchemaFactory schemaFactory = SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI);
+                manifestSchema = schemaFactory.newSchema(new Source[] {
+                    new StreamSource(DownloadManager.class.getResource("/config/wado_query.xsd").toExternalForm()), //$NON-NLS-1$
+                    new StreamSource(DownloadManager.class.getResource("/config/manifest.xsd").toExternalForm()) }); //$NON-NLS-1$
+            } catch (Exception e) {
+                schemaFailed = true;
+                LOGGER.error("Error when validate XSD schema. Try to update JRE", e); //$NON-NLS-1$
+            }
+        }
+        return manifestSchema;
+    }
+
     private static String getErrorMessage(URI uri) {
         StringBuilder buf = new StringBuilder(Messages.getString("DownloadManager.error_load_xml")); //$NON-NLS-1$
         buf.append(StringUtil.COLON_AND_SPACE);
@@ -447,13 +488,6 @@ public class DownloadManager {
                 }
             });
         }
-        for (LoadSeries loadSeries : params.getSeriesMap().values()) {
-            String modality = TagD.getTagValue(loadSeries.getDicomSeries(), Tag.Modality, String.class);
-            boolean ps = modality != null && ("PR".equals(modality) || "KO".equals(modality)); //$NON-NLS-1$ //$NON-NLS-2$
-            if (!ps) {
-                loadSeries.startDownloadImageReference(wadoParameters);
-            }
-        }
     }
 
     private static MediaSeriesGroup readPatient(XMLStreamReader xmler, ReaderParams params,
@@ -581,11 +615,24 @@ public class DownloadManager {
         readElement(xmler, TagD.Level.INSTANCE.getTagName(), TagD.Level.SERIES.getTagName(), method, params);
         dicomSeries.setTag(TagW.WadoInstanceReferenceList, seriesInstanceList);
 
+        LoadSeries existing = params.getSeriesMap().get(seriesUID);
+        if (existing != null && existing.acceptNewInstances()) {
+            // The same series is split in the manifest, its new instances are downloaded by the published task
+            return dicomSeries;
+        }
         if (!seriesInstanceList.isEmpty()) {
             final LoadSeries loadSeries = new LoadSeries(dicomSeries, model,
                 BundleTools.SYSTEM_PREFERENCES.getIntProperty(LoadSeries.CONCURRENT_DOWNLOADS_IN_SERIES, 4), true);
             loadSeries.setPriority(new DownloadPriority(patient, study, dicomSeries, true));
             params.getSeriesMap().put(seriesUID, loadSeries);
+
+            String modality = TagD.getTagValue(dicomSeries, Tag.Modality, String.class);
+            boolean ps = modality != null && ("PR".equals(modality) || "KO".equals(modality)); //$NON-NLS-1$ //$NON-NLS-2$
+            if (!ps) {
+                loadSeries.startDownloadImageReference(wadoParameters);
+            }
+            // Start the download while the next series are parsed
+            params.publish(loadSeries);
         }
         return dicomSeries;
     }
@@ -601,6 +648,8 @@ public class DownloadManager {
                         (SeriesInstanceList) series.getDicomSeries().getTagValue(TagW.WadoInstanceReferenceList);
 
                     if (dicomInstanceMap != null) {
+                        // The series can be already downloading, apply also to the loaded images
+                        GuiExecutor.instance().execute(series::applyPresentationModels);
                         for (ReferencedImage refImg : refSeries.getImages()) {
                             List<Integer> frames = refImg.getFrames();
                             if (frames == null || frames.isEmpty()) {
@@ -733,10 +782,18 @@ public class DownloadManager {
     static class ReaderParams {
         private final DicomModel model;
         private final Map<String, LoadSeries> seriesMap;
+        private final Consumer<LoadSeries> seriesConsumer;
 
-        public ReaderParams(DicomModel model, Map<String, LoadSeries> seriesMap) {
+        public ReaderParams(DicomModel model, Map<String, LoadSeries> seriesMap, Consumer<LoadSeries> seriesConsumer) {
             this.model = model;
             this.seriesMap = seriesMap;
+            this.seriesConsumer = seriesConsumer;
+        }
+
+        public void publish(LoadSeries loadSeries) {
+            if (seriesConsumer != null) {
+                seriesConsumer.accept(loadSeries);
+            }
         }
 
         public DicomModel getModel() {
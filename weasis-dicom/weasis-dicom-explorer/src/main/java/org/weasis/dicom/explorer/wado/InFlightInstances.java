@@ -0,0 +1,260 @@
+/*
+ * Copyright (c) 2009-2020 Weasis Team and other contributors.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse
+ * Public License 2.0 which is available at http://www.eclipse.org/legal/epl-2.0.
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+
+package org.weasis.dicom.explorer.wado;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.BooleanSupplier;
+
+import org.dcm4che3.data.Attributes;
+import org.dcm4che3.data.Tag;
+import org.dcm4che3.data.UID;
+import org.dcm4che3.imageio.plugins.dcm.DicomMetaData;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.weasis.core.api.service.BundleTools;
+import org.weasis.core.util.FileUtil;
+import org.weasis.dicom.codec.DicomMediaIO;
+
+/**
+ * Process-wide registry of the DICOM instances being downloaded, identified by the SOP Instance UID.
+ * <p>
+ * The first request of an instance owns the transfer. The other requests of the same instance (e.g. overlapping
+ * manifests or a study opened again) wait for the owner instead of downloading and parsing the instance again: they get
+ * a copy (or a hard link when possible) of the downloaded file and the header already parsed by the owner. When the
+ * owner fails, the waiting requests download the instance themselves.
+ * <p>
+ * An instance can be requested in different forms (see {@link InstanceStore}), a transfer is only shared with the
+ * requests of the same variant.
+ * <p>
+ * Preferences:
+ * <ul>
+ * <li>download.shared.instances: share the concurrent downloads of the same instance (default true)</li>
+ * </ul>
+ */
+public final class InFlightInstances {
+    private static final Logger LOGGER = LoggerFactory.getLogger(InFlightInstances.class);
+
+    public static final String P_ENABLED = "download.shared.instances"; //$NON-NLS-1$
+
+    private static InFlightInstances instance;
+
+    private final boolean enabled;
+    // SOP Instance UID -> transfer in progress
+    private final Map<String, Transfer> transfers = new HashMap<>();
+    private long savedRequests;
+    private long savedBytes;
+
+    InFlightInstances(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public static synchronized InFlightInstances getInstance() {
+        if (instance == null) {
+            instance = new InFlightInstances(BundleTools.SYSTEM_PREFERENCES.getBooleanProperty(P_ENABLED, true));
+        }
+        return instance;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Registers a request of the instance. The returned claim must be completed by its owner with
+     * {@link Claim#complete(DicomMediaIO)}, otherwise the other requests wait for it.
+     *
+     * @param variant
+     *            the form of the instance, null or empty for the original instance
+     * @return the claim of the request, null when the instance cannot be shared
+     */
+    public synchronized Claim claim(String sopInstanceUID, String variant) {
+        if (!enabled || sopInstanceUID == null) {
+            return null;
+        }
+        String form = variant == null ? "" : variant; //$NON-NLS-1$
+        Transfer transfer = transfers.get(sopInstanceUID);
+        if (transfer == null) {
+            transfer = new Transfer(sopInstanceUID, form);
+            transfers.put(sopInstanceUID, transfer);
+            return new Claim(transfer, true);
+        }
+        // Another form of the instance is downloading, both are downloaded
+        if (!transfer.variant.equals(form)) {
+            return null;
+        }
+        return new Claim(transfer, false);
+    }
+
+    private void complete(Transfer transfer, DicomMediaIO reader) {
+        File file = null;
+        Attributes fmi = null;
+        Attributes dataset = null;
+        String tsuid = null;
+        if (reader != null && reader.isReadableDicom()) {
+            try {
+                DicomMetaData md = reader.getStreamMetadata();
+                file = new File(reader.getUri());
+                tsuid = md.getFileMetaInformation() == null ? null
+                    : md.getFileMetaInformation().getString(Tag.TransferSyntaxUID);
+                // The offsets of a deflated dataset do not match the file
+                if (tsuid != null && !UID.DeflatedExplicitVRLittleEndian.equals(tsuid)
+                    && !UID.JPIPReferencedDeflate.equals(tsuid)) {
+                    fmi = md.getFileMetaInformation();
+                    dataset = new Attributes(md.getAttributes());
+                }
+            } catch (IOException | IllegalArgumentException e) {
+                LOGGER.debug("Cannot share the DICOM instance {}: {}", //$NON-NLS-1$
+                    transfer.sopInstanceUID, e.getMessage());
+            }
+        }
+
+        synchronized (this) {
+            if (transfers.get(transfer.sopInstanceUID) == transfer) {
+                transfers.remove(transfer.sopInstanceUID);
+            }
+            transfer.file = file;
+            if (dataset != null) {
+                transfer.fmi = fmi;
+                transfer.dataset = dataset;
+                transfer.transferSyntax = tsuid;
+            }
+            transfer.done = true;
+            notifyAll();
+        }
+    }
+
+    private DicomMediaIO await(Transfer transfer, File dir, BooleanSupplier cancelled) throws InterruptedException {
+        File source;
+        synchronized (this) {
+            while (!transfer.done) {
+                if (cancelled.getAsBoolean()) {
+                    return null;
+                }
+                wait(500);
+            }
+            source = transfer.file;
+        }
+        if (source == null || !source.canRead()) {
+            return null;
+        }
+
+        File file = null;
+        try {
+            file = File.createTempFile("image_", ".dcm", dir); //$NON-NLS-1$ //$NON-NLS-2$
+            DownloadJournal.linkOrCopy(source, file);
+        } catch (IOException e) {
+            FileUtil.delete(file);
+            LOGGER.info("Cannot copy the DICOM instance {}: {}", transfer.sopInstanceUID, e.getMessage()); //$NON-NLS-1$
+            return null;
+        }
+
+        DicomMediaIO reader = new DicomMediaIO(file);
+        // The offsets of the bulk data are the same in the copy
+        if (transfer.dataset != null) {
+            reader.setMetaData(transfer.fmi, new Attributes(transfer.dataset), transfer.transferSyntax);
+        }
+        long length = file.length();
+        synchronized (this) {
+            savedRequests++;
+            savedBytes += length;
+            LOGGER.debug("DICOM instance {} shared, saved {} requests and {} bytes", //$NON-NLS-1$
+                transfer.sopInstanceUID, savedRequests, savedBytes);
+        }
+        return reader;
+    }
+
+    /**
+     * @return the number of instances being downloaded
+     */
+    public synchronized int getInFlightCount() {
+        return transfers.size();
+    }
+
+    /**
+     * @return the number of requests which have received the instance of another request instead of downloading it
+     */
+    public synchronized long getSavedRequests() {
+        return savedRequests;
+    }
+
+    /**
+     * @return the number of bytes which have not been downloaded again
+     */
+    public synchronized long getSavedBytes() {
+        return savedBytes;
+    }
+
+    private static final class Transfer {
+        private final String sopInstanceUID;
+        private final String variant;
+        // Set when the transfer is done, the file is null when the transfer has failed
+        private boolean done = false;
+        private File file;
+        private Attributes fmi;
+        private Attributes dataset;
+        private String transferSyntax;
+
+        Transfer(String sopInstanceUID, String variant) {
+            this.sopInstanceUID = Objects.requireNonNull(sopInstanceUID);
+            this.variant = variant;
+        }
+    }
+
+    public final class Claim {
+        private final Transfer transfer;
+        private final boolean owner;
+        private boolean completed = false;
+
+        private Claim(Transfer transfer, boolean owner) {
+            this.transfer = transfer;
+            this.owner = owner;
+        }
+
+        /**
+         * @return true when the request must download the instance
+         */
+        public boolean isOwner() {
+            return owner;
+        }
+
+        /**
+         * Ends the transfer of the owner and wakes up the other requests. Does nothing when the request is not the
+         * owner or when the claim is already completed.
+         *
+         * @param reader
+         *            the reader of the downloaded instance, null when the transfer has failed
+         */
+        public void complete(DicomMediaIO reader) {
+            if (owner && !completed) {
+                completed = true;
+                InFlightInstances.this.complete(transfer, reader);
+            }
+        }
+
+        /**
+         * Waits for the transfer of the owner and copies the instance into the folder.
+         *
+         * @param cancelled
+         *            stops waiting when it returns true
+         * @return the reader of the copy with the header parsed by the owner, null when the owner has failed, when the
+         *         request is cancelled or when the request is the owner
+         */
+        public DicomMediaIO await(File dir, BooleanSupplier cancelled) throws InterruptedException {
+            if (owner) {
+                return null;
+            }
+            return InFlightInstances.this.await(transfer, dir, cancelled);
+        }
+    }
+}
@@ -0,0 +1,209 @@
+/*
+ * Copyright (c) 2009-2020 Weasis Team and other contributors.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse
+ * Public License 2.0 which is available at http://www.eclipse.org/legal/epl-2.0.
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+
+package org.weasis.dicom.explorer.wado;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import javax.swing.SwingWorker.StateValue;
+import javax.swing.Timer;
+
+import org.dcm4che3.data.Tag;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.weasis.core.api.gui.util.GuiExecutor;
+import org.weasis.core.api.media.data.ImageElement;
+import org.weasis.core.api.media.data.MediaSeries;
+import org.weasis.core.api.service.BundleTools;
+import org.weasis.core.ui.docking.UIManager;
+import org.weasis.core.ui.editor.image.ImageViewerPlugin;
+import org.weasis.core.ui.editor.image.ViewCanvas;
+import org.weasis.core.ui.editor.image.ViewerPlugin;
+import org.weasis.dicom.codec.TagD;
+
+/**
+ * Orders the instance downloads of all the series from the state of the views.
+ * <p>
+ * The views are read periodically in the EDT. Inside a series, the instances near the image displayed by a view are
+ * downloaded first. Across the series, the series displayed in a view have priority: a pending series becomes the next
+ * one to download when it is displayed, and while a displayed series is downloading the other series keep only one
+ * download at a time. The waiting downloads are woken up when the displayed series or the downloading series change.
+ * <p>
+ * Preferences:
+ * <ul>
+ * <li>download.scheduler.period: time in ms between two readings of the views (default 200)</li>
+ * </ul>
+ */
+public final class InstanceScheduler {
+    private static final Logger LOGGER = LoggerFactory.getLogger(InstanceScheduler.class);
+
+    public static final String P_PERIOD = "download.scheduler.period"; //$NON-NLS-1$
+
+    private static final InstanceScheduler INSTANCE = new InstanceScheduler();
+
+    // Series UID -> number of LoadSeries downloading it
+    private final Map<String, AtomicInteger> downloading = new ConcurrentHashMap<>();
+    private final Timer timer;
+    // Notified when the result of isBackground() can change
+    private final Object stateChange = new Object();
+
+    // Series UID -> SOP Instance UIDs of the images displayed in the views
+    private volatile Map<String, Set<String>> focus = Collections.emptyMap();
+
+    private InstanceScheduler() {
+        this.timer = new Timer(BundleTools.SYSTEM_PREFERENCES.getIntProperty(P_PERIOD, 200), e -> updateViews());
+        this.timer.setCoalesce(true);
+    }
+
+    public static InstanceScheduler getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Registers a series which starts downloading. Must be followed by {@link #unregister(String)}.
+     */
+    public void register(String seriesUID) {
+        if (seriesUID != null) {
+            downloading.computeIfAbsent(seriesUID, k -> new AtomicInteger()).incrementAndGet();
+            signalChange();
+            GuiExecutor.instance().execute(() -> {
+                if (!timer.isRunning()) {
+                    updateViews();
+                    timer.start();
+                }
+            });
+        }
+    }
+
+    public void unregister(String seriesUID) {
+        if (seriesUID != null) {
+            downloading.computeIfPresent(seriesUID, (k, v) -> v.decrementAndGet() <= 0 ? null : v);
+            signalChange();
+            GuiExecutor.instance().execute(() -> {
+                if (downloading.isEmpty()) {
+                    timer.stop();
+                }
+            });
+        }
+    }
+
+    /**
+     * @return the SOP Instance UIDs of the images of the series displayed in the views (empty when the series is not
+     *         displayed)
+     */
+    public Set<String> getFocusedInstances(String seriesUID) {
+        Set<String> sops = seriesUID == null ? null : focus.get(seriesUID);
+        return sops == null ? Collections.emptySet() : sops;
+    }
+
+    public boolean isVisible(String seriesUID) {
+        return seriesUID != null && focus.containsKey(seriesUID);
+    }
+
+    /**
+     * @return true when the series is not displayed and a displayed series is downloading
+     */
+    public boolean isBackground(String seriesUID) {
+        if (isVisible(seriesUID)) {
+            return false;
+        }
+        Map<String, Set<String>> f = focus;
+        for (String uid : downloading.keySet()) {
+            if (f.containsKey(uid)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Waits while the series is in background (see {@link #isBackground(String)}).
+     *
+     * @param cancelled
+     *            stops waiting when it returns true, {@link #signalChange()} must be called when its value changes
+     */
+    public void awaitForeground(String seriesUID, BooleanSupplier cancelled) throws InterruptedException {
+        synchronized (stateChange) {
+            while (!cancelled.getAsBoolean() && isBackground(seriesUID)) {
+                stateChange.wait();
+            }
+        }
+    }
+
+    /**
+     * Wakes up the downloads waiting in {@link #awaitForeground(String, BooleanSupplier)}.
+     */
+    void signalChange() {
+        synchronized (stateChange) {
+            stateChange.notifyAll();
+        }
+    }
+
+    private void updateViews() {
+        Map<String, Set<String>> newFocus = new HashMap<>();
+        try {
+            synchronized (UIManager.VIEWER_PLUGINS) {
+                for (ViewerPlugin<?> p : UIManager.VIEWER_PLUGINS) {
+                    if (p instanceof ImageViewerPlugin) {
+                        for (ViewCanvas<? extends ImageElement> v : ((ImageViewerPlugin<?>) p).getImagePanels()) {
+                            addFocus(newFocus, v);
+                        }
+                    }
+                }
+            }
+        } catch (Exception e) {
+            LOGGER.error("Cannot read the state of the views", e); //$NON-NLS-1$
+            return;
+        }
+
+        Map<String, Set<String>> old = focus;
+        focus = newFocus;
+        if (!old.keySet().equals(newFocus.keySet())) {
+            signalChange();
+        }
+
+        // Start first the series which have been displayed and which are waiting in the queue
+        List<LoadSeries> pending = new ArrayList<>();
+        synchronized (DownloadManager.TASKS) {
+            for (LoadSeries s : DownloadManager.TASKS) {
+                String uid = TagD.getTagValue(s.getDicomSeries(), Tag.SeriesInstanceUID, String.class);
+                if (uid != null && newFocus.containsKey(uid) && !old.containsKey(uid)
+                    && StateValue.PENDING.equals(s.getState()) && s.getPriority() != null) {
+                    pending.add(s);
+                }
+            }
+        }
+        pending.forEach(LoadSeries::setPriority);
+    }
+
+    private static void addFocus(Map<String, Set<String>> map, ViewCanvas<? extends ImageElement> view) {
+        MediaSeries<? extends ImageElement> series = view.getSeries();
+        if (series == null || !view.getJComponent().isShowing()) {
+            return;
+        }
+        String seriesUID = TagD.getTagValue(series, Tag.SeriesInstanceUID, String.class);
+        if (seriesUID != null) {
+            Set<String> sops = map.computeIfAbsent(seriesUID, k -> new HashSet<>());
+            ImageElement img = view.getImage();
+            String sopUID = img == null ? null : TagD.getTagValue(img, Tag.SOPInstanceUID, String.class);
+            if (sopUID != null) {
+                sops.add(sopUID);
+            }
+        }
+    }
+}
@@ -0,0 +1,317 @@
+/*
+ * Copyright (c) 2009-2020 Weasis Team and other contributors.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse
+ * Public License 2.0 which is available at http://www.eclipse.org/legal/epl-2.0.
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+
+package org.weasis.dicom.explorer.wado;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Properties;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.weasis.core.api.gui.util.AppProperties;
+import org.weasis.core.api.service.BundleTools;
+import org.weasis.core.api.service.WProperties;
+import org.weasis.core.api.util.ClosableURLConnection;
+import org.weasis.core.api.util.HttpConnectionPool;
+import org.weasis.core.api.util.URLParameters;
+import org.weasis.core.util.FileUtil;
+import org.weasis.core.util.StringUtil;
+
+/**
+ * Local store of the downloaded DICOM instances, kept between the sessions and identified by the SOP Instance UID.
+ * <p>
+ * The instances are copied (or hard-linked when possible) into the store after their download, and copied out of the
+ * store when a series is loaded again, so the files deleted with the series never belong to the store. The store has a
+ * maximum size: the least recently used instances are removed first. When the revalidation is enabled, a stored
+ * instance having a validator (ETag or Last-Modified) is checked with a conditional request before being used.
+ * <p>
+ * An instance can be retrieved in different forms (e.g. a lossy transfer syntax with WADO-URI), the variant of the
+ * request is stored with the instance and a stored instance is only used for the same variant.
+ * <p>
+ * Preferences:
+ * <ul>
+ * <li>download.store.enabled: enable the store (default false)</li>
+ * <li>download.store.max.size: maximum size in MB (default 2048)</li>
+ * <li>download.store.revalidate: check the stored instances with the server (default false)</li>
+ * </ul>
+ */
+public final class InstanceStore {
+    private static final Logger LOGGER = LoggerFactory.getLogger(InstanceStore.class);
+
+    public static final String P_ENABLED = "download.store.enabled"; //$NON-NLS-1$
+    public static final String P_MAX_SIZE = "download.store.max.size"; //$NON-NLS-1$
+    public static final String P_REVALIDATE = "download.store.revalidate"; //$NON-NLS-1$
+
+    private static final String FILE_EXT = ".dcm"; //$NON-NLS-1$
+    private static final String META_EXT = ".properties"; //$NON-NLS-1$
+    private static final String K_VALIDATOR = "validator"; //$NON-NLS-1$
+    private static final String K_VARIANT = "variant"; //$NON-NLS-1$
+
+    private static InstanceStore instance;
+
+    private final File folder;
+    private final boolean enabled;
+    private final boolean revalidate;
+    private final long maxSize;
+    // SOP Instance UID -> file size, in access order
+    private final LinkedHashMap<String, Long> entries = new LinkedHashMap<>(256, 0.75f, true);
+    // SOP Instance UID -> variant and validator, read from the metadata file on first access
+    private final Map<String, Properties> metadata = new HashMap<>();
+    private long totalSize = 0;
+
+    InstanceStore(File folder, boolean enabled, boolean revalidate, long maxSize) {
+        this.folder = folder;
+        this.enabled = enabled && (folder.isDirectory() || folder.mkdirs());
+        this.revalidate = revalidate;
+        this.maxSize = maxSize;
+        if (this.enabled) {
+            load();
+        }
+    }
+
+    public static synchronized InstanceStore getInstance() {
+        if (instance == null) {
+            WProperties prefs = BundleTools.SYSTEM_PREFERENCES;
+            instance = new InstanceStore(new File(AppProperties.WEASIS_PATH, "store"), //$NON-NLS-1$
+                prefs.getBooleanProperty(P_ENABLED, false), prefs.getBooleanProperty(P_REVALIDATE, false),
+                prefs.getLongProperty(P_MAX_SIZE, 2048L) * 1024L * 1024L);
+        }
+        return instance;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    private void load() {
+        File[] files = folder.listFiles((dir, name) -> name.endsWith(FILE_EXT));
+        if (files == null) {
+            return;
+        }
+        // Least recently used first
+        Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+        for (File f : files) {
+            String name = f.getName();
+            String uid = name.substring(0, name.length() - FILE_EXT.length());
+            if (DownloadJournal.isValidUID(uid)) {
+                long size = f.length();
+                entries.put(uid, size);
+                totalSize += size;
+            }
+        }
+        LOGGER.info("DICOM instance store: {} instances, {} MB", entries.size(), totalSize / (1024 * 1024)); //$NON-NLS-1$
+        evict();
+    }
+
+    /**
+     * @param variant
+     *            the form of the instance, null or empty for the original instance
+     */
+    public synchronized boolean contains(String sopInstanceUID, String variant) {
+        if (!enabled || sopInstanceUID == null || !entries.containsKey(sopInstanceUID)) {
+            return false;
+        }
+        return Objects.equals(nullToEmpty(variant), getMeta(sopInstanceUID).getProperty(K_VARIANT, "")); //$NON-NLS-1$
+    }
+
+    /**
+     * Copies the stored instance into the folder.
+     *
+     * @return the new file or null when the instance is not in the store
+     */
+    public File checkout(String sopInstanceUID, String variant, File dir) {
+        if (!contains(sopInstanceUID, variant)) {
+            return null;
+        }
+        File stored;
+        synchronized (this) {
+            stored = getFile(sopInstanceUID);
+            if (!stored.isFile()) {
+                removeEntry(sopInstanceUID);
+                return null;
+            }
+            // Update the order of the LRU, also after a restart
+            entries.get(sopInstanceUID);
+            stored.setLastModified(System.currentTimeMillis());
+        }
+        try {
+            File file = File.createTempFile("image_", FILE_EXT, dir); //$NON-NLS-1$
+            DownloadJournal.linkOrCopy(stored, file);
+            return file;
+        } catch (IOException e) {
+            LOGGER.error("Cannot copy {} from the instance store", sopInstanceUID, e); //$NON-NLS-1$
+            return null;
+        }
+    }
+
+    /**
+     * Adds a downloaded instance to the store, an instance with another variant is replaced.
+     *
+     * @param variant
+     *            the form of the instance, null or empty for the original instance
+     * @param validator
+     *            the ETag or Last-Modified value of the response, can be null
+     */
+    public void put(String sopInstanceUID, File file, String variant, String validator) {
+        if (!enabled || !DownloadJournal.isValidUID(sopInstanceUID) || file == null || !file.isFile()
+            || contains(sopInstanceUID, variant)) {
+            return;
+        }
+        File target = getFile(sopInstanceUID);
+        Properties p = new Properties();
+        p.setProperty(K_VARIANT, nullToEmpty(variant));
+        if (validator != null) {
+            p.setProperty(K_VALIDATOR, validator);
+        }
+        try {
+            DownloadJournal.linkOrCopy(file, target);
+            FileUtil.storeProperties(getMetaFile(sopInstanceUID), p, null);
+        } catch (IOException e) {
+            FileUtil.delete(target);
+            LOGGER.error("Cannot add {} to the instance store", sopInstanceUID, e); //$NON-NLS-1$
+            return;
+        }
+        synchronized (this) {
+            long size = target.length();
+            Long old = entries.put(sopInstanceUID, size);
+            metadata.put(sopInstanceUID, p);
+            totalSize += size - (old == null ? 0L : old);
+            evict();
+        }
+    }
+
+    public synchronized void remove(String sopInstanceUID) {
+        if (entries.containsKey(sopInstanceUID)) {
+            removeEntry(sopInstanceUID);
+        }
+    }
+
+    /**
+     * Checks with the server that the stored instance has not been modified. Without revalidation or without
+     * validator, the stored instance is considered as valid because a SOP Instance is not supposed to change.
+     *
+     * @return false when the instance must be downloaded again
+     */
+    public boolean isValid(String sopInstanceUID, String url, URLParameters urlParameters) {
+        if (!revalidate || url == null) {
+            return true;
+        }
+        String validator;
+        synchronized (this) {
+            if (!entries.containsKey(sopInstanceUID)) {
+                return true;
+            }
+            validator = getMeta(sopInstanceUID).getProperty(K_VALIDATOR);
+        }
+        if (!StringUtil.hasText(validator)) {
+            return true;
+        }
+
+        Map<String, String> headers =
+            urlParameters.getHeaders() == null ? new HashMap<>() : new HashMap<>(urlParameters.getHeaders());
+        boolean etag = validator.startsWith("\"") || validator.startsWith("W/"); //$NON-NLS-1$ //$NON-NLS-2$
+        headers.put(etag ? "If-None-Match" : "If-Modified-Since", validator); //$NON-NLS-1$ //$NON-NLS-2$
+        URLParameters params =
+            new URLParameters(headers, urlParameters.getConnectTimeout(), urlParameters.getReadTimeout());
+        // The body of a modified instance is not read, it is downloaded again with the normal request
+        try (ClosableURLConnection c = HttpConnectionPool.getInstance().getUncheckedConnection(new URL(url), params)) {
+            URLConnection con = c.getUrlConnection();
+            if (!(con instanceof HttpURLConnection)) {
+                return true;
+            }
+            int code = ((HttpURLConnection) con).getResponseCode();
+            if (code == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                return true;
+            }
+            if (code == HttpURLConnection.HTTP_OK) {
+                LOGGER.info("The stored instance {} has been modified on the server", sopInstanceUID); //$NON-NLS-1$
+                remove(sopInstanceUID);
+                return false;
+            }
+            // Keep the stored instance when the server cannot answer
+            LOGGER.warn("Cannot revalidate {}: http status {}", sopInstanceUID, code); //$NON-NLS-1$
+            return true;
+        } catch (IOException e) {
+            LOGGER.warn("Cannot revalidate {}: {}", sopInstanceUID, e.getMessage()); //$NON-NLS-1$
+            return true;
+        }
+    }
+
+    private void evict() {
+        if (totalSize <= maxSize) {
+            return;
+        }
+        // Remove more than required to avoid evicting at each new instance
+        long target = maxSize - maxSize / 10;
+        int nb = 0;
+        Iterator<Map.Entry<String, Long>> it = entries.entrySet().iterator();
+        while (totalSize > target && it.hasNext()) {
+            Map.Entry<String, Long> e = it.next();
+            it.remove();
+            metadata.remove(e.getKey());
+            totalSize -= e.getValue();
+            FileUtil.delete(getFile(e.getKey()));
+            FileUtil.delete(getMetaFile(e.getKey()));
+            nb++;
+        }
+        LOGGER.debug("Remove {} instances from the store", nb); //$NON-NLS-1$
+    }
+
+    private void removeEntry(String sopInstanceUID) {
+        metadata.remove(sopInstanceUID);
+        Long size = entries.remove(sopInstanceUID);
+        if (size != null) {
+            totalSize -= size;
+        }
+        FileUtil.delete(getFile(sopInstanceUID));
+        FileUtil.delete(getMetaFile(sopInstanceUID));
+    }
+
+    private Properties getMeta(String sopInstanceUID) {
+        return metadata.computeIfAbsent(sopInstanceUID, uid -> {
+            Properties p = new Properties();
+            File meta = getMetaFile(uid);
+            if (meta.canRead()) {
+                FileUtil.readProperties(meta, p);
+            }
+            return p;
+        });
+    }
+
+    private static String nullToEmpty(String value) {
+        return value == null ? "" : value; //$NON-NLS-1$
+    }
+
+    private File getFile(String sopInstanceUID) {
+        return new File(folder, checkUID(sopInstanceUID) + FILE_EXT);
+    }
+
+    private File getMetaFile(String sopInstanceUID) {
+        return new File(folder, checkUID(sopInstanceUID) + META_EXT);
+    }
+
+    private static String checkUID(String sopInstanceUID) {
+        // The UID is used as file name
+        if (!DownloadJournal.isValidUID(sopInstanceUID)) {
+            throw new IllegalArgumentException("Invalid SOP Instance UID: " + sopInstanceUID); //$NON-NLS-1$
+        }
+        return sopInstanceUID;
+    }
+}
@@ -19,6 +19,7 @@ import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Objects;
+import java.util.Properties;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
@@ -40,6 +41,8 @@ import org.weasis.dicom.explorer.DicomModel;
 import org.weasis.dicom.explorer.ExplorerTask;
 import org.weasis.dicom.explorer.Messages;
 import org.weasis.dicom.explorer.pref.download.SeriesDownloadPrefView;
+import org.weasis.dicom.explorer.rs.RelevantPriors;
+import org.weasis.dicom.explorer.rs.RsQueryParams;
 import org.weasis.dicom.explorer.wado.DownloadManager.PriorityTaskComparator;
 
 public class LoadRemoteDicomManifest extends ExplorerTask<Boolean, String> {
@@ -48,7 +51,12 @@ public class LoadRemoteDicomManifest extends ExplorerTask<Boolean, String> {
     private final DicomModel dicomModel;
     private final List<String> xmlFiles;
     private final AtomicInteger retryNb = new AtomicInteger(0);
-    private final List<LoadSeries> loadSeriesList = new ArrayList<>();
+    private final List<LoadSeries> loadSeriesList = Collections.synchronizedList(new ArrayList<>());
+    // All the series of the manifests, for selecting the relevant prior studies
+    private final List<LoadSeries> openedSeries = Collections.synchronizedList(new ArrayList<>());
+    // The series are downloading while the manifests are read
+    private volatile boolean readingManifests = false;
+    private volatile boolean endedWhileReading = false;
     private final PropertyChangeListener propertyChangeListener = evt -> {
         if (evt instanceof ObservableEvent) {
             ObservableEvent event = (ObservableEvent) evt;
@@ -80,7 +88,14 @@ public class LoadRemoteDicomManifest extends ExplorerTask<Boolean, String> {
         if (!loadSeries.hasDownloadFailed()) {
             loadSeriesList.remove(loadSeries);
         }
+        if (readingManifests) {
+            endedWhileReading = true;
+        } else {
+            checkAllDownloads();
+        }
+    }
 
+    private void checkAllDownloads() {
         if (DownloadManager.TASKS.isEmpty() || DownloadManager.TASKS.stream().allMatch(LoadSeries::isStopped)) {
             if (!loadSeriesList.isEmpty() && tryDownloadingAgain(null)) {
                 LOGGER.info("Try downloading ({}) the missing elements", retryNb.get()); //$NON-NLS-1$
@@ -141,6 +156,9 @@ public class LoadRemoteDicomManifest extends ExplorerTask<Boolean, String> {
 
     @Override
     protected Boolean doInBackground() throws Exception {
+        // Add listener to know when download of series ends
+        readingManifests = true;
+        dicomModel.addPropertyChangeListener(propertyChangeListener);
         try {
             Iterator<String> iter = xmlFiles.iterator();
             while (iter.hasNext()) {
@@ -154,26 +172,44 @@ public class LoadRemoteDicomManifest extends ExplorerTask<Boolean, String> {
                 mf.retryNb.set(retryNb.get());
                 mf.execute();
             }
+        } finally {
+            readingManifests = false;
         }
-
-        // Add listener to know when download of series ends
-        dicomModel.addPropertyChangeListener(propertyChangeListener);
+        if (endedWhileReading) {
+            // Some series have been downloaded while reading the manifests
+            GuiExecutor.instance().execute(this::checkAllDownloads);
+        }
+        prefetchRelevantPriors();
 
         return true;
     }
 
+    private void prefetchRelevantPriors() {
+        String url = BundleTools.SYSTEM_PREFERENCES.getProperty(RelevantPriors.P_DICOMWEB_URL);
+        if (!RelevantPriors.isEnabled() || !StringUtil.hasText(url) || openedSeries.isEmpty()) {
+            return;
+        }
+        Properties props = new Properties();
+        props.setProperty(RsQueryParams.P_DICOMWEB_URL, url);
+        props.setProperty(RsQueryParams.P_ACCEPT_EXT, "transfer-syntax=*"); //$NON-NLS-1$
+        RsQueryParams rsQueryParams = new RsQueryParams(dicomModel, props, Collections.emptyMap(), null, null);
+        List<LoadSeries> series = new ArrayList<>(openedSeries);
+        RelevantPriors.PREFETCH_EXECUTOR.execute(() -> rsQueryParams.loadRelevantPriors(series));
+    }
+
     private void downloadManifest(Iterator<String> iter) throws DownloadException {
         try {
             URI uri = NetworkUtil.getURI(iter.next());
-            Collection<LoadSeries> wadoTasks = DownloadManager.buildDicomSeriesFromXml(uri, dicomModel);
+            boolean downloadImmediately =
+                BundleTools.SYSTEM_PREFERENCES.getBooleanProperty(SeriesDownloadPrefView.DOWNLOAD_IMMEDIATELY, true);
+            // Each series starts as soon as it has been read in the manifest
+            DownloadManager.buildDicomSeriesFromXml(uri, dicomModel, s -> {
+                loadSeriesList.add(s);
+                openedSeries.add(s);
+                DownloadManager.addLoadSeries(s, dicomModel, downloadImmediately);
+            });
             iter.remove();
-
-            if (wadoTasks != null) {
-                loadSeriesList.addAll(wadoTasks);
-                boolean downloadImmediately = BundleTools.SYSTEM_PREFERENCES
-                    .getBooleanProperty(SeriesDownloadPrefView.DOWNLOAD_IMMEDIATELY, true);
-                startDownloadingSeries(wadoTasks, downloadImmediately);
-            }
+            sortTasks();
         } catch (URISyntaxException | MalformedURLException e) {
             LOGGER.error("Loading manifest", e); //$NON-NLS-1$
         }
@@ -183,7 +219,10 @@ public class LoadRemoteDicomManifest extends ExplorerTask<Boolean, String> {
         for (final LoadSeries loadSeries : wadoTasks) {
             DownloadManager.addLoadSeries(loadSeries, dicomModel, downloadImmediately);
         }
+        sortTasks();
+    }
 
+    private static void sortTasks() {
         // Sort tasks from the download priority order (low number has a higher priority), TASKS
         // is sorted from low to high priority).
         Collections.sort(DownloadManager.TASKS, Collections.reverseOrder(new PriorityTaskComparator()));
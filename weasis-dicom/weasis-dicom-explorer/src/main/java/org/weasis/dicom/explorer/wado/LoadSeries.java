@@ -9,27 +9,41 @@
 
 package org.weasis.dicom.explorer.wado;
 
+import java.awt.Graphics2D;
 import java.awt.event.KeyListener;
 import java.awt.event.MouseListener;
 import java.awt.event.MouseMotionListener;
 import java.awt.event.MouseWheelListener;
+import java.awt.image.BufferedImage;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.SocketTimeoutException;
 import java.net.URISyntaxException;
 import java.net.URL;
+import java.net.URLConnection;
 import java.text.DecimalFormat;
 import java.util.*;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.stream.Collectors;
 
+import javax.imageio.ImageIO;
 import javax.swing.JProgressBar;
+import javax.swing.Timer;
 
 import org.dcm4che3.data.Attributes;
 import org.dcm4che3.data.ElementDictionary;
 import org.dcm4che3.data.Tag;
+import org.dcm4che3.data.UID;
+import org.dcm4che3.data.VR;
 import org.dcm4che3.io.DicomInputStream;
 import org.dcm4che3.io.DicomInputStream.IncludeBulkData;
 import org.dcm4che3.io.DicomOutputStream;
@@ -44,6 +58,7 @@ import org.weasis.core.api.media.data.MediaElement;
 import org.weasis.core.api.media.data.MediaSeries;
 import org.weasis.core.api.media.data.MediaSeriesGroup;
 import org.weasis.core.api.media.data.Series;
+import org.weasis.core.api.media.data.SeriesEvent;
 import org.weasis.core.api.media.data.SeriesImporter;
 import org.weasis.core.api.media.data.SeriesThumbnail;
 import org.weasis.core.api.media.data.TagW;
@@ -52,6 +67,7 @@ import org.weasis.core.api.media.data.Thumbnail;
 import org.weasis.core.api.service.AuditLog;
 import org.weasis.core.api.service.BundleTools;
 import org.weasis.core.api.util.ClosableURLConnection;
+import org.weasis.core.api.util.HttpConnectionPool;
 import org.weasis.core.api.util.LocalUtil;
 import org.weasis.core.api.util.NetworkUtil;
 import org.weasis.core.api.util.ThreadUtil;
@@ -68,6 +84,7 @@ import org.weasis.core.ui.model.ReferencedSeries;
 import org.weasis.core.util.FileUtil;
 import org.weasis.core.util.StreamIOException;
 import org.weasis.core.util.StringUtil;
+import org.weasis.dicom.codec.DicomImageElement;
 import org.weasis.dicom.codec.DicomMediaIO;
 import org.weasis.dicom.codec.DicomSpecialElement;
 import org.weasis.dicom.codec.TagD;
@@ -90,6 +107,11 @@ public class LoadSeries extends ExplorerTask<Boolean, String> implements SeriesI
 
     private static final Logger LOGGER = LoggerFactory.getLogger(LoadSeries.class);
     public static final String CONCURRENT_DOWNLOADS_IN_SERIES = "download.concurrent.series.images"; //$NON-NLS-1$
+    public static final String WADO_RS_SERIES_RETRIEVE = "download.wadors.series.retrieve"; //$NON-NLS-1$
+    public static final String LOSSY_PREVIEW = "download.lossy.preview"; //$NON-NLS-1$
+    public static final String LOSSY_PREVIEW_TSUID = "download.lossy.preview.tsuid"; //$NON-NLS-1$
+    public static final String RENDERED_PREVIEW = "download.rendered.preview"; //$NON-NLS-1$
+    public static final String RENDERED_PREVIEW_SIZE = "download.rendered.preview.size"; //$NON-NLS-1$
 
     public static final File DICOM_TMP_DIR = AppProperties.buildAccessibleTempDirectory("downloading"); //$NON-NLS-1$
     public static final TagW DOWNLOAD_START_TIME = new TagW("DownloadSartTime", TagType.TIME); //$NON-NLS-1$
@@ -109,6 +131,17 @@ public class LoadSeries extends ExplorerTask<Boolean, String> implements SeriesI
     private final boolean startDownloading;
 
     private volatile boolean hasError = false;
+    private final AdaptiveConcurrency instanceConcurrency;
+    private final UpdateBatch uiUpdates = new UpdateBatch();
+    // Readers of the lossy previews waiting for the original instance
+    private final Map<String, DicomMediaIO> previews = new ConcurrentHashMap<>();
+    // The patient, the study and the series have only the values known before downloading the original instances
+    private volatile boolean renderedMetadata = false;
+    // Set when the first original instance has written its values into the patient, the study and the series
+    private final AtomicBoolean metadataWritten = new AtomicBoolean(false);
+    // Set when the task does not check anymore the instances added to the list (e.g. the same series later in the
+    // manifest)
+    private boolean instanceListClosed = false;
 
     public LoadSeries(Series<?> dicomSeries, DicomModel dicomModel, int concurrentDownloads, boolean writeInCache) {
         this(dicomSeries, dicomModel, concurrentDownloads, writeInCache, true);
@@ -132,6 +165,7 @@ public class LoadSeries extends ExplorerTask<Boolean, String> implements SeriesI
         }
         this.dicomSeries.setSeriesLoader(this);
         this.concurrentDownloads = concurrentDownloads;
+        this.instanceConcurrency = buildInstanceConcurrency(concurrentDownloads);
         this.urlParams = new URLParameters(getHttpTags((WadoParameters) dicomSeries.getTagValue(TagW.WadoParameters)));
         this.startDownloading = startDownloading;
     }
@@ -151,13 +185,40 @@ public class LoadSeries extends ExplorerTask<Boolean, String> implements SeriesI
         this.writeInCache = writeInCache;
         this.dicomSeries.setSeriesLoader(this);
         this.concurrentDownloads = concurrentDownloads;
+        this.instanceConcurrency = buildInstanceConcurrency(concurrentDownloads);
         this.urlParams = new URLParameters(getHttpTags((WadoParameters) dicomSeries.getTagValue(TagW.WadoParameters)));
         this.startDownloading = startDownloading;
     }
 
+    private static AdaptiveConcurrency buildInstanceConcurrency(int concurrentDownloads) {
+        // More simultaneous requests than the connections to the host would only wait for a connection
+        int defMax = HttpConnectionPool.getInstance().getMaxPerHost();
+        return AdaptiveConcurrency.fromPreferences("Images", //$NON-NLS-1$
+            CONCURRENT_DOWNLOADS_IN_SERIES, concurrentDownloads, defMax, 2, null);
+    }
+
     @Override
     protected Boolean doInBackground() {
-        return startDownload();
+        String seriesUID = getSeriesUID();
+        InstanceScheduler.getInstance().register(seriesUID);
+        try {
+            Boolean result;
+            int nbInstances;
+            do {
+                nbInstances = seriesInstanceList.size();
+                // The instances already loaded are skipped
+                result = startDownload();
+            } while (!closeInstanceList(nbInstances));
+            return result;
+        } finally {
+            // The dicomSeries must be added to the dicomModel before reaching done() of SwingWorker
+            uiUpdates.flushAndWait();
+            InstanceScheduler.getInstance().unregister(seriesUID);
+        }
+    }
+
+    private String getSeriesUID() {
+        return TagD.getTagValue(dicomSeries, Tag.SeriesInstanceUID, String.class);
     }
 
     @Override
@@ -170,6 +231,14 @@ public class LoadSeries extends ExplorerTask<Boolean, String> implements SeriesI
         return isCancelled();
     }
 
+    @Override
+    public boolean cancel() {
+        boolean val = super.cancel();
+        // Wake up the workers waiting for the displayed series
+        InstanceScheduler.getInstance().signalChange();
+        return val;
+    }
+
     @Override
     public boolean stop() {
         if (!isDone()) {
@@ -239,6 +308,23 @@ public class LoadSeries extends ExplorerTask<Boolean, String> implements SeriesI
         }
     }
 
+    private synchronized boolean closeInstanceList(int nbInstances) {
+        if (isCancelled() || seriesInstanceList.size() == nbInstances) {
+            instanceListClosed = true;
+        }
+        return instanceListClosed;
+    }
+
+    /**
+     * Must be called after adding new instances to the list of the series.
+     *
+     * @return true when the task will download the new instances, false when it is done or cancelled and another task
+     *         must be created
+     */
+    public synchronized boolean acceptNewInstances() {
+        return !instanceListClosed && !isDone();
+    }
+
     public boolean hasDownloadFailed() {
         return hasError;
     }
@@ -318,7 +404,7 @@ public class LoadSeries extends ExplorerTask<Boolean, String> implements SeriesI
     }
 
     private void incrementProgressBarValue() {
-        GuiExecutor.instance().execute(() -> progressBar.setValue(progressBar.getValue() + 1));
+        uiUpdates.incrementProgress();
     }
 
     private Boolean startDownload() {
@@ -334,10 +420,26 @@ public class LoadSeries extends ExplorerTask<Boolean, String> implements SeriesI
 
         List<SopInstance> sopList = seriesInstanceList.getSortedList();
 
-        ExecutorService imageDownloader =
-            ThreadUtil.buildNewFixedThreadExecutor(concurrentDownloads, "Image Downloader"); //$NON-NLS-1$
-        ArrayList<Callable<Boolean>> tasks = new ArrayList<>(sopList.size());
+        // Keep the download order and the SOP Instance UID for a series-level retrieve
+        Map<String, Download> tasks = new LinkedHashMap<>(sopList.size());
+        // Instances already downloaded in a previous session
+        Set<String> localInstances = new HashSet<>();
+        DownloadJournal journal = DownloadJournal.getInstance();
+        InstanceStore store = InstanceStore.getInstance();
+        String variant = getStoreVariant(wado);
+        // WADO-URI cannot be resumed because the stream is modified on the fly by the server and the override of
+        // DICOM values rewrites the file
+        boolean resumable = journal.isEnabled() && wado.getOverrideDicomTagIDList() == null;
+        boolean rendered = isRenderedPreview();
+        String previewTsuid = rendered ? null : getLossyPreviewTsuid(wado);
+        // A first pass downloads a preview of the images, replaced by the original ones in the second pass
+        Map<String, Download> previewTasks = new LinkedHashMap<>();
         int[] dindex = generateDownladOrder(sopList.size());
+        // Position of the instances in the series, for ordering the downloads from the displayed images
+        Map<String, Integer> positions = new HashMap<>(sopList.size());
+        for (int i = 0; i < sopList.size(); i++) {
+            positions.putIfAbsent(sopList.get(i).getSopInstanceUID(), i);
+        }
         GuiExecutor.instance().execute(() -> {
             progressBar.setMaximum(sopList.size());
             progressBar.setValue(0);
@@ -395,19 +497,299 @@ public class LoadSeries extends ExplorerTask<Boolean, String> implements SeriesI
             String url = request.toString();
 
             LOGGER.debug("Download DICOM instance {} index {}.", url, k); //$NON-NLS-1$
-            Download ref = new Download(url);
-            tasks.add(ref);
+            boolean localFile = url.startsWith("file:"); //$NON-NLS-1$
+            Download ref = new Download(url, instance.getSopInstanceUID(),
+                resumable && instance.getDirectDownloadFile() != null && !localFile);
+            if ((ref.getJournalEntry() != null && ref.getJournalEntry().isComplete())
+                || (!localFile && variant != null && store.contains(instance.getSopInstanceUID(), variant))) {
+                localInstances.add(instance.getSopInstanceUID());
+            } else if (rendered && !localFile) {
+                String renderedURL = getRenderedURL(wado, studyUID, seriesUID, instance);
+                if (renderedURL != null) {
+                    previewTasks.put(instance.getSopInstanceUID(), new RenderedPreviewDownload(renderedURL, instance));
+                }
+            } else if (previewTsuid != null && instance.getDirectDownloadFile() == null && !localFile) {
+                previewTasks.put(instance.getSopInstanceUID(),
+                    new PreviewDownload(setTransferSyntax(url, previewTsuid), instance.getSopInstanceUID()));
+            }
+            tasks.put(instance.getSopInstanceUID(), ref);
+        }
+
+        dicomSeries.setTag(DOWNLOAD_START_TIME, System.currentTimeMillis());
+        // The previews are downloaded before the series-level retrieve, which takes a long time to complete
+        if (!previewTasks.isEmpty()) {
+            int nbPreviews = previewTasks.size();
+            GuiExecutor.instance().execute(() -> progressBar.setMaximum(progressBar.getMaximum() + nbPreviews));
+            download(previewTasks, positions);
+            if (isCancelled()) {
+                return true;
+            }
         }
 
+        Set<String> toRetrieve = new LinkedHashSet<>(tasks.keySet());
+        toRetrieve.removeAll(localInstances);
+        String seriesURL = getSeriesRetrieveURL(wado, toRetrieve.size(), sopList.size());
+        if (seriesURL != null) {
+            LOGGER.debug("Download DICOM series {} with {} instances.", seriesURL, toRetrieve.size()); //$NON-NLS-1$
+            SeriesDownload seriesDownload = new SeriesDownload(seriesURL, toRetrieve);
+            try {
+                seriesDownload.call();
+            } catch (Exception e) {
+                LOGGER.error("Downloading series", e); //$NON-NLS-1$
+            }
+            if (isCancelled()) {
+                return true;
+            }
+            // Fallback to one request by instance for the missing ones
+            Set<String> missing = seriesDownload.getPendingUIDs();
+            tasks.keySet().removeIf(uid -> !localInstances.contains(uid) && !missing.contains(uid));
+        }
+
+        if (!tasks.isEmpty()) {
+            download(tasks, positions);
+        }
+        return true;
+    }
+
+    private void download(Map<String, Download> tasks, Map<String, Integer> positions) {
+        // Each worker takes the next instance according to the displayed images when it is free
+        PendingDownloads pending = new PendingDownloads(tasks, positions);
+        int nbWorkers = Math.min(tasks.size(), instanceConcurrency.getMax());
+        List<Callable<Boolean>> workers = new ArrayList<>(nbWorkers);
+        for (int i = 0; i < nbWorkers; i++) {
+            final int worker = i;
+            workers.add(() -> {
+                Download download;
+                while ((download = nextDownload(pending, positions, worker)) != null) {
+                    try {
+                        download.call();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        download.error();
+                    } catch (Exception e) {
+                        // Continue with the next instances, only the cancellation of the task stops the worker
+                        download.error();
+                        LOGGER.error("Downloading {}", download.url, e); //$NON-NLS-1$
+                    }
+                }
+                return Boolean.TRUE;
+            });
+        }
+        // The threads wait for the adaptive limit of simultaneous downloads
+        ExecutorService imageDownloader =
+            ThreadUtil.buildNewFixedThreadExecutor(nbWorkers, "Image Downloader"); //$NON-NLS-1$
         try {
-            dicomSeries.setTag(DOWNLOAD_START_TIME, System.currentTimeMillis());
-            imageDownloader.invokeAll(tasks);
+            imageDownloader.invokeAll(workers);
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
         }
-
         imageDownloader.shutdown();
-        return true;
+    }
+
+    /**
+     * Takes the pending instance which is the closest to an image displayed in a view, otherwise the next one in the
+     * default order. While a displayed series is downloading, only the first worker of the other series continues.
+     *
+     * @return the next download or null when there is nothing more to download
+     */
+    private Download nextDownload(PendingDownloads pending, Map<String, Integer> positions, int worker)
+        throws InterruptedException {
+        InstanceScheduler scheduler = InstanceScheduler.getInstance();
+        String seriesUID = getSeriesUID();
+        if (worker > 0) {
+            scheduler.awaitForeground(seriesUID, this::isCancelled);
+        }
+        if (isCancelled()) {
+            return null;
+        }
+
+        List<Integer> focus = new ArrayList<>();
+        for (String sopUID : scheduler.getFocusedInstances(seriesUID)) {
+            Integer pos = positions.get(sopUID);
+            if (pos != null) {
+                focus.add(pos);
+            }
+        }
+        return pending.next(focus);
+    }
+
+    /**
+     * Downloads waiting for a worker, in the default order and indexed by their position in the series.
+     */
+    static final class PendingDownloads {
+        private final LinkedHashMap<String, Download> downloads;
+        private final Map<String, Integer> positions;
+        // Position in the series -> SOP Instance UID
+        private final TreeMap<Integer, String> byPosition = new TreeMap<>();
+
+        PendingDownloads(Map<String, Download> tasks, Map<String, Integer> positions) {
+            this.downloads = new LinkedHashMap<>(tasks);
+            this.positions = positions;
+            for (String sopUID : tasks.keySet()) {
+                Integer pos = positions.get(sopUID);
+                if (pos != null) {
+                    byPosition.put(pos, sopUID);
+                }
+            }
+        }
+
+        /**
+         * Removes the download which is the closest to the focused positions, otherwise the first one in the default
+         * order.
+         *
+         * @return the download or null when there is no more download
+         */
+        synchronized Download next(Collection<Integer> focus) {
+            if (downloads.isEmpty()) {
+                return null;
+            }
+            Integer best = null;
+            int bestDistance = Integer.MAX_VALUE;
+            for (Integer f : focus) {
+                Integer after = byPosition.ceilingKey(f);
+                if (after != null && after - f < bestDistance) {
+                    bestDistance = after - f;
+                    best = after;
+                }
+                Integer before = byPosition.floorKey(f);
+                if (before != null && f - before < bestDistance) {
+                    bestDistance = f - before;
+                    best = before;
+                }
+            }
+            String sopUID = best == null ? downloads.keySet().iterator().next() : byPosition.get(best);
+            Integer pos = best == null ? positions.get(sopUID) : best;
+            if (pos != null) {
+                byPosition.remove(pos);
+            }
+            return downloads.remove(sopUID);
+        }
+    }
+
+    /**
+     * @return the WADO-RS URL of the series when it can be retrieved with one request, otherwise null
+     */
+    private String getSeriesRetrieveURL(WadoParameters wado, int nbInstancesToLoad, int nbInstances) {
+        if (!wado.isWadoRS() || nbInstancesToLoad < 2
+            || !BundleTools.SYSTEM_PREFERENCES.getBooleanProperty(WADO_RS_SERIES_RETRIEVE, true)) {
+            return null;
+        }
+        // The response contains all the instances, not worth it when most of them are already loaded
+        if (nbInstancesToLoad * 2 < nbInstances) {
+            return null;
+        }
+        String url = TagD.getTagValue(dicomSeries, Tag.RetrieveURL, String.class);
+        return StringUtil.hasText(url) ? url : null;
+    }
+
+    /**
+     * @return the form of the instances for the {@link InstanceStore} (the transfer syntax and the compression rate
+     *         requested with WADO-URI), null when the instances cannot be stored
+     */
+    private String getStoreVariant(WadoParameters wado) {
+        // The override of DICOM values depends on the manifest
+        if (wado == null || wado.getOverrideDicomTagIDList() != null) {
+            return null;
+        }
+        String wadoTsuid = (String) dicomSeries.getTagValue(TagW.WadoTransferSyntaxUID);
+        if (wado.isWadoRS() || !StringUtil.hasText(wadoTsuid)) {
+            return ""; //$NON-NLS-1$
+        }
+        Integer rate = (Integer) dicomSeries.getTagValue(TagW.WadoCompressionRate);
+        return rate != null && rate > 0 ? wadoTsuid + "/" + rate : wadoTsuid; //$NON-NLS-1$
+    }
+
+    /**
+     * @return the transfer syntax of the lossy previews, null when the images are directly downloaded with their
+     *         requested transfer syntax
+     */
+    private String getLossyPreviewTsuid(WadoParameters wado) {
+        // Only WADO-URI can request another transfer syntax for each instance
+        if (wado.isWadoRS() || !BundleTools.SYSTEM_PREFERENCES.getBooleanProperty(LOSSY_PREVIEW, false)) {
+            return null;
+        }
+        String tsuid = BundleTools.SYSTEM_PREFERENCES.getProperty(LOSSY_PREVIEW_TSUID,
+            TransferSyntax.JPEG_LOSSY_8.getTransferSyntaxUID());
+        // The images are already downloaded in a lossy transfer syntax
+        if (!StringUtil.hasText(tsuid) || tsuid.equals(dicomSeries.getTagValue(TagW.WadoTransferSyntaxUID))) {
+            return null;
+        }
+        return tsuid;
+    }
+
+    /**
+     * @return true when the server renders a preview of each image (JPEG) before downloading the original instances
+     */
+    private boolean isRenderedPreview() {
+        // A rendered multiframe instance is only its first frame
+        return BundleTools.SYSTEM_PREFERENCES.getBooleanProperty(RENDERED_PREVIEW, false)
+            && !seriesInstanceList.isContainsMultiframes();
+    }
+
+    /**
+     * @return the WADO-RS or WADO-URI request of the rendered preview of the instance, null when it cannot be rendered
+     *         by the server
+     */
+    private static String getRenderedURL(WadoParameters wado, String studyUID, String seriesUID,
+        SopInstance instance) {
+        int size = BundleTools.SYSTEM_PREFERENCES.getIntProperty(RENDERED_PREVIEW_SIZE, 256);
+        if (wado.isWadoRS()) {
+            if (instance.getDirectDownloadFile() == null) {
+                return null;
+            }
+            return wado.getBaseURL() + instance.getDirectDownloadFile() + "/rendered?viewport=" + size //$NON-NLS-1$
+                + "%2C" + size; //$NON-NLS-1$
+        }
+        if (instance.getDirectDownloadFile() != null) {
+            return null;
+        }
+        StringBuilder buf = new StringBuilder(wado.getBaseURL());
+        buf.append("?requestType=WADO&studyUID="); //$NON-NLS-1$
+        buf.append(studyUID);
+        buf.append("&seriesUID="); //$NON-NLS-1$
+        buf.append(seriesUID);
+        buf.append("&objectUID="); //$NON-NLS-1$
+        buf.append(instance.getSopInstanceUID());
+        buf.append("&contentType=image%2Fjpeg&imageQuality=90&rows="); //$NON-NLS-1$
+        buf.append(size);
+        buf.append("&columns="); //$NON-NLS-1$
+        buf.append(size);
+        buf.append(getRenderingParameters(wado));
+        return buf.toString();
+    }
+
+    /**
+     * @return the additional parameters of the WADO-URI requests without those which do not apply to a rendered image
+     */
+    private static String getRenderingParameters(WadoParameters wado) {
+        String addParams = wado.getAdditionnalParameters();
+        if (StringUtil.hasText(addParams)) {
+            addParams = Arrays.stream(addParams.split("&")) //$NON-NLS-1$
+                .filter(p -> !p.startsWith("transferSyntax") && !p.startsWith("anonymize")) //$NON-NLS-1$ //$NON-NLS-2$
+                .collect(Collectors.joining("&")); //$NON-NLS-1$
+        }
+        return addParams;
+    }
+
+    /**
+     * @return the WADO-URI request with the transfer syntax given in parameter
+     */
+    private static String setTransferSyntax(String url, String tsuid) {
+        StringBuilder buffer = new StringBuilder();
+        int start = url.indexOf("&transferSyntax="); //$NON-NLS-1$
+        if (start != -1) {
+            int end = url.indexOf('&', start + 16);
+            buffer.append(url.substring(0, start + 16));
+            buffer.append(tsuid);
+            if (end != -1) {
+                buffer.append(url.substring(end));
+            }
+        } else {
+            buffer.append(url);
+            buffer.append("&transferSyntax="); //$NON-NLS-1$
+            buffer.append(tsuid);
+        }
+        return buffer.toString();
     }
 
     private static Map<String, String> getHttpTags(WadoParameters wadoParams) {
@@ -437,28 +819,38 @@ public class LoadSeries extends ExplorerTask<Boolean, String> implements SeriesI
             List<SopInstance> sopList = seriesInstanceList.getSortedList();
             final SopInstance instance = sopList.get(sopList.size() / 2);
 
-            GuiExecutor.instance().execute(() -> {
-                SeriesThumbnail thumbnail = (SeriesThumbnail) dicomSeries.getTagValue(TagW.Thumbnail);
-                if (thumbnail == null) {
-                    thumbnail = new SeriesThumbnail(dicomSeries, Thumbnail.DEFAULT_SIZE);
-                }
-                // In case series is downloaded or canceled
-                thumbnail.setProgressBar(LoadSeries.this.isDone() ? null : progressBar);
-                thumbnail.registerListeners();
-                addListenerToThumbnail(thumbnail, LoadSeries.this, dicomModel);
-                dicomSeries.setTag(TagW.Thumbnail, thumbnail);
-                dicomModel.firePropertyChange(
-                    new ObservableEvent(ObservableEvent.BasicAction.ADD, dicomModel, null, dicomSeries));
-            });
+            GuiExecutor.instance().execute(this::addThumbnailToExplorer);
 
             loadThumbnail(instance, wadoParameters);
         }
     }
 
+    /**
+     * Adds the thumbnail of the series in the explorer, the instances of the series can be unknown. Must be called in
+     * the EDT.
+     */
+    public void addThumbnailToExplorer() {
+        SeriesThumbnail thumbnail = (SeriesThumbnail) dicomSeries.getTagValue(TagW.Thumbnail);
+        if (thumbnail == null) {
+            thumbnail = new SeriesThumbnail(dicomSeries, Thumbnail.DEFAULT_SIZE);
+        }
+        // In case series is downloaded or canceled
+        thumbnail.setProgressBar(isDone() ? null : progressBar);
+        thumbnail.registerListeners();
+        addListenerToThumbnail(thumbnail, this, dicomModel);
+        dicomSeries.setTag(TagW.Thumbnail, thumbnail);
+        dicomModel.firePropertyChange(
+            new ObservableEvent(ObservableEvent.BasicAction.ADD, dicomModel, null, dicomSeries));
+    }
+
+    /**
+     * @param instance
+     *            the instance of the thumbnail, can be null with WADO-RS (the thumbnail of the series is requested)
+     */
     public void loadThumbnail(SopInstance instance, WadoParameters wadoParameters) {
         File file = null;
         URLParameters params = urlParams;
-        if (instance.getDirectDownloadFile() == null) {
+        if (instance != null && instance.getDirectDownloadFile() == null) {
             String studyUID = ""; //$NON-NLS-1$
             String seriesUID = ""; //$NON-NLS-1$
             if (!wadoParameters.isRequireOnlySOPInstanceUID()) {
@@ -498,8 +890,10 @@ public class LoadSeries extends ExplorerTask<Boolean, String> implements SeriesI
                 try {
                     File outFile = File.createTempFile("tumb_", extension, //$NON-NLS-1$
                         Thumbnail.THUMBNAIL_CACHE_DIR);
-                    ClosableURLConnection httpCon = NetworkUtil.getUrlConnection(thumURL, params);
-                    FileUtil.writeStreamWithIOException(httpCon.getInputStream(), outFile);
+                    try (ClosableURLConnection httpCon =
+                        HttpConnectionPool.getInstance().getConnection(thumURL, params)) {
+                        FileUtil.writeStreamWithIOException(httpCon.getInputStream(), outFile);
+                    }
                     if (outFile.length() == 0) {
                         throw new IllegalStateException("Thumbnail file is empty"); //$NON-NLS-1$
                     }
@@ -564,20 +958,18 @@ public class LoadSeries extends ExplorerTask<Boolean, String> implements SeriesI
 
     public File getJPEGThumnails(WadoParameters wadoParameters, String studyUID, String seriesUID,
         String sopInstanceUID) throws IOException {
-        String addParams = wadoParameters.getAdditionnalParameters();
-        if(StringUtil.hasText(addParams)) {
-            addParams = Arrays.stream(addParams.split("&")).filter(p -> !p.startsWith("transferSyntax") && !p.startsWith("anonymize")).collect(Collectors.joining("&")); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
-        }
+        String addParams = getRenderingParameters(wadoParameters);
         // TODO set quality as a preference
         URL url =
             new URL(wadoParameters.getBaseURL() + "?requestType=WADO&studyUID=" + studyUID + "&seriesUID=" + seriesUID //$NON-NLS-1$ //$NON-NLS-2$
                 + "&objectUID=" + sopInstanceUID + "&contentType=image/jpeg&imageQuality=70" + "&rows=" //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
                 + Thumbnail.MAX_SIZE + "&columns=" + Thumbnail.MAX_SIZE + addParams); //$NON-NLS-1$
 
-        ClosableURLConnection httpCon = NetworkUtil.getUrlConnection(url, urlParams);
         File outFile = File.createTempFile("tumb_", ".jpg", Thumbnail.THUMBNAIL_CACHE_DIR); //$NON-NLS-1$ //$NON-NLS-2$
         LOGGER.debug("Start to download JPEG thbumbnail {} to {}.", url, outFile.getName()); //$NON-NLS-1$
-        FileUtil.writeStreamWithIOException(httpCon.getInputStream(), outFile);
+        try (ClosableURLConnection httpCon = HttpConnectionPool.getInstance().getConnection(url, urlParams)) {
+            FileUtil.writeStreamWithIOException(httpCon.getInputStream(), outFile);
+        }
         if (outFile.length() == 0) {
             throw new IllegalStateException("Thumbnail file is empty"); //$NON-NLS-1$
         }
@@ -623,12 +1015,44 @@ public class LoadSeries extends ExplorerTask<Boolean, String> implements SeriesI
 
     class Download implements Callable<Boolean> {
 
-        private final String url; // download URL
+        protected final String url; // download URL
         private Status status; // current status of download
+        private long requestTime; // time of the request, after waiting for a connection to the host
+        private long ttfb; // time of the response headers
+        private long receivedBytes;
+        private final DownloadJournal.Entry journalEntry; // null when the download cannot be resumed
+        private final String sopInstanceUID; // null when the download is not a single instance
+        private final String storeVariant; // null when the instance cannot be in the InstanceStore
+        private String validator; // ETag or Last-Modified of the response
+        private InFlightInstances.Claim claim; // not null when this request owns the transfer of the instance
+        private DicomMediaIO loadedReader; // reader of the instance added to the series
 
         public Download(String url) {
+            this(url, null, false);
+        }
+
+        /**
+         * @param resumable
+         *            true when the download can be resumed with a Range request and is recorded in the
+         *            {@link DownloadJournal}
+         */
+        public Download(String url, String sopInstanceUID, boolean resumable) {
             this.url = url;
             this.status = Status.DOWNLOADING;
+            this.sopInstanceUID = sopInstanceUID;
+            this.journalEntry = resumable ? DownloadJournal.getInstance()
+                .getEntry(TagD.getTagValue(dicomSeries, Tag.SeriesInstanceUID, String.class), sopInstanceUID, url)
+                : null;
+            this.storeVariant = sopInstanceUID == null || url.startsWith("file:") ? null //$NON-NLS-1$
+                : getStoreVariant((WadoParameters) dicomSeries.getTagValue(TagW.WadoParameters));
+        }
+
+        public DownloadJournal.Entry getJournalEntry() {
+            return journalEntry;
+        }
+
+        public String getSopInstanceUID() {
+            return sopInstanceUID;
         }
 
         public void pause() {
@@ -648,41 +1072,103 @@ public class LoadSeries extends ExplorerTask<Boolean, String> implements SeriesI
         }
 
         private ClosableURLConnection replaceToDefaultTSUID() throws IOException {
-            StringBuilder buffer = new StringBuilder();
-            int start = url.indexOf("&transferSyntax="); //$NON-NLS-1$
-            if (start != -1) {
-                int end = url.indexOf('&', start + 16);
-                buffer.append(url.substring(0, start + 16));
-                buffer.append(TransferSyntax.EXPLICIT_VR_LE.getTransferSyntaxUID());
-                if (end != -1) {
-                    buffer.append(url.substring(end));
-                }
-            } else {
-                buffer.append(url);
-                buffer.append("&transferSyntax="); //$NON-NLS-1$
-                buffer.append(TransferSyntax.EXPLICIT_VR_LE.getTransferSyntaxUID());
-            }
-
-            return NetworkUtil.getUrlConnection(new URL(buffer.toString()), urlParams);
+            String tsuid = TransferSyntax.EXPLICIT_VR_LE.getTransferSyntaxUID();
+            return HttpConnectionPool.getInstance().getConnection(new URL(setTransferSyntax(url, tsuid)), urlParams);
         }
 
         @Override
         public Boolean call() throws Exception {
+            // Waiting for the same instance requested elsewhere does not take a download slot
+            if (processShared()) {
+                return Boolean.TRUE;
+            }
             try {
-                process();
-            } catch (StreamIOException es) {
-                hasError = true; // network issue (allow to retry)
-                error();
-                LOGGER.error("Downloading", es); //$NON-NLS-1$
-            } catch (IOException | URISyntaxException e) {
-                error();
-                LOGGER.error("Downloading", e); //$NON-NLS-1$
+                if (isCancelled()) {
+                    return Boolean.TRUE;
+                }
+                instanceConcurrency.acquire();
+                try {
+                    requestTime = System.nanoTime();
+                    // No sample when the file comes from the download journal
+                    if (process() && status == Status.COMPLETE && receivedBytes > 0) {
+                        addSample(receivedBytes, ttfb - requestTime);
+                    }
+                } catch (StreamIOException es) {
+                    hasError = true; // network issue (allow to retry)
+                    error();
+                    instanceConcurrency.addError();
+                    DownloadManager.SERIES_CONCURRENCY.addError();
+                    LOGGER.error("Downloading", es); //$NON-NLS-1$
+                } catch (IOException | URISyntaxException e) {
+                    error();
+                    LOGGER.error("Downloading", e); //$NON-NLS-1$
+                } finally {
+                    instanceConcurrency.release();
+                }
+            } finally {
+                if (claim != null) {
+                    // Wakes up the other requests of the instance, they download it when it has failed or has been
+                    // cancelled
+                    claim.complete(status == Status.COMPLETE ? loadedReader : null);
+                    claim = null;
+                }
             }
             return Boolean.TRUE;
         }
 
+        /**
+         * @return true when the instance can be shared with the other requests of the same instance
+         */
+        protected boolean isShareable() {
+            return storeVariant != null;
+        }
+
+        /**
+         * Registers the request in the {@link InFlightInstances}. When the instance is already downloading, waits for
+         * the other request and loads a copy of its file with the parsed header.
+         *
+         * @return true when the instance has been loaded from the other request
+         */
+        private boolean processShared() throws InterruptedException {
+            if (!isShareable()) {
+                return false;
+            }
+            InFlightInstances.Claim c = InFlightInstances.getInstance().claim(sopInstanceUID, storeVariant);
+            if (c == null) {
+                return false;
+            }
+            if (c.isOwner()) {
+                this.claim = c;
+                return false;
+            }
+            LOGGER.debug("DICOM instance {} is already downloading, wait for it", sopInstanceUID); //$NON-NLS-1$
+            DicomMediaIO dicomReader = c.await(DicomMediaIO.DICOM_EXPORT_DIR, LoadSeries.this::isCancelled);
+            if (dicomReader == null) {
+                return false;
+            }
+            File file = new File(dicomReader.getUri());
+            readDownloadedFile(dicomReader);
+            if (!dicomReader.isReadableDicom()) {
+                dicomReader.dispose();
+                FileUtil.delete(file);
+                return false;
+            }
+            dicomSeries.setFileSize(dicomSeries.getFileSize() + file.length());
+            if (status == Status.DOWNLOADING) {
+                status = Status.COMPLETE;
+                addDownloadedFile(dicomReader, file, true);
+            }
+            incrementProgressBarValue();
+            return true;
+        }
+
+        protected void addSample(long bytes, long ttfbNanos) {
+            instanceConcurrency.addSample(bytes, ttfbNanos);
+            DownloadManager.SERIES_CONCURRENCY.addSample(bytes, ttfbNanos);
+        }
+
         // Solves missing tmp folder problem (on Windows).
-        private File getDicomTmpDir() {
+        protected File getDicomTmpDir() {
             if (!DICOM_TMP_DIR.exists()) {
                 LOGGER.info("DICOM tmp dir not foud. Re-creating it!"); //$NON-NLS-1$
                 AppProperties.buildAccessibleTempDirectory("downloading"); //$NON-NLS-1$
@@ -698,11 +1184,22 @@ public class LoadSeries extends ExplorerTask<Boolean, String> implements SeriesI
          * @throws URISyntaxException
          */
         private boolean process() throws IOException, URISyntaxException {
+            if (storeVariant != null && InstanceStore.getInstance().contains(sopInstanceUID, storeVariant)
+                && processStored(InstanceStore.getInstance())) {
+                return true;
+            }
+            if (journalEntry != null) {
+                return processResumable();
+            }
             boolean cache = true;
             File tempFile = null;
             DicomMediaIO dicomReader = null;
-            ClosableURLConnection urlcon = NetworkUtil.getUrlConnection(new URL(url), urlParams);
-            try (InputStream stream = urlcon.getInputStream()) {
+            StreamingDicomWriter writer = null;
+            try (ClosableURLConnection urlcon = HttpConnectionPool.getInstance().getConnection(new URL(url), urlParams);
+                            InputStream stream = urlcon.getInputStream()) {
+                ttfb = System.nanoTime();
+                requestTime = HttpConnectionPool.getRequestTime(urlcon, requestTime);
+                validator = DownloadJournal.getValidator(urlcon.getUrlConnection(), false);
 
                 if (!writeInCache && url.startsWith("file:")) { //$NON-NLS-1$
                     cache = false;
@@ -719,13 +1216,16 @@ public class LoadSeries extends ExplorerTask<Boolean, String> implements SeriesI
                 if (dicomSeries != null) {
                     if (cache) {
                         LOGGER.debug("Start to download DICOM instance {} to {}.", url, tempFile.getName()); //$NON-NLS-1$
-                        int bytesTransferred = downloadInFileCache(urlcon, tempFile);
+                        // Parse the header while writing, the file is renamed in the export folder
+                        writer = new StreamingDicomWriter(new File(DicomMediaIO.DICOM_EXPORT_DIR, tempFile.getName()));
+                        int bytesTransferred = downloadInFileCache(urlcon, tempFile, writer);
                         if (bytesTransferred == -1) {
                             LOGGER.info("End of downloading {} ", url); //$NON-NLS-1$
                         } else if (bytesTransferred >= 0) {
                             return false;
                         }
 
+                        receivedBytes = tempFile.length();
                         File renameFile = new File(DicomMediaIO.DICOM_EXPORT_DIR, tempFile.getName());
                         if (tempFile.renameTo(renameFile)) {
                             tempFile = renameFile;
@@ -736,38 +1236,19 @@ public class LoadSeries extends ExplorerTask<Boolean, String> implements SeriesI
                     // Ensure the stream is closed if image is not written in cache
                     FileUtil.safeClose(stream);
 
-                    dicomReader = new DicomMediaIO(tempFile);
-                    if (dicomReader.isReadableDicom() && dicomSeries.size(null) == 0) {
-                        // Override the group (patient, study and series) by the dicom fields except the UID of the
-                        // group
-                        MediaSeriesGroup patient = dicomModel.getParent(dicomSeries, DicomModel.patient);
-                        dicomReader.writeMetaData(patient);
-                        MediaSeriesGroup study = dicomModel.getParent(dicomSeries, DicomModel.study);
-                        dicomReader.writeMetaData(study);
-                        dicomReader.writeMetaData(dicomSeries);
-                        GuiExecutor.instance().invokeAndWait(() -> {
-                            Thumbnail thumb = (Thumbnail) dicomSeries.getTagValue(TagW.Thumbnail);
-                            if (thumb != null) {
-                                thumb.repaint();
-                            }
-                            dicomModel.firePropertyChange(new ObservableEvent(ObservableEvent.BasicAction.UDPATE_PARENT,
-                                dicomModel, null, dicomSeries));
-                        });
-                    }
+                    dicomReader = readDownloadedFile(
+                        writer == null ? new DicomMediaIO(tempFile) : writer.buildReader(tempFile));
                 }
             }
 
             // Change status to complete if this point was reached because downloading has finished.
             if (status == Status.DOWNLOADING) {
                 status = Status.COMPLETE;
-                if (tempFile != null && dicomSeries != null && dicomReader.isReadableDicom()) {
+                if (tempFile != null && dicomSeries != null) {
                     if (cache) {
-                        dicomReader.getFileCache().setOriginalTempFile(tempFile);
+                        storeDownloadedFile(dicomReader, tempFile);
                     }
-                    final DicomMediaIO reader = dicomReader;
-                    // Necessary to wait the runnable because the dicomSeries must be added to the dicomModel
-                    // before reaching done() of SwingWorker
-                    GuiExecutor.instance().invokeAndWait(() -> updateUI(reader));
+                    addDownloadedFile(dicomReader, tempFile, cache);
                 }
             }
             // Increment progress bar in EDT and repaint when downloaded
@@ -775,7 +1256,250 @@ public class LoadSeries extends ExplorerTask<Boolean, String> implements SeriesI
             return true;
         }
 
-        private int downloadInFileCache(ClosableURLConnection urlcon, File tempFile) throws IOException {
+        /**
+         * Loads the instance from the {@link InstanceStore}.
+         *
+         * @return false when the instance must be downloaded
+         */
+        private boolean processStored(InstanceStore store) {
+            if (!store.isValid(sopInstanceUID, url, urlParams)) {
+                return false;
+            }
+            File file = store.checkout(sopInstanceUID, storeVariant, DicomMediaIO.DICOM_EXPORT_DIR);
+            if (file == null) {
+                return false;
+            }
+            LOGGER.debug("DICOM instance {} loaded from the instance store", sopInstanceUID); //$NON-NLS-1$
+            ttfb = System.nanoTime();
+            DicomMediaIO dicomReader = readDownloadedFile(new DicomMediaIO(file));
+            if (!dicomReader.isReadableDicom()) {
+                dicomReader.dispose();
+                FileUtil.delete(file);
+                store.remove(sopInstanceUID);
+                return false;
+            }
+            dicomSeries.setFileSize(dicomSeries.getFileSize() + file.length());
+            if (status == Status.DOWNLOADING) {
+                status = Status.COMPLETE;
+                // The copy is deleted with the series, not the stored instance
+                addDownloadedFile(dicomReader, file, true);
+            }
+            incrementProgressBarValue();
+            return true;
+        }
+
+        protected void storeDownloadedFile(DicomMediaIO dicomReader, File file) {
+            if (storeVariant != null && dicomReader != null && dicomReader.isReadableDicom()) {
+                InstanceStore.getInstance().put(sopInstanceUID, file, storeVariant, validator);
+            }
+        }
+
+        private boolean processResumable() throws IOException {
+            DownloadJournal journal = DownloadJournal.getInstance();
+            File file = journalEntry.getFile();
+            if (journalEntry.isComplete()) {
+                LOGGER.debug("DICOM instance {} already downloaded in {}", url, file); //$NON-NLS-1$
+                ttfb = System.nanoTime();
+                dicomSeries.setFileSize(dicomSeries.getFileSize() + file.length());
+            } else if (!downloadResumable(journal)) {
+                return false;
+            }
+
+            // The journal keeps its file, the series gets its own file which is deleted with the series
+            File copy = journal.checkout(journalEntry, DicomMediaIO.DICOM_EXPORT_DIR);
+            DicomMediaIO dicomReader = readDownloadedFile(new DicomMediaIO(copy));
+            if (!dicomReader.isReadableDicom()) {
+                dicomReader.dispose();
+                FileUtil.delete(copy);
+                journal.remove(journalEntry);
+            } else if (status == Status.DOWNLOADING) {
+                status = Status.COMPLETE;
+                validator = journalEntry.getValidator();
+                storeDownloadedFile(dicomReader, file);
+                if (storeVariant != null && InstanceStore.getInstance().contains(sopInstanceUID, storeVariant)) {
+                    // The instance store keeps the instance, the journal does not need its own file
+                    journal.remove(journalEntry);
+                }
+                addDownloadedFile(dicomReader, copy, true);
+            } else {
+                dicomReader.dispose();
+                FileUtil.delete(copy);
+            }
+            incrementProgressBarValue();
+            return true;
+        }
+
+        /**
+         * Writes the response in the part file of the journal, from the last received byte when the server supports
+         * Range requests and when the content has not changed (If-Range).
+         *
+         * @return false when the download has been interrupted
+         */
+        private boolean downloadResumable(DownloadJournal journal) throws IOException {
+            File part = journalEntry.getPartFile();
+            long offset = journalEntry.getValidator() != null && part.isFile() ? part.length() : 0L;
+            URLParameters params = urlParams;
+            if (offset > 0) {
+                Map<String, String> headers =
+                    urlParams.getHeaders() == null ? new HashMap<>() : new HashMap<>(urlParams.getHeaders());
+                headers.put("Range", "bytes=" + offset + "-"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+                headers.put("If-Range", journalEntry.getValidator()); //$NON-NLS-1$
+                params = new URLParameters(headers);
+            }
+
+            final WadoParameters wadoParams = (WadoParameters) dicomSeries.getTagValue(TagW.WadoParameters);
+            boolean multipart = wadoParams != null && wadoParams.isWadoRS();
+            ClosableURLConnection urlcon;
+            try {
+                urlcon = HttpConnectionPool.getInstance().getConnection(new URL(url), params);
+            } catch (StreamIOException e) {
+                if (offset == 0) {
+                    throw e;
+                }
+                // Range not satisfiable or not supported, download all the content
+                LOGGER.info("Cannot resume {}: {}", url, e.getMessage()); //$NON-NLS-1$
+                journal.reset(journalEntry);
+                offset = 0;
+                urlcon = HttpConnectionPool.getInstance().getConnection(new URL(url), urlParams);
+            }
+
+            try (ClosableURLConnection c = urlcon; InputStream stream = c.getInputStream()) {
+                ttfb = System.nanoTime();
+                requestTime = HttpConnectionPool.getRequestTime(c, requestTime);
+                URLConnection con = c.getUrlConnection();
+                boolean append = offset > 0 && isExpectedRange(con, offset);
+                if (!append) {
+                    offset = 0;
+                    // The multipart boundary is only identical with a strong validator
+                    journalEntry.setValidator(DownloadJournal.getValidator(con, multipart));
+                } else {
+                    LOGGER.info("Resume downloading {} from byte {}", url, offset); //$NON-NLS-1$
+                }
+                journalEntry.setBytes(offset);
+                journal.save(journalEntry);
+                progressBar.setIndeterminate(progressBar.getMaximum() < 3);
+
+                boolean completed;
+                try {
+                    completed = writeStream(new SeriesProgressMonitor(dicomSeries, stream), part, append);
+                } finally {
+                    journalEntry.setBytes(part.length());
+                    journal.save(journalEntry);
+                }
+                if (!completed) {
+                    return false;
+                }
+                receivedBytes = part.length() - offset;
+                // The bytes received in a previous session
+                dicomSeries.setFileSize(dicomSeries.getFileSize() + offset);
+
+                File file = journalEntry.getFile();
+                if (multipart) {
+                    // The raw response is stored to resume it, extract the DICOM part
+                    extractMultipart(con, part, file);
+                    FileUtil.delete(part);
+                } else if (!part.renameTo(file)) {
+                    throw new IOException("Cannot rename " + part); //$NON-NLS-1$
+                }
+                journalEntry.setComplete(true);
+                journal.save(journalEntry);
+                LOGGER.info("End of downloading {} ", url); //$NON-NLS-1$
+            }
+            return true;
+        }
+
+        private boolean isExpectedRange(URLConnection con, long offset) {
+            if (con instanceof HttpURLConnection) {
+                try {
+                    if (((HttpURLConnection) con).getResponseCode() == HttpURLConnection.HTTP_PARTIAL) {
+                        String range = con.getHeaderField("Content-Range"); //$NON-NLS-1$
+                        return range != null && range.trim().startsWith("bytes " + offset + "-"); //$NON-NLS-1$ //$NON-NLS-2$
+                    }
+                } catch (IOException e) {
+                    LOGGER.debug("Cannot read the response code", e); //$NON-NLS-1$
+                }
+            }
+            return false;
+        }
+
+        private void extractMultipart(URLConnection con, File raw, File file) throws IOException {
+            boolean[] found = { false };
+            try (InputStream in = new FileInputStream(raw)) {
+                Multipart.parseMultipartRelated(con, in, (multipartReader, partNumber, headers) -> {
+                    // At sop instance level must have only one part
+                    if (!found[0]) {
+                        try (InputStream part = multipartReader.newPartInputStream()) {
+                            FileUtil.writeStreamWithIOException(part, file);
+                        }
+                        found[0] = true;
+                    }
+                });
+            }
+            if (!found[0]) {
+                throw new IOException("No DICOM part in the response of " + url); //$NON-NLS-1$
+            }
+        }
+
+        /**
+         * Unlike FileUtil.writeStream(), the file is kept when the transfer is interrupted.
+         *
+         * @return false when the transfer has been interrupted
+         */
+        private boolean writeStream(InputStream in, File file, boolean append) throws StreamIOException {
+            try (OutputStream out = new FileOutputStream(file, append)) {
+                byte[] buf = new byte[FileUtil.FILE_BUFFER];
+                int offset;
+                while ((offset = in.read(buf)) > 0) {
+                    out.write(buf, 0, offset);
+                }
+                out.flush();
+                return true;
+            } catch (SocketTimeoutException e) {
+                throw new StreamIOException(e);
+            } catch (InterruptedIOException e) {
+                LOGGER.info("Interruption when writing file: {}", e.getMessage()); //$NON-NLS-1$
+                return false;
+            } catch (IOException e) {
+                throw new StreamIOException(e);
+            }
+        }
+
+        protected DicomMediaIO readDownloadedFile(DicomMediaIO dicomReader) {
+            // The series is updated in the EDT by batch, its size can stay 0 while several instances are read
+            if (dicomReader.isReadableDicom() && (dicomSeries.size(null) == 0 || renderedMetadata)
+                && metadataWritten.compareAndSet(false, true)) {
+                // Override the group (patient, study and series) by the dicom fields except the UID of the
+                // group
+                MediaSeriesGroup patient = dicomModel.getParent(dicomSeries, DicomModel.patient);
+                dicomReader.writeMetaData(patient);
+                MediaSeriesGroup study = dicomModel.getParent(dicomSeries, DicomModel.study);
+                dicomReader.writeMetaData(study);
+                dicomReader.writeMetaData(dicomSeries);
+                uiUpdates.updateParent();
+            }
+            return dicomReader;
+        }
+
+        protected void addDownloadedFile(DicomMediaIO dicomReader, File file, boolean cache) {
+            if (dicomReader != null && dicomReader.isReadableDicom()) {
+                if (cache) {
+                    dicomReader.getFileCache().setOriginalTempFile(file);
+                }
+                loadedReader = dicomReader;
+                // The SOP Instance UID is not known before reading the parts of a series-level retrieve
+                String uid = TagD.getTagValue(dicomReader, Tag.SOPInstanceUID, String.class);
+                DicomMediaIO preview = uid == null ? null : previews.remove(uid);
+                if (preview == null) {
+                    // Applied in the EDT by batch, the last batch is applied before reaching done() of SwingWorker
+                    uiUpdates.add(dicomReader);
+                } else {
+                    GuiExecutor.instance().execute(() -> replacePreview(preview, dicomReader));
+                }
+            }
+        }
+
+        private int downloadInFileCache(ClosableURLConnection urlcon, File tempFile, StreamingDicomWriter writer)
+            throws IOException {
             final WadoParameters wadoParams = (WadoParameters) dicomSeries.getTagValue(TagW.WadoParameters);
             int[] overrideList =
                 Optional.ofNullable(wadoParams).map(WadoParameters::getOverrideDicomTagIDList).orElse(null);
@@ -791,8 +1515,7 @@ public class LoadSeries extends ExplorerTask<Boolean, String> implements SeriesI
                             Map<String, String> headers) throws IOException {
                             // At sop instance level must have only one part
                             try (InputStream in = multipartReader.newPartInputStream()) {
-                                readBytes[0] =
-                                    FileUtil.writeStream(new SeriesProgressMonitor(dicomSeries, in), tempFile, false);
+                                readBytes[0] = writer.write(new SeriesProgressMonitor(dicomSeries, in), tempFile);
                             }
                         }
                     };
@@ -800,7 +1523,7 @@ public class LoadSeries extends ExplorerTask<Boolean, String> implements SeriesI
                     Multipart.parseMultipartRelated(urlcon.getUrlConnection(), urlcon.getInputStream(), handler);
                     bytesTransferred = readBytes[0];
                 } else {
-                    bytesTransferred = FileUtil.writeStream(
+                    bytesTransferred = writer.write(
                         new DicomSeriesProgressMonitor(dicomSeries, urlcon.getInputStream(), false), tempFile);
                 }
             } else {
@@ -810,13 +1533,17 @@ public class LoadSeries extends ExplorerTask<Boolean, String> implements SeriesI
 
             if (bytesTransferred == Integer.MIN_VALUE) {
                 LOGGER.warn("Stop downloading unsupported TSUID, retry to download non compressed TSUID"); //$NON-NLS-1$
-                InputStream stream2 = replaceToDefaultTSUID().getInputStream();
-                if (overrideList == null) {
-                    bytesTransferred =
-                        FileUtil.writeStream(new DicomSeriesProgressMonitor(dicomSeries, stream2, false), tempFile);
-                } else {
-                    bytesTransferred =
-                        writFile(new DicomSeriesProgressMonitor(dicomSeries, stream2, false), tempFile, overrideList);
+                // Release the slot of the first request before waiting for another one to the same host
+                urlcon.close();
+                try (ClosableURLConnection urlcon2 = replaceToDefaultTSUID();
+                                InputStream stream2 = urlcon2.getInputStream()) {
+                    if (overrideList == null) {
+                        bytesTransferred =
+                            writer.write(new DicomSeriesProgressMonitor(dicomSeries, stream2, false), tempFile);
+                    } else {
+                        bytesTransferred = writFile(new DicomSeriesProgressMonitor(dicomSeries, stream2, false),
+                            tempFile, overrideList);
+                    }
                 }
             }
             return bytesTransferred;
@@ -897,72 +1624,363 @@ public class LoadSeries extends ExplorerTask<Boolean, String> implements SeriesI
                 }
             }
         }
+    }
 
-        private void updateUI(final DicomMediaIO reader) {
-            boolean firstImageToDisplay = false;
-            MediaElement[] medias = reader.getMediaElement();
-            if (medias != null) {
-                firstImageToDisplay = dicomSeries.size(null) == 0;
-                if (firstImageToDisplay) {
-                    MediaSeriesGroup patient = dicomModel.getParent(dicomSeries, DicomModel.patient);
-                    if (patient != null) {
-                        String dicomPtUID = (String) reader.getTagValue(TagW.PatientPseudoUID);
-                        if (!patient.getTagValue(TagW.PatientPseudoUID).equals(dicomPtUID)) {
-                            // Fix when patientUID in xml have different patient name
-                            dicomModel.mergePatientUID((String) patient.getTagValue(TagW.PatientPseudoUID), dicomPtUID);
-                        }
-                    }
+    /**
+     * Downloads a lossy version of an instance, which is displayed until the original instance is downloaded. The file
+     * is neither stored nor journaled.
+     */
+    class PreviewDownload extends Download {
+
+        public PreviewDownload(String url, String sopInstanceUID) {
+            super(url, sopInstanceUID, false);
+        }
+
+        @Override
+        protected void storeDownloadedFile(DicomMediaIO dicomReader, File file) {
+            // Only the original instances are stored
+        }
+
+        @Override
+        protected boolean isShareable() {
+            // Only the original instances are shared
+            return false;
+        }
+
+        @Override
+        protected void addDownloadedFile(DicomMediaIO dicomReader, File file, boolean cache) {
+            if (dicomReader != null && dicomReader.isReadableDicom()) {
+                dicomReader.setTag(TagW.LossyPreview, Boolean.TRUE);
+                dicomReader.setTag(TagD.get(Tag.LossyImageCompression), "01"); //$NON-NLS-1$
+                super.addDownloadedFile(dicomReader, file, cache);
+                previews.put(getSopInstanceUID(), dicomReader);
+            }
+        }
+    }
+
+    /**
+     * Downloads an image rendered by the server (WADO-RS /rendered or WADO-URI image/jpeg), which is displayed until
+     * the original instance is downloaded. The image is written in a DICOM file with the attributes of the patient, the
+     * study and the series which are already known.
+     */
+    class RenderedPreviewDownload extends PreviewDownload {
+        private final Integer instanceNumber;
+
+        public RenderedPreviewDownload(String url, SopInstance instance) {
+            super(url, instance.getSopInstanceUID());
+            this.instanceNumber = instance.getInstanceNumber();
+        }
+
+        @Override
+        public Boolean call() throws Exception {
+            instanceConcurrency.acquire();
+            try {
+                URLParameters params = new URLParameters(
+                    urlParams.getHeaders() == null ? new HashMap<>() : new HashMap<>(urlParams.getHeaders()));
+                params.getHeaders().put("Accept", "image/jpeg"); //$NON-NLS-1$ //$NON-NLS-2$
+                BufferedImage image;
+                try (ClosableURLConnection urlcon =
+                    HttpConnectionPool.getInstance().getConnection(new URL(url), params);
+                                InputStream stream = urlcon.getInputStream()) {
+                    image = ImageIO.read(stream);
                 }
+                if (image == null) {
+                    throw new IOException("Not a supported image"); //$NON-NLS-1$
+                }
+                if (!isCancelled()) {
+                    File file = File.createTempFile("image_", ".dcm", DicomMediaIO.DICOM_EXPORT_DIR); //$NON-NLS-1$ //$NON-NLS-2$
+                    writeRenderedInstance(image, file);
+                    renderedMetadata = true;
+                    addDownloadedFile(new DicomMediaIO(file), file, true);
+                }
+            } catch (IOException e) {
+                // Not blocking, the original instance is displayed when downloaded
+                LOGGER.warn("Cannot get the rendered preview {}: {}", url, e.getMessage()); //$NON-NLS-1$
+            } finally {
+                instanceConcurrency.release();
+            }
+            incrementProgressBarValue();
+            return Boolean.TRUE;
+        }
 
-                for (MediaElement media : medias) {
-                    applyPresentationModel(media);
-                    dicomModel.applySplittingRules(dicomSeries, media);
+        private void writeRenderedInstance(BufferedImage image, File file) throws IOException {
+            Attributes attrs = new Attributes();
+            ElementDictionary dic = ElementDictionary.getStandardElementDictionary();
+            MediaSeriesGroup patient = dicomModel.getParent(dicomSeries, DicomModel.patient);
+            MediaSeriesGroup study = dicomModel.getParent(dicomSeries, DicomModel.study);
+            for (TagW tag : TagD.getTagFromIDs(Tag.PatientID, Tag.IssuerOfPatientID, Tag.PatientName,
+                Tag.PatientBirthDate, Tag.PatientSex)) {
+                DicomMediaUtils.fillAttributes(attrs, tag, patient.getTagValue(tag), dic);
+            }
+            for (TagW tag : TagD.getTagFromIDs(Tag.StudyInstanceUID, Tag.StudyDate, Tag.StudyTime, Tag.StudyID,
+                Tag.AccessionNumber, Tag.StudyDescription)) {
+                DicomMediaUtils.fillAttributes(attrs, tag, study.getTagValue(tag), dic);
+            }
+            for (TagW tag : TagD.getTagFromIDs(Tag.SeriesInstanceUID, Tag.Modality, Tag.SeriesNumber,
+                Tag.SeriesDescription)) {
+                DicomMediaUtils.fillAttributes(attrs, tag, dicomSeries.getTagValue(tag), dic);
+            }
+            attrs.setString(Tag.SOPClassUID, VR.UI, UID.SecondaryCaptureImageStorage);
+            attrs.setString(Tag.SOPInstanceUID, VR.UI, getSopInstanceUID());
+            if (instanceNumber != null) {
+                attrs.setInt(Tag.InstanceNumber, VR.IS, instanceNumber);
+            }
+
+            int width = image.getWidth();
+            int height = image.getHeight();
+            byte[] pixels;
+            if (image.getColorModel().getNumColorComponents() == 1) {
+                BufferedImage gray = image;
+                if (image.getType() != BufferedImage.TYPE_BYTE_GRAY) {
+                    gray = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_GRAY);
+                    Graphics2D g = gray.createGraphics();
+                    g.drawImage(image, 0, 0, null);
+                    g.dispose();
                 }
-                if (firstImageToDisplay && dicomSeries.size(null) == 0) {
-                    firstImageToDisplay = false;
+                pixels = (byte[]) gray.getRaster().getDataElements(0, 0, width, height, null);
+                attrs.setInt(Tag.SamplesPerPixel, VR.US, 1);
+                attrs.setString(Tag.PhotometricInterpretation, VR.CS, "MONOCHROME2"); //$NON-NLS-1$
+            } else {
+                BufferedImage rgb = image;
+                if (image.getType() != BufferedImage.TYPE_3BYTE_BGR) {
+                    rgb = new BufferedImage(width, height, BufferedImage.TYPE_3BYTE_BGR);
+                    Graphics2D g = rgb.createGraphics();
+                    g.drawImage(image, 0, 0, null);
+                    g.dispose();
                 }
+                // The bands of the raster are R, G, B whatever the order of the bytes in the buffer
+                pixels = (byte[]) rgb.getRaster().getDataElements(0, 0, width, height, null);
+                attrs.setInt(Tag.SamplesPerPixel, VR.US, 3);
+                attrs.setString(Tag.PhotometricInterpretation, VR.CS, "RGB"); //$NON-NLS-1$
+                attrs.setInt(Tag.PlanarConfiguration, VR.US, 0);
             }
+            attrs.setInt(Tag.Rows, VR.US, height);
+            attrs.setInt(Tag.Columns, VR.US, width);
+            attrs.setInt(Tag.BitsAllocated, VR.US, 8);
+            attrs.setInt(Tag.BitsStored, VR.US, 8);
+            attrs.setInt(Tag.HighBit, VR.US, 7);
+            attrs.setInt(Tag.PixelRepresentation, VR.US, 0);
+            attrs.setBytes(Tag.PixelData, VR.OB, pixels);
+
+            try (DicomOutputStream dos = new DicomOutputStream(file)) {
+                dos.writeDataset(attrs.createFileMetaInformation(UID.ExplicitVRLittleEndian), attrs);
+            }
+        }
+    }
+
+    /**
+     * Retrieves all the instances of the series with one WADO-RS request. Each part of the multipart/related response
+     * is written in the cache and added to the series as soon as it has been received.
+     * <p>
+     * The transfers of the requested instances are claimed in the {@link InFlightInstances} before sending the request,
+     * so the other requests of these instances wait for the parts instead of downloading them again.
+     */
+    class SeriesDownload extends Download {
+        private final Set<String> pendingUIDs;
+        private final String partVariant;
+        // SOP Instance UID -> transfer owned by this request
+        private final Map<String, InFlightInstances.Claim> claims = new ConcurrentHashMap<>();
+
+        public SeriesDownload(String url, Collection<String> sopInstanceUIDs) {
+            super(url);
+            this.pendingUIDs = Collections.synchronizedSet(new HashSet<>(sopInstanceUIDs));
+            this.partVariant = getStoreVariant((WadoParameters) dicomSeries.getTagValue(TagW.WadoParameters));
+        }
+
+        /**
+         * @return the SOP Instance UIDs which have not been received
+         */
+        public Set<String> getPendingUIDs() {
+            return pendingUIDs;
+        }
+
+        @Override
+        public Boolean call() throws Exception {
+            claimInstances();
+            try {
+                try (ClosableURLConnection urlcon =
+                    HttpConnectionPool.getInstance().getConnection(new URL(url), urlParams);
+                                InputStream stream = urlcon.getInputStream()) {
+                    Multipart.parseMultipartRelated(urlcon.getUrlConnection(), stream, this::readPart);
+                }
+                return Boolean.TRUE;
+            } catch (InterruptedIOException e) {
+                LOGGER.info("Stop downloading series {}: {}", url, e.getMessage()); //$NON-NLS-1$
+            } catch (IOException | URISyntaxException e) {
+                LOGGER.warn("Cannot retrieve the series with WADO-RS {}, download by instance", url, e); //$NON-NLS-1$
+            } finally {
+                // The other requests of the missing instances download them
+                claims.values().forEach(c -> c.complete(null));
+                claims.clear();
+            }
+            return Boolean.FALSE;
+        }
 
-            Thumbnail thumb = (Thumbnail) dicomSeries.getTagValue(TagW.Thumbnail);
-            if (thumb != null) {
-                thumb.repaint();
+        private void claimInstances() {
+            if (partVariant == null) {
+                return;
+            }
+            InFlightInstances inFlight = InFlightInstances.getInstance();
+            for (String sopUID : pendingUIDs.toArray(new String[0])) {
+                InFlightInstances.Claim c = inFlight.claim(sopUID, partVariant);
+                // When another request owns the transfer, the instance is received in the response or downloaded
+                // afterwards by the instance request, which waits for the other request
+                if (c != null && c.isOwner()) {
+                    claims.put(sopUID, c);
+                }
             }
+        }
 
+        private void readPart(MultipartReader multipartReader, int partNumber, Map<String, String> headers)
+            throws IOException {
+            File tempFile = File.createTempFile("image_", ".dcm", getDicomTmpDir()); //$NON-NLS-1$ //$NON-NLS-2$
+            StreamingDicomWriter writer =
+                new StreamingDicomWriter(new File(DicomMediaIO.DICOM_EXPORT_DIR, tempFile.getName()));
+            int bytesTransferred;
+            try (InputStream in = multipartReader.newPartInputStream()) {
+                bytesTransferred = writer.write(new SeriesProgressMonitor(dicomSeries, in), tempFile);
+            }
+            if (bytesTransferred != -1) {
+                FileUtil.delete(tempFile);
+                throw new InterruptedIOException("download canceled"); //$NON-NLS-1$
+            }
+
+            File renameFile = new File(DicomMediaIO.DICOM_EXPORT_DIR, tempFile.getName());
+            if (tempFile.renameTo(renameFile)) {
+                tempFile = renameFile;
+            }
+            DicomMediaIO dicomReader = writer.buildReader(tempFile);
+            String sopUID = TagD.getTagValue(dicomReader, Tag.SOPInstanceUID, String.class);
+            // Only the requested instances can update the series
+            if (dicomReader.isReadableDicom() && pendingUIDs.remove(sopUID)) {
+                readDownloadedFile(dicomReader);
+                if (partVariant != null) {
+                    // No validator by instance in a series response
+                    InstanceStore.getInstance().put(sopUID, tempFile, partVariant, null);
+                }
+                addDownloadedFile(dicomReader, tempFile, true);
+                InFlightInstances.Claim c = claims.remove(sopUID);
+                if (c != null) {
+                    c.complete(dicomReader);
+                }
+                incrementProgressBarValue();
+            } else {
+                // Not requested (split series) or already loaded
+                LOGGER.debug("Skip the part {} of the series {}", partNumber, url); //$NON-NLS-1$
+                dicomReader.dispose();
+                FileUtil.delete(tempFile);
+            }
+        }
+    }
+
+    private void updateUI(final DicomMediaIO reader) {
+        boolean firstImageToDisplay = false;
+        MediaElement[] medias = reader.getMediaElement();
+        if (medias != null) {
+            firstImageToDisplay = dicomSeries.size(null) == 0;
             if (firstImageToDisplay) {
-                boolean openNewTab = true;
-                MediaSeriesGroup entry1 = dicomModel.getParent(dicomSeries, DicomModel.patient);
-                if (entry1 != null) {
-                    synchronized (UIManager.VIEWER_PLUGINS) {
-                        for (final ViewerPlugin p : UIManager.VIEWER_PLUGINS) {
-                            if (entry1.equals(p.getGroupID())) {
-                                if (p instanceof ImageViewerPlugin) {
-                                    ViewCanvas pane = ((ImageViewerPlugin) p).getSelectedImagePane();
-                                    if (pane != null && pane.getImageLayer() != null
-                                        && pane.getImageLayer().getSourceImage() == null) {
-                                        // When the selected view has no image send, open in it.
-                                        break;
-                                    }
+                MediaSeriesGroup patient = dicomModel.getParent(dicomSeries, DicomModel.patient);
+                if (patient != null) {
+                    String dicomPtUID = (String) reader.getTagValue(TagW.PatientPseudoUID);
+                    if (!patient.getTagValue(TagW.PatientPseudoUID).equals(dicomPtUID)) {
+                        // Fix when patientUID in xml have different patient name
+                        dicomModel.mergePatientUID((String) patient.getTagValue(TagW.PatientPseudoUID), dicomPtUID);
+                    }
+                }
+            }
+
+            for (MediaElement media : medias) {
+                applyPresentationModel(media);
+                dicomModel.applySplittingRules(dicomSeries, media);
+            }
+            if (firstImageToDisplay && dicomSeries.size(null) == 0) {
+                firstImageToDisplay = false;
+            }
+        }
+
+        if (firstImageToDisplay) {
+            boolean openNewTab = true;
+            MediaSeriesGroup entry1 = dicomModel.getParent(dicomSeries, DicomModel.patient);
+            if (entry1 != null) {
+                synchronized (UIManager.VIEWER_PLUGINS) {
+                    for (final ViewerPlugin p : UIManager.VIEWER_PLUGINS) {
+                        if (entry1.equals(p.getGroupID())) {
+                            if (p instanceof ImageViewerPlugin) {
+                                ViewCanvas pane = ((ImageViewerPlugin) p).getSelectedImagePane();
+                                if (pane != null && pane.getImageLayer() != null
+                                    && pane.getImageLayer().getSourceImage() == null) {
+                                    // When the selected view has no image send, open in it.
+                                    break;
                                 }
-                                openNewTab = false;
-                                break;
                             }
+                            openNewTab = false;
+                            break;
                         }
                     }
                 }
-                if (openNewTab) {
-                    SeriesViewerFactory plugin = UIManager.getViewerFactory(dicomSeries.getMimeType());
-                    if (plugin != null && !(plugin instanceof MimeSystemAppFactory)) {
-                        ViewerPluginBuilder.openSequenceInPlugin(plugin, dicomSeries, dicomModel, true, true);
-                    } else if (plugin != null) {
-                        // Send event to select the related patient in Dicom Explorer.
-                        dicomModel.firePropertyChange(
-                            new ObservableEvent(ObservableEvent.BasicAction.SELECT, dicomModel, null, dicomSeries));
-                    }
+            }
+            if (openNewTab) {
+                SeriesViewerFactory plugin = UIManager.getViewerFactory(dicomSeries.getMimeType());
+                if (plugin != null && !(plugin instanceof MimeSystemAppFactory)) {
+                    ViewerPluginBuilder.openSequenceInPlugin(plugin, dicomSeries, dicomModel, true, true);
+                } else if (plugin != null) {
+                    // Send event to select the related patient in Dicom Explorer.
+                    dicomModel.firePropertyChange(
+                        new ObservableEvent(ObservableEvent.BasicAction.SELECT, dicomModel, null, dicomSeries));
                 }
             }
         }
     }
 
+    /**
+     * Replaces the source of a lossy preview by the original instance. The images of the preview are kept in the series
+     * and in the views, only their pixel data and their attributes change. Must be called in the EDT.
+     */
+    private void replacePreview(DicomMediaIO preview, DicomMediaIO reader) {
+        Optional<File> file = reader.getFileCache().getOriginalFile();
+        if (!file.isPresent()) {
+            uiUpdates.add(reader);
+            return;
+        }
+        File previewFile = preview.getFileCache().getOriginalTempFile();
+        preview.replaceURI(file.get().toURI());
+        preview.getFileCache().setOriginalTempFile(file.get());
+        Iterator<Map.Entry<TagW, Object>> it = reader.getTagEntrySetIterator();
+        while (it.hasNext()) {
+            Map.Entry<TagW, Object> tag = it.next();
+            preview.setTag(tag.getKey(), tag.getValue());
+        }
+        // Remove the lossy compression attributes which are not in the original instance
+        for (int tag : new int[] { Tag.LossyImageCompression, Tag.LossyImageCompressionRatio,
+            Tag.LossyImageCompressionMethod }) {
+            TagW tagW = TagD.get(tag);
+            preview.setTag(tagW, reader.getTagValue(tagW));
+        }
+        preview.setTag(TagW.LossyPreview, null);
+        reader.dispose();
+        FileUtil.delete(previewFile);
+
+        MediaElement[] medias = preview.getMediaElement();
+        if (medias != null) {
+            for (MediaElement media : medias) {
+                if (media instanceof DicomImageElement) {
+                    ((DicomImageElement) media).resetPixelData();
+                    dicomModel.firePropertyChange(new ObservableEvent(ObservableEvent.BasicAction.ADD, dicomModel, null,
+                        new SeriesEvent(SeriesEvent.Action.UPDATE_IMAGE, media, null)));
+                }
+            }
+        }
+    }
+
+    /**
+     * Applies the presentation models of the instances to the images already loaded. Must be called in the EDT.
+     */
+    public void applyPresentationModels() {
+        for (MediaElement media : dicomSeries.copyOfMedias(null, null)) {
+            applyPresentationModel(media);
+        }
+    }
+
     private void applyPresentationModel(MediaElement media) {
         String sopUID = TagD.getTagValue(media, Tag.SOPInstanceUID, String.class);
 
@@ -998,6 +2016,111 @@ public class LoadSeries extends ExplorerTask<Boolean, String> implements SeriesI
         }
     }
 
+    /**
+     * Applies the downloaded instances to the model and the progression to the UI in the EDT, at most every
+     * UPDATE_PERIOD ms unless MAX_BATCH instances are waiting. The download threads never wait for the EDT.
+     */
+    class UpdateBatch {
+        private static final long UPDATE_PERIOD = 50;
+        private static final int MAX_BATCH = 32;
+
+        private final List<DicomMediaIO> readers = new ArrayList<>();
+        private final Timer timer;
+        private int progress = 0;
+        private boolean parentChanged = false;
+        private boolean scheduled = false;
+        private long lastUpdate = 0;
+
+        UpdateBatch() {
+            this.timer = new Timer((int) UPDATE_PERIOD, e -> flush());
+            this.timer.setRepeats(false);
+        }
+
+        void add(DicomMediaIO reader) {
+            synchronized (this) {
+                readers.add(reader);
+            }
+            schedule();
+        }
+
+        void incrementProgress() {
+            synchronized (this) {
+                progress++;
+            }
+            schedule();
+        }
+
+        void updateParent() {
+            synchronized (this) {
+                parentChanged = true;
+            }
+            schedule();
+        }
+
+        private void schedule() {
+            boolean full;
+            synchronized (this) {
+                full = readers.size() >= MAX_BATCH;
+                if (scheduled && !full) {
+                    return;
+                }
+                scheduled = true;
+            }
+            GuiExecutor.instance().execute(() -> {
+                long wait = UPDATE_PERIOD - (System.currentTimeMillis() - lastUpdate);
+                if (wait <= 0 || full) {
+                    flush();
+                } else {
+                    timer.setInitialDelay((int) wait);
+                    timer.restart();
+                }
+            });
+        }
+
+        void flushAndWait() {
+            GuiExecutor.instance().invokeAndWait(this::flush);
+        }
+
+        // Called in the EDT
+        private void flush() {
+            timer.stop();
+            List<DicomMediaIO> list;
+            int nb;
+            boolean parent;
+            synchronized (this) {
+                list = new ArrayList<>(readers);
+                readers.clear();
+                nb = progress;
+                progress = 0;
+                parent = parentChanged;
+                parentChanged = false;
+                scheduled = false;
+            }
+            lastUpdate = System.currentTimeMillis();
+
+            if (parent) {
+                dicomModel.firePropertyChange(
+                    new ObservableEvent(ObservableEvent.BasicAction.UDPATE_PARENT, dicomModel, null, dicomSeries));
+            }
+            for (DicomMediaIO reader : list) {
+                try {
+                    updateUI(reader);
+                } catch (Exception e) {
+                    LOGGER.error("Adding downloaded instance", e); //$NON-NLS-1$
+                }
+            }
+            if (nb > 0) {
+                progressBar.setValue(progressBar.getValue() + nb);
+            }
+            if (parent || !list.isEmpty()) {
+                Thumbnail thumb = (Thumbnail) dicomSeries.getTagValue(TagW.Thumbnail);
+                if (thumb != null) {
+                    thumb.repaint();
+                }
+            }
+        }
+    }
+
     public synchronized DownloadPriority getPriority() {
         return priority;
     }
@@ -0,0 +1,230 @@
+/*
+ * Copyright (c) 2009-2020 Weasis Team and other contributors.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse
+ * Public License 2.0 which is available at http://www.eclipse.org/legal/epl-2.0.
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+
+package org.weasis.dicom.explorer.wado;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.SocketTimeoutException;
+
+import org.dcm4che3.data.Attributes;
+import org.dcm4che3.data.UID;
+import org.dcm4che3.io.DicomInputStream;
+import org.dcm4che3.io.DicomInputStream.IncludeBulkData;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.weasis.core.util.FileUtil;
+import org.weasis.core.util.StreamIOException;
+import org.weasis.dicom.codec.DicomCodec;
+import org.weasis.dicom.codec.DicomMediaIO;
+
+/**
+ * Writes a DICOM stream into a file and parses the header from the bytes while they are written.
+ * <p>
+ * The bulk data (pixel data) are not kept in memory, only their offsets, which are the positions in the file because
+ * all the bytes of the stream are written in the same order. The reader built by {@link #buildReader(File)} receives
+ * the parsed header and does not read the file again. When the stream cannot be parsed, it is only written and the
+ * reader reads the file as usual.
+ */
+public class StreamingDicomWriter {
+    private static final Logger LOGGER = LoggerFactory.getLogger(StreamingDicomWriter.class);
+
+    private final File finalFile;
+    private Attributes fmi;
+    private Attributes dataset;
+    private String transferSyntax;
+
+    /**
+     * @param finalFile
+     *            the location of the file when it will be read, the offsets of the bulk data refer to this file
+     */
+    public StreamingDicomWriter(File finalFile) {
+        this.finalFile = finalFile;
+    }
+
+    /**
+     * Same contract as FileUtil.writeStream(): the file is deleted when the transfer fails, the input stream is not
+     * closed.
+     *
+     * @return -1 when all the bytes have been transferred, otherwise the number of bytes transferred before the
+     *         interruption
+     * @throws StreamIOException
+     *             when the transfer fails
+     */
+    public int write(InputStream in, File file) throws StreamIOException {
+        dataset = null;
+        TeeInputStream tee = null;
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(file), FileUtil.FILE_BUFFER)) {
+            tee = new TeeInputStream(in, out);
+            parse(tee);
+            // Write the remaining bytes (already parsed or not parsable)
+            byte[] buf = new byte[FileUtil.FILE_BUFFER];
+            while (tee.read(buf) > 0) {
+                // Written by the tee
+            }
+            out.flush();
+            return -1;
+        } catch (SocketTimeoutException e) {
+            FileUtil.delete(file);
+            throw new StreamIOException(e);
+        } catch (InterruptedIOException e) {
+            FileUtil.delete(file);
+            LOGGER.error("Interruption when writing file: {}", e.getMessage()); //$NON-NLS-1$
+            return e.bytesTransferred;
+        } catch (IOException e) {
+            FileUtil.delete(file);
+            throw new StreamIOException(e);
+        }
+    }
+
+    private void parse(TeeInputStream tee) throws IOException {
+        try {
+            // Do not close: it closes the source stream
+            @SuppressWarnings("resource")
+            DicomInputStream dis = new DicomInputStream(tee);
+            readHeader(dis);
+        } catch (IOException e) {
+            if (tee.getError() != null) {
+                // Network or file error
+                throw tee.getError();
+            }
+            LOGGER.debug("Cannot parse the DICOM stream of {}: {}", finalFile.getName(), e.getMessage()); //$NON-NLS-1$
+        } catch (RuntimeException e) {
+            // Corrupted header, the file is only written and read later by the reader
+            LOGGER.debug("Cannot parse the DICOM stream of {}: {}", finalFile.getName(), e.toString()); //$NON-NLS-1$
+        }
+    }
+
+    void readHeader(DicomInputStream dis) throws IOException {
+        dis.setIncludeBulkData(IncludeBulkData.URI);
+        dis.setBulkDataDescriptor(DicomCodec.BULKDATA_DESCRIPTOR);
+        // The bulk data are not copied in temporary files, they refer to the final file
+        dis.setURI(finalFile.toURI().toString());
+        Attributes meta = dis.readFileMetaInformation();
+        Attributes ds = dis.readDataset(-1, -1);
+        String ts = dis.getTransferSyntax();
+        // The offsets of a deflated dataset do not match the file
+        if (!UID.DeflatedExplicitVRLittleEndian.equals(ts) && !UID.JPIPReferencedDeflate.equals(ts)) {
+            this.fmi = meta;
+            this.dataset = ds;
+            this.transferSyntax = ts;
+        }
+    }
+
+    /**
+     * @return the parsed dataset or null when the stream has not been parsed
+     */
+    public Attributes getDataset() {
+        return dataset;
+    }
+
+    /**
+     * Builds the reader of the written file. The parsed header is given to the reader only when the file is at the
+     * expected location.
+     */
+    public DicomMediaIO buildReader(File file) {
+        DicomMediaIO reader = new DicomMediaIO(file);
+        if (dataset != null && finalFile.equals(file)) {
+            reader.setMetaData(fmi, dataset, transferSyntax);
+        }
+        return reader;
+    }
+
+    /**
+     * Writes in the output stream all the bytes read or skipped.
+     */
+    static class TeeInputStream extends FilterInputStream {
+        private final OutputStream out;
+        private IOException error;
+
+        TeeInputStream(InputStream in, OutputStream out) {
+            super(in);
+            this.out = out;
+        }
+
+        /**
+         * @return the exception of the source or of the output, null when the error comes from the parser
+         */
+        IOException getError() {
+            return error;
+        }
+
+        private IOException keep(IOException e) {
+            error = e;
+            return e;
+        }
+
+        @Override
+        public int read() throws IOException {
+            try {
+                int c = in.read();
+                if (c >= 0) {
+                    out.write(c);
+                }
+                return c;
+            } catch (IOException e) {
+                throw keep(e);
+            }
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            try {
+                int nr = in.read(b, off, len);
+                if (nr > 0) {
+                    out.write(b, off, nr);
+                }
+                return nr;
+            } catch (IOException e) {
+                throw keep(e);
+            }
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            // The skipped bytes (pixel data) must be written
+            byte[] buf = new byte[(int) Math.min(FileUtil.FILE_BUFFER, Math.max(n, 1))];
+            long remaining = n;
+            while (remaining > 0) {
+                int nr = read(buf, 0, (int) Math.min(buf.length, remaining));
+                if (nr < 0) {
+                    break;
+                }
+                remaining -= nr;
+            }
+            return n - remaining;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        @Override
+        public synchronized void mark(int readlimit) {
+            // Not supported
+        }
+
+        @Override
+        public synchronized void reset() throws IOException {
+            throw new IOException("mark/reset not supported"); //$NON-NLS-1$
+        }
+
+        @Override
+        public void close() {
+            // The source and the output streams are closed by their owner
+        }
+    }
+}
@@ -0,0 +1,203 @@
+/*
+ * Copyright (c) 2009-2020 Weasis Team and other contributors.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse
+ * Public License 2.0 which is available at http://www.eclipse.org/legal/epl-2.0.
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+
+package org.weasis.dicom.explorer.wado;
+
+import javax.xml.XMLConstants;
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.util.StreamReaderDelegate;
+import javax.xml.validation.Schema;
+import javax.xml.validation.ValidatorHandler;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.weasis.core.util.StringUtil;
+import org.xml.sax.ErrorHandler;
+import org.xml.sax.SAXException;
+import org.xml.sax.SAXParseException;
+import org.xml.sax.helpers.AttributesImpl;
+
+/**
+ * Validates the XML document with a schema while it is read.
+ * <p>
+ * Each event pulled by the application is also sent to a {@link ValidatorHandler}, so the document is validated and
+ * parsed in one pass. The validation errors do not stop the reading, they are available with {@link #getError()} when
+ * the document has been read.
+ */
+class ValidatingXMLStreamReader extends StreamReaderDelegate {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ValidatingXMLStreamReader.class);
+
+    private final ValidatorHandler handler;
+    private final AttributesImpl attributes = new AttributesImpl();
+    private SAXException error;
+    private boolean validating = true;
+
+    ValidatingXMLStreamReader(XMLStreamReader reader, Schema schema) {
+        super(reader);
+        this.handler = schema.newValidatorHandler();
+        handler.setErrorHandler(new ErrorHandler() {
+
+            @Override
+            public void warning(SAXParseException exception) {
+                LOGGER.debug("XSD validation warning: {}", exception.getMessage()); //$NON-NLS-1$
+            }
+
+            @Override
+            public void error(SAXParseException exception) {
+                keepError(exception);
+            }
+
+            @Override
+            public void fatalError(SAXParseException exception) {
+                keepError(exception);
+            }
+        });
+        try {
+            handler.setProperty(XMLConstants.ACCESS_EXTERNAL_DTD, StringUtil.EMPTY_STRING);
+            handler.setProperty(XMLConstants.ACCESS_EXTERNAL_SCHEMA, StringUtil.EMPTY_STRING);
+        } catch (SAXException e) {
+            LOGGER.debug("Cannot restrict the external access of the validator: {}", e.getMessage()); //$NON-NLS-1$
+        }
+        try {
+            handler.startDocument();
+        } catch (SAXException e) {
+            stopValidation(e);
+        }
+    }
+
+    private void keepError(SAXException e) {
+        if (error == null) {
+            error = e;
+        }
+    }
+
+    private void stopValidation(SAXException e) {
+        keepError(e);
+        validating = false;
+    }
+
+    /**
+     * @return the first validation error or null when the document read is valid
+     */
+    public SAXException getError() {
+        return error;
+    }
+
+    /**
+     * Reads the remaining events to complete the validation.
+     */
+    public void finish() throws XMLStreamException {
+        while (validating && hasNext()) {
+            next();
+        }
+    }
+
+    @Override
+    public int next() throws XMLStreamException {
+        int eventType = super.next();
+        if (validating) {
+            try {
+                switch (eventType) {
+                    case XMLStreamConstants.START_ELEMENT:
+                        startElement();
+                        break;
+                    case XMLStreamConstants.END_ELEMENT:
+                        endElement();
+                        break;
+                    case XMLStreamConstants.CHARACTERS:
+                    case XMLStreamConstants.CDATA:
+                    case XMLStreamConstants.SPACE:
+                        handler.characters(getTextCharacters(), getTextStart(), getTextLength());
+                        break;
+                    case XMLStreamConstants.END_DOCUMENT:
+                        handler.endDocument();
+                        validating = false;
+                        break;
+                    default:
+                        break;
+                }
+            } catch (SAXException e) {
+                stopValidation(e);
+            }
+        }
+        return eventType;
+    }
+
+    // The two next methods must use next() for validating all the events
+
+    @Override
+    public int nextTag() throws XMLStreamException {
+        int eventType = next();
+        while ((eventType == XMLStreamConstants.CHARACTERS && isWhiteSpace())
+            || (eventType == XMLStreamConstants.CDATA && isWhiteSpace()) || eventType == XMLStreamConstants.SPACE
+            || eventType == XMLStreamConstants.PROCESSING_INSTRUCTION || eventType == XMLStreamConstants.COMMENT) {
+            eventType = next();
+        }
+        if (eventType != XMLStreamConstants.START_ELEMENT && eventType != XMLStreamConstants.END_ELEMENT) {
+            throw new XMLStreamException("Expected start or end tag", getLocation()); //$NON-NLS-1$
+        }
+        return eventType;
+    }
+
+    @Override
+    public String getElementText() throws XMLStreamException {
+        if (getEventType() != XMLStreamConstants.START_ELEMENT) {
+            throw new XMLStreamException("Parser must be on START_ELEMENT to read the text", getLocation()); //$NON-NLS-1$
+        }
+        StringBuilder content = new StringBuilder();
+        int eventType = next();
+        while (eventType != XMLStreamConstants.END_ELEMENT) {
+            if (eventType == XMLStreamConstants.CHARACTERS || eventType == XMLStreamConstants.CDATA
+                || eventType == XMLStreamConstants.SPACE || eventType == XMLStreamConstants.ENTITY_REFERENCE) {
+                content.append(getText());
+            } else if (eventType != XMLStreamConstants.PROCESSING_INSTRUCTION
+                && eventType != XMLStreamConstants.COMMENT) {
+                throw new XMLStreamException("Unexpected event in the text of an element: " + eventType, //$NON-NLS-1$
+                    getLocation());
+            }
+            eventType = next();
+        }
+        return content.toString();
+    }
+
+    private void startElement() throws SAXException {
+        for (int i = 0; i < getNamespaceCount(); i++) {
+            handler.startPrefixMapping(nullToEmpty(getNamespacePrefix(i)), nullToEmpty(getNamespaceURI(i)));
+        }
+        attributes.clear();
+        for (int i = 0; i < getAttributeCount(); i++) {
+            QName name = getAttributeName(i);
+            attributes.addAttribute(nullToEmpty(name.getNamespaceURI()), name.getLocalPart(), getQualifiedName(name),
+                getAttributeType(i), getAttributeValue(i));
+        }
+        QName name = getName();
+        handler.startElement(nullToEmpty(name.getNamespaceURI()), name.getLocalPart(), getQualifiedName(name),
+            attributes);
+    }
+
+    private void endElement() throws SAXException {
+        QName name = getName();
+        handler.endElement(nullToEmpty(name.getNamespaceURI()), name.getLocalPart(), getQualifiedName(name));
+        for (int i = 0; i < getNamespaceCount(); i++) {
+            handler.endPrefixMapping(nullToEmpty(getNamespacePrefix(i)));
+        }
+    }
+
+    private static String getQualifiedName(QName name) {
+        String prefix = name.getPrefix();
+        return StringUtil.hasLength(prefix) ? prefix + ":" + name.getLocalPart() : name.getLocalPart(); //$NON-NLS-1$
+    }
+
+    private static String nullToEmpty(String value) {
+        return value == null ? StringUtil.EMPTY_STRING : value;
+    }
+}
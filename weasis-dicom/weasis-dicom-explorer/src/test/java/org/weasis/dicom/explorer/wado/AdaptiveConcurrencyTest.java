@@ -0,0 +1,113 @@
+/*
+ * Copyright (c) 2009-2020 Weasis Team and other contributors.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse
+ * Public License 2.0 which is available at http://www.eclipse.org/legal/epl-2.0.
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+
+package org.weasis.dicom.explorer.wado;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class AdaptiveConcurrencyTest {
+
+    private static final long FAST_TTFB = 1_000_000L;
+    private static final long SLOW_TTFB = 500_000_000L;
+
+    @Test
+    public void testAdditiveIncrease() throws Exception {
+        List<Integer> limits = new ArrayList<>();
+        AdaptiveConcurrency c = new AdaptiveConcurrency("test", 1, 2, 3, 1, limits::add); //$NON-NLS-1$
+        // The window has the size of the limit
+        c.addSample(1000, FAST_TTFB);
+        assertEquals(2, c.getLimit());
+        c.addSample(1000, FAST_TTFB);
+        assertEquals(3, c.getLimit());
+        assertEquals(1, limits.size());
+        assertEquals(Integer.valueOf(3), limits.get(0));
+    }
+
+    @Test
+    public void testErrorsHalveTheLimit() throws Exception {
+        AdaptiveConcurrency c = new AdaptiveConcurrency("test", 1, 8, 8, 1, null); //$NON-NLS-1$
+        for (int i = 0; i < 7; i++) {
+            c.addSample(1000, FAST_TTFB);
+        }
+        c.addError();
+        assertEquals(4, c.getLimit());
+
+        // Never below the minimum
+        for (int i = 0; i < 4; i++) {
+            c.addError();
+        }
+        assertEquals(2, c.getLimit());
+        c.addError();
+        c.addError();
+        assertEquals(1, c.getLimit());
+        c.addError();
+        assertEquals(1, c.getLimit());
+    }
+
+    @Test
+    public void testLatencyDecrease() throws Exception {
+        AdaptiveConcurrency c = new AdaptiveConcurrency("test", 1, 4, 8, 1, null); //$NON-NLS-1$
+        for (int i = 0; i < 4; i++) {
+            c.addSample(Long.MAX_VALUE / 8, FAST_TTFB);
+        }
+        assertEquals(5, c.getLimit());
+        // The requests are queued: the time-to-first-byte is much longer than the best one
+        for (int i = 0; i < 5; i++) {
+            c.addSample(Long.MAX_VALUE / 8, SLOW_TTFB);
+        }
+        assertEquals(4, c.getLimit());
+    }
+
+    @Test
+    public void testThroughputDecrease() throws Exception {
+        AdaptiveConcurrency c = new AdaptiveConcurrency("test", 1, 2, 8, 1, null); //$NON-NLS-1$
+        c.addSample(Long.MAX_VALUE / 4, FAST_TTFB);
+        c.addSample(Long.MAX_VALUE / 4, FAST_TTFB);
+        assertEquals(3, c.getLimit());
+        // Same latency, but nothing received
+        for (int i = 0; i < 3; i++) {
+            c.addSample(0, FAST_TTFB);
+        }
+        assertEquals(2, c.getLimit());
+    }
+
+    @Test
+    public void testAcquireWaitsForTheLimit() throws Exception {
+        AdaptiveConcurrency c = new AdaptiveConcurrency("test", 1, 1, 2, 1, null); //$NON-NLS-1$
+        c.acquire();
+        CountDownLatch acquired = new CountDownLatch(1);
+        Thread t = new Thread(() -> {
+            try {
+                c.acquire();
+                acquired.countDown();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        t.start();
+        assertFalse(acquired.await(200, TimeUnit.MILLISECONDS));
+
+        // Raising the limit wakes up the waiting thread
+        c.addSample(1000, FAST_TTFB);
+        assertEquals(2, c.getLimit());
+        assertTrue(acquired.await(5, TimeUnit.SECONDS));
+        t.join(5000);
+        c.release();
+        c.release();
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright (c) 2009-2020 Weasis Team and other contributors.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse
+ * Public License 2.0 which is available at http://www.eclipse.org/legal/epl-2.0.
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+
+package org.weasis.dicom.explorer.wado;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class DownloadJournalTest {
+
+    private static final String SERIES_UID = "1.2.3"; //$NON-NLS-1$
+    private static final String SOP_UID = "1.2.3.4"; //$NON-NLS-1$
+    private static final String URL = "http://localhost/wado?objectUID=1.2.3.4"; //$NON-NLS-1$
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private DownloadJournal journal;
+
+    @Before
+    public void setUp() throws Exception {
+        journal = new DownloadJournal(folder.newFolder("download"), true); //$NON-NLS-1$
+    }
+
+    @Test
+    public void testInvalidUID() throws Exception {
+        assertNull(journal.getEntry(SERIES_UID, "../../1.2", URL)); //$NON-NLS-1$
+        assertNull(journal.getEntry(SERIES_UID, "1.2.a", URL)); //$NON-NLS-1$
+        assertNull(journal.getEntry(SERIES_UID, "", URL)); //$NON-NLS-1$
+        assertNotNull(journal.getEntry(SERIES_UID, SOP_UID, URL));
+        assertFalse(DownloadJournal.isValidUID(null));
+    }
+
+    @Test
+    public void testResumeState() throws Exception {
+        DownloadJournal.Entry entry = journal.getEntry(SERIES_UID, SOP_UID, URL);
+        Files.write(entry.getPartFile().toPath(), new byte[128]);
+        entry.setValidator("\"etag\""); //$NON-NLS-1$
+        entry.setBytes(128);
+        journal.save(entry);
+
+        // Read again, e.g. after a restart
+        DownloadJournal.Entry resumed = journal.getEntry(SERIES_UID, SOP_UID, URL);
+        assertEquals(128, resumed.getBytes());
+        assertEquals("\"etag\"", resumed.getValidator()); //$NON-NLS-1$
+        assertFalse(resumed.isComplete());
+        assertTrue(resumed.getPartFile().isFile());
+
+        // Another URL starts from the beginning
+        String otherUrl = URL + "&contentType=application/dicom"; //$NON-NLS-1$
+        DownloadJournal.Entry other = journal.getEntry(SERIES_UID, SOP_UID, otherUrl);
+        assertEquals(0, other.getBytes());
+        assertNull(other.getValidator());
+        assertFalse(other.getPartFile().exists());
+    }
+
+    @Test
+    public void testCompletedEntry() throws Exception {
+        DownloadJournal.Entry entry = journal.getEntry(SERIES_UID, SOP_UID, URL);
+        byte[] data = "DICM".getBytes(StandardCharsets.US_ASCII); //$NON-NLS-1$
+        Files.write(entry.getFile().toPath(), data);
+        entry.setComplete(true);
+        journal.save(entry);
+        assertTrue(journal.getEntry(SERIES_UID, SOP_UID, URL).isComplete());
+
+        // Each series gets its own file, deleting it keeps the file of the journal
+        File dir = folder.newFolder("series"); //$NON-NLS-1$
+        File copy1 = journal.checkout(entry, dir);
+        File copy2 = journal.checkout(entry, dir);
+        assertNotEquals(copy1, copy2);
+        assertArrayEquals(data, Files.readAllBytes(copy1.toPath()));
+        assertTrue(copy1.delete());
+        assertArrayEquals(data, Files.readAllBytes(copy2.toPath()));
+        assertTrue(journal.getEntry(SERIES_UID, SOP_UID, URL).isComplete());
+
+        // The entry is reset when its file has been deleted
+        assertTrue(entry.getFile().delete());
+        assertFalse(journal.getEntry(SERIES_UID, SOP_UID, URL).isComplete());
+    }
+}
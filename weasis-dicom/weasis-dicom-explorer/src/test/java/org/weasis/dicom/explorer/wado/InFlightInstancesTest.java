@@ -0,0 +1,128 @@
+/*
+ * Copyright (c) 2009-2020 Weasis Team and other contributors.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse
+ * Public License 2.0 which is available at http://www.eclipse.org/legal/epl-2.0.
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+
+package org.weasis.dicom.explorer.wado;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.weasis.dicom.codec.DicomMediaIO;
+
+public class InFlightInstancesTest {
+
+    private static final String SOP_UID = "1.2.3.4"; //$NON-NLS-1$
+    private static final String LOSSY = "1.2.840.10008.1.2.4.50"; //$NON-NLS-1$
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File dir;
+
+    @Before
+    public void setUp() throws Exception {
+        dir = folder.newFolder("series"); //$NON-NLS-1$
+    }
+
+    private static Thread startWaiter(InFlightInstances.Claim claim, File dir, AtomicBoolean cancelled,
+        AtomicReference<DicomMediaIO> result, CountDownLatch done) {
+        Thread t = new Thread(() -> {
+            try {
+                result.set(claim.await(dir, cancelled::get));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            done.countDown();
+        });
+        t.start();
+        return t;
+    }
+
+    @Test
+    public void testClaims() throws Exception {
+        InFlightInstances inFlight = new InFlightInstances(true);
+        InFlightInstances.Claim owner = inFlight.claim(SOP_UID, null);
+        assertNotNull(owner);
+        assertTrue(owner.isOwner());
+        assertNull(owner.await(dir, () -> false));
+
+        InFlightInstances.Claim waiter = inFlight.claim(SOP_UID, ""); //$NON-NLS-1$
+        assertNotNull(waiter);
+        assertFalse(waiter.isOwner());
+        // Another form of the instance is not shared
+        assertNull(inFlight.claim(SOP_UID, LOSSY));
+        assertNull(inFlight.claim(null, null));
+        assertEquals(1, inFlight.getInFlightCount());
+
+        // Only the owner ends the transfer
+        waiter.complete(null);
+        assertEquals(1, inFlight.getInFlightCount());
+        owner.complete(null);
+        assertEquals(0, inFlight.getInFlightCount());
+
+        assertNull(new InFlightInstances(false).claim(SOP_UID, null));
+    }
+
+    @Test
+    public void testOwnerFailed() throws Exception {
+        InFlightInstances inFlight = new InFlightInstances(true);
+        InFlightInstances.Claim owner = inFlight.claim(SOP_UID, null);
+        InFlightInstances.Claim waiter = inFlight.claim(SOP_UID, null);
+        AtomicReference<DicomMediaIO> result = new AtomicReference<>();
+        CountDownLatch done = new CountDownLatch(1);
+        Thread t = startWaiter(waiter, dir, new AtomicBoolean(false), result, done);
+        assertFalse(done.await(200, TimeUnit.MILLISECONDS));
+
+        // Failed or cancelled download of the owner
+        owner.complete(null);
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        t.join(5000);
+        assertNull(result.get());
+        assertEquals(0, inFlight.getSavedRequests());
+
+        // The waiting request downloads the instance itself
+        InFlightInstances.Claim fallback = inFlight.claim(SOP_UID, null);
+        assertTrue(fallback.isOwner());
+        fallback.complete(null);
+        assertEquals(0, inFlight.getInFlightCount());
+    }
+
+    @Test
+    public void testWaiterCancelled() throws Exception {
+        InFlightInstances inFlight = new InFlightInstances(true);
+        InFlightInstances.Claim owner = inFlight.claim(SOP_UID, null);
+        InFlightInstances.Claim waiter = inFlight.claim(SOP_UID, null);
+        AtomicBoolean cancelled = new AtomicBoolean(false);
+        AtomicReference<DicomMediaIO> result = new AtomicReference<>();
+        CountDownLatch done = new CountDownLatch(1);
+        Thread t = startWaiter(waiter, dir, cancelled, result, done);
+        assertFalse(done.await(200, TimeUnit.MILLISECONDS));
+
+        // Stops waiting without the owner
+        cancelled.set(true);
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        t.join(5000);
+        assertNull(result.get());
+        assertEquals(1, inFlight.getInFlightCount());
+        owner.complete(null);
+        assertEquals(0, inFlight.getInFlightCount());
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright (c) 2009-2020 Weasis Team and other contributors.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse
+ * Public License 2.0 which is available at http://www.eclipse.org/legal/epl-2.0.
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+
+package org.weasis.dicom.explorer.wado;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class InstanceStoreTest {
+
+    private static final String LOSSY = "1.2.840.10008.1.2.4.50"; //$NON-NLS-1$
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File storeDir;
+    private File seriesDir;
+
+    @Before
+    public void setUp() throws Exception {
+        storeDir = folder.newFolder("store"); //$NON-NLS-1$
+        seriesDir = folder.newFolder("series"); //$NON-NLS-1$
+    }
+
+    private File newInstance(int size) throws IOException {
+        File file = File.createTempFile("image_", ".dcm", seriesDir); //$NON-NLS-1$ //$NON-NLS-2$
+        byte[] data = new byte[size];
+        data[0] = (byte) size;
+        Files.write(file.toPath(), data);
+        return file;
+    }
+
+    @Test
+    public void testVariants() throws Exception {
+        InstanceStore store = new InstanceStore(storeDir, true, false, 1024 * 1024);
+        store.put("1.2.3.1", newInstance(100), null, null); //$NON-NLS-1$
+        store.put("1.2.3.2", newInstance(100), LOSSY, null); //$NON-NLS-1$
+        assertTrue(store.contains("1.2.3.1", null)); //$NON-NLS-1$
+        assertTrue(store.contains("1.2.3.1", "")); //$NON-NLS-1$ //$NON-NLS-2$
+        assertFalse(store.contains("1.2.3.1", LOSSY)); //$NON-NLS-1$
+        assertTrue(store.contains("1.2.3.2", LOSSY)); //$NON-NLS-1$
+        assertFalse(store.contains("1.2.3.2", null)); //$NON-NLS-1$
+
+        // The variants are kept in memory
+        assertTrue(new File(storeDir, "1.2.3.2.properties").delete()); //$NON-NLS-1$
+        assertTrue(store.contains("1.2.3.2", LOSSY)); //$NON-NLS-1$
+
+        // Read again from the folder, e.g. after a restart
+        InstanceStore reloaded = new InstanceStore(storeDir, true, false, 1024 * 1024);
+        assertTrue(reloaded.contains("1.2.3.1", null)); //$NON-NLS-1$
+        assertFalse(reloaded.contains("1.2.3.9", null)); //$NON-NLS-1$
+    }
+
+    @Test
+    public void testInvalidUID() throws Exception {
+        InstanceStore store = new InstanceStore(storeDir, true, false, 1024 * 1024);
+        store.put("../1.2.3", newInstance(100), null, null); //$NON-NLS-1$
+        store.put("1.2.3/x", newInstance(100), null, null); //$NON-NLS-1$
+        assertFalse(store.contains("../1.2.3", null)); //$NON-NLS-1$
+        assertFalse(new File(folder.getRoot(), "1.2.3.dcm").exists()); //$NON-NLS-1$
+        String[] files = storeDir.list();
+        assertNotNull(files);
+        assertEquals(0, files.length);
+        store.remove("../1.2.3"); //$NON-NLS-1$
+        assertNull(store.checkout("../1.2.3", null, seriesDir)); //$NON-NLS-1$
+    }
+
+    @Test
+    public void testCheckout() throws Exception {
+        InstanceStore store = new InstanceStore(storeDir, true, false, 1024 * 1024);
+        File file = newInstance(100);
+        byte[] data = Files.readAllBytes(file.toPath());
+        store.put("1.2.3.1", file, null, null); //$NON-NLS-1$
+        // The files of the series are not in the store
+        assertTrue(file.delete());
+
+        File copy = store.checkout("1.2.3.1", null, seriesDir); //$NON-NLS-1$
+        assertNotNull(copy);
+        assertArrayEquals(data, Files.readAllBytes(copy.toPath()));
+        assertTrue(copy.delete());
+        assertTrue(store.contains("1.2.3.1", null)); //$NON-NLS-1$
+        assertNull(store.checkout("1.2.3.1", LOSSY, seriesDir)); //$NON-NLS-1$
+
+        store.remove("1.2.3.1"); //$NON-NLS-1$
+        assertFalse(store.contains("1.2.3.1", null)); //$NON-NLS-1$
+        assertFalse(new File(storeDir, "1.2.3.1.dcm").exists()); //$NON-NLS-1$
+    }
+
+    @Test
+    public void testEviction() throws Exception {
+        InstanceStore store = new InstanceStore(storeDir, true, false, 250);
+        store.put("1.2.3.1", newInstance(100), null, null); //$NON-NLS-1$
+        store.put("1.2.3.2", newInstance(100), null, null); //$NON-NLS-1$
+        // The first instance becomes the most recently used
+        File copy = store.checkout("1.2.3.1", null, seriesDir); //$NON-NLS-1$
+        assertNotNull(copy);
+
+        store.put("1.2.3.3", newInstance(100), null, null); //$NON-NLS-1$
+        assertTrue(store.contains("1.2.3.1", null)); //$NON-NLS-1$
+        assertFalse(store.contains("1.2.3.2", null)); //$NON-NLS-1$
+        assertTrue(store.contains("1.2.3.3", null)); //$NON-NLS-1$
+        assertFalse(new File(storeDir, "1.2.3.2.dcm").exists()); //$NON-NLS-1$
+    }
+
+    @Test
+    public void testDisabled() throws Exception {
+        InstanceStore store = new InstanceStore(storeDir, false, false, 1024 * 1024);
+        store.put("1.2.3.1", newInstance(100), null, null); //$NON-NLS-1$
+        assertFalse(store.contains("1.2.3.1", null)); //$NON-NLS-1$
+        // Without revalidation, a stored instance is always valid
+        assertTrue(store.isValid("1.2.3.1", "http://localhost/wado", null)); //$NON-NLS-1$ //$NON-NLS-2$
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright (c) 2009-2020 Weasis Team and other contributors.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse
+ * Public License 2.0 which is available at http://www.eclipse.org/legal/epl-2.0.
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+
+package org.weasis.dicom.explorer.wado;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import org.dcm4che3.data.Attributes;
+import org.dcm4che3.data.BulkData;
+import org.dcm4che3.data.Tag;
+import org.dcm4che3.data.UID;
+import org.dcm4che3.data.VR;
+import org.dcm4che3.io.DicomInputStream;
+import org.dcm4che3.io.DicomOutputStream;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.weasis.core.util.StreamIOException;
+
+public class StreamingDicomWriterTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static byte[] buildDicom(byte[] pixels) throws IOException {
+        Attributes ds = new Attributes();
+        ds.setString(Tag.SOPClassUID, VR.UI, UID.SecondaryCaptureImageStorage);
+        ds.setString(Tag.SOPInstanceUID, VR.UI, "1.2.3.4"); //$NON-NLS-1$
+        ds.setString(Tag.PatientName, VR.PN, "Test^Patient"); //$NON-NLS-1$
+        ds.setInt(Tag.Rows, VR.US, 4);
+        ds.setInt(Tag.Columns, VR.US, 4);
+        ds.setInt(Tag.BitsAllocated, VR.US, 8);
+        ds.setInt(Tag.BitsStored, VR.US, 8);
+        ds.setInt(Tag.HighBit, VR.US, 7);
+        ds.setBytes(Tag.PixelData, VR.OB, pixels);
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try (DicomOutputStream dos = new DicomOutputStream(bos, UID.ExplicitVRLittleEndian)) {
+            dos.writeDataset(ds.createFileMetaInformation(UID.ExplicitVRLittleEndian), ds);
+        }
+        return bos.toByteArray();
+    }
+
+    @Test
+    public void testParseWhileWriting() throws Exception {
+        byte[] pixels = new byte[16];
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = (byte) (i * 3);
+        }
+        byte[] data = buildDicom(pixels);
+        File file = folder.newFile("image.dcm"); //$NON-NLS-1$
+        StreamingDicomWriter writer = new StreamingDicomWriter(file);
+
+        assertEquals(-1, writer.write(new ByteArrayInputStream(data), file));
+        byte[] written = Files.readAllBytes(file.toPath());
+        assertArrayEquals(data, written);
+
+        Attributes ds = writer.getDataset();
+        assertEquals("Test^Patient", ds.getString(Tag.PatientName)); //$NON-NLS-1$
+        // The pixel data are not in memory, their offset is the position in the file
+        Object value = ds.getValue(Tag.PixelData);
+        assertTrue(value instanceof BulkData);
+        BulkData bulkData = (BulkData) value;
+        assertTrue(bulkData.getURI().startsWith(file.toURI().toString()));
+        int offset = (int) bulkData.offset();
+        assertArrayEquals(pixels, Arrays.copyOfRange(written, offset, offset + bulkData.length()));
+    }
+
+    @Test
+    public void testNotParsableStream() throws Exception {
+        byte[] data = "This is not a DICOM stream".getBytes(StandardCharsets.US_ASCII); //$NON-NLS-1$
+        File file = folder.newFile("image.dcm"); //$NON-NLS-1$
+        StreamingDicomWriter writer = new StreamingDicomWriter(file);
+
+        // Written as it is
+        assertEquals(-1, writer.write(new ByteArrayInputStream(data), file));
+        assertArrayEquals(data, Files.readAllBytes(file.toPath()));
+        assertNull(writer.getDataset());
+    }
+
+    @Test
+    public void testCorruptHeader() throws Exception {
+        byte[] data = buildDicom(new byte[4096]);
+        File file = folder.newFile("image.dcm"); //$NON-NLS-1$
+        StreamingDicomWriter writer = new StreamingDicomWriter(file) {
+            @Override
+            void readHeader(DicomInputStream dis) throws IOException {
+                dis.readFileMetaInformation();
+                // Like the unchecked exceptions of the parser with inconsistent lengths or values
+                throw new IllegalArgumentException("Corrupted element"); //$NON-NLS-1$
+            }
+        };
+
+        // All the bytes are written and the file is read again by the reader
+        assertEquals(-1, writer.write(new ByteArrayInputStream(data), file));
+        assertArrayEquals(data, Files.readAllBytes(file.toPath()));
+        assertNull(writer.getDataset());
+    }
+
+    @Test
+    public void testNetworkError() throws Exception {
+        byte[] data = buildDicom(new byte[4096]);
+        InputStream broken = new InputStream() {
+            @Override
+            public int read() throws IOException {
+                throw new IOException("Connection reset"); //$NON-NLS-1$
+            }
+        };
+        InputStream in = new SequenceInputStream(new ByteArrayInputStream(data, 0, 200), broken);
+        File file = folder.newFile("image.dcm"); //$NON-NLS-1$
+        StreamingDicomWriter writer = new StreamingDicomWriter(file);
+        try {
+            writer.write(in, file);
+            fail("The error of the source must be thrown"); //$NON-NLS-1$
+        } catch (StreamIOException e) {
+            assertFalse(file.exists());
+            assertNull(writer.getDataset());
+        }
+    }
+}
@@ -0,0 +1,174 @@
+/*
+ * Copyright (c) 2009-2020 Weasis Team and other contributors.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse
+ * Public License 2.0 which is available at http://www.eclipse.org/legal/epl-2.0.
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+
+package org.weasis.dicom.qr;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.function.Consumer;
+
+import javax.swing.SwingWorker;
+
+import org.dcm4che3.data.Attributes;
+import org.dcm4che3.data.ElementDictionary;
+import org.dcm4che3.data.Tag;
+import org.dcm4che3.data.UID;
+import org.dcm4che3.data.VR;
+import org.dcm4che3.net.ApplicationEntity;
+import org.dcm4che3.net.Association;
+import org.dcm4che3.net.Connection;
+import org.dcm4che3.net.Device;
+import org.dcm4che3.net.DimseRSP;
+import org.dcm4che3.net.Priority;
+import org.dcm4che3.net.Status;
+import org.dcm4che3.net.pdu.AAssociateRQ;
+import org.dcm4che3.net.pdu.PresentationContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.weasis.dicom.param.AdvancedParams;
+import org.weasis.dicom.param.DicomNode;
+import org.weasis.dicom.param.DicomParam;
+import org.weasis.dicom.param.DicomState;
+
+/**
+ * Runs a C-FIND query at the study level and publishes the matches while the pending responses are received.
+ * <p>
+ * The matches are given in batches to the consumer in the EDT. The query can be stopped with {@link #cancelQuery()},
+ * which sends a C-CANCEL request and keeps the matches already received.
+ */
+public class CFindTask extends SwingWorker<DicomState, Attributes> {
+    private static final Logger LOGGER = LoggerFactory.getLogger(CFindTask.class);
+
+    private final AdvancedParams params;
+    private final DicomNode callingNode;
+    private final DicomNode calledNode;
+    private final DicomParam[] keys;
+    private final Consumer<List<Attributes>> consumer;
+
+    private volatile Association association;
+    private volatile DimseRSP response;
+    private volatile boolean canceled = false;
+
+    public CFindTask(AdvancedParams params, DicomNode callingNode, DicomNode calledNode, DicomParam[] keys,
+        Consumer<List<Attributes>> consumer) {
+        this.params = params;
+        this.callingNode = callingNode;
+        this.calledNode = calledNode;
+        this.keys = keys;
+        this.consumer = consumer;
+    }
+
+    @Override
+    protected DicomState doInBackground() throws Exception {
+        Device device = new Device("findscu"); //$NON-NLS-1$
+        Connection conn = new Connection();
+        device.addConnection(conn);
+        ApplicationEntity ae = new ApplicationEntity("FINDSCU"); //$NON-NLS-1$
+        device.addApplicationEntity(ae);
+        ae.addConnection(conn);
+        ae.setAssociationInitiator(true);
+
+        Connection remote = new Connection();
+        AAssociateRQ rq = new AAssociateRQ();
+        rq.addPresentationContext(new PresentationContext(1, UID.StudyRootQueryRetrieveInformationModelFind,
+            UID.ImplicitVRLittleEndian, UID.ExplicitVRLittleEndian));
+        params.configureConnect(rq, remote, calledNode);
+        params.configureBind(ae, conn, callingNode);
+        params.configure(conn);
+        params.configureTLS(conn, remote);
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        ScheduledExecutorService scheduledExecutor = Executors.newSingleThreadScheduledExecutor();
+        device.setExecutor(executor);
+        device.setScheduledExecutor(scheduledExecutor);
+        try {
+            association = ae.connect(conn, remote, rq);
+            try {
+                response = association.cfind(UID.StudyRootQueryRetrieveInformationModelFind, Priority.NORMAL,
+                    buildKeys(), null, Integer.MAX_VALUE);
+                if (canceled) {
+                    response.cancel(association);
+                }
+                int nb = 0;
+                while (response.next()) {
+                    Attributes cmd = response.getCommand();
+                    int status = cmd.getInt(Tag.Status, -1);
+                    if (Status.isPending(status)) {
+                        Attributes match = response.getDataset();
+                        // A pending response without identifier is not a match
+                        if (match != null) {
+                            nb++;
+                            publish(match);
+                        }
+                    } else {
+                        LOGGER.info("C-FIND: {} matches, status {}", nb, Integer.toHexString(status)); //$NON-NLS-1$
+                        String msg = cmd.getString(Tag.ErrorComment);
+                        return new DicomState(canceled ? Status.Cancel : status, msg, null);
+                    }
+                }
+                return new DicomState(Status.UnableToProcess, "No final C-FIND response", null); //$NON-NLS-1$
+            } finally {
+                if (association.isReadyForDataTransfer()) {
+                    association.waitForOutstandingRSP();
+                    association.release();
+                }
+            }
+        } catch (Exception e) {
+            LOGGER.error("C-FIND", e); //$NON-NLS-1$
+            return new DicomState(Status.UnableToProcess, e.getMessage(), null);
+        } finally {
+            executor.shutdown();
+            scheduledExecutor.shutdown();
+        }
+    }
+
+    private Attributes buildKeys() {
+        Attributes attrs = new Attributes();
+        attrs.setString(Tag.QueryRetrieveLevel, VR.CS, "STUDY"); //$NON-NLS-1$
+        for (DicomParam p : keys) {
+            int tag = p.getTag();
+            VR vr = ElementDictionary.vrOf(tag, null);
+            String[] values = p.getValues();
+            if (values == null || values.length == 0) {
+                attrs.setNull(tag, vr);
+            } else {
+                attrs.setString(tag, vr, values);
+            }
+        }
+        return attrs;
+    }
+
+    @Override
+    protected void process(List<Attributes> chunks) {
+        consumer.accept(chunks);
+    }
+
+    /**
+     * Stops the query, the pending responses already received are published.
+     */
+    public void cancelQuery() {
+        canceled = true;
+        Association as = association;
+        DimseRSP rsp = response;
+        if (as != null && rsp != null) {
+            try {
+                rsp.cancel(as);
+            } catch (IOException e) {
+                LOGGER.error("C-FIND cancel", e); //$NON-NLS-1$
+            }
+        }
+    }
+
+    public boolean isCanceled() {
+        return canceled;
+    }
+}
@@ -23,6 +23,7 @@ import java.time.temporal.TemporalAdjusters;
 import java.time.temporal.WeekFields;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
@@ -41,6 +42,7 @@ import javax.swing.JPopupMenu;
 import javax.swing.JProgressBar;
 import javax.swing.JTextField;
 import javax.swing.SwingUtilities;
+import javax.swing.SwingWorker.StateValue;
 import javax.swing.border.Border;
 import javax.swing.border.TitledBorder;
 import javax.swing.event.ListDataEvent;
@@ -58,7 +60,6 @@ import org.weasis.core.api.gui.util.DropDownButton;
 import org.weasis.core.api.gui.util.DropDownLabel;
 import org.weasis.core.api.gui.util.GroupCheckBoxMenu;
 import org.weasis.core.api.gui.util.GroupRadioMenu;
-import org.weasis.core.api.gui.util.GuiExecutor;
 import org.weasis.core.api.gui.util.JMVUtils;
 import org.weasis.core.api.gui.util.WinUtil;
 import org.weasis.core.api.media.data.MediaSeriesGroup;
@@ -77,6 +78,7 @@ import org.weasis.dicom.codec.display.Modality;
 import org.weasis.dicom.codec.utils.DicomMediaUtils;
 import org.weasis.dicom.codec.utils.PatientComparator;
 import org.weasis.dicom.explorer.DicomModel;
+import org.weasis.dicom.explorer.ExportTree;
 import org.weasis.dicom.explorer.ImportDicom;
 import org.weasis.dicom.explorer.pref.node.AbstractDicomNode;
 import org.weasis.dicom.explorer.pref.node.AbstractDicomNode.RetrieveType;
@@ -227,8 +229,13 @@ public class DicomQrView extends AbstractItemDialogPage implements ImportDicom {
     private final DatePicker endDatePicker = buildDatePicker();
     private final JComboBox<RetrieveType> comboDicomRetrieveType = new JComboBox<>(RetrieveType.values());
     private final JComboBox<AbstractDicomNode> comboCallingNode = new JComboBox<>();
+    private final JButton searchBtn = new JButton(Messages.getString("DicomQrView.search")); //$NON-NLS-1$
+    private final JLabel matchesLabel = new JLabel();
     private final DicomListener dicomListener;
     private final ExecutorService executor = ThreadUtil.buildNewFixedThreadExecutor(3, "Dicom Q/R task"); //$NON-NLS-1$
+    private RetrieveTreeModel retrieveTreeModel;
+    private CFindTask cfindTask;
+    private int nbMatches;
 
     public DicomQrView() {
         super(Messages.getString("DicomQrView.title")); //$NON-NLS-1$
@@ -314,10 +321,16 @@ public class DicomQrView extends AbstractItemDialogPage implements ImportDicom {
         clearBtn.setToolTipText(Messages.getString("DicomQrView.clear_search")); //$NON-NLS-1$
         clearBtn.addActionListener(e -> clearItems());
         panel5.add(clearBtn);
-        JButton searchBtn = new JButton(Messages.getString("DicomQrView.search")); //$NON-NLS-1$
         searchBtn.setToolTipText(Messages.getString("DicomQrView.tips_dcm_query")); //$NON-NLS-1$
-        searchBtn.addActionListener(e -> cfind());
+        searchBtn.addActionListener(e -> {
+            if (cfindTask == null) {
+                cfind();
+            } else {
+                cfindTask.cancelQuery();
+            }
+        });
         panel5.add(searchBtn);
+        panel5.add(matchesLabel);
         return panel5;
     }
 
@@ -476,15 +489,8 @@ public class DicomQrView extends AbstractItemDialogPage implements ImportDicom {
             connectOptions.setConnectTimeout(3000);
             connectOptions.setAcceptTimeout(5000);
             params.setConnectOptions(connectOptions);
-            final DicomState state = CFind.process(params, ((DefaultDicomNode) callingNode).getDicomNodeWithOnlyAET(),
-                node.getDicomNode(), p.toArray(new DicomParam[p.size()]));
-            if (state.getStatus() == Status.Success) {
-                displayResult(state);
-            } else {
-                LOGGER.error("Dicom cfind error: {}", state.getMessage()); //$NON-NLS-1$
-                GuiExecutor.instance().execute(() -> JOptionPane.showMessageDialog(basePanel, state.getMessage(), null,
-                    JOptionPane.ERROR_MESSAGE));
-            }
+            startQuery(new CFindTask(params, ((DefaultDicomNode) callingNode).getDicomNodeWithOnlyAET(),
+                node.getDicomNode(), p.toArray(new DicomParam[p.size()]), this::addResults));
         } else if (selectedItem instanceof DicomWebNode) {
             throw new IllegalAccessError("Not implemented yet"); //$NON-NLS-1$
         }
@@ -496,67 +502,120 @@ public class DicomQrView extends AbstractItemDialogPage implements ImportDicom {
         }
     }
 
-    private void displayResult(DicomState state) {
-        List<Attributes> items = state.getDicomRSP();
-        if (items != null) {
-            for (int i = 0; i < items.size(); i++) {
-                Attributes item = items.get(i);
-                LOGGER.trace("==========================================="); //$NON-NLS-1$
-                LOGGER.trace("CFind Item {}", (i + 1)); //$NON-NLS-1$
-                LOGGER.trace("==========================================="); //$NON-NLS-1$
-                LOGGER.trace("{}", item.toString(100, 150)); //$NON-NLS-1$
-
-                PatientComparator patientComparator = new PatientComparator(item);
-                String patientPseudoUID = patientComparator.buildPatientPseudoUID();
-                MediaSeriesGroup patient = dicomModel.getHierarchyNode(MediaSeriesGroupNode.rootNode, patientPseudoUID);
-                if (patient == null) {
-                    patient = new MediaSeriesGroupNode(TagW.PatientPseudoUID, patientPseudoUID,
-                        DicomModel.patient.getTagView()) {
+    private void startQuery(CFindTask task) {
+        cfindTask = task;
+        nbMatches = 0;
+        retrieveTreeModel = new RetrieveTreeModel(dicomModel);
+        tree.setCheckTreeModel(retrieveTreeModel);
+        tree.revalidate();
+        tree.repaint();
+        updateMatches();
+        searchBtn.setText(Messages.getString("DicomQrView.cancel")); //$NON-NLS-1$
+
+        task.addPropertyChangeListener(evt -> {
+            if ("state".equals(evt.getPropertyName()) && StateValue.DONE == evt.getNewValue()) { //$NON-NLS-1$
+                queryDone(task);
+            }
+        });
+        executor.execute(task);
+    }
+
+    private void queryDone(CFindTask task) {
+        cfindTask = null;
+        searchBtn.setText(Messages.getString("DicomQrView.search")); //$NON-NLS-1$
+        updateMatches();
+        try {
+            DicomState state = task.get();
+            if (state.getStatus() != Status.Success && state.getStatus() != Status.Cancel) {
+                LOGGER.error("Dicom cfind error: {}", state.getMessage()); //$NON-NLS-1$
+                JOptionPane.showMessageDialog(basePanel, state.getMessage(), null, JOptionPane.ERROR_MESSAGE);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            LOGGER.error("Dicom cfind", e); //$NON-NLS-1$
+        }
+    }
+
+    private void updateMatches() {
+        StringBuilder buf = new StringBuilder(Messages.getString("DicomQrView.matches")); //$NON-NLS-1$
+        buf.append(StringUtil.COLON_AND_SPACE);
+        buf.append(nbMatches);
+        if (cfindTask != null) {
+            buf.append("..."); //$NON-NLS-1$
+        }
+        matchesLabel.setText(buf.toString());
+    }
+
+    /**
+     * Adds a batch of C-FIND matches to the model and to the tree (in the EDT).
+     */
+    private void addResults(List<Attributes> items) {
+        if (retrieveTreeModel == null) {
+            return;
+        }
+        boolean newPatient = false;
+        for (Attributes item : items) {
+            nbMatches++;
+            LOGGER.trace("==========================================="); //$NON-NLS-1$
+            LOGGER.trace("CFind Item {}", nbMatches); //$NON-NLS-1$
+            LOGGER.trace("==========================================="); //$NON-NLS-1$
+            LOGGER.trace("{}", item.toString(100, 150)); //$NON-NLS-1$
+
+            PatientComparator patientComparator = new PatientComparator(item);
+            String patientPseudoUID = patientComparator.buildPatientPseudoUID();
+            MediaSeriesGroup patient = dicomModel.getHierarchyNode(MediaSeriesGroupNode.rootNode, patientPseudoUID);
+            if (patient == null) {
+                patient = new MediaSeriesGroupNode(TagW.PatientPseudoUID, patientPseudoUID,
+                    DicomModel.patient.getTagView()) {
+                    @Override
+                    public String toString() {
+                        StringBuilder buf = new StringBuilder(getDisplayValue(this, Tag.PatientName));
+                        buf.append(" ["); //$NON-NLS-1$
+                        buf.append(getDisplayValue(this, Tag.PatientID));
+                        buf.append("] "); //$NON-NLS-1$
+                        buf.append(getDisplayValue(this, Tag.PatientBirthDate));
+                        buf.append(" "); //$NON-NLS-1$
+                        buf.append(getDisplayValue(this, Tag.PatientSex));
+                        return buf.toString();
+                    }
+                };
+                DicomMediaUtils.writeMetaData(patient, item);
+                dicomModel.addHierarchyNode(MediaSeriesGroupNode.rootNode, patient);
+                newPatient = true;
+            }
+
+            String studyUID = item.getString(Tag.StudyInstanceUID);
+            MediaSeriesGroup study = dicomModel.getHierarchyNode(patient, studyUID);
+            if (study == null) {
+                study =
+                    new MediaSeriesGroupNode(TagD.getUID(Level.STUDY), studyUID, DicomModel.study.getTagView()) {
                         @Override
                         public String toString() {
-                            StringBuilder buf = new StringBuilder(getDisplayValue(this, Tag.PatientName));
+                            StringBuilder buf = new StringBuilder(getDisplayValue(this, Tag.StudyDescription));
                             buf.append(" ["); //$NON-NLS-1$
-                            buf.append(getDisplayValue(this, Tag.PatientID));
+                            buf.append(getDisplayValue(this, Tag.ModalitiesInStudy));
                             buf.append("] "); //$NON-NLS-1$
-                            buf.append(getDisplayValue(this, Tag.PatientBirthDate));
-                            buf.append(" "); //$NON-NLS-1$
-                            buf.append(getDisplayValue(this, Tag.PatientSex));
+                            LocalDateTime studyDate = TagD.dateTime(Tag.StudyDate, Tag.StudyTime, this);
+                            if (studyDate != null) {
+                                buf.append(TagUtil.formatDateTime(studyDate));
+                                buf.append(" "); //$NON-NLS-1$
+                            }
+                            buf.append(getDisplayValue(this, Tag.AccessionNumber));
                             return buf.toString();
                         }
                     };
-                    DicomMediaUtils.writeMetaData(patient, item);
-                    dicomModel.addHierarchyNode(MediaSeriesGroupNode.rootNode, patient);
-                }
-
-                String studyUID = item.getString(Tag.StudyInstanceUID);
-                MediaSeriesGroup study = dicomModel.getHierarchyNode(patient, studyUID);
-                if (study == null) {
-                    study =
-                        new MediaSeriesGroupNode(TagD.getUID(Level.STUDY), studyUID, DicomModel.study.getTagView()) {
-                            @Override
-                            public String toString() {
-                                StringBuilder buf = new StringBuilder(getDisplayValue(this, Tag.StudyDescription));
-                                buf.append(" ["); //$NON-NLS-1$
-                                buf.append(getDisplayValue(this, Tag.ModalitiesInStudy));
-                                buf.append("] "); //$NON-NLS-1$
-                                LocalDateTime studyDate = TagD.dateTime(Tag.StudyDate, Tag.StudyTime, this);
-                                if (studyDate != null) {
-                                    buf.append(TagUtil.formatDateTime(studyDate));
-                                    buf.append(" "); //$NON-NLS-1$
-                                }
-                                buf.append(getDisplayValue(this, Tag.AccessionNumber));
-                                return buf.toString();
-                            }
-                        };
-                    DicomMediaUtils.writeMetaData(study, item);
-                    dicomModel.addHierarchyNode(patient, study);
-                }
+                DicomMediaUtils.writeMetaData(study, item);
+                dicomModel.addHierarchyNode(patient, study);
             }
+            retrieveTreeModel.addStudy(patient, study);
         }
 
-        tree.setCheckTreeModel(new RetrieveTreeModel(dicomModel));
-        tree.revalidate();
-        tree.repaint();
+        if (newPatient) {
+            // 2 stands for Study Level
+            ExportTree.expandTree(tree.getCheckboxTree(), retrieveTreeModel.getRootNode(), 2);
+        }
+        updateMatches();
     }
 
     private String getDisplayValue(MediaSeriesGroupNode node, int tagID) {
@@ -675,6 +734,11 @@ public class DicomQrView extends AbstractItemDialogPage implements ImportDicom {
     @Override
     public void closeAdditionalWindow() {
         applyChange();
+        CFindTask task = cfindTask;
+        if (task != null) {
+            // Releases the association, the matches are not displayed anymore
+            task.cancelQuery();
+        }
         executor.shutdown();
     }
 
@@ -0,0 +1,116 @@
+/*
+ * Copyright (c) 2009-2020 Weasis Team and other contributors.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse
+ * Public License 2.0 which is available at http://www.eclipse.org/legal/epl-2.0.
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+
+package org.weasis.dicom.qr;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.weasis.core.api.explorer.ObservableEvent;
+import org.weasis.core.api.media.data.SeriesThumbnail;
+import org.weasis.dicom.explorer.DicomModel;
+import org.weasis.dicom.explorer.LoadLocalDicom;
+
+/**
+ * Loads the instances of a C-GET or C-MOVE retrieve into the DICOM model while the retrieve is running.
+ * <p>
+ * Each instance is added as soon as its C-STORE sub-operation is completed, so the thumbnails and the first images are
+ * displayed before the end of the retrieve. The files are read in the loading thread of the model. When the retrieve
+ * is finished, this task loads the files which have not been notified and rebuilds the thumbnails of the new series.
+ */
+public class LoadRetrievedDicom extends LoadLocalDicom {
+    // Extension of the files being written by the DICOM listener
+    private static final String PART_EXT = ".part"; //$NON-NLS-1$
+
+    private final File folder;
+    private final DicomModel dicomModel;
+    private final Set<String> loadedFiles = ConcurrentHashMap.newKeySet();
+    private final Queue<File> receivedFiles = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean scheduled = new AtomicBoolean(false);
+    private final AtomicBoolean folderChanged = new AtomicBoolean(false);
+    // Only accessed in the loading thread
+    private final List<SeriesThumbnail> thumbnails = new ArrayList<>();
+
+    public LoadRetrievedDicom(File folder, DicomModel dicomModel) {
+        super(new File[] { folder }, false, dicomModel);
+        this.folder = folder;
+        this.dicomModel = dicomModel;
+    }
+
+    /**
+     * Notifies a file which has been completely received.
+     */
+    public void addFile(File file) {
+        if (file != null) {
+            receivedFiles.add(file);
+            schedule();
+        }
+    }
+
+    /**
+     * Notifies that new files are in the folder, when the received files are unknown (e.g. written by a DICOM
+     * listener). The folder is read once for all the notifications received before the reading.
+     */
+    public void scanFolder() {
+        folderChanged.set(true);
+        schedule();
+    }
+
+    private void schedule() {
+        if (scheduled.compareAndSet(false, true)) {
+            DicomModel.LOADING_EXECUTOR.execute(this::loadReceivedFiles);
+        }
+    }
+
+    private void loadReceivedFiles() {
+        scheduled.set(false);
+        if (folderChanged.getAndSet(false)) {
+            loadFolder();
+        }
+        File file;
+        while ((file = receivedFiles.poll()) != null) {
+            load(file);
+        }
+    }
+
+    private void loadFolder() {
+        File[] files = folder.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                load(file);
+            }
+        }
+    }
+
+    private void load(File file) {
+        if (file.isFile() && !file.getName().endsWith(PART_EXT) && loadedFiles.add(file.getPath())) {
+            SeriesThumbnail t = addDicomFile(file);
+            if (t != null) {
+                thumbnails.add(t);
+            }
+        }
+    }
+
+    @Override
+    protected Boolean doInBackground() throws Exception {
+        dicomModel
+            .firePropertyChange(new ObservableEvent(ObservableEvent.BasicAction.LOADING_START, dicomModel, null, this));
+        // Executed in the loading thread after the files already notified
+        loadReceivedFiles();
+        loadFolder();
+        rebuildThumbnails(thumbnails);
+        return true;
+    }
+}
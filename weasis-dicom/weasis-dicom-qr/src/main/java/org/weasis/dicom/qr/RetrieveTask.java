@@ -34,7 +34,6 @@ import org.weasis.core.api.util.ResourceUtil;
 import org.weasis.core.util.StringUtil;
 import org.weasis.dicom.explorer.DicomModel;
 import org.weasis.dicom.explorer.ExplorerTask;
-import org.weasis.dicom.explorer.LoadLocalDicom;
 import org.weasis.dicom.explorer.pref.node.AbstractDicomNode;
 import org.weasis.dicom.explorer.pref.node.AbstractDicomNode.RetrieveType;
 import org.weasis.dicom.explorer.pref.node.DefaultDicomNode;
@@ -104,7 +103,11 @@ public class RetrieveTask extends ExplorerTask<ExplorerTask<Boolean, String>, St
                 connectOptions.setAcceptTimeout(5000);
                 params.setConnectOptions(connectOptions);
 
+                // Load each instance when it is received
+                LoadRetrievedDicom loadingDicom = new LoadRetrievedDicom(DicomQrView.tempDir, explorerDcmModel);
+
                 if (RetrieveType.CGET == type) {
+                    progress.addProgressListener(p -> loadingDicom.addFile(p.getProcessedFile()));
                     File sopClass = ResourceUtil.getResource("store-tcs.properties"); //$NON-NLS-1$
                     URL url = null;
                     if (sopClass.canRead()) {
@@ -141,6 +144,8 @@ public class RetrieveTask extends ExplorerTask<ExplorerTask<Boolean, String>, St
                     if (errorMessage != null) {
                         state = new DicomState(Status.UnableToProcess, errorMessage, null);
                     } else {
+                        // The files are written by the listener, only the number of sub-operations is notified
+                        progress.addProgressListener(p -> loadingDicom.scanFolder());
                         state = CMove.process(params, callingNode.getDicomNode(), node.getDicomNode(),
                             callingNode.getAeTitle(), progress, dcmParams);
                         if (dicomListener != null) {
@@ -226,8 +231,8 @@ public class RetrieveTask extends ExplorerTask<ExplorerTask<Boolean, String>, St
                     LOGGER.error("Dicom retrieve error: {}", errorMessage); //$NON-NLS-1$
                 }
 
-                loadingTask =
-                    new LoadLocalDicom(new File[] { new File(DicomQrView.tempDir.getPath()) }, false, explorerDcmModel);
+                // Load the remaining files and rebuild the thumbnails
+                loadingTask = loadingDicom;
             }
 
         } else if (selectedItem instanceof DicomWebNode) {
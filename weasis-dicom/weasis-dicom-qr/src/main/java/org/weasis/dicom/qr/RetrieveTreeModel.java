@@ -15,6 +15,7 @@ import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Objects;
 
@@ -82,6 +83,41 @@ public class RetrieveTreeModel {
         return defaultSelectedPaths;
     }
 
+    /**
+     * Inserts a study of the DICOM model in the tree, at the same position as in a tree built from the model.
+     */
+    public void addStudy(MediaSeriesGroup patient, MediaSeriesGroup study) {
+        if (rootNode.getChildCount() == 0) {
+            rootNode.setUserObject(DicomExplorer.ALL_PATIENTS);
+            model.nodeChanged(rootNode);
+        }
+        DefaultMutableTreeNode patientNode = getChild(rootNode, patient);
+        if (patientNode == null) {
+            patientNode = new DefaultMutableTreeNode(patient, true);
+            insertNode(rootNode, patientNode, DicomSorter.PATIENT_COMPARATOR);
+        }
+        if (getChild(patientNode, study) == null) {
+            insertNode(patientNode, new ToolTipStudyNode(study, true), DicomSorter.STUDY_COMPARATOR);
+        }
+    }
+
+    private static DefaultMutableTreeNode getChild(DefaultMutableTreeNode parent, Object userObject) {
+        for (int i = 0; i < parent.getChildCount(); i++) {
+            DefaultMutableTreeNode node = (DefaultMutableTreeNode) parent.getChildAt(i);
+            if (node.getUserObject() == userObject) {
+                return node;
+            }
+        }
+        return null;
+    }
+
+    private void insertNode(DefaultMutableTreeNode parent, DefaultMutableTreeNode node,
+        Comparator<Object> comparator) {
+        List<?> children = Collections.list(parent.children());
+        int index = Collections.binarySearch(children, node, comparator);
+        model.insertNodeInto(node, parent, index < 0 ? -(index + 1) : index);
+    }
+
     private static void buildSeries(DefaultMutableTreeNode studyNode, Series<?> series) {
         DefaultMutableTreeNode seriesNode = new ToolTipSeriesNode(series, true);
 
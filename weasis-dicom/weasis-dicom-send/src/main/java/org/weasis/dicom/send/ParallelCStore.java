@@ -0,0 +1,208 @@
+/*
+ * Copyright (c) 2009-2020 Weasis Team and other contributors.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse
+ * Public License 2.0 which is available at http://www.eclipse.org/legal/epl-2.0.
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+
+package org.weasis.dicom.send;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.Collectors;
+
+import org.dcm4che3.data.Attributes;
+import org.dcm4che3.data.Tag;
+import org.dcm4che3.data.VR;
+import org.dcm4che3.net.Status;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.weasis.core.api.service.BundleTools;
+import org.weasis.core.api.util.ThreadUtil;
+import org.weasis.core.util.StringUtil;
+import org.weasis.dicom.op.CStore;
+import org.weasis.dicom.param.AdvancedParams;
+import org.weasis.dicom.param.DicomNode;
+import org.weasis.dicom.param.DicomProgress;
+import org.weasis.dicom.param.DicomState;
+
+/**
+ * Sends DICOM files with several associations in parallel.
+ * <p>
+ * The files are split into groups of similar size, each group is sent by {@link CStore} in its own association. Inside
+ * an association, the C-STORE requests are asynchronous when the connection options allow several invoked operations.
+ * The progress of the associations is merged into the progress given by the caller, and its cancellation is forwarded
+ * to all the associations.
+ * <p>
+ * Preferences:
+ * <ul>
+ * <li>dicom.send.associations: maximum number of parallel associations (default 2)</li>
+ * <li>dicom.send.max.ops.invoked: maximum number of asynchronous operations of an association, 1 for synchronous
+ * operations (default 8)</li>
+ * </ul>
+ */
+public final class ParallelCStore {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ParallelCStore.class);
+
+    public static final String P_ASSOCIATIONS = "dicom.send.associations"; //$NON-NLS-1$
+    public static final String P_MAX_OPS_INVOKED = "dicom.send.max.ops.invoked"; //$NON-NLS-1$
+
+    private static final int MAX_ASSOCIATIONS =
+        Math.max(1, BundleTools.SYSTEM_PREFERENCES.getIntProperty(P_ASSOCIATIONS, 2));
+    private static final ExecutorService EXECUTOR =
+        ThreadUtil.buildNewFixedThreadExecutor(MAX_ASSOCIATIONS, "C-STORE Association"); //$NON-NLS-1$
+
+    private ParallelCStore() {
+    }
+
+    public static int getMaxOpsInvoked() {
+        return Math.max(1, BundleTools.SYSTEM_PREFERENCES.getIntProperty(P_MAX_OPS_INVOKED, 8));
+    }
+
+    public static DicomState process(AdvancedParams params, DicomNode callingNode, DicomNode calledNode,
+        List<String> files, DicomProgress progress) {
+        return process(params, callingNode, calledNode, files, progress, MAX_ASSOCIATIONS);
+    }
+
+    /**
+     * @param files
+     *            the paths of the files or of the folders to send
+     * @param progress
+     *            the progress of all the associations, can be null
+     * @param nbAssociations
+     *            the maximum number of associations
+     */
+    public static DicomState process(AdvancedParams params, DicomNode callingNode, DicomNode calledNode,
+        List<String> files, DicomProgress progress, int nbAssociations) {
+        List<File> list = new ArrayList<>();
+        for (String path : files) {
+            addFiles(new File(path), list);
+        }
+        List<List<String>> groups = split(list, Math.min(nbAssociations, list.size()));
+        if (groups.size() <= 1) {
+            return CStore.process(params, callingNode, calledNode, files, progress);
+        }
+
+        List<DicomProgress> progresses = new ArrayList<>(groups.size());
+        List<Future<DicomState>> results = new ArrayList<>(groups.size());
+        for (int i = 0; i < groups.size(); i++) {
+            DicomProgress p = new DicomProgress();
+            p.addProgressListener(e -> mergeProgress(progresses, groups, progress));
+            progresses.add(p);
+        }
+        // Start the associations when all the progresses are in the list
+        for (int i = 0; i < groups.size(); i++) {
+            List<String> group = groups.get(i);
+            DicomProgress p = progresses.get(i);
+            results.add(EXECUTOR.submit(() -> CStore.process(params, callingNode, calledNode, group, p)));
+        }
+
+        List<DicomState> states = new ArrayList<>(results.size());
+        for (Future<DicomState> f : results) {
+            states.add(waitForState(f, progress, progresses));
+        }
+        return mergeStates(states);
+    }
+
+    private static DicomState waitForState(Future<DicomState> future, DicomProgress progress,
+        List<DicomProgress> progresses) {
+        while (true) {
+            try {
+                return future.get(200, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                if (progress != null && progress.isCancel()) {
+                    progresses.forEach(DicomProgress::cancel);
+                }
+            } catch (InterruptedException e) {
+                progresses.forEach(DicomProgress::cancel);
+                Thread.currentThread().interrupt();
+                return new DicomState(Status.Cancel, "Interrupted", null); //$NON-NLS-1$
+            } catch (ExecutionException e) {
+                LOGGER.error("C-STORE association", e.getCause()); //$NON-NLS-1$
+                return new DicomState(Status.UnableToProcess, StringUtil.getEmptyStringIfNull(e.getCause()), null);
+            }
+        }
+    }
+
+    private static void addFiles(File file, List<File> list) {
+        if (file.isDirectory()) {
+            File[] children = file.listFiles();
+            if (children != null) {
+                for (File child : children) {
+                    addFiles(child, list);
+                }
+            }
+        } else if (file.isFile()) {
+            list.add(file);
+        }
+    }
+
+    /**
+     * Splits the files into groups of similar size, the order of the files is kept inside a group.
+     */
+    static List<List<String>> split(List<File> files, int nbGroups) {
+        List<List<String>> groups = new ArrayList<>(Math.max(nbGroups, 0));
+        if (nbGroups <= 0) {
+            return groups;
+        }
+        long[] sizes = new long[nbGroups];
+        for (int i = 0; i < nbGroups; i++) {
+            groups.add(new ArrayList<>());
+        }
+        for (File file : files) {
+            int index = 0;
+            for (int i = 1; i < nbGroups; i++) {
+                if (sizes[i] < sizes[index]) {
+                    index = i;
+                }
+            }
+            groups.get(index).add(file.getPath());
+            sizes[index] += file.length();
+        }
+        return groups;
+    }
+
+    static void mergeProgress(List<DicomProgress> progresses, List<List<String>> groups,
+        DicomProgress progress) {
+        if (progress == null) {
+            return;
+        }
+        int completed = 0;
+        int failed = 0;
+        int warning = 0;
+        int remaining = 0;
+        synchronized (progresses) {
+            for (int i = 0; i < progresses.size(); i++) {
+                DicomProgress p = progresses.get(i);
+                completed += Math.max(0, p.getNumberOfCompletedSuboperations());
+                failed += Math.max(0, p.getNumberOfFailedSuboperations());
+                warning += Math.max(0, p.getNumberOfWarningSuboperations());
+                int r = p.getNumberOfRemainingSuboperations();
+                // No response yet
+                remaining += r < 0 ? groups.get(i).size() : r;
+            }
+            Attributes cmd = new Attributes();
+            cmd.setInt(Tag.NumberOfCompletedSuboperations, VR.US, completed);
+            cmd.setInt(Tag.NumberOfFailedSuboperations, VR.US, failed);
+            cmd.setInt(Tag.NumberOfWarningSuboperations, VR.US, warning);
+            cmd.setInt(Tag.NumberOfRemainingSuboperations, VR.US, remaining);
+            progress.setAttributes(cmd);
+        }
+    }
+
+    static DicomState mergeStates(List<DicomState> states) {
+        DicomState result = states.stream().filter(s -> s.getStatus() != Status.Success).findFirst()
+            .orElse(states.get(0));
+        String message = states.stream().map(DicomState::getMessage).filter(StringUtil::hasText)
+            .collect(Collectors.joining("\n")); //$NON-NLS-1$
+        return new DicomState(result.getStatus(), message, null);
+    }
+}
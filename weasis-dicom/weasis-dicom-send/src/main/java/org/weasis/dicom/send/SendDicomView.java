@@ -15,7 +15,9 @@ import java.awt.FlowLayout;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.concurrent.ExecutorService;
 
 import javax.swing.ComboBoxModel;
@@ -37,6 +39,7 @@ import org.weasis.core.api.gui.task.CircularProgressBar;
 import org.weasis.core.api.gui.util.AbstractItemDialogPage;
 import org.weasis.core.api.gui.util.AppProperties;
 import org.weasis.core.api.gui.util.GuiExecutor;
+import org.weasis.core.api.media.data.FileCache;
 import org.weasis.core.api.media.data.MediaElement;
 import org.weasis.core.api.media.data.MediaSeries;
 import org.weasis.core.api.media.data.Series;
@@ -48,6 +51,7 @@ import org.weasis.core.util.StringUtil;
 import org.weasis.core.api.util.ThreadUtil;
 import org.weasis.core.ui.model.GraphicModel;
 import org.weasis.dicom.codec.DicomImageElement;
+import org.weasis.dicom.codec.DicomMediaIO;
 import org.weasis.dicom.codec.TagD;
 import org.weasis.dicom.explorer.CheckTreeModel;
 import org.weasis.dicom.explorer.DicomModel;
@@ -59,7 +63,6 @@ import org.weasis.dicom.explorer.pref.node.AbstractDicomNode;
 import org.weasis.dicom.explorer.pref.node.AbstractDicomNode.UsageType;
 import org.weasis.dicom.explorer.pref.node.DefaultDicomNode;
 import org.weasis.dicom.explorer.pref.node.DicomWebNode;
-import org.weasis.dicom.op.CStore;
 import org.weasis.dicom.param.AdvancedParams;
 import org.weasis.dicom.param.ConnectOptions;
 import org.weasis.dicom.param.DicomNode;
@@ -171,9 +174,9 @@ public class SendDicomView extends AbstractItemDialogPage implements ExportDicom
         throws IOException {
         dicomModel
             .firePropertyChange(new ObservableEvent(ObservableEvent.BasicAction.LOADING_START, dicomModel, null, t));
-        File exportDir = FileUtil.createTempDir(AppProperties.buildAccessibleTempDirectory("tmp", "send")); //$NON-NLS-1$ //$NON-NLS-2$
+        ExportFiles exportFiles = new ExportFiles();
         try {
-            writeDicom(t, exportDir, model);
+            collectDicomFiles(t, exportFiles, model);
 
             if (t.isCancelled()) {
                 return false;
@@ -181,8 +184,10 @@ public class SendDicomView extends AbstractItemDialogPage implements ExportDicom
 
             String weasisAet = BundleTools.SYSTEM_PREFERENCES.getProperty("weasis.aet", "WEASIS_AE"); //$NON-NLS-1$ //$NON-NLS-2$
 
-            List<String> files = new ArrayList<>();
-            files.add(exportDir.getAbsolutePath());
+            List<String> files = exportFiles.getPaths();
+            if (files.isEmpty()) {
+                return false;
+            }
 
             final CircularProgressBar progressBar = t.getBar();
             DicomProgress dicomProgress = new DicomProgress();
@@ -200,9 +205,11 @@ public class SendDicomView extends AbstractItemDialogPage implements ExportDicom
                 ConnectOptions connectOptions = new ConnectOptions();
                 connectOptions.setConnectTimeout(3000);
                 connectOptions.setAcceptTimeout(5000);
+                // Send the next C-STORE requests without waiting for the responses
+                connectOptions.setMaxOpsInvoked(ParallelCStore.getMaxOpsInvoked());
                 params.setConnectOptions(connectOptions);
                 final DicomState state =
-                    CStore.process(params, new DicomNode(weasisAet), node.getDicomNode(), files, dicomProgress);
+                    ParallelCStore.process(params, new DicomNode(weasisAet), node.getDicomNode(), files, dicomProgress);
                 if (state.getStatus() != Status.Success && state.getStatus() != Status.Cancel) {
                     showErrorMessage(null, null, state);
                 } else {
@@ -217,7 +224,7 @@ public class SendDicomView extends AbstractItemDialogPage implements ExportDicom
                 }
             }
         } finally {
-            FileUtil.recursiveDelete(exportDir);
+            exportFiles.delete();
         }
 
         return true;
@@ -231,7 +238,11 @@ public class SendDicomView extends AbstractItemDialogPage implements ExportDicom
             state == null ? e.getMessage() : state.getMessage(), getTitle(), JOptionPane.ERROR_MESSAGE));
     }
 
-    private void writeDicom(ExplorerTask<Boolean, String> task, File writeDir, CheckTreeModel model)
+    /**
+     * Collects the files to send. The original files are sent as they are, only the instances without original file
+     * (in memory or built by a viewer) and the new presentation states are written in a temporary folder.
+     */
+    private void collectDicomFiles(ExplorerTask<Boolean, String> task, ExportFiles exportFiles, CheckTreeModel model)
         throws IOException {
         synchronized (this) {
             ArrayList<String> uids = new ArrayList<>();
@@ -249,27 +260,17 @@ public class SendDicomView extends AbstractItemDialogPage implements ExportDicom
                     if (index == -1) {
                         uids.add(iuid);
                     } else {
-                        // Write only once the file for multiframes
+                        // Send only once the file for multiframes
                         continue;
                     }
 
-                    String path = LocalExport.buildPath(img, false, false, false, node);
-                    File destinationDir = new File(writeDir, path);
-                    destinationDir.mkdirs();
-
-                    File destinationFile = new File(destinationDir, iuid);
-                    if (!img.saveToFile(destinationFile)) {
+                    if (!exportFiles.add(img, node, iuid)) {
                         LOGGER.error("Cannot export DICOM file: {}", img.getFileCache().getOriginalFile().orElse(null)); //$NON-NLS-1$
                     }
                 } else if (node.getUserObject() instanceof MediaElement) {
                     MediaElement dcm = (MediaElement) node.getUserObject();
                     String iuid = TagD.getTagValue(dcm, Tag.SOPInstanceUID, String.class);
-
-                    String path = LocalExport.buildPath(dcm, false, false, false, node);
-                    File destinationDir = new File(writeDir, path);
-                    destinationDir.mkdirs();
-
-                    dcm.saveToFile(new File(destinationDir, iuid));
+                    exportFiles.add(dcm, node, iuid);
                 } else if (node.getUserObject() instanceof Series) {
                     MediaSeries<?> s = (MediaSeries<?>) node.getUserObject();
                     if (LangUtil.getNULLtoFalse((Boolean) s.getTagValue(TagW.ObjectToSave))) {
@@ -280,8 +281,8 @@ public class SendDicomView extends AbstractItemDialogPage implements ExportDicom
                                 GraphicModel grModel = (GraphicModel) dcm.getTagValue(TagW.PresentationModel);
                                 if (grModel != null && grModel.hasSerializableGraphics()) {
                                     String path = LocalExport.buildPath(dcm, false, false, false, node);
-                                    LocalExport.buildAndWritePR(dcm, false, new File(writeDir, path), null, node,
-                                        seriesInstanceUID);
+                                    LocalExport.buildAndWritePR(dcm, false, new File(exportFiles.getWriteDir(), path),
+                                        null, node, seriesInstanceUID);
                                 }
                             }
                         }
@@ -290,4 +291,54 @@ public class SendDicomView extends AbstractItemDialogPage implements ExportDicom
             }
         }
     }
+
+    /**
+     * The files to send: the original files of the instances and a temporary folder created only when an instance must
+     * be written.
+     */
+    static class ExportFiles {
+        private final List<String> paths = new ArrayList<>();
+        private final Set<String> originalFiles = new HashSet<>();
+        private File writeDir;
+
+        File getWriteDir() {
+            if (writeDir == null) {
+                writeDir = FileUtil.createTempDir(AppProperties.buildAccessibleTempDirectory("tmp", "send")); //$NON-NLS-1$ //$NON-NLS-2$
+            }
+            return writeDir;
+        }
+
+        boolean add(MediaElement media, DefaultMutableTreeNode node, String iuid) {
+            FileCache cache = media.getFileCache();
+            if (media.getMediaReader() instanceof DicomMediaIO && !cache.isElementInMemory()) {
+                File file = cache.getOriginalFile().orElse(null);
+                if (file != null && file.canRead()) {
+                    if (originalFiles.add(file.getAbsolutePath())) {
+                        paths.add(file.getAbsolutePath());
+                    }
+                    return true;
+                }
+            }
+
+            // No readable DICOM file: write the instance
+            String path = LocalExport.buildPath(media, false, false, false, node);
+            File destinationDir = new File(getWriteDir(), path);
+            destinationDir.mkdirs();
+            return media.saveToFile(new File(destinationDir, iuid));
+        }
+
+        List<String> getPaths() {
+            List<String> list = new ArrayList<>(paths);
+            if (writeDir != null) {
+                list.add(writeDir.getAbsolutePath());
+            }
+            return list;
+        }
+
+        void delete() {
+            if (writeDir != null) {
+                FileUtil.recursiveDelete(writeDir);
+            }
+        }
+    }
 }
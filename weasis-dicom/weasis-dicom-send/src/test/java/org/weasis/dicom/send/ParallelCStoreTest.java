@@ -0,0 +1,162 @@
+/*
+ * Copyright (c) 2009-2020 Weasis Team and other contributors.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse
+ * Public License 2.0 which is available at http://www.eclipse.org/legal/epl-2.0.
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+
+package org.weasis.dicom.send;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.dcm4che3.data.Attributes;
+import org.dcm4che3.data.Tag;
+import org.dcm4che3.data.UID;
+import org.dcm4che3.data.VR;
+import org.dcm4che3.io.DicomOutputStream;
+import org.dcm4che3.net.Status;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.weasis.dicom.param.AdvancedParams;
+import org.weasis.dicom.param.DicomNode;
+import org.weasis.dicom.param.DicomProgress;
+import org.weasis.dicom.param.DicomState;
+import org.weasis.dicom.param.ListenerParams;
+import org.weasis.dicom.tool.DicomListener;
+
+public class ParallelCStoreTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File newFile(String name, int size) throws IOException {
+        File file = folder.newFile(name);
+        Files.write(file.toPath(), new byte[size]);
+        return file;
+    }
+
+    private File newDicom(String name, String sopInstanceUID) throws IOException {
+        Attributes ds = new Attributes();
+        ds.setString(Tag.SOPClassUID, VR.UI, UID.SecondaryCaptureImageStorage);
+        ds.setString(Tag.SOPInstanceUID, VR.UI, sopInstanceUID);
+        ds.setString(Tag.StudyInstanceUID, VR.UI, "1.2.3"); //$NON-NLS-1$
+        ds.setString(Tag.SeriesInstanceUID, VR.UI, "1.2.3.1"); //$NON-NLS-1$
+        ds.setString(Tag.PatientID, VR.LO, "ID"); //$NON-NLS-1$
+        ds.setInt(Tag.Rows, VR.US, 4);
+        ds.setInt(Tag.Columns, VR.US, 4);
+        ds.setInt(Tag.BitsAllocated, VR.US, 8);
+        ds.setInt(Tag.BitsStored, VR.US, 8);
+        ds.setInt(Tag.HighBit, VR.US, 7);
+        ds.setInt(Tag.SamplesPerPixel, VR.US, 1);
+        ds.setString(Tag.PhotometricInterpretation, VR.CS, "MONOCHROME2"); //$NON-NLS-1$
+        ds.setBytes(Tag.PixelData, VR.OB, new byte[16]);
+        File file = folder.newFile(name);
+        try (DicomOutputStream dos = new DicomOutputStream(file)) {
+            dos.writeDataset(ds.createFileMetaInformation(UID.ExplicitVRLittleEndian), ds);
+        }
+        return file;
+    }
+
+    private static Attributes progressCommand(int completed, int failed, int remaining) {
+        Attributes cmd = new Attributes();
+        cmd.setInt(Tag.NumberOfCompletedSuboperations, VR.US, completed);
+        cmd.setInt(Tag.NumberOfFailedSuboperations, VR.US, failed);
+        cmd.setInt(Tag.NumberOfWarningSuboperations, VR.US, 0);
+        cmd.setInt(Tag.NumberOfRemainingSuboperations, VR.US, remaining);
+        return cmd;
+    }
+
+    @Test
+    public void testSplit() throws Exception {
+        List<File> files = new ArrayList<>();
+        int[] sizes = { 1000, 10, 10, 500 };
+        for (int i = 0; i < sizes.length; i++) {
+            files.add(newFile(i + ".dcm", sizes[i])); //$NON-NLS-1$
+        }
+        List<List<String>> groups = ParallelCStore.split(files, 2);
+        assertEquals(2, groups.size());
+        // Groups of similar size, the order is kept inside a group
+        assertEquals(Arrays.asList(files.get(0).getPath()), groups.get(0));
+        assertEquals(Arrays.asList(files.get(1).getPath(), files.get(2).getPath(), files.get(3).getPath()),
+            groups.get(1));
+
+        assertEquals(0, ParallelCStore.split(files, 0).size());
+        List<List<String>> single = ParallelCStore.split(files, 1);
+        assertEquals(1, single.size());
+        assertEquals(4, single.get(0).size());
+    }
+
+    @Test
+    public void testMergeProgress() {
+        List<String> g1 = Arrays.asList("1.dcm", "2.dcm", "3.dcm"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+        List<String> g2 = Arrays.asList("4.dcm", "5.dcm"); //$NON-NLS-1$ //$NON-NLS-2$
+        List<List<String>> groups = Arrays.asList(g1, g2);
+        DicomProgress p1 = new DicomProgress();
+        DicomProgress p2 = new DicomProgress();
+        List<DicomProgress> progresses = new ArrayList<>(Arrays.asList(p1, p2));
+        DicomProgress progress = new DicomProgress();
+
+        p1.setAttributes(progressCommand(1, 1, 1));
+        ParallelCStore.mergeProgress(progresses, groups, progress);
+        assertEquals(1, progress.getNumberOfCompletedSuboperations());
+        assertEquals(1, progress.getNumberOfFailedSuboperations());
+        // The association without response has all its files remaining
+        assertEquals(3, progress.getNumberOfRemainingSuboperations());
+
+        p2.setAttributes(progressCommand(2, 0, 0));
+        ParallelCStore.mergeProgress(progresses, groups, progress);
+        assertEquals(3, progress.getNumberOfCompletedSuboperations());
+        assertEquals(1, progress.getNumberOfRemainingSuboperations());
+    }
+
+    @Test
+    public void testMergeStates() {
+        DicomState success = new DicomState(Status.Success, null, null);
+        DicomState failed = new DicomState(Status.UnableToProcess, "Connection refused", null); //$NON-NLS-1$
+        assertEquals(Status.Success, ParallelCStore.mergeStates(Arrays.asList(success, success)).getStatus());
+
+        DicomState state = ParallelCStore.mergeStates(Arrays.asList(success, failed));
+        assertEquals(Status.UnableToProcess, state.getStatus());
+        assertEquals("Connection refused", state.getMessage()); //$NON-NLS-1$
+    }
+
+    @Test
+    public void testStoreWithTwoAssociations() throws Exception {
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        File storage = folder.newFolder("storage"); //$NON-NLS-1$
+        DicomNode scp = new DicomNode("STORESCP", "127.0.0.1", port); //$NON-NLS-1$ //$NON-NLS-2$
+        DicomListener listener = new DicomListener(storage);
+        listener.start(scp, new ListenerParams(new AdvancedParams(), true));
+        try {
+            List<String> files = new ArrayList<>();
+            for (int i = 1; i <= 3; i++) {
+                files.add(newDicom(i + ".dcm", "1.2.3.1." + i).getPath()); //$NON-NLS-1$ //$NON-NLS-2$
+            }
+            DicomNode scu = new DicomNode("WEASIS-SCU"); //$NON-NLS-1$
+            DicomState state = ParallelCStore.process(new AdvancedParams(), scu, scp, files, new DicomProgress(), 2);
+
+            assertEquals(Status.Success, state.getStatus());
+            try (Stream<Path> stored = Files.walk(storage.toPath())) {
+                assertEquals(3, stored.filter(Files::isRegularFile).count());
+            }
+        } finally {
+            listener.stop();
+        }
+    }
+}
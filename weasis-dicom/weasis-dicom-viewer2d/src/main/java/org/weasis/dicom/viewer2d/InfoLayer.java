@@ -195,6 +195,11 @@ public class InfoLayer extends AbstractInfoLayer<DicomImageElement> {
                 AbstractGraphicLabel.paintColorFontOutline(g2, buf.toString(), border, drawY, Color.RED);
                 drawY -= fontHeight;
             }
+            if (LangUtil.getNULLtoFalse((Boolean) image.getTagValue(TagW.LossyPreview))) {
+                AbstractGraphicLabel.paintColorFontOutline(g2, Messages.getString("InfoLayer.lossy_preview"), //$NON-NLS-1$
+                    border, drawY, Color.RED);
+                drawY -= fontHeight;
+            }
 
             Integer frame = TagD.getTagValue(image, Tag.InstanceNumber, Integer.class);
             RejectedKOSpecialElement koElement = DicomModel.getRejectionKoSpecialElement(view2DPane.getSeries(),
@@ -50,6 +50,7 @@ import org.weasis.core.api.gui.util.SliderChangeListener;
 import org.weasis.core.api.gui.util.SliderCineListener;
 import org.weasis.core.api.gui.util.ToggleButtonListener;
 import org.weasis.core.api.image.GridBagLayoutModel;
+import org.weasis.core.api.image.OpManager;
 import org.weasis.core.api.media.MimeInspector;
 import org.weasis.core.api.media.data.MediaSeries;
 import org.weasis.core.api.media.data.MediaSeriesGroup;
@@ -402,8 +403,13 @@ public class View2dContainer extends ImageViewerPlugin<DicomImageElement> implem
                             DicomImageElement dcm = (DicomImageElement) source;
                             for (ViewCanvas<DicomImageElement> v : view2ds) {
                                 if (dcm == v.getImage()) {
-                                    // Force to repaint the same image
-                                    if (v.getImageLayer().getDisplayImage() == null) {
+                                    if (param == null && v.getImageLayer().getDisplayImage() != null) {
+                                        // The pixel data has been replaced, reload with the same display parameters
+                                        v.getImageLayer().setImage(null, null);
+                                        v.getImageLayer().setImage(dcm,
+                                            (OpManager) v.getActionValue(ActionW.PREPROCESSING.cmd()));
+                                    } else if (v.getImageLayer().getDisplayImage() == null) {
+                                        // Force to repaint the same image
                                         v.setActionsInView(ActionW.PROGRESSION.cmd(), param);
                                         // Set image to null for getting correct W/L values
                                         v.getImageLayer().setImage(null, null);
@@ -477,7 +477,7 @@ public class SeriesBuilder {
                     }
                 }
 
-                // TODO do not open more than 512 files (Limitation to open 1024 in the same time on Ubuntu)
+                // The files of the images are read one by one, the header handles are bounded by FileHandlePool
                 PlanarImage image = dcm.getImage(null, false);
                 if (image == null) {
                     abort[0] = true;